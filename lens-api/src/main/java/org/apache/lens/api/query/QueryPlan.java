@@ -86,6 +86,10 @@ import java.util.Map;
  *          the error
  * @param errorMsg
  *          the error msg
+ * @param phaseDurations
+ *          the phase durations
+ * @param phaseMetastoreCalls
+ *          the phase metastore calls
  */
 @AllArgsConstructor
 /**
@@ -261,6 +265,23 @@ public class QueryPlan extends QuerySubmitResult {
   @Getter
   private String errorMsg;
 
+  /**
+   * The time taken by each phase before launch, like the rewriter passes, driver explain and driver selection, in
+   * microseconds.
+   */
+  @XmlElementWrapper
+  @Getter
+  @Setter
+  private Map<String, Long> phaseDurations;
+
+  /**
+   * The metastore calls made in each phase before launch.
+   */
+  @XmlElementWrapper
+  @Getter
+  @Setter
+  private Map<String, Long> phaseMetastoreCalls;
+
   public String getPlanString() throws UnsupportedEncodingException {
     return URLDecoder.decode(planString, "UTF-8");
   }
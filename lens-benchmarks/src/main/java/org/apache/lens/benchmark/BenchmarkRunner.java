@@ -0,0 +1,61 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes their results as JSON, so that they can be compared across builds.
+ * <p/>
+ * Usage: BenchmarkRunner [result file] [benchmark regex]. Results are written to target/jmh-result.json and all
+ * benchmarks are run, by default.
+ */
+public final class BenchmarkRunner {
+
+  /**
+   * The Constant DEFAULT_RESULT_FILE.
+   */
+  public static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+  /**
+   * The Constant DEFAULT_INCLUDE.
+   */
+  public static final String DEFAULT_INCLUDE = "org.apache.lens";
+
+  private BenchmarkRunner() {
+  }
+
+  /**
+   * The main method.
+   *
+   * @param args the arguments
+   * @throws RunnerException the runner exception
+   */
+  public static void main(String[] args) throws RunnerException {
+    String resultFile = args.length > 0 ? args[0] : DEFAULT_RESULT_FILE;
+    String include = args.length > 1 ? args[1] : DEFAULT_INCLUDE;
+    Options options = new OptionsBuilder().include(include).resultFormat(ResultFormatType.JSON).result(resultFile)
+      .jvmArgsAppend("-Dtest.tmp.dir=" + System.getProperty("test.tmp.dir", "target/tmp")).build();
+    new Runner(options).run();
+  }
+}
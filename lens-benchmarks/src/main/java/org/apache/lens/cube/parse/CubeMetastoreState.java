@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.parse;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark state holding the cubes, dimensions and facts of {@link CubeTestSetup}, created once per trial in the
+ * embedded metastore configured by the hive-site.xml of the lens-cube tests.
+ */
+@State(Scope.Benchmark)
+public class CubeMetastoreState {
+
+  /**
+   * The Constant DB_NAME.
+   */
+  public static final String DB_NAME = "lens_benchmarks";
+
+  /**
+   * The queries benchmarked, by name. The time range is appended to each.
+   */
+  public enum Query {
+
+    /** Single measure of a cube with a single fact. */
+    SIMPLE("select SUM(msr2) from testCube where "),
+
+    /** Dimension attribute with a measure, grouped by the attribute. */
+    GROUPBY("select dim1, SUM(msr1) from basecube where "),
+
+    /** Measures answered by different facts, with an auto joined dimension. */
+    JOIN_MULTIFACT("select testdim2.name, msr12, roundedmsr2 from basecube where ");
+
+    /** The query, without its time range. */
+    private final String prefix;
+
+    Query(String prefix) {
+      this.prefix = prefix;
+    }
+
+    /**
+     * Gets the query over the given number of days, ending now.
+     *
+     * @param days the days
+     * @return the query
+     */
+    public String get(int days) {
+      Date now = new Date();
+      Calendar cal = Calendar.getInstance();
+      cal.setTime(now);
+      cal.add(Calendar.DAY_OF_MONTH, -days);
+      return prefix + "time_range_in(dt, '" + CubeTestSetup.getDateUptoHours(cal.getTime()) + "','"
+        + CubeTestSetup.getDateUptoHours(now) + "')";
+    }
+  }
+
+  /**
+   * The conf.
+   */
+  private HiveConf conf;
+
+  /**
+   * The setup.
+   */
+  private CubeTestSetup setup;
+
+  /**
+   * Creates the sources.
+   *
+   * @throws Exception the exception
+   */
+  @Setup(Level.Trial)
+  public void createSources() throws Exception {
+    conf = new HiveConf(CubeMetastoreState.class);
+    conf.set(CubeQueryConfUtil.DRIVER_SUPPORTED_STORAGES, "C1,C2");
+    conf.setBoolean(CubeQueryConfUtil.DISABLE_AUTO_JOINS, false);
+    conf.setBoolean(CubeQueryConfUtil.ENABLE_SELECT_TO_GROUPBY, true);
+    conf.setBoolean(CubeQueryConfUtil.ENABLE_GROUP_BY_TO_SELECT, true);
+    conf.setBoolean(CubeQueryConfUtil.DISABLE_AGGREGATE_RESOLVER, false);
+    SessionState.start(conf);
+    setup = new CubeTestSetup();
+    setup.createSources(conf, DB_NAME);
+  }
+
+  /**
+   * Drops the sources.
+   *
+   * @throws Exception the exception
+   */
+  @TearDown(Level.Trial)
+  public void dropSources() throws Exception {
+    setup.dropSources(conf, DB_NAME);
+  }
+
+  /**
+   * Starts a session on the benchmark database in the calling thread, if not started already. Benchmark threads should
+   * call this before rewriting.
+   */
+  public void startSession() {
+    if (SessionState.get() == null) {
+      SessionState.start(conf);
+    }
+    SessionState.get().setCurrentDatabase(DB_NAME);
+  }
+
+  /**
+   * Gets the conf queries are rewritten with.
+   *
+   * @return the conf
+   */
+  public Configuration getConf() {
+    return conf;
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.parse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the complete rewrite of cube queries into HQL, across query shapes and time range widths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CubeQueryRewriterBenchmark {
+
+  /**
+   * The query.
+   */
+  @Param({ "SIMPLE", "GROUPBY", "JOIN_MULTIFACT" })
+  private CubeMetastoreState.Query query;
+
+  /**
+   * The width of the queried time range, in days.
+   */
+  @Param({ "2", "60", "365" })
+  private int days;
+
+  /**
+   * The query string.
+   */
+  private String queryString;
+
+  /**
+   * Sets up the session and the query.
+   *
+   * @param metastore the metastore
+   */
+  @Setup(Level.Iteration)
+  public void setup(CubeMetastoreState metastore) {
+    metastore.startSession();
+    queryString = query.get(days);
+  }
+
+  /**
+   * Rewrite the query and generate HQL.
+   *
+   * @param metastore the metastore
+   * @return the HQL
+   * @throws Exception the exception
+   */
+  @Benchmark
+  public String rewrite(CubeMetastoreState metastore) throws Exception {
+    return new CubeQueryRewriter(metastore.getConf()).rewrite(queryString).toHQL();
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.parse;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.parse.ASTNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link HQLParser#parseHQL(String)} and {@link HQLParser#toInfixString(ASTNode, StringBuilder)} on
+ * generated queries with growing numbers of columns. Needs no metastore.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HQLParserBenchmark {
+
+  /**
+   * The number of dimension and measure columns queried.
+   */
+  @Param({ "10", "100", "500" })
+  private int columns;
+
+  /**
+   * The query.
+   */
+  private String query;
+
+  /**
+   * The parsed query.
+   */
+  private ASTNode ast;
+
+  /**
+   * Generates the query.
+   *
+   * @throws Exception the exception
+   */
+  @Setup(Level.Trial)
+  public void generateQuery() throws Exception {
+    StringBuilder select = new StringBuilder("select ");
+    StringBuilder where = new StringBuilder(" where ");
+    StringBuilder groupby = new StringBuilder(" group by ");
+    for (int i = 0; i < columns; i++) {
+      if (i > 0) {
+        select.append(", ");
+        where.append(" and ");
+        groupby.append(", ");
+      }
+      select.append("dim").append(i).append(", sum(msr").append(i).append(")");
+      where.append("dim").append(i).append(" in ('a', 'b') and msr").append(i).append(" > ").append(i);
+      groupby.append("dim").append(i);
+    }
+    query = select + " from fact" + where + groupby + " order by dim0 limit 100";
+    ast = HQLParser.parseHQL(query);
+  }
+
+  /**
+   * Parse the query.
+   *
+   * @return the AST
+   * @throws Exception the exception
+   */
+  @Benchmark
+  public ASTNode parseHQL() throws Exception {
+    return HQLParser.parseHQL(query);
+  }
+
+  /**
+   * Regenerate the query from its AST.
+   *
+   * @return the query
+   */
+  @Benchmark
+  public String toInfixString() {
+    StringBuilder builder = new StringBuilder();
+    HQLParser.toInfixString(ast, builder);
+    return builder.toString();
+  }
+}
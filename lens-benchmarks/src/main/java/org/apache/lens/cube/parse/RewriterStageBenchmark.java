@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.parse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.parse.ASTNode;
+import org.apache.hadoop.hive.ql.parse.ParseDriver;
+import org.apache.hadoop.hive.ql.parse.ParseUtils;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a single stage of the {@link CubeQueryRewriter} pipeline, such as join path enumeration by
+ * {@link JoinResolver} or partition resolution by {@link StorageTableResolver}.
+ * <p/>
+ * Stages are named by the simple class name of their rewriter, suffixed with #n for the nth run of a rewriter which
+ * runs more than once. Before each invocation, the query is analyzed and all stages before the benchmarked one are run
+ * on a fresh rewriter, since rewriters keep state across their runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RewriterStageBenchmark {
+
+  /**
+   * The stage.
+   */
+  @Param({ "ExpressionResolver", "ColumnResolver", "AliasReplacer", "DenormalizationResolver",
+    "CandidateTableResolver", "JoinResolver", "TimerangeResolver", "CandidateTableResolver#2", "AggregateResolver",
+    "GroupbyResolver", "StorageTableResolver", "StorageTableResolver#2", "LightestFactResolver",
+    "StorageTableResolver#3", "DenormalizationResolver#2", "LeastPartitionResolver", "LightestFactResolver#2",
+    "LightestDimensionResolver" })
+  private String stage;
+
+  /**
+   * The query.
+   */
+  @Param({ "SIMPLE", "JOIN_MULTIFACT" })
+  private CubeMetastoreState.Query query;
+
+  /**
+   * The width of the queried time range, in days.
+   */
+  @Param({ "2", "365" })
+  private int days;
+
+  /**
+   * The query string.
+   */
+  private String queryString;
+
+  /**
+   * The rewriter of the benchmarked stage.
+   */
+  private ContextRewriter stageRewriter;
+
+  /**
+   * The context, rewritten up to the benchmarked stage.
+   */
+  private CubeQueryContext context;
+
+  /**
+   * Sets up the session and the query.
+   *
+   * @param metastore the metastore
+   */
+  @Setup(Level.Iteration)
+  public void setupQuery(CubeMetastoreState metastore) {
+    metastore.startSession();
+    queryString = query.get(days);
+  }
+
+  /**
+   * Analyzes the query and runs the stages before the benchmarked one.
+   *
+   * @param metastore the metastore
+   * @throws Exception the exception
+   */
+  @Setup(Level.Invocation)
+  public void rewriteUptoStage(CubeMetastoreState metastore) throws Exception {
+    CubeQueryRewriter rewriter = new CubeQueryRewriter(metastore.getConf());
+    ParseDriver pd = new ParseDriver();
+    ASTNode tree = ParseUtils.findRootNonNullToken(pd.parse(queryString, rewriter.getQLContext(), false));
+    CubeSemanticAnalyzer analyzer = new CubeSemanticAnalyzer(new HiveConf(metastore.getConf(), HiveConf.class));
+    analyzer.analyze(tree, rewriter.getQLContext());
+    context = analyzer.getQueryContext();
+
+    List<ContextRewriter> rewriters = rewriter.getRewriters();
+    Map<Class<?>, Integer> runs = new HashMap<Class<?>, Integer>();
+    stageRewriter = null;
+    for (ContextRewriter stageCandidate : rewriters) {
+      Integer run = runs.get(stageCandidate.getClass());
+      run = run == null ? 1 : run + 1;
+      runs.put(stageCandidate.getClass(), run);
+      String name = stageCandidate.getClass().getSimpleName() + (run > 1 ? "#" + run : "");
+      if (name.equals(stage)) {
+        stageRewriter = stageCandidate;
+        return;
+      }
+      stageCandidate.rewriteContext(context);
+    }
+    throw new IllegalArgumentException("No stage " + stage + " in the rewriter pipeline");
+  }
+
+  /**
+   * Run the stage.
+   *
+   * @return the context
+   * @throws Exception the exception
+   */
+  @Benchmark
+  public CubeQueryContext rewriteStage() throws Exception {
+    stageRewriter.rewriteContext(context);
+    return context;
+  }
+}
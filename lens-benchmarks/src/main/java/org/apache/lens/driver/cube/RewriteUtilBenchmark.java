@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.driver.cube;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lens.cube.parse.CubeMetastoreState;
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.driver.MockDriver;
+import org.apache.lens.server.api.query.QueryContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link RewriteUtil#rewriteQuery(org.apache.lens.server.api.query.AbstractQueryContext, LensDriver)}, which
+ * finds the cube queries in a user query and rewrites them for a driver, as done for every query before it is launched.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RewriteUtilBenchmark {
+
+  /**
+   * The query.
+   */
+  @Param({ "SIMPLE", "GROUPBY", "JOIN_MULTIFACT" })
+  private CubeMetastoreState.Query query;
+
+  /**
+   * The width of the queried time range, in days.
+   */
+  @Param({ "2", "60", "365" })
+  private int days;
+
+  /**
+   * The driver.
+   */
+  private LensDriver driver;
+
+  /**
+   * The query context.
+   */
+  private QueryContext ctx;
+
+  /**
+   * Sets up the session and the query context.
+   *
+   * @param metastore the metastore
+   * @throws Exception the exception
+   */
+  @Setup(Level.Iteration)
+  public void setup(CubeMetastoreState metastore) throws Exception {
+    metastore.startSession();
+    driver = new MockDriver();
+    driver.configure(metastore.getConf());
+    List<LensDriver> drivers = new ArrayList<LensDriver>();
+    drivers.add(driver);
+    ctx = new QueryContext("cube " + query.get(days), "benchmark", metastore.getConf(), drivers);
+  }
+
+  /**
+   * Rewrite the query for the driver.
+   *
+   * @return the driver query
+   * @throws Exception the exception
+   */
+  @Benchmark
+  public String rewriteQuery() throws Exception {
+    return RewriteUtil.rewriteQuery(ctx, driver);
+  }
+}
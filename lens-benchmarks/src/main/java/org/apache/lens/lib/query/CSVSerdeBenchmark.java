@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.lib.query;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Benchmarks writing rows through {@link CSVSerde}, comparing the earlier per row {@link CSVWriter} based
+ * serialization with the reused row buffer of {@link CSVSerde#serializeToBuffer(Object, ObjectInspector)}. Scores are
+ * per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CSVSerdeBenchmark {
+
+  /**
+   * The number of rows written per invocation.
+   */
+  private static final int ROWS = 1000;
+
+  /**
+   * The serde.
+   */
+  private CSVSerde serde;
+
+  /**
+   * The object inspector of the rows.
+   */
+  private ObjectInspector oi;
+
+  /**
+   * The rows.
+   */
+  private List<List<Object>> rows;
+
+  /**
+   * The fields of the row being serialized by the CSVWriter based serialization.
+   */
+  private String[] fields;
+
+  /**
+   * The output, reset on every invocation.
+   */
+  private final CharArrayWriter out = new CharArrayWriter();
+
+  /**
+   * Initializes the serde and generates the rows.
+   *
+   * @throws Exception the exception
+   */
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    Properties props = new Properties();
+    props.put(serdeConstants.LIST_COLUMNS, "id,name,amount,count,comment");
+    props.put(serdeConstants.LIST_COLUMN_TYPES, "bigint,string,double,int,string");
+    serde = new CSVSerde();
+    serde.initialize(null, props);
+    oi = serde.getObjectInspector();
+    rows = new ArrayList<List<Object>>(ROWS);
+    for (int i = 0; i < ROWS; i++) {
+      rows.add(Arrays.<Object>asList((long) i * 7919, "name" + i, i * 1.25, i, "say \"hello\", " + i));
+    }
+    fields = new String[rows.get(0).size()];
+  }
+
+  /**
+   * Write the rows serialized with a CSVWriter per row.
+   *
+   * @return the number of chars written
+   * @throws Exception the exception
+   */
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int csvWriterPerRow() throws Exception {
+    out.reset();
+    for (List<Object> row : rows) {
+      out.write(new Text(legacySerialize(row, (StructObjectInspector) oi)).toString());
+      out.write('\n');
+    }
+    return out.size();
+  }
+
+  /**
+   * Write the rows serialized into the reused row buffer.
+   *
+   * @return the number of chars written
+   * @throws Exception the exception
+   */
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int rowBuffer() throws Exception {
+    out.reset();
+    for (List<Object> row : rows) {
+      RowBuffer buffer = serde.serializeToBuffer(row, oi);
+      out.write(buffer.getChars(), 0, buffer.length());
+      out.write('\n');
+    }
+    return out.size();
+  }
+
+  /**
+   * Serializes the primitive row the way CSVSerde did before using a row buffer.
+   *
+   * @param row the row
+   * @param oi  the object inspector of the row
+   * @return the CSV line
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private String legacySerialize(List<Object> row, StructObjectInspector oi) throws IOException {
+    List<? extends StructField> refs = oi.getAllStructFieldRefs();
+    for (int c = 0; c < fields.length; c++) {
+      Object field = oi.getStructFieldData(row, refs.get(c));
+      ObjectInspector fieldOI = refs.get(c).getFieldObjectInspector();
+      if (field == null) {
+        fields[c] = CSVSerde.DEFAULT_NULL_FORMAT;
+      } else if (fieldOI instanceof StringObjectInspector) {
+        fields[c] = ((StringObjectInspector) fieldOI).getPrimitiveJavaObject(field);
+      } else {
+        fields[c] = field.toString();
+      }
+    }
+    StringWriter writer = new StringWriter();
+    CSVWriter csv = new CSVWriter(writer, CSVWriter.DEFAULT_SEPARATOR, CSVWriter.DEFAULT_QUOTE_CHARACTER, "");
+    csv.writeNext(fields);
+    csv.close();
+    return writer.toString();
+  }
+}
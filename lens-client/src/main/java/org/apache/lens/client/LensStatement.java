@@ -372,12 +372,39 @@ public class LensStatement {
    * @return the all queries
    */
   public List<QueryHandle> getAllQueries(String state, String queryName, String user, long fromDate, long toDate) {
+    return getAllQueries(state, queryName, user, fromDate, toDate, null, -1);
+  }
+
+  /**
+   * Gets a page of the queries, ordered by submission time and query handle.
+   *
+   * @param state
+   *          the state
+   * @param queryName
+   *          the query name
+   * @param user
+   *          the user
+   * @param fromDate
+   *          the from date
+   * @param toDate
+   *          the to date
+   * @param after
+   *          the last query handle of the previous page, null for the first page
+   * @param pageSize
+   *          the max number of queries returned, non-positive for all queries
+   * @return the queries
+   */
+  public List<QueryHandle> getAllQueries(String state, String queryName, String user, long fromDate, long toDate,
+      QueryHandle after, int pageSize) {
     WebTarget target = getQueryWebTarget(ClientBuilder.newBuilder().register(MultiPartFeature.class).build());
-    List<QueryHandle> handles = target.queryParam("sessionid", connection.getSessionHandle())
+    target = target.queryParam("sessionid", connection.getSessionHandle())
         .queryParam("state", state).queryParam("queryName", queryName).queryParam("user", user)
-        .queryParam("fromDate", fromDate).queryParam("toDate", toDate).request()
-        .get(new GenericType<List<QueryHandle>>() {
-        });
+        .queryParam("fromDate", fromDate).queryParam("toDate", toDate).queryParam("pageSize", pageSize);
+    if (after != null) {
+      target = target.queryParam("after", after);
+    }
+    List<QueryHandle> handles = target.request().get(new GenericType<List<QueryHandle>>() {
+    });
     return handles;
   }
 
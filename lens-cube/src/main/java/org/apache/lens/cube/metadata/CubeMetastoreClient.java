@@ -22,6 +22,7 @@ package org.apache.lens.cube.metadata;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -31,10 +32,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hive.conf.HiveConf;
 import org.apache.hadoop.hive.metastore.TableType;
+import org.apache.hadoop.hive.metastore.Warehouse;
 import org.apache.hadoop.hive.metastore.api.FieldSchema;
 import org.apache.hadoop.hive.metastore.api.InvalidOperationException;
 import org.apache.hadoop.hive.metastore.api.MetaException;
@@ -53,32 +64,70 @@ import org.apache.thrift.TException;
  * 
  */
 public class CubeMetastoreClient {
+  public static final Log LOG = LogFactory.getLog(CubeMetastoreClient.class.getName());
+
   private final HiveConf config;
   private final boolean enableCaching;
+  private final long timelineExpiryMillis;
+  private final String dbName;
 
-  private CubeMetastoreClient(HiveConf conf) {
+  private CubeMetastoreClient(HiveConf conf, String dbName) {
     this.config = conf;
+    this.dbName = dbName;
     this.enableCaching = conf.getBoolean(MetastoreConstants.METASTORE_ENABLE_CACHING, true);
+    this.timelineExpiryMillis = conf.getLong(MetastoreConstants.PARTITION_TIMELINE_EXPIRY_MILLIS,
+        MetastoreConstants.DEFAULT_PARTITION_TIMELINE_EXPIRY_MILLIS);
   }
 
   // map from table name to Table
-  private final Map<String, Table> allHiveTables = new HashMap<String, Table>();
+  private final Map<String, Table> allHiveTables = new ConcurrentHashMap<String, Table>();
   // map from dimension name to Dimension
-  private final Map<String, Dimension> allDims = new HashMap<String, Dimension>();
+  private final Map<String, Dimension> allDims = new ConcurrentHashMap<String, Dimension>();
   // map from cube name to Cube
-  private final Map<String, CubeInterface> allCubes = new HashMap<String, CubeInterface>();
+  private final Map<String, CubeInterface> allCubes = new ConcurrentHashMap<String, CubeInterface>();
   // map from dimtable name to CubeDimensionTable
-  private final Map<String, CubeDimensionTable> allDimTables = new HashMap<String, CubeDimensionTable>();
+  private final Map<String, CubeDimensionTable> allDimTables = new ConcurrentHashMap<String, CubeDimensionTable>();
   // map from fact name to fact table
-  private final Map<String, CubeFactTable> allFactTables = new HashMap<String, CubeFactTable>();
+  private final Map<String, CubeFactTable> allFactTables = new ConcurrentHashMap<String, CubeFactTable>();
   // map from storage name to storage
-  private final Map<String, Storage> allStorages = new HashMap<String, Storage>();
+  private final Map<String, Storage> allStorages = new ConcurrentHashMap<String, Storage>();
+  // map from storage table name to its partition timeline, loaded when first needed and again after expiry
+  private final ConcurrentMap<String, PartitionTimeline> partitionTimelines =
+      new ConcurrentHashMap<String, PartitionTimeline>();
+  // incremented whenever partitions are added or dropped through this client, so that a timeline loaded while
+  // partitions changed is not cached
+  private final AtomicLong partitionVersion = new AtomicLong();
+
+  // incremented whenever tables are created, altered or dropped through this client or found changed by the
+  // refresher, so that the snapshot gets rebuilt on next read
+  private final AtomicLong metadataVersion = new AtomicLong();
+  // immutable view of all the cube metadata of the database, read without locking
+  private volatile MetadataSnapshot snapshot;
+  private final Object snapshotLock = new Object();
 
   // dbname to client mapping
-  private static final Map<String, CubeMetastoreClient> clientMapping =
-      new HashMap<String, CubeMetastoreClient>();
+  private static final ConcurrentMap<String, CubeMetastoreClient> clientMapping =
+      new ConcurrentHashMap<String, CubeMetastoreClient>();
+
+  // refreshes the table list of all clients in the background
+  private static ScheduledExecutorService metadataRefresher;
 
   private SchemaGraph schemaGraph;
+  private long schemaGraphVersion;
+
+  // incremented whenever cube metadata or partitions are changed through any client
+  private static final AtomicLong metastoreVersion = new AtomicLong();
+
+  /**
+   * Get the version of cube metastore, which changes whenever cubes, dimensions, fact or dimension tables, storages
+   * or partitions are created, altered or dropped through {@link CubeMetastoreClient}. Anything derived from the
+   * metadata, like rewritten queries, can be cached against the version.
+   * 
+   * @return the metastore version
+   */
+  public static long getMetastoreVersion() {
+    return metastoreVersion.get();
+  }
 
   /**
    * Get the instance of {@link CubeMetastoreClient} corresponding to
@@ -90,10 +139,176 @@ public class CubeMetastoreClient {
    */
   public static CubeMetastoreClient getInstance(HiveConf conf) throws HiveException {
     String currentdb = SessionState.get().getCurrentDatabase();
-    if (clientMapping.get(currentdb) == null) {
-      clientMapping.put(currentdb, new CubeMetastoreClient(conf));
+    CubeMetastoreClient client = clientMapping.get(currentdb);
+    if (client == null) {
+      CubeMetastoreClient newClient = new CubeMetastoreClient(conf, currentdb);
+      client = clientMapping.putIfAbsent(currentdb, newClient);
+      if (client == null) {
+        client = newClient;
+        client.scheduleRefresh();
+      }
+    }
+    return client;
+  }
+
+  private void scheduleRefresh() {
+    long interval = config.getLong(MetastoreConstants.METASTORE_REFRESH_INTERVAL_MILLIS,
+        MetastoreConstants.DEFAULT_METASTORE_REFRESH_INTERVAL_MILLIS);
+    if (!enableCaching || interval <= 0) {
+      return;
+    }
+    getMetadataRefresher().scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          refreshTableNames();
+        } catch (Throwable e) {
+          LOG.warn("Could not refresh cube metadata of database " + dbName, e);
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  private static synchronized ScheduledExecutorService getMetadataRefresher() {
+    if (metadataRefresher == null) {
+      metadataRefresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread th = new Thread(r, "CubeMetadataRefresher");
+          th.setDaemon(true);
+          return th;
+        }
+      });
+    }
+    return metadataRefresher;
+  }
+
+  /**
+   * Compare the tables in metastore with the ones in current snapshot. Tables dropped outside this client are evicted
+   * from the caches, and the snapshot is rebuilt on next read if anything has changed.
+   *
+   * @throws HiveException
+   */
+  void refreshTableNames() throws HiveException {
+    MetadataSnapshot current = snapshot;
+    if (current == null) {
+      return;
+    }
+    Set<String> tableNames = new HashSet<String>();
+    for (String table : getAllHiveTableNames()) {
+      tableNames.add(table.toLowerCase());
+    }
+    if (tableNames.equals(current.tableNames)) {
+      return;
+    }
+    for (String table : current.tableNames) {
+      if (!tableNames.contains(table)) {
+        allHiveTables.remove(table);
+        allCubes.remove(table);
+        allDims.remove(table);
+        allFactTables.remove(table);
+        allDimTables.remove(table);
+        allStorages.remove(table);
+        partitionTimelines.remove(table);
+      }
+    }
+    LOG.info("Tables of database " + dbName + " changed in metastore, invalidating cube metadata snapshot");
+    metadataVersion.incrementAndGet();
+  }
+
+  private void metadataChanged() {
+    metastoreVersion.incrementAndGet();
+    metadataVersion.incrementAndGet();
+  }
+
+  private MetadataSnapshot getSnapshot() throws HiveException {
+    if (!enableCaching) {
+      return buildSnapshot(metadataVersion.get());
+    }
+    MetadataSnapshot current = snapshot;
+    if (current == null || current.version != metadataVersion.get()) {
+      synchronized (snapshotLock) {
+        current = snapshot;
+        long version = metadataVersion.get();
+        if (current == null || current.version != version) {
+          current = buildSnapshot(version);
+          snapshot = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  private MetadataSnapshot buildSnapshot(long version) throws HiveException {
+    MetadataSnapshot snap = new MetadataSnapshot(version);
+    for (String table : getAllHiveTableNames()) {
+      snap.tableNames.add(table.toLowerCase());
+      CubeInterface cube = getCube(table);
+      if (cube != null) {
+        snap.cubes.add(cube);
+        if (cube.isDerivedCube()) {
+          addToIndex(snap.derivedCubesByCube, ((DerivedCube) cube).getParent().getName(), (DerivedCube) cube);
+        }
+        continue;
+      }
+      Dimension dim = getDimension(table);
+      if (dim != null) {
+        snap.dims.add(dim);
+        continue;
+      }
+      CubeFactTable fact = getCubeFact(table);
+      if (fact != null) {
+        snap.facts.add(fact);
+        addToIndex(snap.factsByCube, fact.getCubeName(), fact);
+        continue;
+      }
+      CubeDimensionTable dimTable = getDimensionTable(table);
+      if (dimTable != null) {
+        snap.dimTables.add(dimTable);
+        addToIndex(snap.dimTablesByDim, dimTable.getDimName(), dimTable);
+        continue;
+      }
+      Storage storage = getStorage(table);
+      if (storage != null) {
+        snap.storages.add(storage);
+      }
+    }
+    return snap;
+  }
+
+  private static <T> void addToIndex(Map<String, List<T>> index, String key, T value) {
+    List<T> values = index.get(key.toLowerCase());
+    if (values == null) {
+      values = new ArrayList<T>();
+      index.put(key.toLowerCase(), values);
+    }
+    values.add(value);
+  }
+
+  private static <T> List<T> copyOf(List<T> values) {
+    return values == null ? new ArrayList<T>() : new ArrayList<T>(values);
+  }
+
+  /**
+   * All the cube metadata of a database at a metadata version, with facts, dimension tables and derived cubes
+   * indexed by the name of cube or dimension they belong to. Not modified once published.
+   */
+  private static final class MetadataSnapshot {
+    private final long version;
+    private final Set<String> tableNames = new HashSet<String>();
+    private final List<CubeInterface> cubes = new ArrayList<CubeInterface>();
+    private final List<Dimension> dims = new ArrayList<Dimension>();
+    private final List<CubeFactTable> facts = new ArrayList<CubeFactTable>();
+    private final List<CubeDimensionTable> dimTables = new ArrayList<CubeDimensionTable>();
+    private final List<Storage> storages = new ArrayList<Storage>();
+    private final Map<String, List<CubeFactTable>> factsByCube = new HashMap<String, List<CubeFactTable>>();
+    private final Map<String, List<CubeDimensionTable>> dimTablesByDim =
+        new HashMap<String, List<CubeDimensionTable>>();
+    private final Map<String, List<DerivedCube>> derivedCubesByCube = new HashMap<String, List<DerivedCube>>();
+
+    private MetadataSnapshot(long version) {
+      this.version = version;
     }
-    return clientMapping.get(currentdb);
   }
 
   private Hive getClient() throws HiveException {
@@ -113,6 +328,8 @@ public class CubeMetastoreClient {
       getClient().createTable(tbl);
     } catch (Exception e) {
       throw new HiveException("Exception creating table", e);
+    } finally {
+      metadataChanged();
     }
   }
 
@@ -126,6 +343,8 @@ public class CubeMetastoreClient {
       return tbl;
     } catch (Exception e) {
       throw new HiveException("Exception creating table", e);
+    } finally {
+      metadataChanged();
     }
   }
 
@@ -445,8 +664,26 @@ public class CubeMetastoreClient {
     String storageTableName =
         MetastoreUtil.getStorageTableName(partSpec.getCubeTableName(), Storage.getPrefix(storageName));
 
-    getStorage(storageName).addPartition(getClient(), partSpec,
-        getLatestInfo(storageTableName, partSpec.getTimePartSpec(), partSpec.getUpdatePeriod()));
+    boolean added = false;
+    try {
+      getStorage(storageName).addPartition(getClient(), partSpec,
+          getLatestInfo(storageTableName, partSpec.getTimePartSpec(), partSpec.getUpdatePeriod()));
+      added = true;
+    } finally {
+      metastoreVersion.incrementAndGet();
+      partitionVersion.incrementAndGet();
+      PartitionTimeline timeline = partitionTimelines.get(storageTableName.toLowerCase());
+      if (timeline != null) {
+        if (added) {
+          for (Map.Entry<String, Date> entry : partSpec.getTimePartSpec().entrySet()) {
+            timeline.addPartition(entry.getKey(), partSpec.getUpdatePeriod(), entry.getValue());
+          }
+          timeline.clearLatestParts();
+        } else {
+          partitionTimelines.remove(storageTableName.toLowerCase());
+        }
+      }
+    }
   }
 
   private LatestInfo getLatestInfo(String storageTableName, Map<String, Date> partitionTimestamps,
@@ -628,7 +865,26 @@ public class CubeMetastoreClient {
         throw new HiveException("Not time part columns" + timePartSpec.keySet());
       }
     }
-    getStorage(storageName).dropPartition(getClient(), storageTableName, partVals, latest);
+    boolean dropped = false;
+    try {
+      getStorage(storageName).dropPartition(getClient(), storageTableName, partVals, latest);
+      dropped = true;
+    } finally {
+      metastoreVersion.incrementAndGet();
+      partitionVersion.incrementAndGet();
+      PartitionTimeline timeline = partitionTimelines.get(storageTableName.toLowerCase());
+      if (timeline != null) {
+        if (dropped && timeline.hasSinglePartCol()) {
+          for (Map.Entry<String, Date> entry : timePartSpec.entrySet()) {
+            timeline.dropPartition(entry.getKey(), updatePeriod, entry.getValue());
+          }
+          timeline.clearLatestParts();
+        } else {
+          // other partitions can exist for the dropped time partition, load the timeline again when needed
+          partitionTimelines.remove(storageTableName.toLowerCase());
+        }
+      }
+    }
   }
 
   private Map<String, String> getPartitionSpec(UpdatePeriod updatePeriod, Map<String, Date> partitionTimestamps) {
@@ -656,7 +912,69 @@ public class CubeMetastoreClient {
 
   public boolean partitionExists(String storageTableName, UpdatePeriod updatePeriod,
       Map<String, Date> partitionTimestamps) throws HiveException {
-    return partitionExists(storageTableName, getPartitionSpec(updatePeriod, partitionTimestamps));
+    return partitionExists(storageTableName, updatePeriod, partitionTimestamps, new HashMap<String, String>());
+  }
+
+  /**
+   * Checks whether any partition exists with the value of the time partition column for the date in the update
+   * period. When caching is enabled, this is answered from the partition timeline of the storage table.
+   * 
+   * @param storageTableName
+   *          The storage table name
+   * @param partCol
+   *          The time partition column
+   * @param updatePeriod
+   *          The update period
+   * @param partDate
+   *          The partition date
+   * @return true if partition exists
+   * @throws HiveException
+   */
+  public boolean timePartitionExists(String storageTableName, String partCol, UpdatePeriod updatePeriod,
+      Date partDate) throws HiveException {
+    if (enableCaching) {
+      return getPartitionTimeline(storageTableName).exists(partCol, updatePeriod, partDate);
+    }
+    return partitionExistsByFilter(storageTableName, partCol + "='" + updatePeriod.format().format(partDate) + "'");
+  }
+
+  /**
+   * Whether partition existence checks are answered from in-memory partition timelines.
+   * 
+   * @return true if partition timelines are used
+   */
+  public boolean isPartitionTimelineEnabled() {
+    return enableCaching;
+  }
+
+  /**
+   * Get the partition timeline of the storage table. The timeline is loaded from the partition names when it is first
+   * needed, and again once it is older than the timeline expiry, so that partitions added or dropped outside this
+   * client become visible. A timeline loaded while partitions were changed through this client is not cached, as it
+   * may have missed the change.
+   */
+  private PartitionTimeline getPartitionTimeline(String storageTableName) throws HiveException {
+    String tableName = storageTableName.toLowerCase();
+    PartitionTimeline timeline = partitionTimelines.get(tableName);
+    if (timeline != null && System.currentTimeMillis() - timeline.getLoadTime() <= timelineExpiryMillis) {
+      return timeline;
+    }
+    long version = partitionVersion.get();
+    Table storageTable = getTable(tableName);
+    PartitionTimeline loaded;
+    try {
+      loaded = new PartitionTimeline(storageTable, getClient().getPartitionNames(storageTable.getDbName(),
+          storageTable.getTableName(), (short) -1));
+    } catch (MetaException e) {
+      throw new HiveException("Could not load partition timeline of " + tableName, e);
+    }
+    boolean cached = timeline == null ? partitionTimelines.putIfAbsent(tableName, loaded) == null
+        : partitionTimelines.replace(tableName, timeline, loaded);
+    // an add or drop changes the version before it updates the cached timeline
+    if (cached && partitionVersion.get() != version) {
+      partitionTimelines.remove(tableName, loaded);
+    }
+    return loaded;
   }
 
   public boolean partitionExistsByFilter(String storageTableName, String filter) throws HiveException {
@@ -689,6 +1007,13 @@ public class CubeMetastoreClient {
   boolean partitionExists(String storageTableName, UpdatePeriod updatePeriod, Map<String, Date> partitionTimestamps,
       Map<String, String> partSpec) throws HiveException {
     partSpec.putAll(getPartitionSpec(updatePeriod, partitionTimestamps));
+    if (enableCaching && partSpec.size() == 1 && partitionTimestamps.size() == 1) {
+      PartitionTimeline timeline = getPartitionTimeline(storageTableName);
+      if (timeline.hasSinglePartCol()) {
+        Map.Entry<String, Date> timestamp = partitionTimestamps.entrySet().iterator().next();
+        return timeline.exists(timestamp.getKey(), updatePeriod, timestamp.getValue());
+      }
+    }
     return partitionExists(storageTableName, partSpec);
   }
 
@@ -711,16 +1036,47 @@ public class CubeMetastoreClient {
 
   boolean latestPartitionExists(String factName, String storageName, String latestPartCol) throws HiveException {
     String storageTableName = MetastoreUtil.getFactStorageTableName(factName, storageName);
-    return partitionExistsByFilter(storageTableName, StorageConstants.getLatestPartFilter(latestPartCol));
+    if (enableCaching) {
+      return getLatestPart(storageTableName, latestPartCol) != null;
+    }
+    return !getLatestPartNames(getTable(storageTableName), latestPartCol).isEmpty();
   }
 
-  Partition getLatestPart(String storageTableName, String latestPartCol) throws HiveException {
-    List<Partition> latestParts =
-        getPartitionsByFilter(storageTableName, StorageConstants.getLatestPartFilter(latestPartCol));
-    if (latestParts != null && !latestParts.isEmpty()) {
-      return latestParts.get(0);
+  private List<String> getLatestPartNames(Table storageTable, String latestPartCol) throws HiveException {
+    return getClient().getPartitionNames(storageTable.getDbName(), storageTable.getTableName(),
+        Collections.singletonMap(latestPartCol, StorageConstants.LATEST_PARTITION_VALUE), (short) 1);
+  }
+
+  /**
+   * Get the latest partition of the storage table for the time partition column.
+   * 
+   * @param storageTableName
+   *          The storage table name
+   * @param latestPartCol
+   *          The time partition column
+   * @return the latest partition, null if it does not exist
+   * @throws HiveException
+   */
+  public Partition getLatestPart(String storageTableName, String latestPartCol) throws HiveException {
+    PartitionTimeline timeline = enableCaching ? getPartitionTimeline(storageTableName) : null;
+    if (timeline != null && timeline.hasLatestPart(latestPartCol)) {
+      return timeline.getLatestPart(latestPartCol);
     }
-    return null;
+    // only the latest partition found by name is fetched
+    Table storageTable = getTable(storageTableName);
+    List<String> latestPartNames = getLatestPartNames(storageTable, latestPartCol);
+    Partition latestPart = null;
+    if (!latestPartNames.isEmpty()) {
+      try {
+        latestPart = getClient().getPartition(storageTable, Warehouse.makeSpecFromName(latestPartNames.get(0)), false);
+      } catch (MetaException e) {
+        throw new HiveException("Could not get latest partition of " + storageTableName, e);
+      }
+    }
+    if (timeline != null) {
+      timeline.setLatestPart(latestPartCol, latestPart);
+    }
+    return latestPart;
   }
 
   /**
@@ -755,6 +1111,8 @@ public class CubeMetastoreClient {
     try {
       tbl = getClient().getTable(tableName.toLowerCase());
       allHiveTables.put(tableName.toLowerCase(), tbl);
+      // a snapshot built between the alter and the refresh could hold the old definition
+      metadataVersion.incrementAndGet();
     } catch (HiveException e) {
       throw new HiveException("Could not get table: " + tableName, e);
     }
@@ -762,8 +1120,13 @@ public class CubeMetastoreClient {
   }
 
   public void dropHiveTable(String table) throws HiveException {
-    getClient().dropTable(table);
+    try {
+      getClient().dropTable(table);
+    } finally {
+      metadataChanged();
+    }
     allHiveTables.remove(table.toLowerCase());
+    partitionTimelines.remove(table.toLowerCase());
   }
 
   /**
@@ -1018,7 +1381,7 @@ public class CubeMetastoreClient {
     if (fact == null) {
       Table tbl = getTable(tableName);
       fact = getFactTable(tbl);
-      if (enableCaching) {
+      if (enableCaching && fact != null) {
         allFactTables.put(tableName.toLowerCase(), fact);
       }
     }
@@ -1046,19 +1409,11 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public List<CubeDimensionTable> getAllDimensionTables() throws HiveException {
-
-    List<CubeDimensionTable> dimTables = new ArrayList<CubeDimensionTable>();
     try {
-      for (String table : getAllHiveTableNames()) {
-        CubeDimensionTable dim = getDimensionTable(table);
-        if (dim != null) {
-          dimTables.add(dim);
-        }
-      }
+      return copyOf(getSnapshot().dimTables);
     } catch (HiveException e) {
       throw new HiveException("Could not get all dimension tables", e);
     }
-    return dimTables;
   }
 
   /**
@@ -1068,18 +1423,11 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public List<Storage> getAllStorages() throws HiveException {
-    List<Storage> storages = new ArrayList<Storage>();
     try {
-      for (String table : getAllHiveTableNames()) {
-        Storage storage = getStorage(table);
-        if (storage != null) {
-          storages.add(storage);
-        }
-      }
+      return copyOf(getSnapshot().storages);
     } catch (HiveException e) {
       throw new HiveException("Could not get all storages", e);
     }
-    return storages;
   }
 
   /**
@@ -1089,18 +1437,11 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public List<CubeInterface> getAllCubes() throws HiveException {
-    List<CubeInterface> cubes = new ArrayList<CubeInterface>();
     try {
-      for (String table : getAllHiveTableNames()) {
-        CubeInterface cube = getCube(table);
-        if (cube != null) {
-          cubes.add(cube);
-        }
-      }
+      return copyOf(getSnapshot().cubes);
     } catch (HiveException e) {
       throw new HiveException("Could not get all cubes", e);
     }
-    return cubes;
   }
 
   /**
@@ -1110,18 +1451,11 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public List<Dimension> getAllDimensions() throws HiveException {
-    List<Dimension> dims = new ArrayList<Dimension>();
     try {
-      for (String table : getAllHiveTableNames()) {
-        Dimension dim = getDimension(table);
-        if (dim != null) {
-          dims.add(dim);
-        }
-      }
+      return copyOf(getSnapshot().dims);
     } catch (HiveException e) {
       throw new HiveException("Could not get all dimensions", e);
     }
-    return dims;
   }
 
   /**
@@ -1132,22 +1466,15 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public List<CubeFactTable> getAllFacts() throws HiveException {
-    List<CubeFactTable> facts = new ArrayList<CubeFactTable>();
     try {
-      for (String table : getAllHiveTableNames()) {
-        CubeFactTable fact = getCubeFact(table);
-        if (fact != null) {
-          facts.add(fact);
-        }
-      }
+      return copyOf(getSnapshot().facts);
     } catch (HiveException e) {
       throw new HiveException("Could not get all fact tables", e);
     }
-    return facts;
   }
 
   private List<String> getAllHiveTableNames() throws HiveException {
-    return getClient().getAllTables();
+    return getClient().getAllTables(dbName);
   }
 
   /**
@@ -1161,17 +1488,11 @@ public class CubeMetastoreClient {
    */
   public List<CubeFactTable> getAllFactTables(CubeInterface cube) throws HiveException {
     if (cube instanceof Cube) {
-      List<CubeFactTable> cubeFacts = new ArrayList<CubeFactTable>();
       try {
-        for (CubeFactTable fact : getAllFacts()) {
-          if (fact.getCubeName().equalsIgnoreCase(((Cube) cube).getName())) {
-            cubeFacts.add(fact);
-          }
-        }
+        return copyOf(getSnapshot().factsByCube.get(((Cube) cube).getName().toLowerCase()));
       } catch (HiveException e) {
         throw new HiveException("Could not get all fact tables of " + cube, e);
       }
-      return cubeFacts;
     } else {
       return getAllFactTables(((DerivedCube) cube).getParent());
     }
@@ -1187,17 +1508,11 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public List<DerivedCube> getAllDerivedCubes(CubeInterface cube) throws HiveException {
-    List<DerivedCube> dcubes = new ArrayList<DerivedCube>();
     try {
-      for (CubeInterface cb : getAllCubes()) {
-        if (cb.isDerivedCube() && ((DerivedCube) cb).getParent().getName().equalsIgnoreCase(cube.getName())) {
-          dcubes.add((DerivedCube) cb);
-        }
-      }
+      return copyOf(getSnapshot().derivedCubesByCube.get(cube.getName().toLowerCase()));
     } catch (HiveException e) {
       throw new HiveException("Could not get all derived cubes of " + cube, e);
     }
-    return dcubes;
   }
 
   /**
@@ -1212,10 +1527,9 @@ public class CubeMetastoreClient {
   public List<DerivedCube> getAllDerivedQueryableCubes(CubeInterface cube) throws HiveException {
     List<DerivedCube> dcubes = new ArrayList<DerivedCube>();
     try {
-      for (CubeInterface cb : getAllCubes()) {
-        if (cb.isDerivedCube() && ((DerivedCube) cb).getParent().getName().equalsIgnoreCase(cube.getName())
-            && cb.allFieldsQueriable()) {
-          dcubes.add((DerivedCube) cb);
+      for (DerivedCube cb : getAllDerivedCubes(cube)) {
+        if (cb.allFieldsQueriable()) {
+          dcubes.add(cb);
         }
       }
     } catch (HiveException e) {
@@ -1234,17 +1548,11 @@ public class CubeMetastoreClient {
    * @throws HiveException
    */
   public List<CubeDimensionTable> getAllDimensionTables(Dimension dim) throws HiveException {
-    List<CubeDimensionTable> dimTables = new ArrayList<CubeDimensionTable>();
     try {
-      for (CubeDimensionTable dimTbl : getAllDimensionTables()) {
-        if (dimTbl.getDimName().equalsIgnoreCase(dim.getName().toLowerCase())) {
-          dimTables.add(dimTbl);
-        }
-      }
+      return copyOf(getSnapshot().dimTablesByDim.get(dim.getName().toLowerCase()));
     } catch (HiveException e) {
       throw new HiveException("Could not get all dimension tables of " + dim, e);
     }
-    return dimTables;
   }
 
   public List<String> getPartColNames(String tableName) throws HiveException {
@@ -1267,8 +1575,10 @@ public class CubeMetastoreClient {
   }
 
   public synchronized SchemaGraph getSchemaGraph() throws HiveException {
-    if (schemaGraph == null) {
+    long version = metadataVersion.get();
+    if (schemaGraph == null || schemaGraphVersion != version) {
       schemaGraph = new SchemaGraph(this);
+      schemaGraphVersion = version;
     }
     return schemaGraph;
   }
@@ -1292,6 +1602,8 @@ public class CubeMetastoreClient {
       getClient().alterTable(table, hiveTable);
     } catch (InvalidOperationException e) {
       throw new HiveException(e);
+    } finally {
+      metadataChanged();
     }
     return columnsChanged;
   }
@@ -1302,6 +1614,8 @@ public class CubeMetastoreClient {
       getClient().alterTable(table, hiveTable);
     } catch (InvalidOperationException e) {
       throw new HiveException(e);
+    } finally {
+      metadataChanged();
     }
     if (enableCaching) {
       // refresh the table in cache
@@ -1324,7 +1638,8 @@ public class CubeMetastoreClient {
     if (isCube(cubeTbl)) {
       alterCubeTable(cubeName, cubeTbl, (AbstractCubeTable) cube);
       if (enableCaching) {
-        allCubes.put(cubeName, getCube(refreshTable(cubeName)));
+        allCubes.put(cubeName.toLowerCase(), getCube(refreshTable(cubeName)));
+        metadataVersion.incrementAndGet();
       }
     } else {
       throw new HiveException(cubeName + " is not a cube");
@@ -1347,7 +1662,8 @@ public class CubeMetastoreClient {
     if (isDimension(tbl)) {
       alterCubeTable(dimName, tbl, (AbstractCubeTable) newDim);
       if (enableCaching) {
-        allDims.put(dimName, getDimension(refreshTable(dimName)));
+        allDims.put(dimName.toLowerCase(), getDimension(refreshTable(dimName)));
+        metadataVersion.incrementAndGet();
       }
     } else {
       throw new HiveException(dimName + " is not a dimension");
@@ -1369,7 +1685,8 @@ public class CubeMetastoreClient {
     if (isStorage(storageTbl)) {
       alterCubeTable(storageName, storageTbl, storage);
       if (enableCaching) {
-        allStorages.put(storageName, getStorage(refreshTable(storageName)));
+        allStorages.put(storageName.toLowerCase(), getStorage(refreshTable(storageName)));
+        metadataVersion.incrementAndGet();
       }
     } else {
       throw new HiveException(storageName + " is not a storage");
@@ -1437,8 +1754,9 @@ public class CubeMetastoreClient {
           dropStorageFromFact(factName, storage);
         }
       }
-      updateFactCache(factName);
       dropHiveTable(factName);
+      allFactTables.remove(factName.toLowerCase());
+      metadataVersion.incrementAndGet();
     } else {
       throw new HiveException(factName + " is not a CubeFactTable");
     }
@@ -1494,6 +1812,7 @@ public class CubeMetastoreClient {
       }
       dropHiveTable(dimTblName);
       allDimTables.remove(dimTblName.toLowerCase());
+      metadataVersion.incrementAndGet();
     } else {
       throw new HiveException(dimTblName + " is not a dimension table");
     }
@@ -1526,13 +1845,18 @@ public class CubeMetastoreClient {
 
   private void updateFactCache(String factTableName) throws HiveException {
     if (enableCaching) {
-      allFactTables.put(factTableName, getFactTable(refreshTable(factTableName)));
+      CubeFactTable fact = getFactTable(refreshTable(factTableName));
+      if (fact != null) {
+        allFactTables.put(factTableName.toLowerCase(), fact);
+      }
+      metadataVersion.incrementAndGet();
     }
   }
 
   private void updateDimCache(String dimTblName) throws HiveException {
     if (enableCaching) {
-      allDimTables.put(dimTblName, getDimensionTable(refreshTable(dimTblName)));
+      allDimTables.put(dimTblName.toLowerCase(), getDimensionTable(refreshTable(dimTblName)));
+      metadataVersion.incrementAndGet();
     }
   }
 
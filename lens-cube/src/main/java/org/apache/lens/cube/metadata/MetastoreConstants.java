@@ -83,6 +83,10 @@ public interface MetastoreConstants {
   public static final String HIERARCHY_SFX = ".hierarchy.";
   public static final String CLASS_SFX = ".class";
   public static final String METASTORE_ENABLE_CACHING = "cube.metastore.enable.cache";
+  public static final String METASTORE_REFRESH_INTERVAL_MILLIS = "cube.metastore.refresh.interval.millis";
+  public static final long DEFAULT_METASTORE_REFRESH_INTERVAL_MILLIS = 60000;
+  public static final String PARTITION_TIMELINE_EXPIRY_MILLIS = "cube.metastore.partition.timeline.expiry.millis";
+  public static final long DEFAULT_PARTITION_TIMELINE_EXPIRY_MILLIS = 60000;
 
   // join chain constants
   public static final String JOIN_CHAIN_KEY = "joinchain.";
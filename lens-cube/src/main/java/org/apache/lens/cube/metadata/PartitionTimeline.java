@@ -0,0 +1,244 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.metadata;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hive.metastore.Warehouse;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.metastore.api.MetaException;
+import org.apache.hadoop.hive.ql.metadata.Partition;
+import org.apache.hadoop.hive.ql.metadata.Table;
+
+/**
+ * Timeline of the partitions of a storage table. For each partition column, the dates of existing partitions are kept
+ * as sorted ranges per update period format, so that existence of a time partition is checked without a metastore
+ * call. The latest partitions of time partition columns are also kept, once they are fetched.
+ * 
+ * The timeline is built from the partition names of the table, and records the time it was loaded at, so that it can
+ * be loaded again to see partitions added or dropped outside of lens.
+ * 
+ * Update periods sharing a format (monthly and quarterly) share ranges, as their partition values cannot be told
+ * apart.
+ */
+class PartitionTimeline {
+  // update period which owns the ranges of each format
+  private static final Map<String, UpdatePeriod> FORMAT_PERIODS = new LinkedHashMap<String, UpdatePeriod>();
+
+  static {
+    for (UpdatePeriod period : UpdatePeriod.values()) {
+      if (!FORMAT_PERIODS.containsKey(period.formatStr())) {
+        FORMAT_PERIODS.put(period.formatStr(), period);
+      }
+    }
+  }
+
+  private final String storageTableName;
+  private final int numPartCols;
+  // part column to update period to range start to range end, exclusive
+  private final Map<String, Map<UpdatePeriod, TreeMap<Date, Date>>> ranges =
+      new HashMap<String, Map<UpdatePeriod, TreeMap<Date, Date>>>();
+  // part column to latest partition, null value if there is no latest partition, absent if it is not fetched yet
+  private final Map<String, Partition> latestParts = new HashMap<String, Partition>();
+  private final long loadTime = System.currentTimeMillis();
+
+  PartitionTimeline(Table storageTable, List<String> partitionNames) throws MetaException {
+    this.storageTableName = storageTable.getTableName();
+    List<FieldSchema> partCols = storageTable.getPartCols();
+    this.numPartCols = partCols.size();
+    for (FieldSchema partCol : partCols) {
+      latestParts.put(partCol.getName(), null);
+    }
+    for (String partitionName : partitionNames) {
+      Map<String, String> spec = Warehouse.makeSpecFromName(partitionName);
+      for (FieldSchema partCol : partCols) {
+        String value = spec.get(partCol.getName());
+        if (value == null) {
+          continue;
+        }
+        if (StorageConstants.LATEST_PARTITION_VALUE.equals(value)) {
+          // latest partition exists, it is fetched when asked for
+          latestParts.remove(partCol.getName());
+          continue;
+        }
+        for (UpdatePeriod period : FORMAT_PERIODS.values()) {
+          Date date = parse(period, value);
+          if (date != null) {
+            add(partCol.getName(), period, date);
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  String getStorageTableName() {
+    return storageTableName;
+  }
+
+  long getLoadTime() {
+    return loadTime;
+  }
+
+  /**
+   * Whether the table has a single partition column, in which case a time partition identifies a partition.
+   */
+  boolean hasSinglePartCol() {
+    return numPartCols == 1;
+  }
+
+  private static Date parse(UpdatePeriod period, String value) {
+    try {
+      Date date = period.format().parse(value);
+      // the parser ignores trailing text, so the value has to round trip
+      return period.format().format(date).equals(value) ? date : null;
+    } catch (ParseException e) {
+      return null;
+    }
+  }
+
+  private static UpdatePeriod getFormatPeriod(UpdatePeriod updatePeriod) {
+    return FORMAT_PERIODS.get(updatePeriod.formatStr());
+  }
+
+  private static Date floor(UpdatePeriod period, Date date) {
+    return parse(period, period.format().format(date));
+  }
+
+  private static Date next(UpdatePeriod period, Date date) {
+    Calendar cal = Calendar.getInstance();
+    cal.setTime(date);
+    cal.add(period.calendarField(), 1);
+    return cal.getTime();
+  }
+
+  private TreeMap<Date, Date> getRanges(String partCol, UpdatePeriod period, boolean create) {
+    Map<UpdatePeriod, TreeMap<Date, Date>> colRanges = ranges.get(partCol);
+    if (colRanges == null) {
+      if (!create) {
+        return null;
+      }
+      colRanges = new HashMap<UpdatePeriod, TreeMap<Date, Date>>();
+      ranges.put(partCol, colRanges);
+    }
+    TreeMap<Date, Date> periodRanges = colRanges.get(period);
+    if (periodRanges == null && create) {
+      periodRanges = new TreeMap<Date, Date>();
+      colRanges.put(period, periodRanges);
+    }
+    return periodRanges;
+  }
+
+  private void add(String partCol, UpdatePeriod period, Date date) {
+    TreeMap<Date, Date> periodRanges = getRanges(partCol, period, true);
+    Date start = date;
+    Date end = next(period, date);
+    Map.Entry<Date, Date> lower = periodRanges.floorEntry(start);
+    if (lower != null && !lower.getValue().before(start)) {
+      if (!lower.getValue().before(end)) {
+        return;
+      }
+      start = lower.getKey();
+      periodRanges.remove(start);
+    }
+    Map.Entry<Date, Date> higher = periodRanges.ceilingEntry(start);
+    if (higher != null && !higher.getKey().after(end)) {
+      periodRanges.remove(higher.getKey());
+      if (higher.getValue().after(end)) {
+        end = higher.getValue();
+      }
+    }
+    periodRanges.put(start, end);
+  }
+
+  /**
+   * Records a partition added for the date of the update period.
+   */
+  synchronized void addPartition(String partCol, UpdatePeriod updatePeriod, Date date) {
+    UpdatePeriod period = getFormatPeriod(updatePeriod);
+    add(partCol, period, floor(period, date));
+  }
+
+  /**
+   * Records a partition dropped for the date of the update period. Only valid for tables with a single partition
+   * column, as other partitions may exist for the date otherwise.
+   */
+  synchronized void dropPartition(String partCol, UpdatePeriod updatePeriod, Date date) {
+    UpdatePeriod period = getFormatPeriod(updatePeriod);
+    TreeMap<Date, Date> periodRanges = getRanges(partCol, period, false);
+    if (periodRanges == null) {
+      return;
+    }
+    Date start = floor(period, date);
+    Map.Entry<Date, Date> range = periodRanges.floorEntry(start);
+    if (range == null || !range.getValue().after(start)) {
+      return;
+    }
+    periodRanges.remove(range.getKey());
+    if (range.getKey().before(start)) {
+      periodRanges.put(range.getKey(), start);
+    }
+    Date end = next(period, start);
+    if (end.before(range.getValue())) {
+      periodRanges.put(end, range.getValue());
+    }
+  }
+
+  /**
+   * Checks whether a partition exists for the date of the update period.
+   */
+  synchronized boolean exists(String partCol, UpdatePeriod updatePeriod, Date date) {
+    UpdatePeriod period = getFormatPeriod(updatePeriod);
+    TreeMap<Date, Date> periodRanges = getRanges(partCol, period, false);
+    if (periodRanges == null) {
+      return false;
+    }
+    Map.Entry<Date, Date> range = periodRanges.floorEntry(floor(period, date));
+    return range != null && range.getValue().after(date);
+  }
+
+  /**
+   * Whether the latest partition of the column is known.
+   */
+  synchronized boolean hasLatestPart(String partCol) {
+    return latestParts.containsKey(partCol);
+  }
+
+  synchronized Partition getLatestPart(String partCol) {
+    return latestParts.get(partCol);
+  }
+
+  synchronized void setLatestPart(String partCol, Partition latestPart) {
+    latestParts.put(partCol, latestPart);
+  }
+
+  /**
+   * Forgets the latest partitions, after they are changed by adding or dropping partitions.
+   */
+  synchronized void clearLatestParts() {
+    latestParts.clear();
+  }
+}
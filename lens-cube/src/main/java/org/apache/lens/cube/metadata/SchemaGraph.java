@@ -21,6 +21,7 @@ package org.apache.lens.cube.metadata;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SchemaGraph {
   /*
@@ -94,6 +95,10 @@ public class SchemaGraph {
       edges = new ArrayList<TableRelationship>(other.edges);
     }
 
+    JoinPath(List<TableRelationship> edges) {
+      this.edges = new ArrayList<TableRelationship>(edges);
+    }
+
     public void initColumnsForTable() {
       if (!columnsForTable.isEmpty()) {
         // already inited
@@ -184,45 +189,38 @@ public class SchemaGraph {
     }
 
     public List<JoinPath> findAllPathsToTarget() {
-      return findAllPathsToTarget(source, new JoinPath(), new HashSet<AbstractCubeTable>());
+      List<JoinPath> joinPaths = new ArrayList<JoinPath>();
+      findAllPathsToTarget(source, new ArrayList<TableRelationship>(), new HashSet<AbstractCubeTable>(), joinPaths);
+      return joinPaths;
     }
 
     /**
-     * Recursive DFS to get all paths between source and target. Let path till
-     * this node = p Paths at node adjacent to target = [edges leading to
-     * target] Path at a random node = [path till this node + p for each p in
-     * path(neighbors)]
+     * Recursive DFS to get all paths between source and target. Edges of the
+     * path till this node are kept in a single stack, which is copied only
+     * when the target is reached.
      */
-    List<JoinPath> findAllPathsToTarget(AbstractCubeTable source, JoinPath joinPathTillSource,
-      Set<AbstractCubeTable> visited) {
-      List<JoinPath> joinPaths = new ArrayList<JoinPath>();
+    void findAllPathsToTarget(AbstractCubeTable source, List<TableRelationship> pathTillSource,
+      Set<AbstractCubeTable> visited, List<JoinPath> joinPaths) {
       visited.add(source);
 
       if (inGraph.get(source) == null) {
-        return joinPaths;
+        return;
       }
       for (TableRelationship edge : inGraph.get(source)) {
         if (visited.contains(edge.getFromTable())) {
           continue;
         }
 
-
-        JoinPath p = new JoinPath(joinPathTillSource);
-        p.addEdge(edge);
+        pathTillSource.add(edge);
         AbstractCubeTable neighbor = edge.getFromTable();
         if (neighbor.getName().equals(target.getName())) {
           // Got a direct path
-          joinPaths.add(p);
+          joinPaths.add(new JoinPath(pathTillSource));
         } else if (neighbor instanceof Dimension) {
-          List<JoinPath> pathsFromNeighbor = findAllPathsToTarget(neighbor, new JoinPath(p), visited);
-          for (JoinPath pn : pathsFromNeighbor) {
-            if (!pn.isEmpty())
-              joinPaths.add(pn);
-          }
+          findAllPathsToTarget(neighbor, pathTillSource, visited, joinPaths);
         }
+        pathTillSource.remove(pathTillSource.size() - 1);
       }
-
-      return joinPaths;
     }
   }
 
@@ -243,11 +241,38 @@ public class SchemaGraph {
   // graph with incoming edges
   private Map<AbstractCubeTable, Set<TableRelationship>> dimOnlyInGraph;
 
+  // join paths found between source and target tables, the graph is rebuilt when the schema changes
+  private final Map<String, List<JoinPath>> joinPathCache = new ConcurrentHashMap<String, List<JoinPath>>();
+
   public SchemaGraph(CubeMetastoreClient metastore) throws HiveException {
     this.metastore = metastore;
     buildSchemaGraph();
   }
 
+  /**
+   * Get all join paths between source and target. Paths are searched once and cached with the graph, a copy of the
+   * cached paths is returned so that callers can prune the list and its paths.
+   *
+   * @param source
+   *          the joined dimension
+   * @param target
+   *          the cube or dimension being joined to
+   * @return list of join paths, empty if source is not reachable
+   */
+  public List<JoinPath> getAllPathsToTarget(AbstractCubeTable source, AbstractCubeTable target) {
+    String key = source.getName().toLowerCase() + "->" + target.getName().toLowerCase();
+    List<JoinPath> joinPaths = joinPathCache.get(key);
+    if (joinPaths == null) {
+      joinPaths = new GraphSearch(source, target, this).findAllPathsToTarget();
+      joinPathCache.put(key, joinPaths);
+    }
+    List<JoinPath> copy = new ArrayList<JoinPath>(joinPaths.size());
+    for (JoinPath joinPath : joinPaths) {
+      copy.add(new JoinPath(joinPath));
+    }
+    return copy;
+  }
+
   public Map<AbstractCubeTable, Set<TableRelationship>> getCubeGraph(CubeInterface cube) {
     return cubeOutGraph.get(cube);
   }
@@ -92,6 +92,8 @@ public class CubeQueryConfUtil {
   public static final String DISABLE_AUTO_JOINS = "lens.cube.query.disable.auto.join";
   public static final boolean DEFAULT_DISABLE_AUTO_JOINS = true;
   public static final String JOIN_TYPE_KEY = "lens.cube.query.join.type";
+  public static final String JOIN_SEARCH_MAX_EXPANSIONS = "lens.cube.query.join.search.max.expansions";
+  public static final long DEFAULT_JOIN_SEARCH_MAX_EXPANSIONS = 100000;
   public static final String DISABLE_AGGREGATE_RESOLVER = "lens.cube.query.disable.aggregate.resolver";
   public static final boolean DEFAULT_DISABLE_AGGREGATE_RESOLVER = true;
   public static final String LIGHTEST_FACT_FIRST = "lens.cube.query.pick.lightest.fact.first";
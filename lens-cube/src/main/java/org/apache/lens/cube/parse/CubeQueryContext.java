@@ -54,6 +54,7 @@ import org.apache.hadoop.hive.ql.parse.QBParseInfo;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
 import org.apache.lens.cube.metadata.*;
 import org.apache.lens.cube.parse.CandidateTablePruneCause.CubeTableCause;
+import org.apache.lens.server.api.query.QueryPhaseStats;
 import org.codehaus.jackson.map.ObjectMapper;
 
 public class CubeQueryContext {
@@ -97,6 +98,10 @@ public class CubeQueryContext {
   // storage specific
   protected final Set<CandidateFact> candidateFacts = new HashSet<CandidateFact>();
   protected final Map<Dimension, Set<CandidateDim>> candidateDims = new HashMap<Dimension, Set<CandidateDim>>();
+  // Number of metastore calls made to resolve partitions of this query
+  @Getter private int numPartitionMetastoreCalls = 0;
+  // Time taken and metastore calls made by each rewriter pass
+  @Getter private final QueryPhaseStats phaseStats = new QueryPhaseStats();
 
   // query trees
   private ASTNode havingAST;
@@ -625,6 +630,10 @@ public class CubeQueryContext {
     }
   }
 
+  void addPartitionMetastoreCalls(int calls) {
+    numPartitionMetastoreCalls += calls;
+  }
+
   void setNonexistingParts(Map<String, List<String>> nonExistingParts) throws SemanticException {
     if (!nonExistingParts.isEmpty()) {
       ByteArrayOutputStream out = null;
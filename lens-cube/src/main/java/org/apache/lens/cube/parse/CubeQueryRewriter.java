@@ -20,7 +20,9 @@ package org.apache.lens.cube.parse;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.conf.HiveConf;
@@ -182,12 +184,30 @@ public class CubeQueryRewriter {
   }
 
   private void rewrite(List<ContextRewriter> rewriters, CubeQueryContext ctx) throws SemanticException {
+    // Some rewriters run more than once, their later passes are recorded as <name>#<run>
+    Map<Class<?>, Integer> runs = new HashMap<Class<?>, Integer>();
     for (ContextRewriter rewriter : rewriters) {
+      Integer run = runs.get(rewriter.getClass());
+      run = run == null ? 1 : run + 1;
+      runs.put(rewriter.getClass(), run);
+      int callsBefore = ctx.getNumPartitionMetastoreCalls();
+      long start = System.nanoTime();
       rewriter.rewriteContext(ctx);
+      ctx.getPhaseStats().record(rewriter.getClass().getSimpleName() + (run > 1 ? "#" + run : ""),
+        (System.nanoTime() - start) / 1000, ctx.getNumPartitionMetastoreCalls() - callsBefore);
     }
   }
 
   public Context getQLContext() {
     return ctx;
   }
+
+  /**
+   * Gets the rewriters in the order they are run, for benchmarking the stages of the rewrite separately.
+   *
+   * @return the rewriters
+   */
+  List<ContextRewriter> getRewriters() {
+    return rewriters;
+  }
 }
@@ -561,71 +561,33 @@ class JoinResolver implements ContextRewriter {
     /**
      * There can be multiple join paths between a dimension and the target. Set
      * of all possible join clauses is the cartesian product of join paths of
-     * all dimensions
+     * all dimensions. Instead of enumerating the product, the least cost clause
+     * is searched with branch and bound, see {@link MinCostClauseSearch}.
      */
-    private Iterator<JoinClause> getJoinClausesForAllPaths(final CandidateFact fact,
-        final Set<Dimension> qdims, final CubeQueryContext cubeql) {
+    private JoinClause getMinCostClause(final CandidateFact fact, final Set<Dimension> qdims,
+        final CubeQueryContext cubeql) {
       Map<Dimension, List<SchemaGraph.JoinPath>> allPaths = this.allPaths;
       // if fact is passed only look at paths possible from fact to dims
       if (fact != null) {
         allPaths = pruneFactPaths(cubeql.getCube(), fact);
       }
-      // Number of paths in each path set
-      final int groupSizes[] = new int[allPaths.values().size()];
-      // Total number of elements in the cartesian product
-      int numSamples = 1;
-      // All path sets
-      final List<List<SchemaGraph.JoinPath>> pathSets = new ArrayList<List<SchemaGraph.JoinPath>>();
-      // Dimension corresponding to the path sets
-      final Dimension dimensions[] = new Dimension[groupSizes.length];
-
+      long maxExpansions = cubeql.getHiveConf().getLong(CubeQueryConfUtil.JOIN_SEARCH_MAX_EXPANSIONS,
+          CubeQueryConfUtil.DEFAULT_JOIN_SEARCH_MAX_EXPANSIONS);
+      MinCostClauseSearch search = new MinCostClauseSearch(allPaths, qdims, maxExpansions);
+      int[] selection = search.search();
+      if (selection == null) {
+        return null;
+      }
+      if (search.isTruncated()) {
+        LOG.warn("Join clause search truncated after " + maxExpansions + " expansions for dimensions " + qdims);
+      }
+      Map<Dimension, List<TableRelationship>> chain = new LinkedHashMap<Dimension, List<TableRelationship>>();
       int i = 0;
       for (Map.Entry<Dimension, List<SchemaGraph.JoinPath>> entry : allPaths.entrySet()) {
-        dimensions[i] = entry.getKey();
-        List<SchemaGraph.JoinPath> group = entry.getValue();
-        pathSets.add(group);
-        groupSizes[i] = group.size();
-        numSamples *= groupSizes[i];
-        i++;
+        chain.put(entry.getKey(), entry.getValue().get(selection[i++]).getEdges());
       }
-
-      final int selection[] = new int[groupSizes.length];
-      final int MAX_SAMPLE_COUNT = numSamples;
-
-      // Return a lazy iterator over all possible join chains
-      return new Iterator<JoinClause>() {
-        int sample = 0;
-
-        @Override
-        public boolean hasNext() {
-          return sample < MAX_SAMPLE_COUNT;
-        }
-
-        @Override
-        public JoinClause next() {
-          Map<Dimension, List<TableRelationship>> chain = new LinkedHashMap<Dimension, List<TableRelationship>>();
-          //generate next permutation.
-          for(int i = groupSizes.length - 1, base=sample; i >= 0; base /= groupSizes[i], i--) {
-            selection[i] = base % groupSizes[i];
-          }
-          for (int i = 0; i < selection.length; i++) {
-            int selectedPath = selection[i];
-            List<TableRelationship> path = pathSets.get(i).get(selectedPath).getEdges();
-            chain.put(dimensions[i], path);
-          }
-
-          Set<Dimension> dimsOnPath = getDimsOnPath(chain, qdims);
-
-          sample++;
-          // Cost of join = number of tables joined in the clause
-          return new JoinClause(chain, dimsOnPath);
-        }
-
-        @Override
-        public void remove() {
-          throw new UnsupportedOperationException("Cannot remove elements!");
-        }
-      };
+      // Cost of join = number of tables joined in the clause
+      return new JoinClause(chain, getDimsOnPath(chain, qdims));
     }
 
     public Set<Dimension> pickOptionalTables(final CandidateFact fact,
@@ -636,14 +598,7 @@ class JoinResolver implements ContextRewriter {
         return joiningOptionalTables;
       }
       // find least cost path
-      Iterator<JoinClause> itr = getJoinClausesForAllPaths(fact, qdims, cubeql);
-      JoinClause minCostClause = null;
-      while (itr.hasNext()) {
-        JoinClause clause = itr.next();
-        if (minCostClause == null || minCostClause.getCost() > clause.getCost()) {
-          minCostClause = clause;
-        }
-      }
+      JoinClause minCostClause = getMinCostClause(fact, qdims, cubeql);
 
       if (minCostClause == null) {
         throw new SemanticException(ErrorMsg.NO_JOIN_PATH, qdims.toString(), autoJoinTarget.getName());
@@ -695,6 +650,94 @@ class JoinResolver implements ContextRewriter {
 
   }
 
+  /**
+   * Branch and bound search for the least cost join clause among the cartesian product of join paths of all
+   * dimensions. Cost of a clause is the number of dimensions on paths of the queried dimensions, so paths of the other
+   * dimensions do not change the cost and the first path is picked for them. Queried dimensions are searched in order
+   * of the paths map, and a partial selection is dropped as soon as it joins as many dimensions as the best clause
+   * found so far. This picks the same clause as the first least cost clause of the cartesian product.
+   */
+  static class MinCostClauseSearch {
+    private final List<List<SchemaGraph.JoinPath>> pathSets = new ArrayList<List<SchemaGraph.JoinPath>>();
+    // positions of queried dimensions in path sets
+    private final List<Integer> searchedSets = new ArrayList<Integer>();
+    private final long maxExpansions;
+    private final int[] selection;
+    private int[] bestSelection;
+    private int bestCost = Integer.MAX_VALUE;
+    private long expansions;
+    // dimensions joined by the current selection, with the number of selected paths joining them
+    private final Map<AbstractCubeTable, Integer> dimsOnPath = new HashMap<AbstractCubeTable, Integer>();
+
+    MinCostClauseSearch(Map<Dimension, List<SchemaGraph.JoinPath>> allPaths, Set<Dimension> qdims,
+        long maxExpansions) {
+      this.maxExpansions = maxExpansions;
+      for (Map.Entry<Dimension, List<SchemaGraph.JoinPath>> entry : allPaths.entrySet()) {
+        if (qdims.contains(entry.getKey())) {
+          searchedSets.add(pathSets.size());
+        }
+        pathSets.add(entry.getValue());
+      }
+      this.selection = new int[pathSets.size()];
+    }
+
+    /**
+     * @return index of the selected path for each dimension, null if some dimension does not have any path
+     */
+    int[] search() {
+      for (List<SchemaGraph.JoinPath> paths : pathSets) {
+        if (paths.isEmpty()) {
+          return null;
+        }
+      }
+      search(0);
+      return bestSelection;
+    }
+
+    boolean isTruncated() {
+      return expansions > maxExpansions;
+    }
+
+    int getBestCost() {
+      return bestCost;
+    }
+
+    private void search(int depth) {
+      if (depth == searchedSets.size()) {
+        if (dimsOnPath.size() < bestCost) {
+          bestCost = dimsOnPath.size();
+          bestSelection = selection.clone();
+        }
+        return;
+      }
+      int set = searchedSets.get(depth);
+      List<SchemaGraph.JoinPath> paths = pathSets.get(set);
+      for (int p = 0; p < paths.size(); p++) {
+        if (bestSelection != null && ++expansions > maxExpansions) {
+          return;
+        }
+        List<TableRelationship> edges = paths.get(p).getEdges();
+        for (TableRelationship edge : edges) {
+          Integer count = dimsOnPath.get(edge.getToTable());
+          dimsOnPath.put(edge.getToTable(), count == null ? 1 : count + 1);
+        }
+        if (dimsOnPath.size() < bestCost) {
+          selection[set] = p;
+          search(depth + 1);
+        }
+        for (TableRelationship edge : edges) {
+          int count = dimsOnPath.get(edge.getToTable());
+          if (count == 1) {
+            dimsOnPath.remove(edge.getToTable());
+          } else {
+            dimsOnPath.put(edge.getToTable(), count - 1);
+          }
+        }
+      }
+      selection[set] = 0;
+    }
+  }
+
   static String getJoinTypeStr(JoinType joinType) {
     if (joinType == null) {
       return "";
@@ -820,10 +863,9 @@ class JoinResolver implements ContextRewriter {
         continue;
       }
       // Find all possible join paths
-      SchemaGraph.GraphSearch search = new SchemaGraph.GraphSearch(joinee, target, graph);
-      List<SchemaGraph.JoinPath> joinPaths = search.findAllPathsToTarget();
-      if (joinPaths != null && !joinPaths.isEmpty()) {
-        multipleJoinPaths.put(joinee, new ArrayList<SchemaGraph.JoinPath>(search.findAllPathsToTarget()));
+      List<SchemaGraph.JoinPath> joinPaths = graph.getAllPathsToTarget(joinee, target);
+      if (!joinPaths.isEmpty()) {
+        multipleJoinPaths.put(joinee, joinPaths);
         addOptionalTables(cubeql, multipleJoinPaths.get(joinee), cubeql.getDimensions().contains(joinee));
       } else {
         // No link to cube from this dim, can't proceed with query
@@ -76,6 +76,42 @@ class StorageTableResolver implements ContextRewriter {
   private TimeRangeWriter rangeWriter;
   private DateFormat partWhereClauseFormat = null;
   private PHASE phase;
+  // Partitions prefetched per storage table and part column, for answering existence checks without metastore calls
+  private final Map<String, List<PartitionIndex>> partitionIndexes = new HashMap<String, List<PartitionIndex>>();
+  private int metastoreCalls = 0;
+
+  /**
+   * Partitions of a storage table fetched for a range of values of a part column, sorted by the value. A value within
+   * the range without an entry does not exist in the metastore.
+   */
+  private static class PartitionIndex {
+    private final String lowerValue;
+    private final String upperValue;
+    private final TreeMap<String, List<Partition>> partitions = new TreeMap<String, List<Partition>>();
+
+    PartitionIndex(String partCol, String lowerValue, String upperValue, List<Partition> parts) {
+      this.lowerValue = lowerValue;
+      this.upperValue = upperValue;
+      for (Partition p : parts) {
+        String value = p.getSpec().get(partCol.toLowerCase());
+        List<Partition> valueParts = partitions.get(value);
+        if (valueParts == null) {
+          valueParts = new ArrayList<Partition>();
+          partitions.put(value, valueParts);
+        }
+        valueParts.add(p);
+      }
+    }
+
+    boolean covers(String value) {
+      return value.compareTo(lowerValue) >= 0 && value.compareTo(upperValue) <= 0;
+    }
+
+    List<Partition> get(String value) {
+      List<Partition> valueParts = partitions.get(value);
+      return valueParts == null ? new ArrayList<Partition>() : valueParts;
+    }
+  }
 
   static enum PHASE {
     FACT_TABLES, FACT_PARTITIONS, DIM_TABLE_AND_PARTITIONS;
@@ -139,6 +175,7 @@ class StorageTableResolver implements ContextRewriter {
   @Override
   public void rewriteContext(CubeQueryContext cubeql) throws SemanticException {
     client = cubeql.getMetastoreClient();
+    int callsBefore = metastoreCalls;
 
     switch(phase) {
       case FACT_TABLES:
@@ -167,6 +204,10 @@ class StorageTableResolver implements ContextRewriter {
     }
     //Doing this on all three phases. Keep updating cubeql with the current identified missing partitions.
     cubeql.setNonexistingParts(nonExistingPartitions);
+    cubeql.addPartitionMetastoreCalls(metastoreCalls - callsBefore);
+    if (phase == PHASE.last()) {
+      LOG.info("Partition resolution made " + cubeql.getNumPartitionMetastoreCalls() + " metastore calls");
+    }
     phase = phase.next();
   }
 
@@ -213,9 +254,10 @@ class StorageTableResolver implements ContextRewriter {
               // check if partition exists
               int numParts;
               try {
-                numParts =
-                    client.getNumPartitionsByFilter(tableName,
-                        getDimFilter(dim.getTimedDimension(), StorageConstants.LATEST_PARTITION_VALUE));
+                if (!client.isPartitionTimelineEnabled()) {
+                  metastoreCalls++;
+                }
+                numParts = client.getLatestPart(tableName, dim.getTimedDimension()) != null ? 1 : 0;
               } catch (Exception e) {
                 e.printStackTrace();
                 throw new SemanticException("Could not check if partition exists on " + dim, e);
@@ -264,13 +306,6 @@ class StorageTableResolver implements ContextRewriter {
     }
   }
 
-  private String getDimFilter(String partCol, String partSpec) {
-    StringBuilder builder = new StringBuilder();
-    builder.append(partCol);
-    builder.append("='").append(partSpec).append("'");
-    return builder.toString();
-  }
-
   // Resolves all the storage table names, which are valid for each updatePeriod
   private void resolveFactStorageTableNames(CubeQueryContext cubeql) throws SemanticException {
     for (Iterator<CandidateFact> i = cubeql.getCandidateFactTables().iterator(); i.hasNext();) {
@@ -443,6 +478,10 @@ class StorageTableResolver implements ContextRewriter {
   private Set<FactPartition> getPartitions(CubeFactTable fact, TimeRange range, TreeSet<UpdatePeriod> updatePeriods,
       boolean addNonExistingParts, Map<String, SkipStorageCause> skipStorageCauses, List<String> nonExistingParts)
       throws Exception {
+    if (!client.isPartitionTimelineEnabled() || processTimePartCol != null) {
+      // partitions are needed for look ahead, or existence can not be checked on the partition timelines
+      prefetchPartitions(fact, range.getFromDate(), range.getToDate(), range.getPartitionColumn(), updatePeriods);
+    }
     Set<FactPartition> partitions = new TreeSet<FactPartition>();
     if (getPartitions(fact, range.getFromDate(), range.getToDate(), range.getPartitionColumn(), null, partitions,
         updatePeriods, addNonExistingParts, skipStorageCauses, nonExistingParts)) {
@@ -452,6 +491,76 @@ class StorageTableResolver implements ContextRewriter {
     }
   }
 
+  /**
+   * Fetches partitions of all storage tables of the fact in the range with one metastore call per storage table, so
+   * that partition existence checks for the range are answered from the partition index.
+   */
+  private void prefetchPartitions(CubeFactTable fact, Date fromDate, Date toDate, String partCol,
+      Set<UpdatePeriod> updatePeriods) throws HiveException {
+    if (!fromDate.before(toDate) || updatePeriods.isEmpty()) {
+      return;
+    }
+    // formats of all update periods are zero padded, so partition values of the range lie between these values
+    String lowerValue = null;
+    String upperValue = null;
+    for (UpdatePeriod period : updatePeriods) {
+      String from = period.format().format(fromDate);
+      String to = period.format().format(toDate);
+      lowerValue = (lowerValue == null || from.compareTo(lowerValue) < 0) ? from : lowerValue;
+      upperValue = (upperValue == null || to.compareTo(upperValue) > 0) ? to : upperValue;
+    }
+    Set<String> storageTbls = new LinkedHashSet<String>();
+    for (Set<String> tables : validStorageMap.get(fact).values()) {
+      storageTbls.addAll(tables);
+    }
+    for (String storageTableName : storageTbls) {
+      String key = storageTableName + "." + partCol;
+      List<PartitionIndex> indexes = partitionIndexes.get(key);
+      if (indexes == null) {
+        indexes = new ArrayList<PartitionIndex>();
+        partitionIndexes.put(key, indexes);
+      }
+      boolean covered = false;
+      for (PartitionIndex index : indexes) {
+        if (index.covers(lowerValue) && index.covers(upperValue)) {
+          covered = true;
+          break;
+        }
+      }
+      if (covered || !client.partColExists(storageTableName, partCol)) {
+        continue;
+      }
+      String filter = partCol + " >= '" + lowerValue + "' AND " + partCol + " <= '" + upperValue + "'";
+      try {
+        metastoreCalls++;
+        indexes.add(new PartitionIndex(partCol, lowerValue, upperValue,
+            client.getPartitionsByFilter(storageTableName, filter)));
+      } catch (HiveException e) {
+        // partitions will be looked up one by one
+        LOG.warn("Could not prefetch partitions of " + storageTableName + " for filter " + filter, e);
+      }
+    }
+  }
+
+  /**
+   * Gets the partitions matching the fact partition from the partition index, null if the index does not cover it.
+   */
+  private List<Partition> getIndexedPartitions(String storageTableName, FactPartition part) {
+    if (part.hasContainingPart()) {
+      return null;
+    }
+    List<PartitionIndex> indexes = partitionIndexes.get(storageTableName + "." + part.getPartCol());
+    if (indexes != null) {
+      String value = part.getPartString();
+      for (PartitionIndex index : indexes) {
+        if (index.covers(value)) {
+          return index.get(value);
+        }
+      }
+    }
+    return null;
+  }
+
   private boolean getPartitions(CubeFactTable fact, Date fromDate, Date toDate, String partCol,
       FactPartition containingPart, Set<FactPartition> partitions, TreeSet<UpdatePeriod> updatePeriods,
       boolean addNonExistingParts, Map<String, SkipStorageCause> skipStorageCauses, List<String> nonExistingParts)
@@ -511,12 +620,24 @@ class StorageTableResolver implements ContextRewriter {
       Map<String, List<Partition>> metaParts = new HashMap<String, List<Partition>>();
       for (String storageTableName : storageTbls) {
         int numParts;
-        if (leastInterval) {
-          numParts = client.getNumPartitionsByFilter(storageTableName, part.getFilter());
+        if (!part.hasContainingPart() && client.isPartitionTimelineEnabled()
+            && (leastInterval || processTimePartCol == null)) {
+          numParts = client.timePartitionExists(storageTableName, partCol, interval, dt) ? 1 : 0;
         } else {
-          List<Partition> sParts = client.getPartitionsByFilter(storageTableName, part.getFilter());
-          metaParts.put(storageTableName, sParts);
-          numParts = sParts.size();
+          List<Partition> sParts = getIndexedPartitions(storageTableName, part);
+          if (sParts == null && leastInterval) {
+            metastoreCalls++;
+            numParts = client.getNumPartitionsByFilter(storageTableName, part.getFilter());
+          } else {
+            if (sParts == null) {
+              metastoreCalls++;
+              sParts = client.getPartitionsByFilter(storageTableName, part.getFilter());
+            }
+            if (!leastInterval) {
+              metaParts.put(storageTableName, sParts);
+            }
+            numParts = sParts.size();
+          }
         }
         if (numParts > 0) {
           if (!foundPart) {
@@ -32,11 +32,13 @@ import org.apache.hadoop.hive.ql.parse.HiveParser;
 import org.apache.hadoop.hive.ql.parse.ParseException;
 import org.apache.hadoop.hive.ql.parse.SemanticException;
 import org.apache.lens.api.LensException;
+import org.apache.lens.cube.parse.CubeQueryContext;
 import org.apache.lens.cube.parse.CubeQueryRewriter;
 import org.apache.lens.cube.parse.HQLParser;
 import org.apache.lens.server.api.driver.LensDriver;
 
 import org.apache.lens.server.api.query.AbstractQueryContext;
+import org.apache.lens.server.api.query.QueryPhaseStats;
 import org.apache.log4j.Logger;
 
 /**
@@ -208,7 +210,7 @@ public class RewriteUtil {
    *          the query
    * @return the replaced query
    */
-  static String getReplacedQuery(final String query) {
+  public static String getReplacedQuery(final String query) {
     String finalQuery = query.replaceAll("[\\n\\r]", " ").replaceAll("&&", " AND ").replaceAll("\\|\\|", " OR ");
     return finalQuery;
   }
@@ -225,47 +227,26 @@ public class RewriteUtil {
   public static Map<LensDriver, String> rewriteQuery(AbstractQueryContext ctx) throws LensException {
     try {
       String replacedQuery = getReplacedQuery(ctx.getUserQuery());
-      String lowerCaseQuery = replacedQuery.toLowerCase();
       Map<LensDriver, String> driverQueries = new HashMap<LensDriver, String>();
       StringBuilder rewriteFailure = new StringBuilder();
       String failureCause = null;
       boolean useBuilder = false;
-      if (lowerCaseQuery.startsWith("add") || lowerCaseQuery.startsWith("set")) {
-        for (LensDriver driver : ctx.getDriverContext().getDrivers()) {
-          driverQueries.put(driver, replacedQuery);
-        }
-      } else {
-        List<RewriteUtil.CubeQueryInfo> cubeQueries = findCubePositions(replacedQuery);
-        for (LensDriver driver : ctx.getDriverContext().getDrivers()) {
-          CubeQueryRewriter rewriter = getCubeRewriter(ctx.getDriverContext().getDriverConf(driver));
-          StringBuilder builder = new StringBuilder();
-          int start = 0;
-          try {
-            for (RewriteUtil.CubeQueryInfo cqi : cubeQueries) {
-              LOG.debug("Rewriting cube query:" + cqi.query);
-              if (start != cqi.startPos) {
-                builder.append(replacedQuery.substring(start, cqi.startPos));
-              }
-              String hqlQuery = rewriter.rewrite(cqi.query).toHQL();
-              LOG.debug("Rewritten query:" + hqlQuery);
-              builder.append(hqlQuery);
-              start = cqi.endPos;
-            }
-            builder.append(replacedQuery.substring(start));
-            String finalQuery = builder.toString();
-            LOG.info("Final rewritten query for driver:" + driver + " is: " + finalQuery);
-            driverQueries.put(driver, finalQuery);
-          } catch (Exception e) {
-            // we are catching all exceptions sothat other drivers can be picked in case of driver bugs
-            LOG.warn("Driver : " + driver.getClass().getName() + " Skipped for the query rewriting due to ", e);
-            rewriteFailure.append(" Driver :").append(driver.getClass().getName());
-            rewriteFailure.append(" Cause :" + e.getLocalizedMessage());
-            if (failureCause != null && !failureCause.equals(e.getLocalizedMessage())) {
-              useBuilder = true;
-            }
-            if (failureCause == null) {
-              failureCause = e.getLocalizedMessage();
-            }
+      List<RewriteUtil.CubeQueryInfo> cubeQueries = isAddOrSetCommand(replacedQuery) ? null
+          : findCubePositions(replacedQuery);
+      for (LensDriver driver : ctx.getDriverContext().getDrivers()) {
+        try {
+          driverQueries.put(driver, rewriteQuery(replacedQuery, cubeQueries, ctx.getDriverContext()
+              .getDriverConf(driver), driver, ctx.getPhaseStats()));
+        } catch (Exception e) {
+          // we are catching all exceptions sothat other drivers can be picked in case of driver bugs
+          LOG.warn("Driver : " + driver.getClass().getName() + " Skipped for the query rewriting due to ", e);
+          rewriteFailure.append(" Driver :").append(driver.getClass().getName());
+          rewriteFailure.append(" Cause :" + e.getLocalizedMessage());
+          if (failureCause != null && !failureCause.equals(e.getLocalizedMessage())) {
+            useBuilder = true;
+          }
+          if (failureCause == null) {
+            failureCause = e.getLocalizedMessage();
           }
         }
       }
@@ -279,6 +260,150 @@ public class RewriteUtil {
     }
   }
 
+  /**
+   * Rewrite query for a single driver, so that rewrites for different drivers can be run concurrently.
+   *
+   * @param ctx
+   *          the query context
+   * @param driver
+   *          the driver
+   * @return the rewritten query
+   * @throws LensException
+   *           the lens exception
+   */
+  public static String rewriteQuery(AbstractQueryContext ctx, LensDriver driver) throws LensException {
+    return rewriteQuery(ctx, parseQuery(ctx.getUserQuery()), driver);
+  }
+
+  /**
+   * The user query along with the positions of the cube queries in it, so that the query is parsed once and rewritten
+   * for each driver from the parsed query.
+   */
+  public static class ParsedQuery {
+
+    /** The replaced query. */
+    private final String replacedQuery;
+
+    /** The cube queries in the query, null if the query need not be rewritten. */
+    private final List<CubeQueryInfo> cubeQueries;
+
+    /**
+     * Instantiates a new parsed query.
+     *
+     * @param replacedQuery
+     *          the replaced query
+     * @param cubeQueries
+     *          the cube queries in the query
+     */
+    ParsedQuery(String replacedQuery, List<CubeQueryInfo> cubeQueries) {
+      this.replacedQuery = replacedQuery;
+      this.cubeQueries = cubeQueries;
+    }
+  }
+
+  /**
+   * Parse the user query, finding the cube queries in it.
+   *
+   * @param userQuery
+   *          the user query
+   * @return the parsed query
+   * @throws LensException
+   *           the lens exception
+   */
+  public static ParsedQuery parseQuery(String userQuery) throws LensException {
+    try {
+      String replacedQuery = getReplacedQuery(userQuery);
+      return new ParsedQuery(replacedQuery, isAddOrSetCommand(replacedQuery) ? null
+          : findCubePositions(replacedQuery));
+    } catch (Exception e) {
+      throw new LensException("Rewriting failed, cause :" + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Rewrite the parsed query for a single driver.
+   *
+   * @param ctx
+   *          the query context
+   * @param parsedQuery
+   *          the query parsed by {@link #parseQuery(String)}
+   * @param driver
+   *          the driver
+   * @return the rewritten query
+   * @throws LensException
+   *           the lens exception
+   */
+  public static String rewriteQuery(AbstractQueryContext ctx, ParsedQuery parsedQuery, LensDriver driver)
+      throws LensException {
+    try {
+      return rewriteQuery(parsedQuery.replacedQuery, parsedQuery.cubeQueries, ctx.getDriverContext()
+          .getDriverConf(driver), driver, ctx.getPhaseStats());
+    } catch (Exception e) {
+      throw new LensException("Rewriting failed, cause :" + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Checks if the query is an add or set command, which is passed to drivers as is.
+   *
+   * @param replacedQuery
+   *          the replaced query
+   * @return true, if add or set command
+   */
+  private static boolean isAddOrSetCommand(String replacedQuery) {
+    String lowerCaseQuery = replacedQuery.toLowerCase();
+    return lowerCaseQuery.startsWith("add") || lowerCaseQuery.startsWith("set");
+  }
+
+  /**
+   * Rewrites the cube queries found in the query with the driver's rewriter.
+   *
+   * @param replacedQuery
+   *          the replaced query
+   * @param cubeQueries
+   *          the cube queries in the query, null if the query need not be rewritten
+   * @param driverConf
+   *          the driver conf
+   * @param driver
+   *          the driver
+   * @param phaseStats
+   *          the stats to record the time taken by each rewriter pass into
+   * @return the rewritten query
+   * @throws ParseException
+   *           the parse exception
+   * @throws SemanticException
+   *           the semantic exception
+   */
+  private static String rewriteQuery(String replacedQuery, List<RewriteUtil.CubeQueryInfo> cubeQueries,
+      Configuration driverConf, LensDriver driver, QueryPhaseStats phaseStats) throws ParseException,
+      SemanticException {
+    if (cubeQueries == null) {
+      return replacedQuery;
+    }
+    String driverName = driver.getClass().getSimpleName();
+    long rewriteStart = System.nanoTime();
+    CubeQueryRewriter rewriter = getCubeRewriter(driverConf);
+    StringBuilder builder = new StringBuilder();
+    int start = 0;
+    for (RewriteUtil.CubeQueryInfo cqi : cubeQueries) {
+      LOG.debug("Rewriting cube query:" + cqi.query);
+      if (start != cqi.startPos) {
+        builder.append(replacedQuery.substring(start, cqi.startPos));
+      }
+      CubeQueryContext cubeql = rewriter.rewrite(cqi.query);
+      String hqlQuery = cubeql.toHQL();
+      phaseStats.addAll(driverName, cubeql.getPhaseStats());
+      LOG.debug("Rewritten query:" + hqlQuery);
+      builder.append(hqlQuery);
+      start = cqi.endPos;
+    }
+    builder.append(replacedQuery.substring(start));
+    String finalQuery = builder.toString();
+    phaseStats.record(driverName + ".rewrite", (System.nanoTime() - rewriteStart) / 1000);
+    LOG.info("Final rewritten query for driver:" + driver + " is: " + finalQuery);
+    return finalQuery;
+  }
+
   /**
    * Checks if is cube query.
    *
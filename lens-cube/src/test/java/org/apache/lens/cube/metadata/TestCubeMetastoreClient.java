@@ -2032,4 +2032,25 @@ public class TestCubeMetastoreClient {
     conf.setBoolean(MetastoreConstants.METASTORE_ENABLE_CACHING, true);
     client = CubeMetastoreClient.getInstance(conf);
   }
+
+  @Test(priority = 4)
+  public void testMetadataRefresh() throws HiveException, ParseException {
+    client = CubeMetastoreClient.getInstance(conf);
+    defineCube("testrefresh1", "testrefresh2", "derivedrefresh1", "derivedrefresh2");
+    client.createCube("testrefresh1", cubeMeasures, cubeDimensions);
+    client.createDerivedCube("testrefresh1", "derivedrefresh1", measures, dimensions, new HashMap<String, String>(), 0L);
+    int numCubes = client.getAllCubes().size();
+    CubeInterface parent = client.getCube("testrefresh1");
+    Assert.assertEquals(1, client.getAllDerivedCubes(parent).size());
+
+    // drop the derived cube outside the client
+    Hive.get(conf).dropTable("derivedrefresh1");
+    client.refreshTableNames();
+    Assert.assertNull(client.getCube("derivedrefresh1"));
+    Assert.assertEquals(numCubes - 1, client.getAllCubes().size());
+    Assert.assertTrue(client.getAllDerivedCubes(parent).isEmpty());
+
+    client.dropCube("testrefresh1");
+    Assert.assertEquals(numCubes - 2, client.getAllCubes().size());
+  }
 }
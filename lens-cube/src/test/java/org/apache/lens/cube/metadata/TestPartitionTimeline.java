@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.cube.metadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.metadata.Table;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestPartitionTimeline {
+
+  private static Date getHour(Date start, int hours) {
+    Calendar cal = Calendar.getInstance();
+    cal.setTime(start);
+    cal.add(Calendar.HOUR_OF_DAY, hours);
+    return cal.getTime();
+  }
+
+  @Test
+  public void testAddAndDropPartitions() throws Exception {
+    Table table = new Table("default", "c1_testfact");
+    table.setPartCols(Arrays.asList(new FieldSchema("dt", "string", "")));
+    PartitionTimeline timeline = new PartitionTimeline(table, new ArrayList<String>());
+    Assert.assertTrue(timeline.hasSinglePartCol());
+
+    Date start = UpdatePeriod.DAILY.format().parse("2014-10-01");
+    for (int i = 0; i < 48; i++) {
+      timeline.addPartition("dt", UpdatePeriod.HOURLY, getHour(start, i));
+    }
+    Assert.assertTrue(timeline.exists("dt", UpdatePeriod.HOURLY, start));
+    Assert.assertTrue(timeline.exists("dt", UpdatePeriod.HOURLY, getHour(start, 47)));
+    Assert.assertFalse(timeline.exists("dt", UpdatePeriod.HOURLY, getHour(start, 48)));
+    Assert.assertFalse(timeline.exists("dt", UpdatePeriod.HOURLY, getHour(start, -1)));
+    // hourly partitions do not make daily partitions
+    Assert.assertFalse(timeline.exists("dt", UpdatePeriod.DAILY, start));
+    Assert.assertFalse(timeline.exists("pt", UpdatePeriod.HOURLY, start));
+
+    // drop from the middle of the range
+    timeline.dropPartition("dt", UpdatePeriod.HOURLY, getHour(start, 10));
+    Assert.assertFalse(timeline.exists("dt", UpdatePeriod.HOURLY, getHour(start, 10)));
+    Assert.assertTrue(timeline.exists("dt", UpdatePeriod.HOURLY, getHour(start, 9)));
+    Assert.assertTrue(timeline.exists("dt", UpdatePeriod.HOURLY, getHour(start, 11)));
+
+    // add it back and merge the ranges
+    timeline.addPartition("dt", UpdatePeriod.HOURLY, getHour(start, 10));
+    Assert.assertTrue(timeline.exists("dt", UpdatePeriod.HOURLY, getHour(start, 10)));
+
+    // monthly and quarterly partitions share their values
+    timeline.addPartition("dt", UpdatePeriod.MONTHLY, start);
+    Assert.assertTrue(timeline.exists("dt", UpdatePeriod.QUARTERLY, start));
+  }
+
+  @Test
+  public void testLatestParts() throws Exception {
+    Table table = new Table("default", "c1_testfact");
+    table.setPartCols(Arrays.asList(new FieldSchema("dt", "string", ""), new FieldSchema("pt", "string", "")));
+    PartitionTimeline timeline = new PartitionTimeline(table, new ArrayList<String>());
+    Assert.assertFalse(timeline.hasSinglePartCol());
+    Assert.assertTrue(timeline.hasLatestPart("dt"));
+    Assert.assertNull(timeline.getLatestPart("dt"));
+    timeline.clearLatestParts();
+    Assert.assertFalse(timeline.hasLatestPart("dt"));
+  }
+
+  @Test
+  public void testLoadFromPartitionNames() throws Exception {
+    Table table = new Table("default", "c1_testfact");
+    table.setPartCols(Arrays.asList(new FieldSchema("dt", "string", "")));
+    Date start = UpdatePeriod.DAILY.format().parse("2014-10-01");
+    PartitionTimeline timeline = new PartitionTimeline(table, Arrays.asList(
+        "dt=" + UpdatePeriod.HOURLY.format().format(start),
+        "dt=" + UpdatePeriod.HOURLY.format().format(getHour(start, 1)),
+        "dt=" + StorageConstants.LATEST_PARTITION_VALUE));
+    Assert.assertTrue(timeline.exists("dt", UpdatePeriod.HOURLY, start));
+    Assert.assertTrue(timeline.exists("dt", UpdatePeriod.HOURLY, getHour(start, 1)));
+    Assert.assertFalse(timeline.exists("dt", UpdatePeriod.HOURLY, getHour(start, 2)));
+    // latest partition is fetched when asked for
+    Assert.assertFalse(timeline.hasLatestPart("dt"));
+    Assert.assertTrue(timeline.getLoadTime() <= System.currentTimeMillis());
+  }
+}
@@ -22,6 +22,7 @@ package org.apache.lens.cube.parse;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.time.DateUtils;
 import org.apache.hadoop.conf.Configuration;
@@ -98,6 +99,17 @@ public class TestCubeRewriter extends TestQueryRewrite {
     compareQueries(expected, rewrittenQuery.toHQL());
     System.out.println("Non existing parts:" + rewrittenQuery.getNonExistingParts());
     Assert.assertNotNull(rewrittenQuery.getNonExistingParts());
+    // partitions are fetched once per storage table, not once per hourly partition of the two days
+    Assert.assertTrue(rewrittenQuery.getNumPartitionMetastoreCalls() < 48);
+    // every rewriter pass is timed, and the partition lookups are attributed to the storage resolver passes
+    Map<String, Long> phaseCalls = rewrittenQuery.getPhaseStats().getMetastoreCalls();
+    Assert.assertTrue(phaseCalls.containsKey("JoinResolver"));
+    Assert.assertTrue(phaseCalls.containsKey("StorageTableResolver#2"));
+    long totalCalls = 0;
+    for (Long calls : phaseCalls.values()) {
+      totalCalls += calls;
+    }
+    Assert.assertEquals(totalCalls, rewrittenQuery.getNumPartitionMetastoreCalls());
 
     // Query with column life not in the range
     SemanticException th = null;
@@ -127,6 +127,35 @@ public class TestJoinResolver extends TestQueryRewrite {
     validatePath(paths.get(1), zipDim, cityDim, (AbstractCubeTable) testCube);
   }
 
+  @Test
+  public void testCachedPathsAndMinCostSearch() throws Exception {
+    SchemaGraph schemaGraph = metastore.getSchemaGraph();
+    CubeInterface testCube = metastore.getCube("testcube");
+    Dimension zipDim = metastore.getDimension("zipdim");
+
+    List<SchemaGraph.JoinPath> paths = schemaGraph.getAllPathsToTarget(zipDim, (AbstractCubeTable) testCube);
+    Assert.assertEquals(2, paths.size());
+    // pruning the returned paths should not change the cached paths
+    paths.remove(0);
+    Assert.assertEquals(2, schemaGraph.getAllPathsToTarget(zipDim, (AbstractCubeTable) testCube).size());
+
+    Map<Dimension, List<SchemaGraph.JoinPath>> allPaths = new LinkedHashMap<Dimension, List<SchemaGraph.JoinPath>>();
+    allPaths.put(zipDim, schemaGraph.getAllPathsToTarget(zipDim, (AbstractCubeTable) testCube));
+    JoinResolver.MinCostClauseSearch search =
+        new JoinResolver.MinCostClauseSearch(allPaths, Collections.singleton(zipDim), 100);
+    int[] selection = search.search();
+    Assert.assertNotNull(selection);
+    // direct path from zipdim to cube is the cheapest
+    Assert.assertEquals(0, selection[0]);
+    Assert.assertEquals(1, search.getBestCost());
+    Assert.assertFalse(search.isTruncated());
+
+    // search stops after first clause, when no expansions are allowed
+    search = new JoinResolver.MinCostClauseSearch(allPaths, Collections.singleton(zipDim), 0);
+    Assert.assertNotNull(search.search());
+    Assert.assertTrue(search.isTruncated());
+  }
+
   private void validatePath(SchemaGraph.JoinPath jp, AbstractCubeTable... tables) {
     Assert.assertTrue(!jp.getEdges().isEmpty());
     Set<AbstractCubeTable> expected = new HashSet<AbstractCubeTable>(Arrays.asList(tables));
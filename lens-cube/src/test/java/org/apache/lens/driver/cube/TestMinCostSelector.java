@@ -90,5 +90,16 @@ public class TestMinCostSelector {
 
     selected = selector.select(ctx, conf);
     Assert.assertEquals(d2, selected);
+
+    // drivers which timed out are skipped
+    driverQueries.clear();
+    driverQueries.put(d1, query);
+    driverQueries.put(d2, query);
+    ctx = createMockContext(query, conf, qconf, driverQueries);
+    ctx.getDriverContext().getDriverQueryContextMap().get(d2).setDriverQueryPlan(null);
+    ctx.getDriverContext().getDriverQueryContextMap().get(d2).setDriverQueryPlanGenerationError(
+      new LensException("Rewrite and explain timed out"));
+    selected = selector.select(ctx, conf);
+    Assert.assertEquals(d1, selected);
   }
 }
@@ -38,6 +38,7 @@ import static org.mockito.Matchers.any;
 
 import org.apache.lens.server.api.driver.MockDriver;
 import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.api.query.QueryPhaseStats;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -100,6 +101,7 @@ public class TestRewriting {
    */
   private CubeQueryContext getMockedCubeContext(String query) throws SemanticException, ParseException {
     CubeQueryContext context = Mockito.mock(CubeQueryContext.class);
+    Mockito.when(context.getPhaseStats()).thenReturn(new QueryPhaseStats());
     Mockito.when(context.toHQL()).thenReturn(query.substring(4));
     Mockito.when(context.toAST(any(Context.class))).thenReturn(HQLParser.parseHQL(query.substring(4)));
     return context;
@@ -118,6 +120,7 @@ public class TestRewriting {
    */
   private CubeQueryContext getMockedCubeContext(ASTNode ast) throws SemanticException, ParseException {
     CubeQueryContext context = Mockito.mock(CubeQueryContext.class);
+    Mockito.when(context.getPhaseStats()).thenReturn(new QueryPhaseStats());
     if (ast.getToken().getType() == HiveParser.TOK_QUERY) {
       if (((ASTNode) ast.getChild(0)).getToken().getType() == HiveParser.KW_CUBE) {
         // remove cube child from AST
@@ -169,6 +172,7 @@ public class TestRewriting {
     Assert.assertEquals(cubeQueries.get(0).query, "cube select name from table");
     ctx = new QueryContext(q2, null, lensConf, conf, drivers);
     RewriteUtil.rewriteQuery(ctx);
+    Assert.assertTrue(ctx.getPhaseStats().getDurations().containsKey("MockDriver.rewrite"));
 
     q2 = "insert overwrite directory '/tmp/rewrite' cube select name from table";
     Assert.assertTrue(RewriteUtil.isCubeQuery(q2));
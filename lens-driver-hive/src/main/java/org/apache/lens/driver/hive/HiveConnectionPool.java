@@ -0,0 +1,548 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.driver.hive;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hive.service.cli.CLIServiceClient;
+import org.apache.lens.api.LensException;
+import org.apache.lens.server.api.metrics.LongGaugeSet;
+import org.apache.log4j.Logger;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * Pool of thrift connections to hive server, bounded per user. A connection is borrowed for a call, or a few calls in a
+ * row, and released right after, so that connections are shared by all the threads instead of being held per thread.
+ * Each user has its own pool, so borrowers of different users never contend with each other.
+ * <p/>
+ * Released connections are reused most recently used first, which lets the surplus connections stay idle and get
+ * evicted once they have been idle for the idle timeout. As health checks, connections idle for the idle timeout are
+ * never handed out, connections which failed with a transport error are closed on release, and all connections created
+ * before {@link #invalidateAll()} are closed instead of being reused.
+ * <p/>
+ * A connection which is safe for concurrent use and holds state of its own, like the embedded connection, is shared by
+ * all the borrowers instead.
+ */
+public class HiveConnectionPool implements LongGaugeSet, Closeable {
+
+  /** The Constant LOG. */
+  public static final Logger LOG = Logger.getLogger(HiveConnectionPool.class);
+
+  /** The Constant ACTIVE_CONNECTIONS. */
+  public static final String ACTIVE_CONNECTIONS = "hs2-connections-active";
+
+  /** The Constant IDLE_CONNECTIONS. */
+  public static final String IDLE_CONNECTIONS = "hs2-connections-idle";
+
+  /** The Constant WAITING_BORROWERS. */
+  public static final String WAITING_BORROWERS = "hs2-connections-waiting";
+
+  /** The Constant CREATED_CONNECTIONS. */
+  public static final String CREATED_CONNECTIONS = "hs2-connections-created";
+
+  /** The Constant EVICTED_CONNECTIONS. */
+  public static final String EVICTED_CONNECTIONS = "hs2-connections-evicted";
+
+  /** The Constant DISCARDED_CONNECTIONS. */
+  public static final String DISCARDED_CONNECTIONS = "hs2-connections-discarded";
+
+  /** The Constant BORROW_TIMEOUTS. */
+  public static final String BORROW_TIMEOUTS = "hs2-connections-borrow-timeouts";
+
+  /** The Constant MAX_CONNECTIONS_PER_USER. */
+  public static final String MAX_CONNECTIONS_PER_USER = "hs2-connections-max-per-user";
+
+  /** The gauge names. */
+  private static final Collection<String> GAUGE_NAMES = Collections.unmodifiableList(Arrays.asList(
+    ACTIVE_CONNECTIONS, IDLE_CONNECTIONS, WAITING_BORROWERS, CREATED_CONNECTIONS, EVICTED_CONNECTIONS,
+    DISCARDED_CONNECTIONS, BORROW_TIMEOUTS, MAX_CONNECTIONS_PER_USER));
+
+  /** The Constant connectionCounter. */
+  private static final AtomicInteger connectionCounter = new AtomicInteger();
+
+  /** The driver conf. */
+  private final HiveConf conf;
+
+  /** The connection class. */
+  private final Class<? extends ThriftConnection> connectionClass;
+
+  /** Whether a single connection is shared by all the borrowers. */
+  private final boolean shared;
+
+  /** The max connections per user. */
+  private final int maxConnectionsPerUser;
+
+  /** The borrow timeout in millis. */
+  private final long borrowTimeoutMillis;
+
+  /** The idle timeout in millis. */
+  private final long idleTimeoutMillis;
+
+  /** The pools of the users, keyed by the user name in lower case. */
+  private final ConcurrentMap<String, UserPool> userPools = new ConcurrentHashMap<String, UserPool>();
+
+  /** The evictor of the idle connections. */
+  private final ScheduledExecutorService evictor;
+
+  /** The connection shared by all the borrowers, if connections are shared. */
+  private PooledConnection sharedConnection;
+
+  /** The generation of the connections, incremented when all the connections are invalidated. */
+  private final AtomicInteger generation = new AtomicInteger();
+
+  /** The waiting borrowers. */
+  private final AtomicInteger waitingBorrowers = new AtomicInteger();
+
+  /** The created connections. */
+  private final AtomicLong createdConnections = new AtomicLong();
+
+  /** The evicted connections. */
+  private final AtomicLong evictedConnections = new AtomicLong();
+
+  /** The discarded connections. */
+  private final AtomicLong discardedConnections = new AtomicLong();
+
+  /** The borrow timeouts. */
+  private final AtomicLong borrowTimeouts = new AtomicLong();
+
+  /** Whether the pool is closed. */
+  private volatile boolean closed;
+
+  /**
+   * A connection borrowed from the pool. It should be used by one thread at a time, and released once done.
+   */
+  public final class PooledConnection {
+
+    /** The user pool, null for the shared connection. */
+    private final UserPool pool;
+
+    /** The connection. */
+    private final ThriftConnection connection;
+
+    /** The conf of the connection. */
+    private final HiveConf connectionConf;
+
+    /** The conn id. */
+    private final int connId;
+
+    /** The generation of the pool in which the connection was created. */
+    private final int createdGeneration;
+
+    /** The time the connection was released last. */
+    private volatile long lastUsedTime;
+
+    /** Whether the connection is broken. */
+    private volatile boolean broken;
+
+    /**
+     * Instantiates a new pooled connection.
+     *
+     * @param pool
+     *          the user pool
+     * @param connection
+     *          the connection
+     * @param connectionConf
+     *          the conf of the connection
+     */
+    private PooledConnection(UserPool pool, ThriftConnection connection, HiveConf connectionConf) {
+      this.pool = pool;
+      this.connection = connection;
+      this.connectionConf = connectionConf;
+      this.connId = connectionCounter.incrementAndGet();
+      this.createdGeneration = generation.get();
+      this.lastUsedTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the client, connecting to hive server if not connected yet.
+     *
+     * @return the client
+     * @throws LensException
+     *           the lens exception
+     */
+    public CLIServiceClient getClient() throws LensException {
+      return connection.getClient(connectionConf);
+    }
+
+    /**
+     * Mark the connection broken if the error is a failure of the transport to hive server, so that the connection
+     * gets closed on release instead of going back to the pool.
+     *
+     * @param error
+     *          the error of a call made with the connection
+     */
+    public void checkError(Throwable error) {
+      for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+        if (cause instanceof TTransportException) {
+          broken = true;
+          return;
+        }
+      }
+    }
+
+    /**
+     * Checks if the connection can be handed out again.
+     *
+     * @param now
+     *          the current time
+     * @return true, if healthy
+     */
+    private boolean isHealthy(long now) {
+      return !broken && createdGeneration == generation.get() && now - lastUsedTime < idleTimeoutMillis;
+    }
+  }
+
+  /**
+   * The connections of a user.
+   */
+  private final class UserPool {
+
+    /** The user. */
+    private final String user;
+
+    /** The conf of the connections of the user. */
+    private final HiveConf connectionConf;
+
+    /** The permits to borrow, one per connection allowed for the user. */
+    private final Semaphore permits;
+
+    /** The idle connections, most recently used first. */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+
+    /** The borrowed connections. */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Instantiates a new user pool.
+     *
+     * @param user
+     *          the user
+     */
+    private UserPool(String user) {
+      this.user = user;
+      this.connectionConf = new HiveConf(conf);
+      this.connectionConf.setVar(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_CLIENT_USER, user);
+      this.permits = new Semaphore(maxConnectionsPerUser);
+    }
+  }
+
+  /**
+   * Instantiates a new hive connection pool.
+   *
+   * @param conf
+   *          the driver conf
+   * @param connectionClass
+   *          the connection class
+   * @param shared
+   *          whether a single connection is shared by all the borrowers
+   * @param maxConnectionsPerUser
+   *          the max connections per user
+   * @param borrowTimeoutMillis
+   *          the time to wait for a connection when all the connections of the user are borrowed
+   * @param idleTimeoutMillis
+   *          the idle time after which a connection is evicted
+   */
+  public HiveConnectionPool(HiveConf conf, Class<? extends ThriftConnection> connectionClass, boolean shared,
+      int maxConnectionsPerUser, long borrowTimeoutMillis, long idleTimeoutMillis) {
+    this.conf = conf;
+    this.connectionClass = connectionClass;
+    this.shared = shared;
+    this.maxConnectionsPerUser = Math.max(maxConnectionsPerUser, 1);
+    this.borrowTimeoutMillis = borrowTimeoutMillis;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    if (shared) {
+      this.evictor = null;
+    } else {
+      this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread th = new Thread(r, "HiveDriver-ConnectionEvictor");
+          th.setDaemon(true);
+          return th;
+        }
+      });
+      long evictionInterval = Math.max(idleTimeoutMillis / 2, 1000);
+      evictor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            evictIdleConnections();
+          } catch (Exception e) {
+            LOG.error("Error evicting idle connections", e);
+          }
+        }
+      }, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Borrow a connection of the user, waiting upto the borrow timeout if all the connections of the user are borrowed.
+   *
+   * @param user
+   *          the user
+   * @return the connection
+   * @throws LensException
+   *           if the pool is closed, or no connection got released within the borrow timeout
+   */
+  public PooledConnection borrow(String user) throws LensException {
+    if (closed) {
+      throw new LensException("Connection pool to hive server is closed");
+    }
+    if (shared) {
+      return getSharedConnection();
+    }
+    UserPool pool = getUserPool(user);
+    waitingBorrowers.incrementAndGet();
+    try {
+      if (!pool.permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        borrowTimeouts.incrementAndGet();
+        throw new LensException("Timed out waiting for a connection to hive server for user " + user + ", all "
+            + maxConnectionsPerUser + " connections are in use");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new LensException("Interrupted while waiting for a connection to hive server for user " + user, e);
+    } finally {
+      waitingBorrowers.decrementAndGet();
+    }
+    PooledConnection connection;
+    long now = System.currentTimeMillis();
+    while ((connection = pool.idle.pollFirst()) != null && !connection.isHealthy(now)) {
+      closeConnection(connection);
+      evictedConnections.incrementAndGet();
+    }
+    if (connection == null) {
+      try {
+        connection = new PooledConnection(pool, connectionClass.newInstance(), pool.connectionConf);
+      } catch (Exception e) {
+        pool.permits.release();
+        throw new LensException("Could not create connection " + connectionClass, e);
+      }
+      createdConnections.incrementAndGet();
+      LOG.info("New thrift connection " + connectionClass + " for user:" + pool.user + " connection ID="
+          + connection.connId);
+    }
+    pool.active.incrementAndGet();
+    return connection;
+  }
+
+  /**
+   * Release the borrowed connection back to the pool. Broken connections and connections invalidated while borrowed
+   * are closed instead.
+   *
+   * @param connection
+   *          the connection, ignored if null
+   */
+  public void release(PooledConnection connection) {
+    if (connection == null || connection.pool == null) {
+      // shared connection is never given up
+      return;
+    }
+    UserPool pool = connection.pool;
+    pool.active.decrementAndGet();
+    connection.lastUsedTime = System.currentTimeMillis();
+    if (closed || !connection.isHealthy(connection.lastUsedTime)) {
+      closeConnection(connection);
+      discardedConnections.incrementAndGet();
+    } else {
+      pool.idle.offerFirst(connection);
+      if (closed && pool.idle.remove(connection)) {
+        // raced with close
+        closeConnection(connection);
+      }
+    }
+    pool.permits.release();
+  }
+
+  /**
+   * Close the idle connections and make the borrowed connections close on release, like when hive server has lost
+   * all the sessions.
+   */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    for (UserPool pool : userPools.values()) {
+      PooledConnection connection;
+      while ((connection = pool.idle.pollLast()) != null) {
+        closeConnection(connection);
+        discardedConnections.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Close the connections which have been idle for the idle timeout. Idle connections are ordered most recently used
+   * first, so the least recently used ones are looked at from the end, till a connection not idle long enough is seen.
+   */
+  void evictIdleConnections() {
+    long now = System.currentTimeMillis();
+    for (UserPool pool : userPools.values()) {
+      PooledConnection connection;
+      while ((connection = pool.idle.peekLast()) != null && !connection.isHealthy(now)) {
+        if (pool.idle.removeLastOccurrence(connection)) {
+          LOG.info("Evicting idle connection:" + connection.connId + " of user:" + pool.user);
+          closeConnection(connection);
+          evictedConnections.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the pool of the user, creating it if it does not exist.
+   *
+   * @param user
+   *          the user
+   * @return the user pool
+   */
+  private UserPool getUserPool(String user) {
+    String key = user.toLowerCase();
+    UserPool pool = userPools.get(key);
+    if (pool == null) {
+      UserPool newPool = new UserPool(user);
+      pool = userPools.putIfAbsent(key, newPool);
+      if (pool == null) {
+        pool = newPool;
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Gets the shared connection, creating it on first use.
+   *
+   * @return the shared connection
+   * @throws LensException
+   *           the lens exception
+   */
+  private synchronized PooledConnection getSharedConnection() throws LensException {
+    if (sharedConnection == null) {
+      try {
+        sharedConnection = new PooledConnection(null, connectionClass.newInstance(), conf);
+      } catch (Exception e) {
+        throw new LensException("Could not create connection " + connectionClass, e);
+      }
+      createdConnections.incrementAndGet();
+      LOG.info("New thrift connection " + connectionClass);
+    }
+    return sharedConnection;
+  }
+
+  /**
+   * Close the connection.
+   *
+   * @param connection
+   *          the connection
+   */
+  private void closeConnection(PooledConnection connection) {
+    try {
+      connection.connection.close();
+      LOG.info("Closed connection:" + connection.connId);
+    } catch (Exception e) {
+      LOG.warn("Error closing connection to hive server", e);
+    }
+  }
+
+  /**
+   * Gets the number of connections open, both borrowed and idle.
+   *
+   * @return the open connections
+   */
+  public int getOpenConnections() {
+    return (int) (getGaugeValue(ACTIVE_CONNECTIONS) + getGaugeValue(IDLE_CONNECTIONS));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.LongGaugeSet#getGaugeNames()
+   */
+  @Override
+  public Collection<String> getGaugeNames() {
+    return GAUGE_NAMES;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.LongGaugeSet#getGaugeValue(java.lang.String)
+   */
+  @Override
+  public long getGaugeValue(String name) {
+    if (ACTIVE_CONNECTIONS.equals(name)) {
+      long active = 0;
+      for (UserPool pool : userPools.values()) {
+        active += pool.active.get();
+      }
+      return active;
+    } else if (IDLE_CONNECTIONS.equals(name)) {
+      long idle = 0;
+      for (UserPool pool : userPools.values()) {
+        idle += pool.idle.size();
+      }
+      return idle;
+    } else if (WAITING_BORROWERS.equals(name)) {
+      return waitingBorrowers.get();
+    } else if (CREATED_CONNECTIONS.equals(name)) {
+      return createdConnections.get();
+    } else if (EVICTED_CONNECTIONS.equals(name)) {
+      return evictedConnections.get();
+    } else if (DISCARDED_CONNECTIONS.equals(name)) {
+      return discardedConnections.get();
+    } else if (BORROW_TIMEOUTS.equals(name)) {
+      return borrowTimeouts.get();
+    } else if (MAX_CONNECTIONS_PER_USER.equals(name)) {
+      return maxConnectionsPerUser;
+    }
+    throw new IllegalArgumentException("Unknown gauge " + name);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() {
+    closed = true;
+    if (evictor != null) {
+      evictor.shutdownNow();
+    }
+    invalidateAll();
+    synchronized (this) {
+      if (sharedConnection != null) {
+        closeConnection(sharedConnection);
+        sharedConnection = null;
+      }
+    }
+  }
+}
@@ -18,15 +18,16 @@
  */
 package org.apache.lens.driver.hive;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.net.URLClassLoader;
 import java.util.*;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -54,22 +55,25 @@ import org.apache.lens.api.LensException;
 import org.apache.lens.api.LensSessionHandle;
 import org.apache.lens.api.query.QueryHandle;
 import org.apache.lens.api.query.QueryPrepareHandle;
+import org.apache.lens.driver.hive.HiveConnectionPool.PooledConnection;
 import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.driver.*;
 import org.apache.lens.server.api.driver.DriverQueryStatus.DriverQueryState;
 import org.apache.lens.server.api.events.LensEventListener;
+import org.apache.lens.server.api.metrics.LongGaugeSet;
 import org.apache.lens.driver.hive.priority.DurationBasedQueryPriorityDecider;
 import org.apache.lens.server.api.priority.QueryPriorityDecider;
 import org.apache.lens.server.api.query.PreparedQueryContext;
 import org.apache.lens.server.api.query.QueryContext;
 import org.apache.log4j.Logger;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
 import org.codehaus.jackson.type.TypeReference;
 
 /**
  * The Class HiveDriver.
  */
-public class HiveDriver implements LensDriver {
+public class HiveDriver implements LensDriver, LongGaugeSet {
 
   /** The Constant LOG. */
   public static final Logger LOG = Logger.getLogger(HiveDriver.class);
@@ -80,6 +84,27 @@ public class HiveDriver implements LensDriver {
   /** The Constant HS2_CONNECTION_EXPIRY_DELAY. */
   public  static final String HS2_CONNECTION_EXPIRY_DELAY = "lens.driver.hive.hs2.connection.expiry.delay";
 
+  /** The Constant HS2_MAX_CONNECTIONS_PER_USER. */
+  public static final String HS2_MAX_CONNECTIONS_PER_USER = "lens.driver.hive.hs2.max.connections.per.user";
+
+  /** The Constant HS2_CONNECTION_BORROW_TIMEOUT. */
+  public static final String HS2_CONNECTION_BORROW_TIMEOUT = "lens.driver.hive.hs2.connection.borrow.timeout.millis";
+
+  /** The Constant HS2_COMPLETION_POLL_INTERVAL. */
+  public static final String HS2_COMPLETION_POLL_INTERVAL = "lens.driver.hive.completion.poll.interval.millis";
+
+  /** The Constant HS2_RESULT_PREFETCH_BATCHES. */
+  public static final String HS2_RESULT_PREFETCH_BATCHES = "lens.driver.hive.result.prefetch.batches";
+
+  /** The Constant HS2_RESULT_PREFETCH_THREADS. */
+  public static final String HS2_RESULT_PREFETCH_THREADS = "lens.driver.hive.result.prefetch.threads";
+
+  /** The Constant HS2_RESULT_FETCH_TARGET_BYTES. */
+  public static final String HS2_RESULT_FETCH_TARGET_BYTES = "lens.driver.hive.result.fetch.target.bytes";
+
+  /** The Constant HS2_RESULT_FETCH_MAX_ROWS. */
+  public static final String HS2_RESULT_FETCH_MAX_ROWS = "lens.driver.hive.result.fetch.max.rows";
+
   public static final String HS2_CALCULATE_PRIORITY = "lens.driver.hive.calculate.priority";
   public static final String HS2_PARTITION_WEIGHT_MONTHLY = "lens.driver.hive.priority.partition.weight.monthly";
   public static final String HS2_PARTITION_WEIGHT_DAILY = "lens.driver.hive.priority.partition.weight.daily";
@@ -87,6 +112,24 @@ public class HiveDriver implements LensDriver {
   // Default expiry is 10 minutes
   /** The Constant DEFAULT_EXPIRY_DELAY. */
   public static final long DEFAULT_EXPIRY_DELAY = 600 * 1000;
+
+  /** The Constant DEFAULT_MAX_CONNECTIONS_PER_USER. */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_USER = 50;
+
+  /** The Constant DEFAULT_CONNECTION_BORROW_TIMEOUT. */
+  public static final long DEFAULT_CONNECTION_BORROW_TIMEOUT = 60 * 1000;
+
+  /** The Constant DEFAULT_RESULT_PREFETCH_BATCHES, prefetch is disabled by default. */
+  public static final int DEFAULT_RESULT_PREFETCH_BATCHES = 0;
+
+  /** The Constant DEFAULT_RESULT_PREFETCH_THREADS. */
+  public static final int DEFAULT_RESULT_PREFETCH_THREADS = 10;
+
+  /** The Constant DEFAULT_RESULT_FETCH_TARGET_BYTES, adaptive fetch size is disabled by default. */
+  public static final long DEFAULT_RESULT_FETCH_TARGET_BYTES = 0;
+
+  /** The Constant DEFAULT_RESULT_FETCH_MAX_ROWS. */
+  public static final int DEFAULT_RESULT_FETCH_MAX_ROWS = 10000;
   public static final float MONTHLY_PARTITION_WEIGHT_DEFAULT = 0.5f;
   public static final float DAILY_PARTITION_WEIGHT_DEFAULT = 0.75f;
   public static final float HOURLY_PARTITION_WEIGHT_DEFAULT = 1.0f;
@@ -95,152 +138,42 @@ public class HiveDriver implements LensDriver {
   private HiveConf driverConf;
 
   /** The hive handles. */
-  private Map<QueryHandle, OperationHandle> hiveHandles = new HashMap<QueryHandle, OperationHandle>();
+  private Map<QueryHandle, OperationHandle> hiveHandles = new ConcurrentHashMap<QueryHandle, OperationHandle>();
+
+  /** The reader of the task statuses returned by hive server, shared as it is immutable. */
+  private static final ObjectReader TASK_STATUS_READER = new ObjectMapper()
+    .reader(new TypeReference<List<TaskStatus>>() {
+    });
 
   /** The session lock. */
   private final Lock sessionLock;
 
-  /** The connection lock. */
-  private final Lock connectionLock;
-
-  // connections need to be separate for each user and each thread
-  /** The thread connections. */
-  private final Map<String, Map<Long, ExpirableConnection>> threadConnections =
-      new HashMap<String, Map<Long, ExpirableConnection>>();
-
-  /** The thrift conn expiry queue. */
-  private final DelayQueue<ExpirableConnection> thriftConnExpiryQueue = new DelayQueue<ExpirableConnection>();
+  /** The pool of connections to hive server. */
+  private HiveConnectionPool connectionPool;
 
-  /** The connection expiry thread. */
-  private final Thread connectionExpiryThread = new Thread(new ConnectionExpiryRunnable());
-
-  // assigned only in case of embedded connection
-  /** The embedded connection. */
-  private ThriftConnection embeddedConnection;
   // Store mapping of Lens session ID to Hive session identifier
   /** The lens to hive session. */
   private Map<String, SessionHandle> lensToHiveSession;
 
   /** The driver listeners. */
   private List<LensEventListener<DriverEvent>> driverListeners;
-  QueryPriorityDecider queryPriorityDecider;
 
-  // package-local. Test case can change.
-  boolean whetherCalculatePriority;
+  /** The tracker of queries registered for completion notification. */
+  private QueryCompletionTracker completionTracker;
 
-  /**
-   * The Class ConnectionExpiryRunnable.
-   */
-  class ConnectionExpiryRunnable implements Runnable {
+  /** The executor prefetching batches of in memory results, null if prefetch is disabled. */
+  private ExecutorService resultPrefetcher;
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see java.lang.Runnable#run()
-     */
-    @Override
-    public void run() {
-      try {
-        while (true) {
-          ExpirableConnection expired = thriftConnExpiryQueue.take();
-          expired.setExpired();
-          ThriftConnection thConn = expired.getConnection();
+  /** The number of batches of in memory results to prefetch. */
+  private int prefetchBatches;
 
-          if (thConn != null) {
-            try {
-              LOG.info("Closed connection:" + expired.getConnId());
-              thConn.close();
-            } catch (IOException e) {
-              LOG.error("Error closing connection", e);
-            }
-          }
-        }
-      } catch (InterruptedException intr) {
-        LOG.warn("Connection expiry thread interrupted", intr);
-        return;
-      }
-    }
-  }
-
-  /** The Constant connectionCounter. */
-  private static final AtomicInteger connectionCounter = new AtomicInteger();
-
-  /**
-   * The Class ExpirableConnection.
-   */
-  static class ExpirableConnection implements Delayed {
-
-    /** The access time. */
-    long accessTime;
-
-    /** The conn. */
-    private final ThriftConnection conn;
-
-    /** The timeout. */
-    private final long timeout;
-
-    /** The expired. */
-    private volatile boolean expired;
-
-    /** The conn id. */
-    private final int connId;
-
-    /**
-     * Instantiates a new expirable connection.
-     *
-     * @param conn
-     *          the conn
-     * @param timeout
-     *          the timeout
-     */
-    public ExpirableConnection(ThriftConnection conn, long timeout) {
-      this.conn = conn;
-      this.timeout = timeout;
-      connId = connectionCounter.incrementAndGet();
-      accessTime = System.currentTimeMillis();
-    }
-
-    private ThriftConnection getConnection() {
-      accessTime = System.currentTimeMillis();
-      return conn;
-    }
-
-    private boolean isExpired() {
-      return expired;
-    }
-
-    /**
-     * Sets the expired.
-     */
-    private void setExpired() {
-      expired = true;
-    }
-
-    private int getConnId() {
-      return connId;
-    }
-
-    /*
-     * (non-Javadoc)
-     * 
-     * @see java.lang.Comparable#compareTo(java.lang.Object)
-     */
-    @Override
-    public int compareTo(Delayed other) {
-      return (int) (this.getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS));
-    }
+  /** The query status listeners. */
+  private final List<LensEventListener<DriverQueryStatusChanged>> statusListeners =
+      new CopyOnWriteArrayList<LensEventListener<DriverQueryStatusChanged>>();
+  QueryPriorityDecider queryPriorityDecider;
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see java.util.concurrent.Delayed#getDelay(java.util.concurrent.TimeUnit)
-     */
-    @Override
-    public long getDelay(TimeUnit unit) {
-      long age = System.currentTimeMillis() - accessTime;
-      return unit.convert(timeout - age, TimeUnit.MILLISECONDS);
-    }
-  }
+  // package-local. Test case can change.
+  boolean whetherCalculatePriority;
 
   /**
    * Open connections.
@@ -248,18 +181,9 @@ public class HiveDriver implements LensDriver {
    * @return the int
    */
   int openConnections() {
-    return thriftConnExpiryQueue.size();
+    return connectionPool.getOpenConnections();
   }
 
-  /** The connection class. */
-  private Class<? extends ThriftConnection> connectionClass;
-
-  /** The is embedded. */
-  private boolean isEmbedded;
-
-  /** The connection expiry timeout. */
-  private long connectionExpiryTimeout;
-
   /**
    * Instantiates a new hive driver.
    *
@@ -268,11 +192,7 @@ public class HiveDriver implements LensDriver {
    */
   public HiveDriver() throws LensException {
     this.sessionLock = new ReentrantLock();
-    this.connectionLock = new ReentrantLock();
     lensToHiveSession = new HashMap<String, SessionHandle>();
-    connectionExpiryThread.setDaemon(true);
-    connectionExpiryThread.setName("HiveDriver-ConnectionExpiryThread");
-    connectionExpiryThread.start();
     driverListeners = new ArrayList<LensEventListener<DriverEvent>>();
     LOG.info("Hive driver inited");
   }
@@ -292,16 +212,46 @@ public class HiveDriver implements LensDriver {
     this.driverConf = new HiveConf(conf, HiveDriver.class);
     this.driverConf.addResource("hivedriver-default.xml");
     this.driverConf.addResource("hivedriver-site.xml");
-    connectionClass = this.driverConf.getClass(HIVE_CONNECTION_CLASS, EmbeddedThriftConnection.class,
-        ThriftConnection.class);
-    isEmbedded = (connectionClass.getName().equals(EmbeddedThriftConnection.class.getName()));
-    connectionExpiryTimeout = this.driverConf.getLong(HS2_CONNECTION_EXPIRY_DELAY, DEFAULT_EXPIRY_DELAY);
+    Class<? extends ThriftConnection> connectionClass = this.driverConf.getClass(HIVE_CONNECTION_CLASS,
+        EmbeddedThriftConnection.class, ThriftConnection.class);
+    // embedded connection has sessions of its own, so it has to be shared by all the users
+    boolean isEmbedded = (connectionClass.getName().equals(EmbeddedThriftConnection.class.getName()));
+    if (connectionPool != null) {
+      connectionPool.close();
+    }
+    connectionPool = new HiveConnectionPool(this.driverConf, connectionClass, isEmbedded,
+      this.driverConf.getInt(HS2_MAX_CONNECTIONS_PER_USER, DEFAULT_MAX_CONNECTIONS_PER_USER),
+      this.driverConf.getLong(HS2_CONNECTION_BORROW_TIMEOUT, DEFAULT_CONNECTION_BORROW_TIMEOUT),
+      this.driverConf.getLong(HS2_CONNECTION_EXPIRY_DELAY, DEFAULT_EXPIRY_DELAY));
     whetherCalculatePriority = this.driverConf.getBoolean(HS2_CALCULATE_PRIORITY, true);
     queryPriorityDecider = new DurationBasedQueryPriorityDecider(
       this.driverConf.getFloat(HS2_PARTITION_WEIGHT_MONTHLY, MONTHLY_PARTITION_WEIGHT_DEFAULT),
       this.driverConf.getFloat(HS2_PARTITION_WEIGHT_DAILY, DAILY_PARTITION_WEIGHT_DEFAULT),
       this.driverConf.getFloat(HS2_PARTITION_WEIGHT_HOURLY, HOURLY_PARTITION_WEIGHT_DEFAULT)
       );
+    if (completionTracker != null) {
+      completionTracker.close();
+    }
+    completionTracker = new QueryCompletionTracker("HiveDriver-CompletionTracker", new CompletionStatusChecker(),
+      this.driverConf.getLong(HS2_COMPLETION_POLL_INTERVAL, QueryCompletionTracker.DEFAULT_POLL_INTERVAL_MILLIS));
+    if (resultPrefetcher != null) {
+      resultPrefetcher.shutdownNow();
+      resultPrefetcher = null;
+    }
+    prefetchBatches = this.driverConf.getInt(HS2_RESULT_PREFETCH_BATCHES, DEFAULT_RESULT_PREFETCH_BATCHES);
+    if (prefetchBatches > 0) {
+      resultPrefetcher = Executors.newFixedThreadPool(
+        this.driverConf.getInt(HS2_RESULT_PREFETCH_THREADS, DEFAULT_RESULT_PREFETCH_THREADS), new ThreadFactory() {
+          private final AtomicInteger threadCount = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread th = new Thread(r, "HiveDriver-ResultPrefetcher-" + threadCount.incrementAndGet());
+            th.setDaemon(true);
+            return th;
+          }
+        });
+    }
   }
 
   /*
@@ -383,13 +333,23 @@ public class HiveDriver implements LensDriver {
     try {
       addPersistentPath(ctx);
       ctx.getConf().set("mapred.job.name", ctx.getQueryHandle().toString());
-      OperationHandle op = getClient().executeStatement(getSession(ctx), ctx.getSelectedDriverQuery(),
-        ctx.getConf().getValByRegex(".*"));
-      LOG.info("The hive operation handle: " + op);
-      ctx.setDriverOpHandle(op.toString());
-      hiveHandles.put(ctx.getQueryHandle(), op);
-      updateStatus(ctx);
-      OperationStatus status = getClient().getOperationStatus(op);
+      SessionHandle session = getSession(ctx);
+      OperationStatus status;
+      PooledConnection connection = borrowConnection();
+      try {
+        OperationHandle op = connection.getClient().executeStatement(session, ctx.getSelectedDriverQuery(),
+          ctx.getConf().getValByRegex(".*"));
+        LOG.info("The hive operation handle: " + op);
+        ctx.setDriverOpHandle(op.toString());
+        hiveHandles.put(ctx.getQueryHandle(), op);
+        updateStatus(ctx, connection.getClient());
+        status = connection.getClient().getOperationStatus(op);
+      } catch (HiveSQLException e) {
+        connection.checkError(e);
+        throw e;
+      } finally {
+        connectionPool.release(connection);
+      }
 
       if (status.getState() == OperationState.ERROR) {
         throw new LensException("Unknown error while running query " + ctx.getUserQuery());
@@ -433,8 +393,18 @@ public class HiveDriver implements LensDriver {
             + "User query: " + ctx.getUserQuery(), e);
         }
       }
-      OperationHandle op = getClient().executeStatementAsync(getSession(ctx), ctx.getSelectedDriverQuery(),
-        ctx.getConf().getValByRegex(".*"));
+      SessionHandle session = getSession(ctx);
+      OperationHandle op;
+      PooledConnection connection = borrowConnection();
+      try {
+        op = connection.getClient().executeStatementAsync(session, ctx.getSelectedDriverQuery(),
+          ctx.getConf().getValByRegex(".*"));
+      } catch (HiveSQLException e) {
+        connection.checkError(e);
+        throw e;
+      } finally {
+        connectionPool.release(connection);
+      }
       ctx.setDriverOpHandle(op.toString());
       LOG.info("QueryHandle: " + ctx.getQueryHandle() + " HiveHandle:" + op);
       hiveHandles.put(ctx.getQueryHandle(), op);
@@ -452,105 +422,176 @@ public class HiveDriver implements LensDriver {
    * @see org.apache.lens.server.api.driver.LensDriver#updateStatus(org.apache.lens.server.api.query.QueryContext)
    */
   @Override
-  public synchronized void updateStatus(QueryContext context) throws LensException {
-    LOG.debug("GetStatus: " + context.getQueryHandle());
+  public void updateStatus(QueryContext context) throws LensException {
     if (context.getDriverStatus().isFinished()) {
       return;
     }
+    PooledConnection connection = borrowConnection();
+    try {
+      updateStatus(context, connection.getClient());
+    } catch (LensException e) {
+      connection.checkError(e);
+      throw e;
+    } finally {
+      connectionPool.release(connection);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.driver.LensDriver#updateStatuses(java.util.Collection)
+   */
+  @Override
+  public Map<QueryHandle, LensException> updateStatuses(Collection<QueryContext> contexts) {
+    Map<QueryHandle, LensException> errors = new HashMap<QueryHandle, LensException>();
+    PooledConnection connection = null;
+    try {
+      for (QueryContext context : contexts) {
+        if (context.getDriverStatus().isFinished()) {
+          continue;
+        }
+        try {
+          // a single connection is borrowed for all the queries
+          if (connection == null) {
+            connection = borrowConnection();
+          }
+          updateStatus(context, connection.getClient());
+        } catch (LensException e) {
+          if (connection != null) {
+            connection.checkError(e);
+          }
+          errors.put(context.getQueryHandle(), e);
+        }
+      }
+    } finally {
+      connectionPool.release(connection);
+    }
+    return errors;
+  }
+
+  /**
+   * Update driver query status of the query from hive server. Status of different queries can be updated
+   * concurrently, as each thread borrows its own connection. Status listeners are notified when the query is found to
+   * have finished.
+   *
+   * @param context
+   *          the context
+   * @param client
+   *          the client
+   * @throws LensException
+   *           the lens exception
+   */
+  private void updateStatus(QueryContext context, CLIServiceClient client) throws LensException {
+    LOG.debug("GetStatus: " + context.getQueryHandle());
     OperationHandle hiveHandle = getHiveHandle(context.getQueryHandle());
-    ByteArrayInputStream in = null;
     try {
       // Get operation status from hive server
       LOG.debug("GetStatus hiveHandle: " + hiveHandle);
-      OperationStatus opStatus = getClient().getOperationStatus(hiveHandle);
+      OperationStatus opStatus = client.getOperationStatus(hiveHandle);
       LOG.debug("GetStatus on hiveHandle: " + hiveHandle + " returned state:" + opStatus);
 
-      switch (opStatus.getState()) {
-      case CANCELED:
-        context.getDriverStatus().setState(DriverQueryState.CANCELED);
-        context.getDriverStatus().setStatusMessage("Query has been cancelled!");
-        break;
-      case CLOSED:
-        context.getDriverStatus().setState(DriverQueryState.CLOSED);
-        context.getDriverStatus().setStatusMessage("Query has been closed!");
-        break;
-      case ERROR:
-        context.getDriverStatus().setState(DriverQueryState.FAILED);
-        context.getDriverStatus().setStatusMessage(
-            "Query failed with errorCode:" + opStatus.getOperationException().getErrorCode() + " with errorMessage: "
-                + opStatus.getOperationException().getMessage());
-        break;
-      case FINISHED:
-        context.getDriverStatus().setState(DriverQueryState.SUCCESSFUL);
-        context.getDriverStatus().setStatusMessage("Query is successful!");
-        context.getDriverStatus().setResultSetAvailable(hiveHandle.hasResultSet());
-        break;
-      case INITIALIZED:
-        context.getDriverStatus().setState(DriverQueryState.INITIALIZED);
-        context.getDriverStatus().setStatusMessage("Query is initiazed in HiveServer!");
-        break;
-      case RUNNING:
-        context.getDriverStatus().setState(DriverQueryState.RUNNING);
-        context.getDriverStatus().setStatusMessage("Query is running in HiveServer!");
-        break;
-      case PENDING:
-        context.getDriverStatus().setState(DriverQueryState.PENDING);
-        context.getDriverStatus().setStatusMessage("Query is pending in HiveServer");
-        break;
-      case UNKNOWN:
-      default:
-        throw new LensException("Query is in unknown state at HiveServer");
-      }
-
-      float progress = 0f;
-      String jsonTaskStatus = opStatus.getTaskStatus();
-      String errorMsg = null;
-      if (StringUtils.isNotBlank(jsonTaskStatus)) {
-        ObjectMapper mapper = new ObjectMapper();
-        in = new ByteArrayInputStream(jsonTaskStatus.getBytes("UTF-8"));
-        List<TaskStatus> taskStatuses = mapper.readValue(in, new TypeReference<List<TaskStatus>>() {
-        });
-        int completedTasks = 0;
-        StringBuilder errorMessage = new StringBuilder();
-        for (TaskStatus taskStat : taskStatuses) {
-          String tstate = taskStat.getTaskState();
-          if ("FINISHED_STATE".equalsIgnoreCase(tstate)) {
-            completedTasks++;
-          }
-          if ("FAILED_STATE".equalsIgnoreCase(tstate)) {
-            appendTaskIds(errorMessage, taskStat);
-            errorMessage.append(" has failed! ");
-          }
-        }
-        progress = taskStatuses.size() == 0 ? 0 : (float) completedTasks / taskStatuses.size();
-        errorMsg = errorMessage.toString();
-      } else {
-        LOG.warn("Empty task statuses");
+      // status is applied holding the context lock, as the query can be cancelled or closed concurrently
+      boolean finished;
+      synchronized (context) {
+        boolean wasFinished = context.getDriverStatus().isFinished();
+        applyStatus(context, hiveHandle, opStatus);
+        finished = !wasFinished && context.getDriverStatus().isFinished();
       }
-      String error = null;
-      if (StringUtils.isNotBlank(errorMsg)) {
-        error = errorMsg;
-      } else if (opStatus.getState().equals(OperationState.ERROR)) {
-        error = context.getDriverStatus().getStatusMessage();
+      if (finished) {
+        notifyStatusChange(context.getQueryHandle(), context.getDriverStatus().getState());
       }
-      context.getDriverStatus().setErrorMessage(error);
-      context.getDriverStatus().setProgressMessage(jsonTaskStatus);
-      context.getDriverStatus().setProgress(progress);
-      context.getDriverStatus().setDriverStartTime(opStatus.getOperationStarted());
-      context.getDriverStatus().setDriverFinishTime(opStatus.getOperationCompleted());
     } catch (Exception e) {
       LOG.error("Error getting query status", e);
       handleHiveServerError(context, e);
       throw new LensException("Error getting query status", e);
-    } finally {
-      if (in != null) {
-        try {
-          in.close();
-        } catch (IOException e) {
-          e.printStackTrace();
+    }
+  }
+
+  /**
+   * Apply the operation status fetched from hive server to the driver status of the query.
+   *
+   * @param context
+   *          the context
+   * @param hiveHandle
+   *          the hive handle
+   * @param opStatus
+   *          the operation status
+   * @throws Exception
+   *           the exception
+   */
+  private void applyStatus(QueryContext context, OperationHandle hiveHandle, OperationStatus opStatus)
+    throws Exception {
+    switch (opStatus.getState()) {
+    case CANCELED:
+      context.getDriverStatus().setState(DriverQueryState.CANCELED);
+      context.getDriverStatus().setStatusMessage("Query has been cancelled!");
+      break;
+    case CLOSED:
+      context.getDriverStatus().setState(DriverQueryState.CLOSED);
+      context.getDriverStatus().setStatusMessage("Query has been closed!");
+      break;
+    case ERROR:
+      context.getDriverStatus().setState(DriverQueryState.FAILED);
+      context.getDriverStatus().setStatusMessage(
+          "Query failed with errorCode:" + opStatus.getOperationException().getErrorCode() + " with errorMessage: "
+              + opStatus.getOperationException().getMessage());
+      break;
+    case FINISHED:
+      context.getDriverStatus().setState(DriverQueryState.SUCCESSFUL);
+      context.getDriverStatus().setStatusMessage("Query is successful!");
+      context.getDriverStatus().setResultSetAvailable(hiveHandle.hasResultSet());
+      break;
+    case INITIALIZED:
+      context.getDriverStatus().setState(DriverQueryState.INITIALIZED);
+      context.getDriverStatus().setStatusMessage("Query is initiazed in HiveServer!");
+      break;
+    case RUNNING:
+      context.getDriverStatus().setState(DriverQueryState.RUNNING);
+      context.getDriverStatus().setStatusMessage("Query is running in HiveServer!");
+      break;
+    case PENDING:
+      context.getDriverStatus().setState(DriverQueryState.PENDING);
+      context.getDriverStatus().setStatusMessage("Query is pending in HiveServer");
+      break;
+    case UNKNOWN:
+    default:
+      throw new LensException("Query is in unknown state at HiveServer");
+    }
+
+    float progress = 0f;
+    String jsonTaskStatus = opStatus.getTaskStatus();
+    String errorMsg = null;
+    if (StringUtils.isNotBlank(jsonTaskStatus)) {
+      List<TaskStatus> taskStatuses = TASK_STATUS_READER.readValue(jsonTaskStatus);
+      int completedTasks = 0;
+      StringBuilder errorMessage = new StringBuilder();
+      for (TaskStatus taskStat : taskStatuses) {
+        String tstate = taskStat.getTaskState();
+        if ("FINISHED_STATE".equalsIgnoreCase(tstate)) {
+          completedTasks++;
+        }
+        if ("FAILED_STATE".equalsIgnoreCase(tstate)) {
+          appendTaskIds(errorMessage, taskStat);
+          errorMessage.append(" has failed! ");
         }
       }
+      progress = taskStatuses.size() == 0 ? 0 : (float) completedTasks / taskStatuses.size();
+      errorMsg = errorMessage.toString();
+    } else {
+      LOG.warn("Empty task statuses");
     }
+    String error = null;
+    if (StringUtils.isNotBlank(errorMsg)) {
+      error = errorMsg;
+    } else if (opStatus.getState().equals(OperationState.ERROR)) {
+      error = context.getDriverStatus().getStatusMessage();
+    }
+    context.getDriverStatus().setErrorMessage(error);
+    context.getDriverStatus().setProgressMessage(jsonTaskStatus);
+    context.getDriverStatus().setProgress(progress);
+    context.getDriverStatus().setDriverStartTime(opStatus.getOperationStarted());
+    context.getDriverStatus().setDriverFinishTime(opStatus.getOperationCompleted());
   }
 
   /**
@@ -602,11 +643,15 @@ public class HiveDriver implements LensDriver {
     OperationHandle opHandle = hiveHandles.remove(handle);
     if (opHandle != null) {
       LOG.info("CloseQuery: " + opHandle);
+      PooledConnection connection = borrowConnection();
       try {
-        getClient().closeOperation(opHandle);
+        connection.getClient().closeOperation(opHandle);
       } catch (HiveSQLException e) {
+        connection.checkError(e);
         checkInvalidOperation(handle, e);
         throw new LensException("Unable to close query", e);
+      } finally {
+        connectionPool.release(connection);
       }
     }
   }
@@ -620,14 +665,19 @@ public class HiveDriver implements LensDriver {
   public boolean cancelQuery(QueryHandle handle) throws LensException {
     LOG.info("CancelQuery: " + handle);
     OperationHandle hiveHandle = getHiveHandle(handle);
+    PooledConnection connection = borrowConnection();
     try {
       LOG.info("CancelQuery hiveHandle: " + hiveHandle);
-      getClient().cancelOperation(hiveHandle);
-      return true;
+      connection.getClient().cancelOperation(hiveHandle);
     } catch (HiveSQLException e) {
+      connection.checkError(e);
       checkInvalidOperation(handle, e);
       throw new LensException();
+    } finally {
+      connectionPool.release(connection);
     }
+    notifyStatusChange(handle, DriverQueryState.CANCELED);
+    return true;
   }
 
   /*
@@ -638,23 +688,36 @@ public class HiveDriver implements LensDriver {
   @Override
   public void close() {
     LOG.info("CloseDriver");
+    if (completionTracker != null) {
+      completionTracker.close();
+    }
     // Close this driver and release all resources
     sessionLock.lock();
     try {
       for (String lensSession : lensToHiveSession.keySet()) {
+        PooledConnection connection = null;
         try {
-          getClient().closeSession(lensToHiveSession.get(lensSession));
+          connection = borrowConnection();
+          connection.getClient().closeSession(lensToHiveSession.get(lensSession));
         } catch (Exception e) {
           checkInvalidSession(e);
           LOG.warn(
               "Error closing session for lens session: " + lensSession + ", hive session: "
                   + lensToHiveSession.get(lensSession), e);
+        } finally {
+          connectionPool.release(connection);
         }
       }
       lensToHiveSession.clear();
     } finally {
       sessionLock.unlock();
     }
+    if (resultPrefetcher != null) {
+      resultPrefetcher.shutdownNow();
+    }
+    if (connectionPool != null) {
+      connectionPool.close();
+    }
   }
 
   /**
@@ -668,56 +731,84 @@ public class HiveDriver implements LensDriver {
     driverListeners.add(driverEventListener);
   }
 
-  protected CLIServiceClient getClient() throws LensException {
-    if (isEmbedded) {
-      if (embeddedConnection == null) {
-        try {
-          embeddedConnection = connectionClass.newInstance();
-        } catch (Exception e) {
-          throw new LensException(e);
-        }
-        LOG.info("New thrift connection " + connectionClass);
-      }
-      return embeddedConnection.getClient(driverConf);
-    } else {
-      connectionLock.lock();
+  /**
+   * Add a listener for query status changes. HiveServer does not push status changes, so listeners are notified when a
+   * status update finds a query finished, when a query tracked for completion notification finishes, or when a query
+   * is cancelled. Queries are not polled for the sake of the listeners alone.
+   *
+   * @param statusListener
+   *          the status listener
+   */
+  @Override
+  public void registerQueryStatusListener(LensEventListener<DriverQueryStatusChanged> statusListener) {
+    statusListeners.add(statusListener);
+  }
+
+  /**
+   * Notify status listeners about the new state of a query.
+   *
+   * @param handle
+   *          the query handle
+   * @param state
+   *          the new state
+   */
+  private void notifyStatusChange(QueryHandle handle, DriverQueryState state) {
+    if (statusListeners.isEmpty()) {
+      return;
+    }
+    DriverQueryStatusChanged event = new DriverQueryStatusChanged(System.currentTimeMillis(), this, handle, state);
+    for (LensEventListener<DriverQueryStatusChanged> listener : statusListeners) {
       try {
-        HiveConf connectionConf = driverConf;
-        if (SessionState.get() != null && SessionState.get().getUserName() != null) {
-          connectionConf = new HiveConf(driverConf);
-          connectionConf.set(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_CLIENT_USER.varname, SessionState.get()
-              .getUserName());
-        }
-        String user = connectionConf.getVar(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_CLIENT_USER);
-        Map<Long, ExpirableConnection> userThreads = threadConnections.get(user.toLowerCase());
-        if (userThreads == null) {
-          userThreads = new HashMap<Long, ExpirableConnection>();
-          threadConnections.put(user.toLowerCase(), userThreads);
-        }
-        ExpirableConnection connection = userThreads.get(Thread.currentThread().getId());
-        if (connection == null || connection.isExpired()) {
-          try {
-            ThriftConnection tconn = connectionClass.newInstance();
-            connection = new ExpirableConnection(tconn, connectionExpiryTimeout);
-            thriftConnExpiryQueue.offer(connection);
-            userThreads.put(Thread.currentThread().getId(), connection);
-            LOG.info("New thrift connection " + connectionClass + " for thread:" + Thread.currentThread().getId()
-                + " for user:" + user + " connection ID=" + connection.getConnId());
-          } catch (Exception e) {
-            throw new LensException(e);
-          }
-        } else {
-          synchronized (thriftConnExpiryQueue) {
-            thriftConnExpiryQueue.remove(connection);
-            thriftConnExpiryQueue.offer(connection);
-          }
-        }
-        return connection.getConnection().getClient(connectionConf);
-      } finally {
-        connectionLock.unlock();
+        listener.onEvent(event);
+      } catch (Exception exc) {
+        LOG.error("Error sending query status event to listener " + listener, exc);
       }
+    }
+  }
 
+  /**
+   * Borrow a connection to hive server for the user of the current session, or the thrift client user of the driver
+   * conf if there is no session. The connection has to be released to the pool once done, and is not to be held
+   * across calls which borrow a connection themselves.
+   *
+   * @return the connection
+   * @throws LensException
+   *           the lens exception
+   */
+  private PooledConnection borrowConnection() throws LensException {
+    return connectionPool.borrow(getConnectionUser());
+  }
+
+  /**
+   * Gets the user of the connections borrowed in the current thread.
+   *
+   * @return the connection user
+   */
+  private String getConnectionUser() {
+    if (SessionState.get() != null && SessionState.get().getUserName() != null) {
+      return SessionState.get().getUserName();
     }
+    return driverConf.getVar(HiveConf.ConfVars.HIVE_SERVER2_THRIFT_CLIENT_USER);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.LongGaugeSet#getGaugeNames()
+   */
+  @Override
+  public Collection<String> getGaugeNames() {
+    return connectionPool.getGaugeNames();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.LongGaugeSet#getGaugeValue(java.lang.String)
+   */
+  @Override
+  public long getGaugeValue(String name) {
+    return connectionPool.getGaugeValue(name);
   }
 
   /**
@@ -737,9 +828,17 @@ public class HiveDriver implements LensDriver {
     try {
       if (op.hasResultSet() || context.isDriverPersistent()) {
         if (context.isDriverPersistent()) {
-          return new HivePersistentResultSet(new Path(context.getHdfsoutPath()), op, getClient());
+          PooledConnection connection = borrowConnection();
+          try {
+            return new HivePersistentResultSet(new Path(context.getHdfsoutPath()), op, connection.getClient());
+          } finally {
+            connectionPool.release(connection);
+          }
         } else {
-          return new HiveInMemoryResultSet(op, getClient(), closeAfterFetch);
+          // rows are fetched later, borrowing a connection per fetch
+          return new HiveInMemoryResultSet(op, connectionPool, getConnectionUser(), closeAfterFetch, resultPrefetcher,
+            prefetchBatches, driverConf.getLong(HS2_RESULT_FETCH_TARGET_BYTES, DEFAULT_RESULT_FETCH_TARGET_BYTES),
+            driverConf.getInt(HS2_RESULT_FETCH_MAX_ROWS, DEFAULT_RESULT_FETCH_MAX_ROWS));
         }
       } else {
         // queries that do not have result
@@ -807,8 +906,13 @@ public class HiveDriver implements LensDriver {
 
       SessionHandle hiveSession;
       if (!lensToHiveSession.containsKey(lensSession)) {
+        PooledConnection connection = null;
         try {
-          hiveSession = getClient().openSession(ctx.getClusterUser(), "");
+          connection = borrowConnection();
+          hiveSession = connection.getClient().openSession(ctx.getClusterUser(), "");
+          // released before notifying listeners, which could run queries on the new session
+          connectionPool.release(connection);
+          connection = null;
           lensToHiveSession.put(lensSession, hiveSession);
           LOG.info("New hive session for user: " + ctx.getClusterUser() + ", lens session: " + lensSession
               + " session handle: " + hiveSession.getHandleIdentifier());
@@ -821,6 +925,10 @@ public class HiveDriver implements LensDriver {
             }
           }
         } catch (Exception e) {
+          if (connection != null) {
+            connection.checkError(e);
+            connectionPool.release(connection);
+          }
           throw new LensException(e);
         }
       } else {
@@ -850,93 +958,70 @@ public class HiveDriver implements LensDriver {
   }
 
   /**
-   * The Class QueryCompletionNotifier.
+   * Checks status of the queries tracked for completion notification, with a single connection for all of them.
    */
-  private class QueryCompletionNotifier implements Runnable {
-
-    /** The poll interval. */
-    long pollInterval;
-
-    /** The hive handle. */
-    OperationHandle hiveHandle;
-
-    /** The timeout millis. */
-    long timeoutMillis;
-
-    /** The listener. */
-    QueryCompletionListener listener;
-
-    /** The handle. */
-    QueryHandle handle;
-
-    /**
-     * Instantiates a new query completion notifier.
-     *
-     * @param handle
-     *          the handle
-     * @param timeoutMillis
-     *          the timeout millis
-     * @param listener
-     *          the listener
-     * @throws LensException
-     *           the lens exception
-     */
-    QueryCompletionNotifier(QueryHandle handle, long timeoutMillis, QueryCompletionListener listener)
-        throws LensException {
-      hiveHandle = getHiveHandle(handle);
-      this.timeoutMillis = timeoutMillis;
-      this.listener = listener;
-      this.pollInterval = timeoutMillis / 10;
-    }
+  private class CompletionStatusChecker implements QueryCompletionTracker.StatusChecker {
 
     /*
      * (non-Javadoc)
      * 
-     * @see java.lang.Runnable#run()
+     * @see
+     * org.apache.lens.server.api.driver.QueryCompletionTracker.StatusChecker#getFinishedStates(java.util.Collection
+     * , java.util.Map)
      */
     @Override
-    public void run() {
-      // till query is complete or timeout has reached
-      long timeSpent = 0;
-      String error = null;
+    public Map<QueryHandle, DriverQueryState> getFinishedStates(Collection<QueryHandle> handles,
+        Map<QueryHandle, String> errors) {
+      Map<QueryHandle, DriverQueryState> finishedStates = new HashMap<QueryHandle, DriverQueryState>();
+      PooledConnection connection = null;
       try {
-        while (timeSpent <= timeoutMillis) {
-          if (isFinished(hiveHandle)) {
-            listener.onCompletion(handle);
-            return;
+        for (QueryHandle handle : handles) {
+          try {
+            if (connection == null) {
+              connection = borrowConnection();
+            }
+            DriverQueryState finishedState = getFinishedState(connection.getClient()
+                .getOperationStatus(getHiveHandle(handle)).getState());
+            if (finishedState != null) {
+              finishedStates.put(handle, finishedState);
+            }
+          } catch (Exception e) {
+            if (connection != null) {
+              connection.checkError(e);
+            }
+            LOG.warn("Error while polling for status of " + handle, e);
+            errors.put(handle, "error polling");
           }
-          Thread.sleep(pollInterval);
-          timeSpent += pollInterval;
         }
-        error = "timedout";
-      } catch (Exception e) {
-        LOG.warn("Error while polling for status", e);
-        error = "error polling";
+      } finally {
+        connectionPool.release(connection);
       }
-      listener.onError(handle, error);
+      for (Map.Entry<QueryHandle, DriverQueryState> entry : finishedStates.entrySet()) {
+        notifyStatusChange(entry.getKey(), entry.getValue());
+      }
+      return finishedStates;
     }
 
     /**
-     * Checks if is finished.
+     * Gets the driver state of the operation if it has finished.
      *
-     * @param hiveHandle
-     *          the hive handle
-     * @return true, if is finished
-     * @throws LensException
-     *           the lens exception
+     * @param state
+     *          the operation state
+     * @return the finished state, null if the operation is not finished yet
      */
-    private boolean isFinished(OperationHandle hiveHandle) throws LensException {
-      OperationState state;
-      try {
-        state = getClient().getOperationStatus(hiveHandle).getState();
-      } catch (HiveSQLException e) {
-        throw new LensException("Could not get Status", e);
-      }
-      if (state.equals(OperationState.FINISHED) || state.equals(OperationState.CANCELED)
-          || state.equals(OperationState.ERROR) || state.equals(OperationState.CLOSED)) {
-        return true;
+    private DriverQueryState getFinishedState(OperationState state) {
+      switch (state) {
+      case FINISHED:
+        return DriverQueryState.SUCCESSFUL;
+      case CANCELED:
+        return DriverQueryState.CANCELED;
+      case ERROR:
+        return DriverQueryState.FAILED;
+      case CLOSED:
+        return DriverQueryState.CLOSED;
+      default:
+        return null;
       }
-      return false;
     }
   }
 
@@ -950,8 +1035,7 @@ public class HiveDriver implements LensDriver {
   @Override
   public void registerForCompletionNotification(QueryHandle handle, long timeoutMillis, QueryCompletionListener listener)
       throws LensException {
-    Thread th = new Thread(new QueryCompletionNotifier(handle, timeoutMillis, listener));
-    th.start();
+    completionTracker.track(handle, timeoutMillis, listener);
   }
 
   /*
@@ -1123,13 +1207,20 @@ public class HiveDriver implements LensDriver {
     try {
       SessionHandle hiveSession = lensToHiveSession.remove(sessionHandle.getPublicId().toString());
       if (hiveSession != null) {
+        PooledConnection connection = null;
         try {
-          getClient().closeSession(hiveSession);
+          connection = borrowConnection();
+          connection.getClient().closeSession(hiveSession);
           LOG.info("Closed Hive session " + hiveSession.getHandleIdentifier() + " for lens session "
               + sessionHandle.getPublicId());
         } catch (Exception e) {
+          if (connection != null) {
+            connection.checkError(e);
+          }
           LOG.error("Error closing hive session " + hiveSession.getHandleIdentifier() + " for lens session "
               + sessionHandle.getPublicId(), e);
+        } finally {
+          connectionPool.release(connection);
         }
       }
     } finally {
@@ -1138,26 +1229,10 @@ public class HiveDriver implements LensDriver {
   }
 
   /**
-   * Close all connections.
+   * Close all pooled connections, so that subsequent calls open fresh connections to the hive server.
    */
   private void closeAllConnections() {
-    connectionLock.lock();
-    try {
-      synchronized (thriftConnExpiryQueue) {
-        for (Map<Long, ExpirableConnection> connections : threadConnections.values()) {
-          for (ExpirableConnection connection : connections.values()) {
-            try {
-              connection.getConnection().close();
-            } catch (Exception ce) {
-              LOG.warn("Error closing connection to hive server");
-            }
-          }
-        }
-        threadConnections.clear();
-      }
-    } finally {
-      connectionLock.unlock();
-    }
+    connectionPool.invalidateAll();
   }
 
   // For test
@@ -21,9 +21,11 @@ package org.apache.lens.driver.hive;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
-import org.apache.hive.service.cli.CLIServiceClient;
 import org.apache.hive.service.cli.FetchOrientation;
 import org.apache.hive.service.cli.HiveSQLException;
 import org.apache.hive.service.cli.OperationHandle;
@@ -31,16 +33,27 @@ import org.apache.hive.service.cli.RowSet;
 import org.apache.hive.service.cli.TableSchema;
 import org.apache.lens.api.LensException;
 import org.apache.lens.api.query.ResultRow;
+import org.apache.lens.driver.hive.HiveConnectionPool.PooledConnection;
 import org.apache.lens.server.api.driver.LensResultSetMetadata;
 import org.apache.lens.server.api.driver.InMemoryResultSet;
 
 /**
  * The Class HiveInMemoryResultSet.
+ *
+ * Rows are fetched from hive server in batches. When a prefetch executor is given, the next batches are fetched in
+ * the background while the current batch is being read, so that reading does not wait for a round trip to hive server
+ * at every batch boundary.
  */
 public class HiveInMemoryResultSet extends InMemoryResultSet {
 
-  /** The client. */
-  private final CLIServiceClient client;
+  /** The approximate size in bytes of a value whose size is not estimated from its content. */
+  private static final int DEFAULT_VALUE_SIZE = 16;
+
+  /** The connection pool, a connection is borrowed only for the duration of each call to the hive server. */
+  private final HiveConnectionPool connectionPool;
+
+  /** The user on whose behalf connections are borrowed. */
+  private final String user;
 
   /** The op handle. */
   private final OperationHandle opHandle;
@@ -48,17 +61,41 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
   /** The metadata. */
   private TableSchema metadata;
 
-  /** The row set. */
-  private RowSet rowSet;
-
   /** The fetch size. */
-  private int fetchSize = 100;
+  private volatile int fetchSize = 100;
+
+  /** The fetch size computed from the row width, zero till the width of the rows is known. */
+  private volatile int adaptiveFetchSize;
+
+  /** The size in bytes of a batch which the fetch size is adapted to, zero to disable adaptive fetch size. */
+  private final long targetBatchBytes;
+
+  /** The max fetch size when the fetch size is adapted to the row width. */
+  private final int maxFetchSize;
+
+  /** The executor prefetching batches in background, null if batches are fetched only when they are read. */
+  private final Executor prefetchExecutor;
+
+  /** The max number of batches fetched ahead of the batch being read. */
+  private final int prefetchBatches;
+
+  /** The lock guarding the prefetch state. */
+  private final Object prefetchLock = new Object();
+
+  /** The batches fetched ahead, in the order of fetch. */
+  private final LinkedList<List<Object[]>> prefetched = new LinkedList<List<Object[]>>();
+
+  /** Whether a prefetch task is running. */
+  private boolean prefetching;
+
+  /** The error of the last prefetch, thrown to the reader once the fetched batches are read. */
+  private LensException prefetchError;
 
   /** The fetched rows itr. */
   private Iterator<Object[]> fetchedRowsItr;
 
   /** The no more results. */
-  private boolean noMoreResults;
+  private volatile boolean noMoreResults;
 
   /** The close after fecth. */
   private boolean closeAfterFecth;
@@ -66,24 +103,72 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
   /** The num columns. */
   int numColumns;
 
+  /**
+   * Instantiates a new hive in memory result set, which fetches batches only when they are read.
+   *
+   * @param hiveHandle
+   *          the hive handle
+   * @param connectionPool
+   *          the connection pool
+   * @param user
+   *          the user borrowing connections
+   * @param closeAfterFecth
+   *          the close after fecth
+   * @throws HiveSQLException
+   *           the hive sql exception
+   * @throws LensException
+   *           if no connection could be borrowed from the pool
+   */
+  public HiveInMemoryResultSet(OperationHandle hiveHandle, HiveConnectionPool connectionPool, String user,
+      boolean closeAfterFecth) throws HiveSQLException, LensException {
+    this(hiveHandle, connectionPool, user, closeAfterFecth, null, 0, 0, 0);
+  }
+
   /**
    * Instantiates a new hive in memory result set.
    *
    * @param hiveHandle
    *          the hive handle
-   * @param client
-   *          the client
+   * @param connectionPool
+   *          the connection pool
+   * @param user
+   *          the user borrowing connections
    * @param closeAfterFecth
    *          the close after fecth
+   * @param prefetchExecutor
+   *          the executor to prefetch batches in background, null to fetch batches only when they are read
+   * @param prefetchBatches
+   *          the max number of batches to fetch ahead of the batch being read
+   * @param targetBatchBytes
+   *          the size in bytes of a batch to adapt the fetch size to, once the width of the rows is known. Non positive
+   *          value keeps the fetch size set through {@link #setFetchSize(int)}
+   * @param maxFetchSize
+   *          the max fetch size when adapting it to the row width
    * @throws HiveSQLException
    *           the hive sql exception
+   * @throws LensException
+   *           if no connection could be borrowed from the pool
    */
-  public HiveInMemoryResultSet(OperationHandle hiveHandle, CLIServiceClient client, boolean closeAfterFecth)
-      throws HiveSQLException {
-    this.client = client;
+  public HiveInMemoryResultSet(OperationHandle hiveHandle, HiveConnectionPool connectionPool, String user,
+      boolean closeAfterFecth, Executor prefetchExecutor, int prefetchBatches, long targetBatchBytes,
+      int maxFetchSize) throws HiveSQLException, LensException {
+    this.connectionPool = connectionPool;
+    this.user = user;
     this.opHandle = hiveHandle;
     this.closeAfterFecth = closeAfterFecth;
-    this.metadata = client.getResultSetMetadata(opHandle);
+    this.prefetchExecutor = prefetchBatches > 0 ? prefetchExecutor : null;
+    this.prefetchBatches = prefetchBatches;
+    this.targetBatchBytes = targetBatchBytes;
+    this.maxFetchSize = Math.max(maxFetchSize, 1);
+    PooledConnection connection = connectionPool.borrow(user);
+    try {
+      this.metadata = connection.getClient().getResultSetMetadata(opHandle);
+    } catch (HiveSQLException e) {
+      connection.checkError(e);
+      throw e;
+    } finally {
+      connectionPool.release(connection);
+    }
     this.numColumns = metadata.getColumnDescriptors().size();
   }
 
@@ -113,23 +198,14 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
    */
   @Override
   public boolean hasNext() throws LensException {
-    if (fetchedRowsItr == null || !fetchedRowsItr.hasNext()) {
-      try {
-        rowSet = client.fetchResults(opHandle, FetchOrientation.FETCH_NEXT, fetchSize);
-        noMoreResults = rowSet.numRows() == 0;
-        if (noMoreResults) {
-          if (closeAfterFecth) {
-            HiveDriver.LOG.info("No more results closing the query");
-            client.closeOperation(opHandle);
-          }
-          return false;
-        }
-        fetchedRowsItr = rowSet.iterator();
-      } catch (Exception e) {
-        throw new LensException(e);
+    while (fetchedRowsItr == null || !fetchedRowsItr.hasNext()) {
+      List<Object[]> batch = prefetchExecutor == null ? fetchBatch() : nextPrefetchedBatch();
+      if (batch == null) {
+        return false;
       }
+      fetchedRowsItr = batch.iterator();
     }
-    return fetchedRowsItr.hasNext();
+    return true;
   }
 
   /*
@@ -139,11 +215,8 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
    */
   @Override
   public ResultRow next() throws LensException {
-    List<Object> results = new ArrayList<Object>(numColumns);
-    Object[] row = fetchedRowsItr.next();
-    results.addAll(Arrays.asList(row));
-
-    return new ResultRow(results);
+    // rows are copied when the batch is fetched, so the row can be viewed as a list without copying it again
+    return new ResultRow(Arrays.asList(fetchedRowsItr.next()));
   }
 
   @Override
@@ -151,4 +224,176 @@ public class HiveInMemoryResultSet extends InMemoryResultSet {
     assert size >= 0;
     fetchSize = size == 0 ? Integer.MAX_VALUE : size;
   }
+
+  /**
+   * Gets the number of rows to fetch in the next batch.
+   *
+   * @return the fetch size
+   */
+  int getNextFetchSize() {
+    int adaptive = adaptiveFetchSize;
+    return adaptive > 0 ? adaptive : fetchSize;
+  }
+
+  /**
+   * Fetch the next batch of rows from hive server. The rows of the fetched row set are copied, as the row set iterator
+   * reuses the same array for every row. The operation is closed once there are no more rows, if it has to be closed
+   * after fetch.
+   *
+   * @return the rows of the batch, null if there are no more rows
+   * @throws LensException
+   *           the lens exception
+   */
+  private List<Object[]> fetchBatch() throws LensException {
+    if (noMoreResults) {
+      // operation might already be closed
+      return null;
+    }
+    PooledConnection connection = connectionPool.borrow(user);
+    try {
+      RowSet rowSet = connection.getClient().fetchResults(opHandle, FetchOrientation.FETCH_NEXT, getNextFetchSize());
+      if (rowSet.numRows() == 0) {
+        noMoreResults = true;
+        if (closeAfterFecth) {
+          HiveDriver.LOG.info("No more results closing the query");
+          connection.getClient().closeOperation(opHandle);
+        }
+        return null;
+      }
+      List<Object[]> batch = new ArrayList<Object[]>(rowSet.numRows());
+      long batchBytes = 0;
+      for (Object[] row : rowSet) {
+        Object[] copy = row.clone();
+        batch.add(copy);
+        if (targetBatchBytes > 0) {
+          batchBytes += estimateSize(copy);
+        }
+      }
+      if (targetBatchBytes > 0) {
+        long rowBytes = Math.max(batchBytes / batch.size(), 1);
+        adaptiveFetchSize = (int) Math.max(1, Math.min(maxFetchSize, targetBatchBytes / rowBytes));
+      }
+      return batch;
+    } catch (Exception e) {
+      connection.checkError(e);
+      throw new LensException(e);
+    } finally {
+      connectionPool.release(connection);
+    }
+  }
+
+  /**
+   * Take the next prefetched batch, waiting for it to be fetched if required, and start prefetching the batches after
+   * it.
+   *
+   * @return the rows of the batch, null if there are no more rows
+   * @throws LensException
+   *           if the batch could not be fetched
+   */
+  private List<Object[]> nextPrefetchedBatch() throws LensException {
+    synchronized (prefetchLock) {
+      startPrefetch();
+      while (prefetched.isEmpty() && prefetching) {
+        try {
+          prefetchLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new LensException("Interrupted while waiting for results of " + opHandle, e);
+        }
+      }
+      if (prefetched.isEmpty()) {
+        if (prefetchError != null) {
+          throw prefetchError;
+        }
+        return null;
+      }
+      List<Object[]> batch = prefetched.removeFirst();
+      startPrefetch();
+      return batch;
+    }
+  }
+
+  /**
+   * Start a prefetch task if none is running and fewer batches than required are fetched ahead. Batches are fetched
+   * one after another by the same task, as hive server returns the rows of an operation in the order of fetch calls.
+   */
+  private void startPrefetch() {
+    if (prefetching || noMoreResults || prefetchError != null || prefetched.size() >= prefetchBatches) {
+      return;
+    }
+    prefetching = true;
+    try {
+      prefetchExecutor.execute(new Prefetcher());
+    } catch (RejectedExecutionException e) {
+      prefetching = false;
+      prefetchError = new LensException("Could not prefetch results of " + opHandle, e);
+    }
+  }
+
+  /**
+   * Fetches batches ahead of the reader till enough batches are fetched, or there are no more rows.
+   */
+  private class Prefetcher implements Runnable {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      while (true) {
+        synchronized (prefetchLock) {
+          if (noMoreResults || prefetched.size() >= prefetchBatches) {
+            prefetching = false;
+            prefetchLock.notifyAll();
+            return;
+          }
+        }
+        List<Object[]> batch = null;
+        LensException error = null;
+        try {
+          batch = fetchBatch();
+        } catch (LensException e) {
+          error = e;
+        } catch (RuntimeException e) {
+          error = new LensException(e);
+        }
+        synchronized (prefetchLock) {
+          if (error != null) {
+            HiveDriver.LOG.warn("Error prefetching results of " + opHandle, error);
+            prefetchError = error;
+            prefetching = false;
+          } else if (batch != null) {
+            prefetched.addLast(batch);
+          }
+          prefetchLock.notifyAll();
+          if (error != null) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Estimate the size in bytes of a row, to adapt the fetch size to the row width.
+   *
+   * @param row
+   *          the row
+   * @return the estimated size
+   */
+  static long estimateSize(Object[] row) {
+    long size = 0;
+    for (Object value : row) {
+      if (value instanceof String) {
+        size += 2 * ((String) value).length();
+      } else if (value instanceof byte[]) {
+        size += ((byte[]) value).length;
+      } else {
+        size += DEFAULT_VALUE_SIZE;
+      }
+    }
+    return size;
+  }
 }
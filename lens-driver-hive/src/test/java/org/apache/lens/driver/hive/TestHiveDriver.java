@@ -22,6 +22,8 @@ import static org.testng.Assert.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Assert;
 
@@ -44,6 +46,7 @@ import org.apache.lens.api.query.QueryHandle;
 import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.driver.*;
 import org.apache.lens.server.api.driver.DriverQueryStatus.DriverQueryState;
+import org.apache.lens.server.api.events.LensEventListener;
 import org.apache.lens.server.api.query.AbstractQueryContext;
 import org.apache.lens.server.api.query.PreparedQueryContext;
 import org.apache.lens.server.api.query.QueryContext;
@@ -281,6 +284,34 @@ public class TestHiveDriver {
     Assert.assertEquals(0, driver.getHiveHandleSize());
   }
 
+  /**
+   * Test in memory result fetched with prefetch and adaptive fetch size.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testPrefetchedInMemoryResult() throws Exception {
+    createTestTable("test_prefetch");
+    HiveConf prefetchConf = new HiveConf(conf, TestHiveDriver.class);
+    prefetchConf.setInt(HiveDriver.HS2_RESULT_PREFETCH_BATCHES, 2);
+    // rows are wider than the target batch size, so the result is fetched a row per batch after the first batch
+    prefetchConf.setLong(HiveDriver.HS2_RESULT_FETCH_TARGET_BYTES, 1);
+    HiveDriver prefetchDriver = new HiveDriver();
+    prefetchDriver.configure(prefetchConf);
+    try {
+      prefetchConf.setBoolean(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER, false);
+      QueryContext context = createContext("SELECT ID FROM test_prefetch", prefetchConf);
+      LensResultSet resultSet = prefetchDriver.execute(context);
+      ((HiveInMemoryResultSet) resultSet).setFetchSize(2);
+      validateInMemoryResult(resultSet);
+      assertEquals(((HiveInMemoryResultSet) resultSet).getNextFetchSize(), 1);
+      assertEquals(prefetchDriver.getHiveHandleSize(), 0);
+    } finally {
+      prefetchDriver.close();
+    }
+  }
+
   /**
    * Validate in memory result.
    *
@@ -427,6 +458,126 @@ public class TestHiveDriver {
     Assert.assertEquals(0, driver.getHiveHandleSize());
   }
 
+  /**
+   * Test status update of several queries in a single call.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testUpdateStatuses() throws Exception {
+    createTestTable("test_update_statuses");
+    conf.setBoolean(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER, false);
+    QueryContext first = createContext("SELECT ID FROM test_update_statuses", conf);
+    QueryContext second = createContext("SELECT ID FROM test_update_statuses", conf);
+    // never launched on the driver, so its status can not be updated
+    QueryContext unknown = createContext("SELECT ID FROM test_update_statuses", conf);
+    driver.executeAsync(first);
+    driver.executeAsync(second);
+    long deadline = System.currentTimeMillis() + 5 * 60 * 1000L;
+    while (!first.getDriverStatus().isFinished() || !second.getDriverStatus().isFinished()) {
+      assertTrue(System.currentTimeMillis() < deadline, "Queries did not finish in time");
+      Map<QueryHandle, LensException> errors = driver.updateStatuses(Arrays.asList(first, second, unknown));
+      assertEquals(errors.keySet(), Collections.singleton(unknown.getQueryHandle()));
+      Thread.sleep(1000);
+    }
+    assertEquals(first.getDriverStatus().getState(), DriverQueryState.SUCCESSFUL);
+    assertEquals(second.getDriverStatus().getState(), DriverQueryState.SUCCESSFUL);
+    driver.closeQuery(first.getQueryHandle());
+    driver.closeQuery(second.getQueryHandle());
+    Assert.assertEquals(0, driver.getHiveHandleSize());
+  }
+
+  /**
+   * Test completion notification of several queries, which are tracked together.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testCompletionNotification() throws Exception {
+    createTestTable("test_completion_notification");
+    conf.setBoolean(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER, false);
+    final CountDownLatch completed = new CountDownLatch(2);
+    QueryCompletionListener listener = new QueryCompletionListener() {
+      @Override
+      public void onCompletion(QueryHandle handle) {
+        completed.countDown();
+      }
+
+      @Override
+      public void onError(QueryHandle handle, String error) {
+        fail("Query " + handle + " failed to complete: " + error);
+      }
+    };
+    List<QueryContext> contexts = new ArrayList<QueryContext>();
+    for (int i = 0; i < 2; i++) {
+      QueryContext context = createContext("SELECT ID FROM test_completion_notification", conf);
+      driver.executeAsync(context);
+      driver.registerForCompletionNotification(context.getQueryHandle(), 60000, listener);
+      contexts.add(context);
+    }
+    assertTrue(completed.await(60, TimeUnit.SECONDS), "Expected both queries to be notified");
+    for (QueryContext context : contexts) {
+      driver.updateStatus(context);
+      assertEquals(context.getDriverStatus().getState(), DriverQueryState.SUCCESSFUL);
+      driver.closeQuery(context.getQueryHandle());
+    }
+  }
+
+  /**
+   * Test that status listeners are notified when a status update finds a query launched asynchronously finished, also
+   * when the query is tracked for completion notification.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testStatusChangeNotification() throws Exception {
+    createTestTable("test_status_notification");
+    HiveDriver notifyingDriver = new HiveDriver();
+    notifyingDriver.configure(conf);
+    final CountDownLatch notified = new CountDownLatch(1);
+    final CountDownLatch completed = new CountDownLatch(1);
+    conf.setBoolean(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER, false);
+    final QueryContext context = createContext("SELECT ID FROM test_status_notification", conf);
+    notifyingDriver.registerQueryStatusListener(new LensEventListener<DriverQueryStatusChanged>() {
+      @Override
+      public void onEvent(DriverQueryStatusChanged event) {
+        if (event.getQueryHandle().equals(context.getQueryHandle())
+            && event.getState() == DriverQueryState.SUCCESSFUL) {
+          notified.countDown();
+        }
+      }
+    });
+    try {
+      notifyingDriver.executeAsync(context);
+      notifyingDriver.registerForCompletionNotification(context.getQueryHandle(), 60000,
+          new QueryCompletionListener() {
+            @Override
+            public void onCompletion(QueryHandle handle) {
+              completed.countDown();
+            }
+
+            @Override
+            public void onError(QueryHandle handle, String error) {
+            }
+          });
+      // the driver does not poll the query for listeners, it is the status update which finds the query finished
+      long deadline = System.currentTimeMillis() + 60 * 1000L;
+      while (!context.getDriverStatus().isFinished()) {
+        assertTrue(System.currentTimeMillis() < deadline, "Query did not finish in time");
+        notifyingDriver.updateStatus(context);
+        Thread.sleep(1000);
+      }
+      assertTrue(notified.await(60, TimeUnit.SECONDS), "Expected status listener to be notified");
+      assertTrue(completed.await(60, TimeUnit.SECONDS), "Expected completion listener to be notified");
+      notifyingDriver.closeQuery(context.getQueryHandle());
+    } finally {
+      notifyingDriver.close();
+    }
+  }
+
   /**
    * Validate execute async.
    *
@@ -222,6 +222,50 @@ public class TestRemoteHiveDriver extends TestHiveDriver {
     assertEquals(errCount.get(), 0);
   }
 
+  /**
+   * Test that connections are reused across borrows and bounded per user.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testConnectionPool() throws Exception {
+    HiveConnectionPool pool = new HiveConnectionPool(new HiveConf(conf, TestRemoteHiveDriver.class),
+        RemoteThriftConnection.class, false, 2, 100, 60000);
+    try {
+      HiveConnectionPool.PooledConnection first = pool.borrow("testuser");
+      Assert.assertNotNull(first.getClient());
+      HiveConnectionPool.PooledConnection second = pool.borrow("testuser");
+      Assert.assertNotSame(first, second);
+      assertEquals(pool.getGaugeValue(HiveConnectionPool.ACTIVE_CONNECTIONS), 2);
+
+      // all connections of the user are borrowed
+      try {
+        pool.borrow("testuser");
+        Assert.fail("Borrow should time out when all connections of the user are in use");
+      } catch (LensException e) {
+        assertEquals(pool.getGaugeValue(HiveConnectionPool.BORROW_TIMEOUTS), 1);
+      }
+      // other users get their own connections
+      HiveConnectionPool.PooledConnection other = pool.borrow("otheruser");
+      pool.release(other);
+
+      pool.release(first);
+      assertEquals(pool.getGaugeValue(HiveConnectionPool.IDLE_CONNECTIONS), 2);
+      Assert.assertSame(pool.borrow("testuser"), first);
+      assertEquals(pool.getGaugeValue(HiveConnectionPool.CREATED_CONNECTIONS), 3);
+
+      // invalidated connections are not reused after they are released
+      pool.invalidateAll();
+      pool.release(first);
+      pool.release(second);
+      assertEquals(pool.getOpenConnections(), 0);
+      Assert.assertNotSame(pool.borrow("testuser"), first);
+    } finally {
+      pool.close();
+    }
+  }
+
   /**
    * Test hive driver persistence.
    *
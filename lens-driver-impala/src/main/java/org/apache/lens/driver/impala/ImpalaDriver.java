@@ -22,11 +22,17 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.lens.api.LensException;
 import org.apache.lens.api.query.QueryPrepareHandle;
 import org.apache.lens.server.api.driver.*;
+import org.apache.lens.server.api.driver.DriverQueryStatus.DriverQueryState;
 import org.apache.lens.server.api.events.LensEventListener;
 import org.apache.lens.server.api.query.PreparedQueryContext;
 import org.apache.lens.server.api.query.QueryContext;
@@ -59,6 +65,14 @@ public class ImpalaDriver implements LensDriver {
   /** The storages. */
   private List<String> storages = new ArrayList<String>();
 
+  /** The impala handles of the queries launched asynchronously. */
+  private final Map<org.apache.lens.api.query.QueryHandle, QueryHandle> impalaHandles =
+      new ConcurrentHashMap<org.apache.lens.api.query.QueryHandle, QueryHandle>();
+
+  /** The query status listeners. */
+  private final List<LensEventListener<DriverQueryStatusChanged>> statusListeners =
+      new CopyOnWriteArrayList<LensEventListener<DriverQueryStatusChanged>>();
+
   /**
    * Instantiates a new impala driver.
    */
@@ -165,9 +179,84 @@ public class ImpalaDriver implements LensDriver {
    * @see org.apache.lens.server.api.driver.LensDriver#updateStatus(org.apache.lens.server.api.query.QueryContext)
    */
   @Override
-  public void updateStatus(QueryContext context) {
-    // TODO Auto-generated method stub
-    return;
+  public void updateStatus(QueryContext context) throws LensException {
+    QueryHandle handle = getImpalaHandle(context.getQueryHandle());
+    QueryState state;
+    try {
+      synchronized (client) {
+        state = client.get_state(handle);
+      }
+    } catch (Exception e) {
+      throw new LensException("Unable to get status of " + context.getQueryHandle(), e);
+    }
+    synchronized (context) {
+      DriverQueryStatus status = context.getDriverStatus();
+      switch (state) {
+      case CREATED:
+      case INITIALIZED:
+        status.setState(DriverQueryState.INITIALIZED);
+        status.setStatusMessage("Query is initialized in Impala");
+        break;
+      case COMPILED:
+        status.setState(DriverQueryState.PENDING);
+        status.setStatusMessage("Query is compiled in Impala");
+        break;
+      case RUNNING:
+        status.setState(DriverQueryState.RUNNING);
+        status.setStatusMessage("Query is running in Impala");
+        break;
+      case FINISHED:
+        status.setState(DriverQueryState.SUCCESSFUL);
+        status.setStatusMessage("Query is successful!");
+        status.setResultSetAvailable(true);
+        status.setProgress(1.0);
+        break;
+      case EXCEPTION:
+        status.setState(DriverQueryState.FAILED);
+        status.setStatusMessage("Query failed in Impala");
+        status.setErrorMessage("Query failed in Impala");
+        break;
+      default:
+        throw new LensException("Query is in unknown state " + state + " in Impala");
+      }
+    }
+  }
+
+  /**
+   * Gets the impala handle of the query.
+   *
+   * @param handle
+   *          the lens query handle
+   * @return the impala handle
+   * @throws LensException
+   *           if the query was not launched on this driver
+   */
+  private QueryHandle getImpalaHandle(org.apache.lens.api.query.QueryHandle handle) throws LensException {
+    QueryHandle impalaHandle = impalaHandles.get(handle);
+    if (impalaHandle == null) {
+      throw new LensException("Query not found " + handle);
+    }
+    return impalaHandle;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.driver.LensDriver#updateStatuses(java.util.Collection)
+   */
+  @Override
+  public Map<org.apache.lens.api.query.QueryHandle, LensException> updateStatuses(Collection<QueryContext> contexts) {
+    Map<org.apache.lens.api.query.QueryHandle, LensException> errors =
+        new HashMap<org.apache.lens.api.query.QueryHandle, LensException>();
+    // impala has no call to get status of many queries, so the queries are polled one after the other
+    for (QueryContext context : contexts) {
+      try {
+        updateStatus(context);
+      } catch (LensException e) {
+        errors.put(context.getQueryHandle(), e);
+      }
+    }
+    return errors;
   }
 
   /*
@@ -176,9 +265,17 @@ public class ImpalaDriver implements LensDriver {
    * @see org.apache.lens.server.api.driver.LensDriver#cancelQuery(org.apache.lens.api.query.QueryHandle)
    */
   @Override
-  public boolean cancelQuery(org.apache.lens.api.query.QueryHandle handle) {
-    // TODO Auto-generated method stub
-    return false;
+  public boolean cancelQuery(org.apache.lens.api.query.QueryHandle handle) throws LensException {
+    QueryHandle impalaHandle = getImpalaHandle(handle);
+    try {
+      synchronized (client) {
+        client.Cancel(impalaHandle);
+      }
+    } catch (Exception e) {
+      throw new LensException("Unable to cancel " + handle, e);
+    }
+    notifyStatusChange(handle, DriverQueryState.CANCELED);
+    return true;
   }
 
   @Override
@@ -209,15 +306,54 @@ public class ImpalaDriver implements LensDriver {
 
   }
 
+  /**
+   * Add a listener for query status changes.
+   *
+   * @param statusListener
+   *          the status listener
+   */
+  @Override
+  public void registerQueryStatusListener(LensEventListener<DriverQueryStatusChanged> statusListener) {
+    statusListeners.add(statusListener);
+  }
+
+  /**
+   * Notify status listeners about the new state of a query. Impala does not push status changes, so listeners are
+   * notified only about the changes this driver makes itself, like cancellation.
+   *
+   * @param handle
+   *          the query handle
+   * @param state
+   *          the new state
+   */
+  private void notifyStatusChange(org.apache.lens.api.query.QueryHandle handle, DriverQueryState state) {
+    DriverQueryStatusChanged event = new DriverQueryStatusChanged(System.currentTimeMillis(), this, handle, state);
+    for (LensEventListener<DriverQueryStatusChanged> listener : statusListeners) {
+      try {
+        listener.onEvent(event);
+      } catch (Exception e) {
+        logger.error("Error sending query status event to listener " + listener, e);
+      }
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
    * @see org.apache.lens.server.api.driver.LensDriver#closeQuery(org.apache.lens.api.query.QueryHandle)
    */
   @Override
-  public void closeQuery(org.apache.lens.api.query.QueryHandle arg0) throws LensException {
-    // TODO Auto-generated method stub
-
+  public void closeQuery(org.apache.lens.api.query.QueryHandle handle) throws LensException {
+    QueryHandle impalaHandle = impalaHandles.remove(handle);
+    if (impalaHandle != null) {
+      try {
+        synchronized (client) {
+          client.close(impalaHandle);
+        }
+      } catch (Exception e) {
+        throw new LensException("Unable to close " + handle, e);
+      }
+    }
   }
 
   /*
@@ -273,8 +409,18 @@ public class ImpalaDriver implements LensDriver {
    */
   @Override
   public void executeAsync(QueryContext context) throws LensException {
-    // TODO Auto-generated method stub
-
+    Query q = new Query();
+    q.query = context.getSelectedDriverQuery();
+    try {
+      QueryHandle impalaHandle;
+      synchronized (client) {
+        impalaHandle = client.query(q);
+      }
+      impalaHandles.put(context.getQueryHandle(), impalaHandle);
+    } catch (Exception e) {
+      logger.error(e.getMessage(), e);
+      throw new LensException("Unable to launch query " + context.getQueryHandle(), e);
+    }
   }
 
   /*
@@ -284,8 +430,7 @@ public class ImpalaDriver implements LensDriver {
    */
   @Override
   public LensResultSet fetchResultSet(QueryContext context) throws LensException {
-    // TODO Auto-generated method stub
-    return null;
+    return new ImpalaResultSet(client, getImpalaHandle(context.getQueryHandle()));
   }
 
   /*
@@ -60,6 +60,9 @@ public class ImpalaResultSet extends InMemoryResultSet {
   /** The size. */
   private int size = 0;
 
+  /** The fetch size, -1 for the server default. */
+  private int fetchSize = -1;
+
   /**
    * Instantiates a new impala result set.
    *
@@ -92,7 +95,10 @@ public class ImpalaResultSet extends InMemoryResultSet {
    */
   @Override
   public boolean hasNext() throws LensException {
-    return (this.hasMoreData || this.a.size() != 0);
+    while (this.a.size() == 0 && this.hasMoreData) {
+      fetchNextWindow();
+    }
+    return this.a.size() != 0;
   }
 
   /*
@@ -102,30 +108,28 @@ public class ImpalaResultSet extends InMemoryResultSet {
    */
   @Override
   public ResultRow next() throws LensException {
+    if (!hasNext()) {
+      logger.error("No more rows");
+      throw new LensException("No more rows ");
+    }
+    return new ResultRow(this.a.remove());
+  }
 
-    Results resultSet = null;
-
+  /**
+   * Fetch the next window of rows from impala server.
+   *
+   * @throws LensException
+   *           the lens exception
+   */
+  private void fetchNextWindow() throws LensException {
     try {
-      if (this.a.size() == 0) {
-        if (this.hasMoreData) {
-
-          resultSet = client.fetch(queryHandle, false, -1);
-          List<String> results = resultSet.getData();
-          size += results.size();
-          this.a.addAll(convert(results));
-          if (!resultSet.isHas_more()) {
-            this.hasMoreData = false;
-            client.close(queryHandle);
-          }
-        }
-        if (a.size() == 0) {
-          logger.error("No more rows");
-          throw new LensException("No more rows ");
-        } else {
-          return new ResultRow(this.a.remove());
-        }
-      } else {
-        return new ResultRow(this.a.remove());
+      Results resultSet = client.fetch(queryHandle, false, fetchSize);
+      List<String> results = resultSet.getData();
+      size += results.size();
+      this.a.addAll(convert(results));
+      if (!resultSet.isHas_more()) {
+        this.hasMoreData = false;
+        client.close(queryHandle);
       }
     } catch (QueryNotFoundException e) {
       logger.error(e.getMessage(), e);
@@ -169,7 +173,6 @@ public class ImpalaResultSet extends InMemoryResultSet {
 
   @Override
   public void setFetchSize(int size) {
-    // TODO Auto-generated method stub
-
+    this.fetchSize = size > 0 ? size : -1;
   }
 }
@@ -20,12 +20,17 @@ package org.apache.lens.driver.impala;
 
 import static org.powermock.api.mockito.PowerMockito.mock;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.powermock.api.mockito.PowerMockito.*;
 
+import org.apache.lens.api.query.InMemoryQueryResult;
+import org.apache.lens.api.query.QueryResult;
+import org.apache.lens.api.query.ResultRow;
 import org.apache.lens.driver.impala.ImpalaResultSet;
+import org.apache.lens.server.api.driver.ResultRowBuffer;
 import org.mockito.Mockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.testng.Assert;
@@ -247,4 +252,105 @@ public class TestImpalaResultSet {
     Mockito.verify(mockClient, Mockito.times(1)).close(qh);
 
   }
+
+  /**
+   * Test paged fetch.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testPagedFetch() throws Exception {
+    List<String> returnResultSet = new ArrayList<String>();
+    for (int i = 0; i < 5; i++) {
+      returnResultSet.add("row" + i + "\t" + i);
+    }
+    ImpalaService.Client mockClient = mock(ImpalaService.Client.class);
+    Results resultSet = mock(Results.class);
+    QueryHandle qh = mock(QueryHandle.class);
+    when(mockClient.fetch(qh, false, 2)).thenReturn(resultSet);
+    when(resultSet.getData()).thenReturn(returnResultSet);
+    when(resultSet.isHas_more()).thenReturn(false);
+
+    ImpalaResultSet is = new ImpalaResultSet(mockClient, qh);
+    assertRows(is.toQueryResult(0, 2), 0, 2);
+    assertRows(is.toQueryResult(2, 2), 2, 2);
+    Mockito.verify(mockClient, Mockito.times(1)).fetch(qh, false, 2);
+    // rows already read are not buffered, fetch continues from the cursor
+    assertRows(is.toQueryResult(0, 2), 4, 1);
+    assertRows(is.toQueryResult(), 5, 0);
+    assertRows(is.toQueryResult(), 5, 0);
+
+    // with buffer, rows already read can be fetched again
+    File spillDir = new File("target/resultspill");
+    ResultRowBuffer.deleteSpillFiles(spillDir);
+    ResultRowBuffer buffer = new ResultRowBuffer(spillDir, 200);
+    is = new ImpalaResultSet(mockClient, qh);
+    is.setResultBuffer(buffer);
+    assertRows(is.toQueryResult(1, 3), 1, 3);
+    Assert.assertEquals(buffer.size(), 4);
+    Assert.assertEquals(spillDir.list().length, 1);
+    assertRows(is.toQueryResult(0, 2), 0, 2);
+    assertRows(is.toQueryResult(2, 10), 2, 3);
+    assertRows(is.toQueryResult(), 0, 5);
+    is.closeResultBuffer();
+    Assert.assertEquals(buffer.size(), 0);
+    Assert.assertEquals(spillDir.list().length, 0);
+  }
+
+  /**
+   * Test spilling values of different types in result row buffer.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testResultRowBufferSpill() throws Exception {
+    File spillDir = new File("target/resultspill");
+    ResultRowBuffer.deleteSpillFiles(spillDir);
+    ResultRowBuffer buffer = new ResultRowBuffer(spillDir, 0);
+    List<Object> values = new ArrayList<Object>();
+    values.add(null);
+    values.add("value");
+    values.add(1);
+    values.add(2L);
+    values.add(3.0d);
+    values.add(4.0f);
+    values.add(true);
+    values.add((short) 5);
+    values.add((byte) 6);
+    values.add(new java.math.BigDecimal("7.5"));
+    for (int i = 0; i < 1002; i++) {
+      buffer.add(new ResultRow(values));
+    }
+    Assert.assertEquals(spillDir.list().length, 1);
+    List<ResultRow> rows = buffer.get(1000, 5);
+    Assert.assertEquals(rows.size(), 2);
+    Assert.assertEquals(rows.get(1).getValues(), values);
+
+    // spill files left by an earlier server are deleted
+    new ResultRowBuffer(spillDir, 0).add(new ResultRow(values));
+    Assert.assertEquals(spillDir.list().length, 2);
+    ResultRowBuffer.deleteSpillFiles(spillDir);
+    Assert.assertEquals(spillDir.list().length, 0);
+    buffer.close();
+  }
+
+  /**
+   * Assert the rows in the result.
+   *
+   * @param result
+   *          the result
+   * @param start
+   *          the index of first row
+   * @param count
+   *          the number of rows
+   */
+  private void assertRows(QueryResult result, int start, int count) {
+    List<ResultRow> rows = ((InMemoryQueryResult) result).getRows();
+    Assert.assertEquals(rows.size(), count);
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(rows.get(i).getValues().get(0), "row" + (start + i));
+    }
+  }
 }
@@ -46,6 +46,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -83,6 +87,16 @@ public class JDBCDriver implements LensDriver {
   /** The conf. */
   private Configuration conf;
 
+  /**
+   * The tracker of queries registered for completion notification. Queries are reported as soon as they finish, the
+   * tracker polls them to time them out and to catch queries which finished before getting registered.
+   */
+  private QueryCompletionTracker completionTracker;
+
+  /** The listeners notified when an async query finishes. */
+  private final List<LensEventListener<DriverQueryStatusChanged>> statusListeners =
+      new CopyOnWriteArrayList<LensEventListener<DriverQueryStatusChanged>>();
+
   /**
    * Data related to a query submitted to JDBCDriver.
    */
@@ -116,11 +130,6 @@ public class JDBCDriver implements LensDriver {
     @Getter
     private boolean isClosed;
 
-    /** The listener. */
-    @Getter
-    @Setter
-    private QueryCompletionListener listener;
-
     /** The query result. */
     @Getter
     @Setter
@@ -155,8 +164,8 @@ public class JDBCDriver implements LensDriver {
     public void notifyError(Throwable th) {
       // If query is closed in another thread while the callable is still waiting for result
       // set, then it throws an SQLException in the callable. We don't want to send that exception
-      if (listener != null && !isClosed) {
-        listener.onError(lensContext.getQueryHandle(), th.getMessage());
+      if (!isClosed) {
+        completionTracker.failed(lensContext.getQueryHandle(), th.getMessage());
       }
     }
 
@@ -164,9 +173,7 @@ public class JDBCDriver implements LensDriver {
      * Notify complete.
      */
     public void notifyComplete() {
-      if (listener != null) {
-        listener.onCompletion(lensContext.getQueryHandle());
-      }
+      completionTracker.finished(lensContext.getQueryHandle(), DriverQueryState.SUCCESSFUL);
     }
 
     /**
@@ -180,6 +187,40 @@ public class JDBCDriver implements LensDriver {
     }
   }
 
+  /**
+   * Checks whether the queries tracked for completion notification are done.
+   */
+  private class CompletionStatusChecker implements QueryCompletionTracker.StatusChecker {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.apache.lens.server.api.driver.QueryCompletionTracker.StatusChecker#getFinishedStates(java.util.Collection
+     * , java.util.Map)
+     */
+    @Override
+    public Map<QueryHandle, DriverQueryState> getFinishedStates(Collection<QueryHandle> handles,
+        Map<QueryHandle, String> errors) {
+      Map<QueryHandle, DriverQueryState> finishedStates = new HashMap<QueryHandle, DriverQueryState>();
+      for (QueryHandle handle : handles) {
+        JdbcQueryContext ctx = queryContextMap.get(handle);
+        if (ctx == null) {
+          errors.put(handle, "Query not found:" + handle.getHandleId());
+        } else if (ctx.getResultFuture().isDone()) {
+          if (ctx.isCancelled()) {
+            finishedStates.put(handle, DriverQueryState.CANCELED);
+          } else if (ctx.getQueryResult() != null && ctx.getQueryResult().error != null) {
+            finishedStates.put(handle, DriverQueryState.FAILED);
+          } else {
+            finishedStates.put(handle, DriverQueryState.SUCCESSFUL);
+          }
+        }
+      }
+      return finishedStates;
+    }
+  }
+
   /**
    * Result of a query and associated resources like statement and connection. After the results are consumed, close()
    * should be called to close the statement and connection
@@ -339,6 +380,44 @@ public class JDBCDriver implements LensDriver {
     }
   }
 
+  /**
+   * Future of an async query, which notifies the status listeners once the query is done.
+   */
+  protected class QueryFutureTask extends FutureTask<QueryResult> {
+
+    /** The query context. */
+    private final JdbcQueryContext queryContext;
+
+    /**
+     * Instantiates a new query future task.
+     *
+     * @param queryContext
+     *          the query context
+     */
+    public QueryFutureTask(JdbcQueryContext queryContext) {
+      super(new QueryCallable(queryContext));
+      this.queryContext = queryContext;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.FutureTask#done()
+     */
+    @Override
+    protected void done() {
+      DriverQueryState state;
+      if (isCancelled()) {
+        state = DriverQueryState.CANCELED;
+      } else if (queryContext.getQueryResult() != null && queryContext.getQueryResult().error != null) {
+        state = DriverQueryState.FAILED;
+      } else {
+        state = DriverQueryState.SUCCESSFUL;
+      }
+      notifyStatusChange(queryContext.getLensContext().getQueryHandle(), state);
+    }
+  }
+
   /**
    * The Class DummyQueryRewriter.
    */
@@ -396,6 +475,11 @@ public class JDBCDriver implements LensDriver {
   protected void init(Configuration conf) throws LensException {
     queryContextMap = new ConcurrentHashMap<QueryHandle, JdbcQueryContext>();
     rewriterCache = new ConcurrentHashMap<Class<? extends QueryRewriter>, QueryRewriter>();
+    if (completionTracker != null) {
+      completionTracker.close();
+    }
+    completionTracker = new QueryCompletionTracker("lens-driver-jdbc-completion-tracker",
+        new CompletionStatusChecker(), QueryCompletionTracker.DEFAULT_POLL_INTERVAL_MILLIS);
     asyncQueryPool = Executors.newCachedThreadPool(new ThreadFactory() {
       @Override
       public Thread newThread(Runnable runnable) {
@@ -714,8 +798,9 @@ public class JDBCDriver implements LensDriver {
     JdbcQueryContext jdbcCtx = new JdbcQueryContext(context);
     jdbcCtx.setRewrittenQuery(rewrittenQuery);
     try {
-      Future<QueryResult> future = asyncQueryPool.submit(new QueryCallable(jdbcCtx));
+      QueryFutureTask future = new QueryFutureTask(jdbcCtx);
       jdbcCtx.setResultFuture(future);
+      asyncQueryPool.execute(future);
     } catch (RejectedExecutionException e) {
       LOG.error("Query execution rejected: " + context.getQueryHandle() + " reason:" + e.getMessage(), e);
       throw new LensException("Query execution rejected: " + context.getQueryHandle() + " reason:" + e.getMessage(), e);
@@ -740,7 +825,8 @@ public class JDBCDriver implements LensDriver {
   public void registerForCompletionNotification(QueryHandle handle, long timeoutMillis, QueryCompletionListener listener)
       throws LensException {
     checkConfigured();
-    getQueryContext(handle).setListener(listener);
+    getQueryContext(handle);
+    completionTracker.track(handle, timeoutMillis, listener);
   }
 
   /**
@@ -755,29 +841,50 @@ public class JDBCDriver implements LensDriver {
   public void updateStatus(QueryContext context) throws LensException {
     checkConfigured();
     JdbcQueryContext ctx = getQueryContext(context.getQueryHandle());
-    context.getDriverStatus().setDriverStartTime(ctx.getStartTime());
-    if (ctx.getResultFuture().isDone()) {
-      // Since future is already done, this call should not block
-      context.getDriverStatus().setProgress(1.0);
-      context.getDriverStatus().setDriverFinishTime(ctx.getEndTime());
-      if (ctx.isCancelled()) {
-        context.getDriverStatus().setState(DriverQueryState.CANCELED);
-        context.getDriverStatus().setStatusMessage(context.getQueryHandle() + " cancelled");
-      } else if (ctx.getQueryResult() != null && ctx.getQueryResult().error != null) {
-        context.getDriverStatus().setState(DriverQueryState.FAILED);
-        context.getDriverStatus().setStatusMessage(ctx.getQueryResult().error.getMessage());
+    // status is applied holding the context lock, as the query can be cancelled or closed concurrently
+    synchronized (context) {
+      context.getDriverStatus().setDriverStartTime(ctx.getStartTime());
+      if (ctx.getResultFuture().isDone()) {
+        // Since future is already done, this call should not block
+        context.getDriverStatus().setProgress(1.0);
+        context.getDriverStatus().setDriverFinishTime(ctx.getEndTime());
+        if (ctx.isCancelled()) {
+          context.getDriverStatus().setState(DriverQueryState.CANCELED);
+          context.getDriverStatus().setStatusMessage(context.getQueryHandle() + " cancelled");
+        } else if (ctx.getQueryResult() != null && ctx.getQueryResult().error != null) {
+          context.getDriverStatus().setState(DriverQueryState.FAILED);
+          context.getDriverStatus().setStatusMessage(ctx.getQueryResult().error.getMessage());
+        } else {
+          context.getDriverStatus().setState(DriverQueryState.SUCCESSFUL);
+          context.getDriverStatus().setStatusMessage(context.getQueryHandle() + " successful");
+          context.getDriverStatus().setResultSetAvailable(true);
+        }
       } else {
-        context.getDriverStatus().setState(DriverQueryState.SUCCESSFUL);
-        context.getDriverStatus().setStatusMessage(context.getQueryHandle() + " successful");
-        context.getDriverStatus().setResultSetAvailable(true);
+        context.getDriverStatus().setProgress(0.0);
+        context.getDriverStatus().setState(DriverQueryState.RUNNING);
+        context.getDriverStatus().setStatusMessage(context.getQueryHandle() + " is running");
       }
-    } else {
-      context.getDriverStatus().setProgress(0.0);
-      context.getDriverStatus().setState(DriverQueryState.RUNNING);
-      context.getDriverStatus().setStatusMessage(context.getQueryHandle() + " is running");
     }
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.driver.LensDriver#updateStatuses(java.util.Collection)
+   */
+  @Override
+  public Map<QueryHandle, LensException> updateStatuses(Collection<QueryContext> contexts) {
+    Map<QueryHandle, LensException> errors = new HashMap<QueryHandle, LensException>();
+    for (QueryContext context : contexts) {
+      try {
+        updateStatus(context);
+      } catch (LensException e) {
+        errors.put(context.getQueryHandle(), e);
+      }
+    }
+    return errors;
+  }
+
   /**
    * Fetch the results of the query, specified by the handle.
    *
@@ -890,6 +997,7 @@ public class JDBCDriver implements LensDriver {
       }
     } finally {
       queryContextMap.clear();
+      completionTracker.close();
     }
   }
 
@@ -904,6 +1012,39 @@ public class JDBCDriver implements LensDriver {
 
   }
 
+  /**
+   * Add a listener for query status changes. Listeners are notified when an async query finishes.
+   *
+   * @param statusListener
+   *          the status listener
+   */
+  @Override
+  public void registerQueryStatusListener(LensEventListener<DriverQueryStatusChanged> statusListener) {
+    statusListeners.add(statusListener);
+  }
+
+  /**
+   * Notify status listeners about the new state of a query.
+   *
+   * @param handle
+   *          the query handle
+   * @param state
+   *          the new state
+   */
+  protected void notifyStatusChange(QueryHandle handle, DriverQueryState state) {
+    if (statusListeners.isEmpty()) {
+      return;
+    }
+    DriverQueryStatusChanged event = new DriverQueryStatusChanged(System.currentTimeMillis(), this, handle, state);
+    for (LensEventListener<DriverQueryStatusChanged> listener : statusListeners) {
+      try {
+        listener.onEvent(event);
+      } catch (LensException e) {
+        LOG.warn("Status listener failed for query " + handle + " : " + e.getMessage(), e);
+      }
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
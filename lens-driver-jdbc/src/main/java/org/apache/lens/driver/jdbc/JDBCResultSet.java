@@ -62,6 +62,9 @@ public class JDBCResultSet extends InMemoryResultSet {
   /** The close after fetch. */
   private final boolean closeAfterFetch;
 
+  /** The no more rows. */
+  private boolean noMoreRows;
+
   /**
    * Instantiates a new JDBC result set.
    *
@@ -272,10 +275,17 @@ public class JDBCResultSet extends InMemoryResultSet {
    */
   @Override
   public synchronized boolean hasNext() throws LensException {
+    if (noMoreRows) {
+      // result set might already be closed
+      return false;
+    }
     try {
       boolean hasMore = resultSet.next();
-      if (!hasMore && closeAfterFetch) {
-        close();
+      if (!hasMore) {
+        noMoreRows = true;
+        if (closeAfterFetch) {
+          close();
+        }
       }
       return hasMore;
     } catch (SQLException e) {
@@ -20,16 +20,19 @@ package org.apache.lens.lib.query;
 
 import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.CSVWriter;
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.serde2.AbstractSerDe;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.SerDeStats;
-import org.apache.hadoop.hive.serde2.lazy.LazyInteger;
 import org.apache.hadoop.hive.serde2.objectinspector.*;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BooleanObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ByteObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.IntObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ShortObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
 import org.apache.hadoop.hive.serde2.typeinfo.*;
 import org.apache.hadoop.io.Text;
@@ -42,7 +45,8 @@ import static org.apache.hadoop.hive.serde.serdeConstants.LIST_COLUMNS;
 import static org.apache.hadoop.hive.serde.serdeConstants.LIST_COLUMN_TYPES;
 
 /**
- * CSVSerde uses opencsv (http://opencsv.sourceforge.net/) to serialize/deserialize columns as CSV.
+ * CSVSerde serializes/deserializes columns as CSV. Deserialization uses opencsv (http://opencsv.sourceforge.net/), and
+ * serialization produces the same output as opencsv while encoding rows into a reused {@link RowBuffer}.
  */
 public final class CSVSerde extends AbstractSerDe {
 
@@ -77,9 +81,14 @@ public final class CSVSerde extends AbstractSerDe {
   private ObjectInspector inspector;
 
   /**
-   * The output fields.
+   * The buffer holding the serialized row, reused across rows.
    */
-  private String[] outputFields;
+  private final RowBuffer rowBuffer = new RowBuffer();
+
+  /**
+   * Whether numbers have to be escaped, which is only when quote or escape char is used in numbers.
+   */
+  private boolean escapeNumbers;
 
   /**
    * The num cols.
@@ -158,7 +167,6 @@ public final class CSVSerde extends AbstractSerDe {
     columnTypes = TypeInfoUtils.getTypeInfosFromTypeString(columnTypeProperty);
     numCols = columnNames.size();
 
-    this.outputFields = new String[numCols];
     row = new ArrayList<Object>(numCols);
 
     for (int i = 0; i < numCols; i++) {
@@ -181,6 +189,18 @@ public final class CSVSerde extends AbstractSerDe {
     structFieldSeperator = getProperty(tbl, "structFieldSeperator", DEFAULT_STRUCT_FIELD_SEPERATOR);
     unionTagFieldSeperator = getProperty(tbl, "unionTagFieldSeperator", DEFAULT_UNION_TAG_FIELD_SEPERATOR);
     mapKeyValueSeperator = getProperty(tbl, "mapKeyValueSeperator", DEFAULT_MAP_KEY_VALUE_SEPERATOR);
+    escapeNumbers = escapeChar != CSVWriter.NO_ESCAPE_CHARACTER
+      && (isNumberChar(quoteChar) || isNumberChar(escapeChar));
+  }
+
+  /**
+   * Checks whether the char can be a part of an integral number.
+   *
+   * @param c the char
+   * @return true, if it can be
+   */
+  private static boolean isNumberChar(char c) {
+    return c == '-' || (c >= '0' && c <= '9');
   }
 
   /**
@@ -209,6 +229,20 @@ public final class CSVSerde extends AbstractSerDe {
    */
   @Override
   public Writable serialize(Object obj, ObjectInspector objInspector) throws SerDeException {
+    return new Text(serializeToBuffer(obj, objInspector).toString());
+  }
+
+  /**
+   * Serializes the row as a CSV line into the row buffer of this serde. The output is the same as the one of opencsv's
+   * {@link CSVWriter}, but fields are encoded directly into a buffer which is reused across rows, with fast paths for
+   * primitive types.
+   *
+   * @param obj          the row
+   * @param objInspector the object inspector of the row
+   * @return the row buffer, which is valid till the next row is serialized
+   * @throws SerDeException the ser de exception
+   */
+  public RowBuffer serializeToBuffer(Object obj, ObjectInspector objInspector) throws SerDeException {
     final StructObjectInspector outputRowOI = (StructObjectInspector) objInspector;
     final List<? extends StructField> outputFieldRefs = outputRowOI.getAllStructFieldRefs();
 
@@ -217,120 +251,103 @@ public final class CSVSerde extends AbstractSerDe {
         + " fields but the table has " + numCols + " columns.");
     }
 
-    try {
-      // Get all data out.
-      for (int c = 0; c < numCols; c++) {
-        final Object field = outputRowOI.getStructFieldData(obj, outputFieldRefs.get(c));
-        // Get the field objectInspector and the field object.
-        ObjectInspector fieldOI = outputFieldRefs.get(c).getFieldObjectInspector();
-
-        outputFields[c] = serializeField(field, fieldOI);
+    rowBuffer.clear();
+    for (int c = 0; c < numCols; c++) {
+      if (c > 0) {
+        rowBuffer.append(separatorChar);
+      }
+      final StructField fieldRef = outputFieldRefs.get(c);
+      if (quoteChar != CSVWriter.NO_QUOTE_CHARACTER) {
+        rowBuffer.append(quoteChar);
+      }
+      serializeField(outputRowOI.getStructFieldData(obj, fieldRef), fieldRef.getFieldObjectInspector());
+      if (quoteChar != CSVWriter.NO_QUOTE_CHARACTER) {
+        rowBuffer.append(quoteChar);
       }
-
-      final StringWriter writer = new StringWriter();
-      final CSVWriter csv = newWriter(writer, separatorChar, quoteChar, escapeChar);
-
-      csv.writeNext(outputFields);
-      csv.close();
-
-      return new Text(writer.toString());
-    } catch (final IOException ioe) {
-      throw new SerDeException(ioe);
     }
+    return rowBuffer;
   }
 
   /**
-   * Serialize field.
+   * Serialize field into the row buffer.
    *
    * @param field   the field
    * @param fieldOI the field oi
-   * @return the string
-   * @throws IOException    Signals that an I/O exception has occurred.
-   * @throws SerDeException the ser de exception
    */
-  private String serializeField(Object field, ObjectInspector fieldOI) throws IOException, SerDeException {
+  private void serializeField(Object field, ObjectInspector fieldOI) {
 
     if (field == null) {
-      return nullString;
+      appendEscaped(nullString);
+      return;
     }
 
     List<?> list;
     switch (fieldOI.getCategory()) {
     case PRIMITIVE:
-      if (fieldOI instanceof StringObjectInspector) {
-        final StringObjectInspector fieldStringOI = (StringObjectInspector) fieldOI;
-        return fieldStringOI.getPrimitiveJavaObject(field);
-      } else {
-        return field.toString();
-      }
+      serializePrimitive(field, (PrimitiveObjectInspector) fieldOI);
+      return;
     case LIST:
       ListObjectInspector loi = (ListObjectInspector) fieldOI;
       list = loi.getList(field);
       ObjectInspector eoi = loi.getListElementObjectInspector();
       if (list == null) {
-        return nullString;
+        appendEscaped(nullString);
       } else {
-        StringBuilder listString = new StringBuilder();
         for (int i = 0; i < list.size(); i++) {
           if (i > 0) {
-            listString.append(collectionSeperator);
+            appendEscaped(collectionSeperator);
           }
-          listString.append(serializeField(list.get(i), eoi));
+          serializeField(list.get(i), eoi);
         }
-        return listString.toString();
       }
+      return;
     case MAP:
       MapObjectInspector moi = (MapObjectInspector) fieldOI;
       ObjectInspector koi = moi.getMapKeyObjectInspector();
       ObjectInspector voi = moi.getMapValueObjectInspector();
       Map<?, ?> map = moi.getMap(field);
       if (map == null) {
-        return nullString;
+        appendEscaped(nullString);
       } else {
-        StringBuilder mapString = new StringBuilder();
         boolean first = true;
         for (Map.Entry<?, ?> entry : map.entrySet()) {
           if (first) {
             first = false;
           } else {
-            mapString.append(collectionSeperator);
+            appendEscaped(collectionSeperator);
           }
-          mapString.append(serializeField(entry.getKey(), koi));
-          mapString.append(mapKeyValueSeperator);
-          mapString.append(serializeField(entry.getValue(), voi));
+          serializeField(entry.getKey(), koi);
+          appendEscaped(mapKeyValueSeperator);
+          serializeField(entry.getValue(), voi);
         }
-        return mapString.toString();
       }
+      return;
     case STRUCT:
       StructObjectInspector soi = (StructObjectInspector) fieldOI;
       List<? extends StructField> fields = soi.getAllStructFieldRefs();
       list = soi.getStructFieldsDataAsList(field);
       if (list == null) {
-        return nullString;
+        appendEscaped(nullString);
       } else {
-        StringBuilder structString = new StringBuilder();
         for (int i = 0; i < list.size(); i++) {
           if (i > 0) {
-            structString.append(structFieldSeperator);
+            appendEscaped(structFieldSeperator);
           }
-          structString.append(serializeField(list.get(i), fields.get(i).getFieldObjectInspector()));
+          serializeField(list.get(i), fields.get(i).getFieldObjectInspector());
         }
-        return structString.toString();
       }
+      return;
     case UNION:
       UnionObjectInspector uoi = (UnionObjectInspector) fieldOI;
       List<? extends ObjectInspector> ois = uoi.getObjectInspectors();
       if (ois == null) {
-        return nullString;
+        appendEscaped(nullString);
       } else {
-        StringBuilder unionString = new StringBuilder();
-        ByteArrayOutputStream tagStream = new ByteArrayOutputStream();
-        LazyInteger.writeUTF8(tagStream, uoi.getTag(field));
-        unionString.append(new String(tagStream.toByteArray()));
-        unionString.append(unionTagFieldSeperator);
-        unionString.append(serializeField(uoi.getField(field), ois.get(uoi.getTag(field))));
-        return unionString.toString();
+        appendNumber(uoi.getTag(field));
+        appendEscaped(unionTagFieldSeperator);
+        serializeField(uoi.getField(field), ois.get(uoi.getTag(field)));
       }
+      return;
     default:
       break;
     }
@@ -338,6 +355,82 @@ public final class CSVSerde extends AbstractSerDe {
     throw new RuntimeException("Unknown category type: " + fieldOI.getCategory());
   }
 
+  /**
+   * Serialize primitive field into the row buffer. Strings are appended without copies and integral numbers without
+   * creating strings; other types use their string representation.
+   *
+   * @param field   the field
+   * @param fieldOI the field oi
+   */
+  private void serializePrimitive(Object field, PrimitiveObjectInspector fieldOI) {
+    switch (fieldOI.getPrimitiveCategory()) {
+    case STRING:
+      appendEscaped(((StringObjectInspector) fieldOI).getPrimitiveJavaObject(field));
+      return;
+    case BOOLEAN:
+      appendEscaped(((BooleanObjectInspector) fieldOI).get(field) ? "true" : "false");
+      return;
+    case BYTE:
+      appendNumber(((ByteObjectInspector) fieldOI).get(field));
+      return;
+    case SHORT:
+      appendNumber(((ShortObjectInspector) fieldOI).get(field));
+      return;
+    case INT:
+      appendNumber(((IntObjectInspector) fieldOI).get(field));
+      return;
+    case LONG:
+      appendNumber(((LongObjectInspector) fieldOI).get(field));
+      return;
+    default:
+      appendEscaped(field.toString());
+    }
+  }
+
+  /**
+   * Appends the number to the row buffer.
+   *
+   * @param value the value
+   */
+  private void appendNumber(long value) {
+    if (escapeNumbers) {
+      appendEscaped(Long.toString(value));
+    } else {
+      rowBuffer.append(value);
+    }
+  }
+
+  /**
+   * Appends the string to the row buffer, escaping quote and escape chars like {@link CSVWriter} does.
+   *
+   * @param str the str
+   */
+  private void appendEscaped(String str) {
+    if (str == null) {
+      appendEscaped(nullString);
+      return;
+    }
+    if (escapeChar == CSVWriter.NO_ESCAPE_CHARACTER || (str.indexOf(quoteChar) == -1 && str.indexOf(escapeChar) == -1)) {
+      rowBuffer.append(str);
+      return;
+    }
+    for (int i = 0; i < str.length(); i++) {
+      appendEscaped(str.charAt(i));
+    }
+  }
+
+  /**
+   * Appends the char to the row buffer, escaping quote and escape chars like {@link CSVWriter} does.
+   *
+   * @param c the char
+   */
+  private void appendEscaped(char c) {
+    if (escapeChar != CSVWriter.NO_ESCAPE_CHARACTER && (c == quoteChar || c == escapeChar)) {
+      rowBuffer.append(escapeChar);
+    }
+    rowBuffer.append(c);
+  }
+
   /**
    * Gets the Java Object corresponding to the type, represented as string.
    *
@@ -444,23 +537,6 @@ public final class CSVSerde extends AbstractSerDe {
     }
   }
 
-  /**
-   * New writer.
-   *
-   * @param writer    the writer
-   * @param separator the separator
-   * @param quote     the quote
-   * @param escape    the escape
-   * @return the CSV writer
-   */
-  private CSVWriter newWriter(final Writer writer, char separator, char quote, char escape) {
-    if (CSVWriter.DEFAULT_ESCAPE_CHARACTER == escape) {
-      return new CSVWriter(writer, separator, quote, "");
-    } else {
-      return new CSVWriter(writer, separator, quote, escape, "");
-    }
-  }
-
   @Override
   public ObjectInspector getObjectInspector() throws SerDeException {
     return inspector;
@@ -58,6 +58,16 @@ public interface FileFormatter {
    */
   void writeRow(String row) throws IOException;
 
+  /**
+   * Write the row passed as chars of a buffer.
+   *
+   * @param row    the buffer holding the row
+   * @param offset the offset of the row in the buffer
+   * @param length the length of the row
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  void writeRow(char[] row, int offset, int length) throws IOException;
+
   /**
    * Get the temporary path of the result, if any
    *
@@ -24,21 +24,34 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.driver.LensResultSetMetadata;
 import org.apache.lens.server.api.query.PersistedOutputFormatter;
 import org.apache.lens.server.api.query.QueryContext;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.text.ParseException;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * File formatter for {@link PersistedOutputFormatter}
  * <p/>
- * This is a {@link WrappedFileFormatter} which can wrap any {@link FileFormatter}.
+ * This is a {@link WrappedFileFormatter} which can wrap any {@link FileFormatter}. Part files of the persisted result
+ * are read concurrently ahead of the one being written, and handed over in order to the writing thread. If the result
+ * is written in the same charset as the part files, rows are copied as bytes without being decoded.
  */
 public class FilePersistentFormatter extends WrappedFileFormatter implements PersistedOutputFormatter {
 
@@ -62,7 +75,7 @@ public class FilePersistentFormatter extends WrappedFileFormatter implements Per
   /**
    * The Class PartFile.
    */
-  class PartFile implements Comparable<PartFile> {
+  static class PartFile implements Comparable<PartFile> {
 
     /**
      * The id.
@@ -96,6 +109,220 @@ public class FilePersistentFormatter extends WrappedFileFormatter implements Per
     }
   }
 
+  /**
+   * The number of lines handed over from a part file reader to the writer at a time.
+   */
+  private static final int LINES_PER_BATCH = 1000;
+
+  /**
+   * The size of encoded chunks handed over from a part file reader to the writer.
+   */
+  private static final int ENCODED_CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * The number of batches a part file reader can read ahead of the writer.
+   */
+  private static final int BATCHES_READ_AHEAD = 8;
+
+  /**
+   * A batch of rows read from a part file. Holds either decoded lines or encoded bytes of complete rows.
+   */
+  private static final class RowBatch {
+
+    /**
+     * The batch marking the end of a part file.
+     */
+    static final RowBatch END = new RowBatch(null, null, 0, 0, null);
+
+    /**
+     * The decoded lines.
+     */
+    final List<String> lines;
+
+    /**
+     * The encoded rows.
+     */
+    final byte[] bytes;
+
+    /**
+     * The length of encoded rows.
+     */
+    final int length;
+
+    /**
+     * The number of encoded rows.
+     */
+    final int numRows;
+
+    /**
+     * The failure in reading the part file.
+     */
+    final IOException error;
+
+    /**
+     * Instantiates a new row batch.
+     *
+     * @param lines   the lines
+     * @param bytes   the bytes
+     * @param length  the length
+     * @param numRows the num rows
+     * @param error   the error
+     */
+    RowBatch(List<String> lines, byte[] bytes, int length, int numRows, IOException error) {
+      this.lines = lines;
+      this.bytes = bytes;
+      this.length = length;
+      this.numRows = numRows;
+      this.error = error;
+    }
+  }
+
+  /**
+   * Reads a part file in background, handing over row batches in order through a bounded queue.
+   */
+  private static final class PartFileReader implements Runnable {
+
+    /**
+     * The file system.
+     */
+    private final FileSystem fs;
+
+    /**
+     * The part file.
+     */
+    private final Path path;
+
+    /**
+     * Whether to hand over encoded rows instead of decoded lines.
+     */
+    private final boolean encoded;
+
+    /**
+     * The batches read.
+     */
+    private final BlockingQueue<RowBatch> batches = new ArrayBlockingQueue<RowBatch>(BATCHES_READ_AHEAD);
+
+    /**
+     * Instantiates a new part file reader.
+     *
+     * @param fs      the fs
+     * @param path    the path
+     * @param encoded whether to hand over encoded rows
+     */
+    PartFileReader(FileSystem fs, Path path, boolean encoded) {
+      this.fs = fs;
+      this.path = path;
+      this.encoded = encoded;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      try {
+        try {
+          if (encoded) {
+            readEncoded();
+          } else {
+            readLines();
+          }
+          batches.put(RowBatch.END);
+        } catch (IOException e) {
+          batches.put(new RowBatch(null, null, 0, 0, e));
+        } catch (RuntimeException e) {
+          batches.put(new RowBatch(null, null, 0, 0, new IOException(e)));
+        }
+      } catch (InterruptedException e) {
+        // writer gave up, nobody is waiting for the batches
+        LOG.debug("Reading " + path + " interrupted");
+      }
+    }
+
+    /**
+     * Reads the part file as lines.
+     *
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private void readLines() throws IOException, InterruptedException {
+      BufferedReader in = null;
+      try {
+        in = new BufferedReader(new InputStreamReader(fs.open(path)));
+        List<String> lines = new ArrayList<String>(LINES_PER_BATCH);
+        String row = in.readLine();
+        while (row != null) {
+          lines.add(row);
+          if (lines.size() == LINES_PER_BATCH) {
+            batches.put(new RowBatch(lines, null, 0, 0, null));
+            lines = new ArrayList<String>(LINES_PER_BATCH);
+          }
+          row = in.readLine();
+        }
+        if (!lines.isEmpty()) {
+          batches.put(new RowBatch(lines, null, 0, 0, null));
+        }
+      } finally {
+        if (in != null) {
+          in.close();
+        }
+      }
+    }
+
+    /**
+     * Reads the part file as encoded chunks, counting the rows in them. A line terminator is added to the last row if
+     * the file does not end with one.
+     *
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException the interrupted exception
+     */
+    private void readEncoded() throws IOException, InterruptedException {
+      InputStream in = null;
+      try {
+        in = fs.open(path);
+        byte last = '\n';
+        while (true) {
+          byte[] chunk = new byte[ENCODED_CHUNK_SIZE];
+          int length = 0;
+          int read = 0;
+          while (length < chunk.length && (read = in.read(chunk, length, chunk.length - length)) != -1) {
+            length += read;
+          }
+          if (length == 0) {
+            break;
+          }
+          int numRows = 0;
+          for (int i = 0; i < length; i++) {
+            if (chunk[i] == '\n') {
+              numRows++;
+            }
+          }
+          last = chunk[length - 1];
+          batches.put(new RowBatch(null, chunk, length, numRows, null));
+        }
+        if (last != '\n') {
+          batches.put(new RowBatch(null, new byte[]{'\n'}, 1, 1, null));
+        }
+      } finally {
+        if (in != null) {
+          in.close();
+        }
+      }
+    }
+
+    /**
+     * Takes the next batch, blocking till it is read.
+     *
+     * @return the row batch
+     * @throws InterruptedException the interrupted exception
+     */
+    RowBatch take() throws InterruptedException {
+      return batches.take();
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -103,7 +330,7 @@ public class FilePersistentFormatter extends WrappedFileFormatter implements Per
    */
   @Override
   public void addRowsFromPersistedPath(Path persistedDir) throws IOException {
-    FileSystem persistFs = persistedDir.getFileSystem(ctx.getConf());
+    final FileSystem persistFs = persistedDir.getFileSystem(ctx.getConf());
 
     FileStatus[] partFiles = persistFs.listStatus(persistedDir, new PathFilter() {
       @Override
@@ -120,25 +347,74 @@ public class FilePersistentFormatter extends WrappedFileFormatter implements Per
       for (FileStatus file : partFiles) {
         partFileMap.put(new PartFile(file.getPath().getName()), file);
       }
+    } catch (ParseException e) {
+      throw new IOException(e);
+    }
+    if (partFileMap.isEmpty()) {
+      return;
+    }
+
+    // Rows are copied without decoding, if the result is written in the charset the part files are read with
+    boolean encoded = canWriteEncodedRows(Charset.defaultCharset());
+    int prefetch = Math.min(partFileMap.size(), Math.max(1, ctx.getConf().getInt(
+      LensConfConstants.RESULT_FORMAT_PREFETCH_PART_FILES, LensConfConstants.DEFAULT_RESULT_FORMAT_PREFETCH_PART_FILES)));
+    final String threadName = "PartFileReader-" + ctx.getQueryHandle();
+    ExecutorService readerPool = Executors.newFixedThreadPool(prefetch, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, threadName);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
 
-      for (Map.Entry<PartFile, FileStatus> entry : partFileMap.entrySet()) {
-        LOG.info("Processing file:" + entry.getValue().getPath());
-        BufferedReader in = null;
-        try {
-          in = new BufferedReader(new InputStreamReader(persistFs.open(entry.getValue().getPath())));
-          String row = in.readLine();
-          while (row != null) {
-            writeRow(row);
-            row = in.readLine();
+    Iterator<FileStatus> toRead = partFileMap.values().iterator();
+    LinkedList<PartFileReader> readers = new LinkedList<PartFileReader>();
+    try {
+      while (readers.size() < prefetch && toRead.hasNext()) {
+        readers.add(startReader(readerPool, persistFs, toRead.next().getPath(), encoded));
+      }
+      while (!readers.isEmpty()) {
+        PartFileReader reader = readers.removeFirst();
+        LOG.info("Processing file:" + reader.path);
+        RowBatch batch = reader.take();
+        while (batch != RowBatch.END) {
+          if (batch.error != null) {
+            throw batch.error;
           }
-        } finally {
-          if (in != null) {
-            in.close();
+          if (batch.lines != null) {
+            for (String row : batch.lines) {
+              writeRow(row);
+            }
+          } else {
+            writeEncodedRows(batch.bytes, 0, batch.length, batch.numRows);
           }
+          batch = reader.take();
+        }
+        if (toRead.hasNext()) {
+          readers.add(startReader(readerPool, persistFs, toRead.next().getPath(), encoded));
         }
       }
-    } catch (ParseException e) {
-      throw new IOException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while formatting rows from " + persistedDir, e);
+    } finally {
+      readerPool.shutdownNow();
     }
   }
+
+  /**
+   * Starts reading a part file in background.
+   *
+   * @param readerPool the reader pool
+   * @param fs         the fs
+   * @param path       the path
+   * @param encoded    whether to read encoded rows
+   * @return the part file reader
+   */
+  private PartFileReader startReader(ExecutorService readerPool, FileSystem fs, Path path, boolean encoded) {
+    PartFileReader reader = new PartFileReader(fs, path, encoded);
+    readerPool.execute(reader);
+    return reader;
+  }
 }
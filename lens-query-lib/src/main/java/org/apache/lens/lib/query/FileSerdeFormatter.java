@@ -107,6 +107,12 @@ public class FileSerdeFormatter extends WrappedFileFormatter implements InMemory
   @Override
   public void writeRow(ResultRow row) throws IOException {
     try {
+      if (outputSerde instanceof CSVSerde) {
+        // encode directly from the serde's buffer, skipping the intermediate Text and String
+        RowBuffer rowBuffer = ((CSVSerde) outputSerde).serializeToBuffer(row.getValues(), inputOI);
+        writeRow(rowBuffer.getChars(), 0, rowBuffer.length());
+        return;
+      }
       Writable rowWritable = outputSerde.serialize(row.getValues(), inputOI);
       writeRow(rowWritable.toString());
     } catch (SerDeException e) {
@@ -26,6 +26,7 @@ import org.apache.hadoop.mapred.Reporter;
 import org.apache.lens.lib.query.LensFileOutputFormat.LensRowWriter;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 
 /**
  * A hadoop file formatter
@@ -101,6 +102,40 @@ public class HadoopFileFormatter extends AbstractFileFormatter {
     numRows++;
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.lib.query.FileFormatter#writeRow(char[], int, int)
+   */
+  public void writeRow(char[] row, int offset, int length) throws IOException {
+    rowWriter.write(row, offset, length);
+    numRows++;
+  }
+
+  /**
+   * Whether rows encoded in the given charset can be written as they are.
+   *
+   * @param charset the charset
+   * @return true, if the result is written in the same charset
+   */
+  public boolean canWriteEncodedRows(Charset charset) {
+    return Charset.forName(getEncoding()).equals(charset);
+  }
+
+  /**
+   * Write rows which are already encoded in the result encoding, along with their line terminators.
+   *
+   * @param rows    the buffer holding the rows
+   * @param offset  the offset of the rows in the buffer
+   * @param length  the length of the rows
+   * @param numRows the number of rows
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void writeEncodedRows(byte[] rows, int offset, int length, int numRows) throws IOException {
+    rowWriter.writeEncoded(rows, offset, length);
+    this.numRows += numRows;
+  }
+
   /*
    * (non-Javadoc)
    * 
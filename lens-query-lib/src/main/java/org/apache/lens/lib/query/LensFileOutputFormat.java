@@ -68,6 +68,16 @@ public class LensFileOutputFormat extends FileOutputFormat<NullWritable, Text> {
      */
     protected OutputStreamWriter out;
 
+    /**
+     * The stream underlying out, used to write rows which are already encoded.
+     */
+    private DataOutputStream rawOut;
+
+    /**
+     * Whether chars have been written to out since it was last flushed.
+     */
+    private boolean pendingChars;
+
     /**
      * The tmp path.
      */
@@ -89,6 +99,7 @@ public class LensFileOutputFormat extends FileOutputFormat<NullWritable, Text> {
     public LensRowWriter(DataOutputStream out, String encoding, Path tmpPath, String extn) {
       this.tmpPath = tmpPath;
       this.extn = extn;
+      this.rawOut = out;
       try {
         this.out = new OutputStreamWriter(out, encoding);
       } catch (UnsupportedEncodingException uee) {
@@ -116,6 +127,38 @@ public class LensFileOutputFormat extends FileOutputFormat<NullWritable, Text> {
         out.write(value.toString());
       }
       out.write(NEWLINE);
+      pendingChars = true;
+    }
+
+    /**
+     * Write the row passed as chars of a buffer, without going through {@link Text}.
+     *
+     * @param row    the buffer holding the row
+     * @param offset the offset of the row in the buffer
+     * @param length the length of the row
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void write(char[] row, int offset, int length) throws IOException {
+      out.write(row, offset, length);
+      out.write(NEWLINE);
+      pendingChars = true;
+    }
+
+    /**
+     * Write bytes which are already encoded in the encoding of this writer, holding complete rows with their line
+     * terminators.
+     *
+     * @param rows   the buffer holding the rows
+     * @param offset the offset of the rows in the buffer
+     * @param length the length of the rows
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public synchronized void writeEncoded(byte[] rows, int offset, int length) throws IOException {
+      if (pendingChars) {
+        out.flush();
+        pendingChars = false;
+      }
+      rawOut.write(rows, offset, length);
     }
 
     /*
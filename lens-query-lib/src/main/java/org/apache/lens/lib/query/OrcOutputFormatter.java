@@ -0,0 +1,422 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.lib.query;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.hive.ql.io.orc.CompressionKind;
+import org.apache.hadoop.hive.ql.io.orc.OrcFile;
+import org.apache.hadoop.hive.ql.io.orc.Writer;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.AbstractSerDe;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.MapObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorConverters;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils.PrimitiveTypeEntry;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.lens.api.query.ResultRow;
+import org.apache.lens.lib.query.FilePersistentFormatter.PartFile;
+import org.apache.lens.server.api.LensConfConstants;
+import org.apache.lens.server.api.driver.LensResultSetMetadata;
+import org.apache.lens.server.api.query.InMemoryOutputFormatter;
+import org.apache.lens.server.api.query.PersistedOutputFormatter;
+import org.apache.lens.server.api.query.QueryContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Output formatter writing the result as a typed, compressed ORC file, which implements both
+ * {@link InMemoryOutputFormatter} and {@link PersistedOutputFormatter}.
+ * <p/>
+ * The result columns become the columns of the ORC file, so clients can read typed values with any ORC reader instead
+ * of parsing text. Rows persisted by the driver are deserialized with the serde configured by
+ * {@link LensConfConstants#QUERY_PERSISTED_RESULT_SERDE}. Since the file carries the column names, a header or footer
+ * is written only when one is configured, and then as user metadata of the file. The result is always a single file,
+ * regardless of {@link LensConfConstants#RESULT_SPLIT_INTO_MULTIPLE}.
+ */
+@SuppressWarnings("deprecation")
+public class OrcOutputFormatter extends AbstractOutputFormatter implements InMemoryOutputFormatter,
+  PersistedOutputFormatter {
+
+  /**
+   * The Constant LOG.
+   */
+  public static final Log LOG = LogFactory.getLog(OrcOutputFormatter.class);
+
+  /**
+   * The Constant ORC_FILE_EXTN.
+   */
+  public static final String ORC_FILE_EXTN = ".orc";
+
+  /**
+   * The user metadata key of the header.
+   */
+  public static final String HEADER_METADATA_KEY = "lens.result.header";
+
+  /**
+   * The user metadata key of the footer.
+   */
+  public static final String FOOTER_METADATA_KEY = "lens.result.footer";
+
+  /**
+   * The output path, without extension.
+   */
+  private Path outputPath;
+
+  /**
+   * The tmp path.
+   */
+  private Path tmpPath;
+
+  /**
+   * The final path.
+   */
+  private Path finalPath;
+
+  /**
+   * The writer, created with the inspector of the first rows written.
+   */
+  private Writer writer;
+
+  /**
+   * The inspector of rows written from memory.
+   */
+  private StructObjectInspector inMemoryOI;
+
+  /**
+   * The row, reused across rows written from memory.
+   */
+  private List<Object> cachedRow;
+
+  /**
+   * The header.
+   */
+  private String header;
+
+  /**
+   * The footer.
+   */
+  private String footer;
+
+  /**
+   * The num rows.
+   */
+  private int numRows = 0;
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.lib.query.AbstractOutputFormatter#init(org.apache.lens.server.api.query.QueryContext,
+   * org.apache.lens.server.api.driver.LensResultSetMetadata)
+   */
+  @Override
+  public void init(QueryContext ctx, LensResultSetMetadata metadata) throws IOException {
+    super.init(ctx, metadata);
+    String pathStr = ctx.getResultSetParentDir();
+    if (StringUtils.isBlank(pathStr)) {
+      throw new IllegalArgumentException("No output path specified");
+    }
+    outputPath = new Path(pathStr, ctx.getQueryHandle().toString());
+    tmpPath = new Path(outputPath + ".tmp" + ORC_FILE_EXTN);
+    inMemoryOI = ObjectInspectorFactory.getStandardStructObjectInspector(columnNames, columnOIs);
+    cachedRow = new ArrayList<Object>(columnNames.size());
+  }
+
+  /**
+   * Creates the writer on the tmp path, if not created already.
+   *
+   * @param rowOI the inspector of the rows to be written
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void createWriter(ObjectInspector rowOI) throws IOException {
+    if (writer != null) {
+      return;
+    }
+    CompressionKind compression = CompressionKind.valueOf(ctx.getConf().get(
+      LensConfConstants.QUERY_OUTPUT_ORC_COMPRESSION, LensConfConstants.DEFAULT_OUTPUT_ORC_COMPRESSION).toUpperCase());
+    FileSystem fs = tmpPath.getFileSystem(ctx.getConf());
+    if (fs.exists(tmpPath)) {
+      fs.delete(tmpPath, false);
+    }
+    writer = OrcFile.createWriter(tmpPath, OrcFile.writerOptions(ctx.getConf()).inspector(rowOI)
+      .compress(compression));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.QueryOutputFormatter#writeHeader()
+   */
+  @Override
+  public void writeHeader() throws IOException {
+    header = ctx.getResultHeader();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.QueryOutputFormatter#writeFooter()
+   */
+  @Override
+  public void writeFooter() throws IOException {
+    footer = ctx.getResultFooter();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.InMemoryOutputFormatter#writeRow(org.apache.lens.api.query.ResultRow)
+   */
+  @Override
+  public void writeRow(ResultRow row) throws IOException {
+    createWriter(inMemoryOI);
+    List<Object> values = row.getValues();
+    cachedRow.clear();
+    for (int i = 0; i < columnOIs.size(); i++) {
+      cachedRow.add(toJavaObject(i < values.size() ? values.get(i) : null, columnOIs.get(i)));
+    }
+    writer.addRow(cachedRow);
+    numRows++;
+  }
+
+  /**
+   * Converts a value of an in-memory row to the java object expected by the standard java inspector of its type.
+   * Values already of the expected class are returned as they are.
+   *
+   * @param value the value
+   * @param oi    the standard java inspector of its type
+   * @return the java object
+   */
+  private static Object toJavaObject(Object value, ObjectInspector oi) {
+    if (value == null) {
+      return null;
+    }
+    switch (oi.getCategory()) {
+    case PRIMITIVE:
+      PrimitiveObjectInspector poi = (PrimitiveObjectInspector) oi;
+      if (poi.getJavaPrimitiveClass().isInstance(value)) {
+        return value;
+      }
+      PrimitiveTypeEntry entry = PrimitiveObjectInspectorUtils.getTypeEntryFromPrimitiveJavaClass(value.getClass());
+      ObjectInspector valueOI = entry == null ? PrimitiveObjectInspectorFactory.javaStringObjectInspector
+        : PrimitiveObjectInspectorFactory.getPrimitiveJavaObjectInspector(entry.primitiveCategory);
+      return ObjectInspectorConverters.getConverter(valueOI, poi).convert(entry == null ? value.toString() : value);
+    case LIST:
+      ObjectInspector elementOI = ((ListObjectInspector) oi).getListElementObjectInspector();
+      List<Object> list = new ArrayList<Object>();
+      for (Object element : (List<?>) value) {
+        list.add(toJavaObject(element, elementOI));
+      }
+      return list;
+    case MAP:
+      MapObjectInspector moi = (MapObjectInspector) oi;
+      Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+      for (Map.Entry<?, ?> mapEntry : ((Map<?, ?>) value).entrySet()) {
+        map.put(toJavaObject(mapEntry.getKey(), moi.getMapKeyObjectInspector()),
+          toJavaObject(mapEntry.getValue(), moi.getMapValueObjectInspector()));
+      }
+      return map;
+    case STRUCT:
+      List<? extends StructField> fields = ((StructObjectInspector) oi).getAllStructFieldRefs();
+      List<?> fieldValues = value instanceof Object[] ? Arrays.asList((Object[]) value) : (List<?>) value;
+      List<Object> struct = new ArrayList<Object>(fields.size());
+      for (int i = 0; i < fields.size(); i++) {
+        struct.add(toJavaObject(i < fieldValues.size() ? fieldValues.get(i) : null,
+          fields.get(i).getFieldObjectInspector()));
+      }
+      return struct;
+    default:
+      return value;
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.PersistedOutputFormatter#addRowsFromPersistedPath(org.apache.hadoop.fs.Path)
+   */
+  @Override
+  public void addRowsFromPersistedPath(Path persistedDir) throws IOException {
+    FileSystem persistFs = persistedDir.getFileSystem(ctx.getConf());
+    FileStatus[] partFiles = persistFs.listStatus(persistedDir, new PathFilter() {
+      @Override
+      public boolean accept(Path path) {
+        return !path.getName().startsWith("_") && !path.getName().startsWith(".");
+      }
+    });
+    TreeMap<PartFile, FileStatus> partFileMap = new TreeMap<PartFile, FileStatus>();
+    try {
+      for (FileStatus file : partFiles) {
+        partFileMap.put(new PartFile(file.getPath().getName()), file);
+      }
+    } catch (ParseException e) {
+      throw new IOException(e);
+    }
+    if (partFileMap.isEmpty()) {
+      return;
+    }
+
+    SerDe serde = createPersistedResultSerde();
+    StructObjectInspector serdeOI;
+    try {
+      serdeOI = (StructObjectInspector) serde.getObjectInspector();
+    } catch (SerDeException e) {
+      throw new IOException(e);
+    }
+    // rows are written as lists of the deserialized fields, under the column names of the result
+    List<ObjectInspector> fieldOIs = new ArrayList<ObjectInspector>();
+    for (StructField field : serdeOI.getAllStructFieldRefs()) {
+      fieldOIs.add(field.getFieldObjectInspector());
+    }
+    createWriter(ObjectInspectorFactory.getStandardStructObjectInspector(columnNames, fieldOIs));
+
+    CompressionCodecFactory codecs = new CompressionCodecFactory(ctx.getConf());
+    Text line = new Text();
+    for (FileStatus file : partFileMap.values()) {
+      LOG.info("Processing file:" + file.getPath());
+      InputStream in = persistFs.open(file.getPath());
+      CompressionCodec codec = codecs.getCodec(file.getPath());
+      if (codec != null) {
+        in = codec.createInputStream(in);
+      }
+      LineReader reader = new LineReader(in, ctx.getConf());
+      try {
+        while (reader.readLine(line) > 0) {
+          writer.addRow(serdeOI.getStructFieldsDataAsList(serde.deserialize(line)));
+          numRows++;
+        }
+      } catch (SerDeException e) {
+        throw new IOException("Could not deserialize row of " + file.getPath(), e);
+      } finally {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Creates the serde deserializing rows persisted by the driver. It is given generated column names, since result
+   * column names can have the separators of the column list.
+   *
+   * @return the serde
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @SuppressWarnings("unchecked")
+  private SerDe createPersistedResultSerde() throws IOException {
+    try {
+      SerDe serde = ReflectionUtils.newInstance(
+        ctx.getConf().getClass(LensConfConstants.QUERY_PERSISTED_RESULT_SERDE,
+          (Class<? extends AbstractSerDe>) Class.forName(LensConfConstants.DEFAULT_PERSISTED_RESULT_SERDE),
+          SerDe.class), ctx.getConf());
+      List<String> names = new ArrayList<String>();
+      for (int i = 0; i < columnNames.size(); i++) {
+        names.add("_c" + i);
+      }
+      Properties props = new Properties();
+      props.setProperty(serdeConstants.LIST_COLUMNS, StringUtils.join(names, ","));
+      props.setProperty(serdeConstants.LIST_COLUMN_TYPES, types);
+      serde.initialize(ctx.getConf(), props);
+      return serde;
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    } catch (SerDeException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.QueryOutputFormatter#commit()
+   */
+  @Override
+  public void commit() throws IOException {
+    createWriter(inMemoryOI);
+    Charset utf8 = Charset.forName("UTF-8");
+    if (!StringUtils.isBlank(header)) {
+      writer.addUserMetadata(HEADER_METADATA_KEY, ByteBuffer.wrap(header.getBytes(utf8)));
+    }
+    if (!StringUtils.isBlank(footer)) {
+      writer.addUserMetadata(FOOTER_METADATA_KEY, ByteBuffer.wrap(footer.getBytes(utf8)));
+    }
+    writer.close();
+    writer = null;
+    FileSystem fs = outputPath.getFileSystem(ctx.getConf());
+    finalPath = new Path(outputPath + ORC_FILE_EXTN).makeQualified(fs);
+    fs.rename(tmpPath, finalPath);
+    ctx.setResultSetPath(finalPath.toString());
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.QueryOutputFormatter#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (writer != null) {
+      // not committed, discard the partial result
+      writer.close();
+      writer = null;
+      tmpPath.getFileSystem(ctx.getConf()).delete(tmpPath, false);
+    }
+  }
+
+  @Override
+  public String getFinalOutputPath() {
+    return finalPath == null ? null : finalPath.toString();
+  }
+
+  @Override
+  public int getNumRows() {
+    return numRows;
+  }
+
+  public Path getTmpPath() {
+    return tmpPath;
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.lib.query;
+
+import java.util.Arrays;
+
+/**
+ * Growable char buffer holding a serialized row. The buffer is meant to be reused across rows, so that serializing a
+ * row does not allocate once the buffer has grown to the size of the largest row.
+ */
+public final class RowBuffer {
+
+  /**
+   * The initial capacity.
+   */
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /**
+   * The chars of the row.
+   */
+  private char[] chars = new char[INITIAL_CAPACITY];
+
+  /**
+   * The length of the row.
+   */
+  private int length;
+
+  /**
+   * Gets the chars of the row. Only the first {@link #length()} chars are valid, and only till the buffer is reused.
+   *
+   * @return the chars
+   */
+  public char[] getChars() {
+    return chars;
+  }
+
+  /**
+   * Gets the length of the row.
+   *
+   * @return the length
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Clears the buffer, keeping its capacity.
+   */
+  public void clear() {
+    length = 0;
+  }
+
+  /**
+   * Appends a char.
+   *
+   * @param c the char
+   */
+  public void append(char c) {
+    ensureCapacity(length + 1);
+    chars[length++] = c;
+  }
+
+  /**
+   * Appends a string.
+   *
+   * @param str the string
+   */
+  public void append(String str) {
+    int len = str.length();
+    ensureCapacity(length + len);
+    str.getChars(0, len, chars, length);
+    length += len;
+  }
+
+  /**
+   * Appends the decimal representation of a long, without creating a string.
+   *
+   * @param value the value
+   */
+  public void append(long value) {
+    if (value == Long.MIN_VALUE) {
+      append(Long.toString(value));
+      return;
+    }
+    if (value < 0) {
+      append('-');
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value / 10; v > 0; v /= 10) {
+      digits++;
+    }
+    ensureCapacity(length + digits);
+    int pos = length + digits;
+    do {
+      chars[--pos] = (char) ('0' + (value % 10));
+      value /= 10;
+    } while (value > 0);
+    length += digits;
+  }
+
+  /**
+   * Ensures the buffer can hold the given number of chars.
+   *
+   * @param capacity the capacity
+   */
+  private void ensureCapacity(int capacity) {
+    if (capacity > chars.length) {
+      chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return new String(chars, 0, length);
+  }
+}
@@ -26,6 +26,7 @@ import org.apache.lens.server.api.driver.LensResultSetMetadata;
 import org.apache.lens.server.api.query.QueryContext;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 
 /**
  * Wraps the formatter {@link FileFormatter}, which can have implementations like {@link HadoopFileFormatter} or
@@ -99,6 +100,42 @@ public abstract class WrappedFileFormatter extends AbstractOutputFormatter {
     formatter.writeRow(row);
   }
 
+  /**
+   * Write row passed as chars of a buffer.
+   *
+   * @param row    the buffer holding the row
+   * @param offset the offset of the row in the buffer
+   * @param length the length of the row
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void writeRow(char[] row, int offset, int length) throws IOException {
+    formatter.writeRow(row, offset, length);
+  }
+
+  /**
+   * Whether rows encoded in the given charset can be written as they are, without decoding them.
+   *
+   * @param charset the charset
+   * @return true, if encoded rows can be written
+   */
+  protected boolean canWriteEncodedRows(Charset charset) {
+    return formatter instanceof HadoopFileFormatter && ((HadoopFileFormatter) formatter).canWriteEncodedRows(charset);
+  }
+
+  /**
+   * Write rows which are already encoded in the result encoding, along with their line terminators. Should be called
+   * only if {@link #canWriteEncodedRows(Charset)} is true.
+   *
+   * @param rows    the buffer holding the rows
+   * @param offset  the offset of the rows in the buffer
+   * @param length  the length of the rows
+   * @param numRows the number of rows
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  protected void writeEncodedRows(byte[] rows, int offset, int length, int numRows) throws IOException {
+    ((HadoopFileFormatter) formatter).writeEncodedRows(rows, offset, length, numRows);
+  }
+
   @Override
   public int getNumRows() {
     return formatter.getNumRows();
@@ -183,8 +183,30 @@ public class ZipFileFormatter extends AbstractFileFormatter {
    * @see org.apache.lens.lib.query.FileFormatter#writeRow(java.lang.String)
    */
   public void writeRow(String row) throws IOException {
-    // close zip entry and add new one, if numRows has crossed max rows in the
-    // cuurent file
+    startRow();
+    out.write(row);
+    out.write("\n");
+    numRows++;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.lib.query.FileFormatter#writeRow(char[], int, int)
+   */
+  public void writeRow(char[] row, int offset, int length) throws IOException {
+    startRow();
+    out.write(row, offset, length);
+    out.write('\n');
+    numRows++;
+  }
+
+  /**
+   * Close zip entry and add new one, if numRows has crossed max rows in the current file.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void startRow() throws IOException {
     if (numRows != 0 && numRows % maxSplitRows == 0) {
       currentPart++;
       out.flush();
@@ -199,9 +221,6 @@ public class ZipFileFormatter extends AbstractFileFormatter {
       }
       writeHeader();
     }
-    out.write(row);
-    out.write("\n");
-    numRows++;
   }
 
   /*
@@ -18,12 +18,14 @@
  */
 package org.apache.lens.lib.query;
 
+import au.com.bytecode.opencsv.CSVWriter;
 import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.io.Text;
 import org.testng.Assert;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
+import java.io.StringWriter;
 import java.util.*;
 
 /**
@@ -160,6 +162,44 @@ public class TestCSVSerde {
     props.put(serdeConstants.LIST_COLUMN_TYPES, "string,varchar(20),int,char(10)");
   }
 
+  /**
+   * Test that the serialized rows are the same as the ones written by opencsv.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testSerializeMatchesCSVWriter() throws Exception {
+    List<? extends Object> row = Arrays.asList("he said \"hi\"", "back\\slash 'quoted'", -42,
+      Long.MIN_VALUE, true, 1.5, null);
+    String[] fields = {"he said \"hi\"", "back\\slash 'quoted'", "-42", String.valueOf(Long.MIN_VALUE), "true",
+      "1.5", CSVSerde.DEFAULT_NULL_FORMAT, };
+
+    String[][] quoteAndEscapes = {{"\"", null}, {"'", "\\"}, {"-", "\\"}, };
+    for (String[] quoteAndEscape : quoteAndEscapes) {
+      Properties serdeProps = new Properties();
+      serdeProps.put(serdeConstants.LIST_COLUMNS, "a,b,c,d,e,f,g");
+      serdeProps.put(serdeConstants.LIST_COLUMN_TYPES, "string,string,int,bigint,boolean,double,string");
+      serdeProps.put("quoteChar", quoteAndEscape[0]);
+      StringWriter expected = new StringWriter();
+      CSVWriter writer;
+      if (quoteAndEscape[1] == null) {
+        writer = new CSVWriter(expected, ',', quoteAndEscape[0].charAt(0), "");
+      } else {
+        serdeProps.put("escapeChar", quoteAndEscape[1]);
+        writer = new CSVWriter(expected, ',', quoteAndEscape[0].charAt(0), quoteAndEscape[1].charAt(0), "");
+      }
+      writer.writeNext(fields);
+      writer.close();
+
+      CSVSerde serde = new CSVSerde();
+      serde.initialize(null, serdeProps);
+      Assert.assertEquals(serde.serialize(row, serde.getObjectInspector()).toString(), expected.toString());
+      // the buffer is reused across rows
+      RowBuffer buffer = serde.serializeToBuffer(row, serde.getObjectInspector());
+      Assert.assertEquals(new String(buffer.getChars(), 0, buffer.length()), expected.toString());
+    }
+  }
+
   /**
    * Test deserialize custom separators.
    *
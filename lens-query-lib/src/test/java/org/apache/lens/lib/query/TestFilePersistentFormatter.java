@@ -148,6 +148,23 @@ public class TestFilePersistentFormatter extends TestAbstractFileFormatter {
       getExpectedCSVRows());
   }
 
+  /**
+   * Test csv with one part file read ahead at a time, so that readers are started as part files get written.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testCSVWithSinglePrefetch() throws IOException {
+    Configuration conf = new Configuration();
+    setConf(conf);
+    conf.set(LensConfConstants.QUERY_OUTPUT_HEADER, "");
+    conf.setInt(LensConfConstants.RESULT_FORMAT_PREFETCH_PART_FILES, 1);
+    testFormatter(conf, "UTF8", LensConfConstants.RESULT_SET_PARENT_DIR_DEFAULT, ".csv", getMockedResultSet());
+    // validate rows
+    Assert.assertEquals(readFinalOutputFile(new Path(formatter.getFinalOutputPath()), conf, "UTF-8"),
+      getExpectedCSVRows());
+  }
+
   /**
    * Test text files.
    *
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.lib.query;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.metastore.api.FieldSchema;
+import org.apache.hadoop.hive.ql.io.orc.OrcFile;
+import org.apache.hadoop.hive.ql.io.orc.Reader;
+import org.apache.hadoop.hive.ql.io.orc.RecordReader;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hive.service.cli.ColumnDescriptor;
+import org.apache.lens.api.LensException;
+import org.apache.lens.api.query.ResultRow;
+import org.apache.lens.server.api.LensConfConstants;
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.driver.LensResultSetMetadata;
+import org.apache.lens.server.api.driver.MockDriver;
+import org.apache.lens.server.api.query.QueryContext;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The Class TestOrcOutputFormatter.
+ */
+public class TestOrcOutputFormatter {
+
+  /**
+   * The output parent dir.
+   */
+  private final String outputParent = "target/" + getClass().getSimpleName();
+
+  /**
+   * The part file dir.
+   */
+  private final Path partFileDir = new Path("file:///tmp/partorctextfiles");
+
+  /**
+   * The formatter.
+   */
+  private OrcOutputFormatter formatter;
+
+  /**
+   * Cleanup.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @AfterMethod
+  public void cleanup() throws IOException {
+    FileSystem fs = partFileDir.getFileSystem(new Configuration());
+    fs.delete(partFileDir, true);
+    if (formatter != null && formatter.getFinalOutputPath() != null) {
+      fs.delete(new Path(formatter.getFinalOutputPath()), true);
+    }
+  }
+
+  /**
+   * Test formatting in-memory rows, with values to be converted to the column types.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testInMemoryRows() throws IOException {
+    Configuration conf = new Configuration();
+    conf.set(LensConfConstants.QUERY_OUTPUT_HEADER, "first,second,third,fourth,fifth");
+    createFormatter(conf);
+    formatter.writeHeader();
+    formatter.writeRow(new ResultRow(Arrays.<Object>asList(1, "one", "one", 1.5d, Arrays.asList(1, 2))));
+    formatter.writeRow(new ResultRow(Arrays.<Object>asList(null, "two", null, "2.5", null)));
+    formatter.writeRow(new ResultRow(Arrays.<Object>asList(3L, null, "three", 3, Arrays.asList(3, null))));
+    formatter.writeFooter();
+    formatter.commit();
+    formatter.close();
+
+    Assert.assertEquals(formatter.getNumRows(), 3);
+    Path finalPath = new Path(formatter.getFinalOutputPath());
+    Assert.assertTrue(finalPath.getName().endsWith(OrcOutputFormatter.ORC_FILE_EXTN));
+    Assert.assertFalse(finalPath.getFileSystem(conf).exists(formatter.getTmpPath()));
+    Reader reader = OrcFile.createReader(finalPath.getFileSystem(conf), finalPath);
+    Assert.assertEquals(readRows(reader), getExpectedRows());
+    ByteBuffer header = reader.getMetadataValue(OrcOutputFormatter.HEADER_METADATA_KEY);
+    Assert.assertEquals(Charset.forName("UTF-8").decode(header).toString(), "first,second,third,fourth,fifth");
+  }
+
+  /**
+   * Test formatting rows persisted by the driver. Part files are read in the order of their ids, whose width varies.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testPersistedRows() throws IOException {
+    Configuration conf = new Configuration();
+    FileSystem fs = partFileDir.getFileSystem(conf);
+    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fs.create(new Path(partFileDir, "2_0"))));
+    writer.write("1\u0001one\u0001one\u00011.5\u00011\u00022\n");
+    writer.write("\\N\u0001two\u0001\\N\u00012.5\u0001\\N\n");
+    writer.close();
+    writer = new BufferedWriter(new OutputStreamWriter(fs.create(new Path(partFileDir, "10_0"))));
+    writer.write("3\u0001\\N\u0001three\u00013.0\u00013\u0002\\N\n");
+    writer.close();
+    fs.create(new Path(partFileDir, "_SUCCESS")).close();
+
+    createFormatter(conf);
+    formatter.addRowsFromPersistedPath(partFileDir);
+    formatter.commit();
+    formatter.close();
+
+    Assert.assertEquals(formatter.getNumRows(), 3);
+    Path finalPath = new Path(formatter.getFinalOutputPath());
+    Reader reader = OrcFile.createReader(finalPath.getFileSystem(conf), finalPath);
+    Assert.assertEquals(readRows(reader), getExpectedRows());
+  }
+
+  /**
+   * Creates and initializes the formatter.
+   *
+   * @param conf the conf
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void createFormatter(Configuration conf) throws IOException {
+    conf.set(LensConfConstants.RESULT_SET_PARENT_DIR, outputParent);
+    final LensDriver mockDriver = new MockDriver();
+    try {
+      mockDriver.configure(conf);
+    } catch (LensException e) {
+      Assert.fail(e.getMessage());
+    }
+    List<LensDriver> drivers = new ArrayList<LensDriver>();
+    drivers.add(mockDriver);
+    QueryContext ctx = new QueryContext("test writer query", "testuser", conf, drivers);
+    ctx.setSelectedDriver(mockDriver);
+    formatter = new OrcOutputFormatter();
+    formatter.init(ctx, getMetadata());
+  }
+
+  /**
+   * Read the rows of the orc file, with fields as strings.
+   *
+   * @param reader the reader
+   * @return the rows
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private List<String> readRows(Reader reader) throws IOException {
+    StructObjectInspector oi = (StructObjectInspector) reader.getObjectInspector();
+    List<String> rows = new ArrayList<String>();
+    RecordReader records = reader.rows();
+    Object row = null;
+    while (records.hasNext()) {
+      row = records.next(row);
+      rows.add(String.valueOf(oi.getStructFieldsDataAsList(row)));
+    }
+    records.close();
+    return rows;
+  }
+
+  private LensResultSetMetadata getMetadata() {
+    return new LensResultSetMetadata() {
+
+      @Override
+      public List<ColumnDescriptor> getColumns() {
+        List<ColumnDescriptor> columns = new ArrayList<ColumnDescriptor>();
+        columns.add(new ColumnDescriptor(new FieldSchema("firstcol", "bigint", ""), 0));
+        columns.add(new ColumnDescriptor(new FieldSchema("format(secondcol,2)", "string", ""), 1));
+        columns.add(new ColumnDescriptor(new FieldSchema("thirdcol", "varchar(20)", ""), 2));
+        columns.add(new ColumnDescriptor(new FieldSchema("fourthcol", "double", ""), 3));
+        columns.add(new ColumnDescriptor(new FieldSchema("fifthcol", "array<int>", ""), 4));
+        return columns;
+      }
+    };
+  }
+
+  private List<String> getExpectedRows() {
+    List<String> rows = new ArrayList<String>();
+    rows.add("[1, one, one, 1.5, [1, 2]]");
+    rows.add("[null, two, null, 2.5, null]");
+    rows.add("[3, null, three, 3.0, [3, null]]");
+    return rows;
+  }
+}
@@ -560,6 +560,16 @@ public final class LensConfConstants {
    */
   public static final String DEFAULT_OUTPUT_SERDE = "org.apache.lens.lib.query.CSVSerde";
 
+  /**
+   * The Constant QUERY_PERSISTED_RESULT_SERDE.
+   */
+  public static final String QUERY_PERSISTED_RESULT_SERDE = QUERY_PFX + "result.persisted.serde";
+
+  /**
+   * The Constant DEFAULT_PERSISTED_RESULT_SERDE.
+   */
+  public static final String DEFAULT_PERSISTED_RESULT_SERDE = "org.apache.hadoop.hive.serde2.lazy.LazySimpleSerDe";
+
   /**
    * The Constant QUERY_OUTPUT_FILE_EXTN.
    */
@@ -600,6 +610,16 @@ public final class LensConfConstants {
    */
   public static final String DEFAULT_OUTPUT_COMPRESSION_CODEC = "org.apache.hadoop.io.compress.GzipCodec";
 
+  /**
+   * The Constant QUERY_OUTPUT_ORC_COMPRESSION.
+   */
+  public static final String QUERY_OUTPUT_ORC_COMPRESSION = QUERY_PFX + "output.orc.compression";
+
+  /**
+   * The Constant DEFAULT_OUTPUT_ORC_COMPRESSION.
+   */
+  public static final String DEFAULT_OUTPUT_ORC_COMPRESSION = "ZLIB";
+
   /**
    * The Constant QUERY_OUTPUT_WRITE_HEADER.
    */
@@ -660,6 +680,16 @@ public final class LensConfConstants {
    */
   public static final long DEFAULT_RESULT_SPLIT_MULTIPLE_MAX_ROWS = 100000;
 
+  /**
+   * The Constant RESULT_FORMAT_PREFETCH_PART_FILES.
+   */
+  public static final String RESULT_FORMAT_PREFETCH_PART_FILES = QUERY_PFX + "result.format.prefetch.part.files";
+
+  /**
+   * The Constant DEFAULT_RESULT_FORMAT_PREFETCH_PART_FILES.
+   */
+  public static final int DEFAULT_RESULT_FORMAT_PREFETCH_PART_FILES = 4;
+
   /**
    * The Constant RESULT_FS_READ_URL.
    */
@@ -706,6 +736,191 @@ public final class LensConfConstants {
    */
   public static final long DEFAULT_STATS_ROLLUP_SCAN_RATE = 3600000;
 
+  // Query Launcher Configuration
+
+  /**
+   * The Constant QUERY_LAUNCHER_POOL_SIZE.
+   */
+  public static final String QUERY_LAUNCHER_POOL_SIZE = SERVER_PFX + "query.launcher.pool.size";
+
+  /**
+   * The Constant DEFAULT_QUERY_LAUNCHER_POOL_SIZE.
+   */
+  public static final int DEFAULT_QUERY_LAUNCHER_POOL_SIZE = 10;
+
+  /**
+   * The Constant MAX_CONCURRENT_LAUNCHES_PER_USER.
+   */
+  public static final String MAX_CONCURRENT_LAUNCHES_PER_USER = SERVER_PFX + "query.launcher.max.launches.per.user";
+
+  /**
+   * The Constant DEFAULT_MAX_CONCURRENT_LAUNCHES_PER_USER.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_LAUNCHES_PER_USER = 0;
+
+  /**
+   * The Constant MAX_RUNNING_QUERIES_PER_DRIVER.
+   */
+  public static final String MAX_RUNNING_QUERIES_PER_DRIVER = SERVER_PFX + "query.max.running.per.driver";
+
+  /**
+   * The Constant DEFAULT_MAX_RUNNING_QUERIES_PER_DRIVER.
+   */
+  public static final int DEFAULT_MAX_RUNNING_QUERIES_PER_DRIVER = 0;
+
+  // Query Status Update Configuration
+
+  /**
+   * The Constant STATUS_UPDATE_POOL_SIZE.
+   */
+  public static final String STATUS_UPDATE_POOL_SIZE = SERVER_PFX + "status.update.pool.size";
+
+  /**
+   * The Constant DEFAULT_STATUS_UPDATE_POOL_SIZE.
+   */
+  public static final int DEFAULT_STATUS_UPDATE_POOL_SIZE = 10;
+
+  /**
+   * The Constant STATUS_POLL_MIN_INTERVAL_MILLIS.
+   */
+  public static final String STATUS_POLL_MIN_INTERVAL_MILLIS = SERVER_PFX + "status.poll.min.interval.millis";
+
+  /**
+   * The Constant DEFAULT_STATUS_POLL_MIN_INTERVAL_MILLIS.
+   */
+  public static final long DEFAULT_STATUS_POLL_MIN_INTERVAL_MILLIS = 250L;
+
+  /**
+   * The Constant STATUS_POLL_MAX_INTERVAL_MILLIS.
+   */
+  public static final String STATUS_POLL_MAX_INTERVAL_MILLIS = SERVER_PFX + "status.poll.max.interval.millis";
+
+  /**
+   * The Constant DEFAULT_STATUS_POLL_MAX_INTERVAL_MILLIS.
+   */
+  public static final long DEFAULT_STATUS_POLL_MAX_INTERVAL_MILLIS = 1000L;
+
+  /**
+   * The Constant STATUS_UPDATE_BATCH_SIZE.
+   */
+  public static final String STATUS_UPDATE_BATCH_SIZE = SERVER_PFX + "status.update.batch.size";
+
+  /**
+   * The Constant DEFAULT_STATUS_UPDATE_BATCH_SIZE.
+   */
+  public static final int DEFAULT_STATUS_UPDATE_BATCH_SIZE = 100;
+
+  // Result Fetch Pool Configuration
+
+  /**
+   * The Constant RESULT_FETCH_POOL_SIZE.
+   */
+  public static final String RESULT_FETCH_POOL_SIZE = SERVER_PFX + "result.fetch.pool.size";
+
+  /**
+   * The Constant DEFAULT_RESULT_FETCH_POOL_SIZE.
+   */
+  public static final int DEFAULT_RESULT_FETCH_POOL_SIZE = 10;
+
+  // In-memory Result Set Configuration
+
+  /**
+   * The Constant INMEMORY_RESULT_SET_MAX_BYTES_IN_MEMORY.
+   */
+  public static final String INMEMORY_RESULT_SET_MAX_BYTES_IN_MEMORY = SERVER_PFX
+    + "inmemory.resultset.max.bytes.in.memory";
+
+  /**
+   * The Constant DEFAULT_INMEMORY_RESULT_SET_MAX_BYTES_IN_MEMORY.
+   */
+  public static final long DEFAULT_INMEMORY_RESULT_SET_MAX_BYTES_IN_MEMORY = 10 * 1024 * 1024L;
+
+  /**
+   * The Constant INMEMORY_RESULT_SET_SPILL_DIR.
+   */
+  public static final String INMEMORY_RESULT_SET_SPILL_DIR = SERVER_PFX + "inmemory.resultset.spill.dir";
+
+  /**
+   * The Constant DEFAULT_INMEMORY_RESULT_SET_SPILL_DIR.
+   */
+  public static final String DEFAULT_INMEMORY_RESULT_SET_SPILL_DIR = "/tmp/lens/resultspill";
+
+  // Result Download Configuration
+
+  /**
+   * The Constant RESULT_DOWNLOAD_BUFFER_SIZE.
+   */
+  public static final String RESULT_DOWNLOAD_BUFFER_SIZE = SERVER_PFX + "result.download.buffer.size";
+
+  /**
+   * The Constant DEFAULT_RESULT_DOWNLOAD_BUFFER_SIZE.
+   */
+  public static final int DEFAULT_RESULT_DOWNLOAD_BUFFER_SIZE = 256 * 1024;
+
+  /**
+   * The Constant RESULT_DOWNLOAD_GZIP_ENABLED.
+   */
+  public static final String RESULT_DOWNLOAD_GZIP_ENABLED = SERVER_PFX + "result.download.gzip.enabled";
+
+  /**
+   * The Constant DEFAULT_RESULT_DOWNLOAD_GZIP_ENABLED.
+   */
+  public static final boolean DEFAULT_RESULT_DOWNLOAD_GZIP_ENABLED = true;
+
+  // Query Rewrite Pool Configuration
+
+  /**
+   * The Constant QUERY_REWRITE_POOL_SIZE.
+   */
+  public static final String QUERY_REWRITE_POOL_SIZE = SERVER_PFX + "query.rewrite.pool.size";
+
+  /**
+   * The Constant DEFAULT_QUERY_REWRITE_POOL_SIZE.
+   */
+  public static final int DEFAULT_QUERY_REWRITE_POOL_SIZE = 20;
+
+  /**
+   * The Constant QUERY_REWRITE_TIMEOUT_MILLIS.
+   */
+  public static final String QUERY_REWRITE_TIMEOUT_MILLIS = SERVER_PFX + "query.rewrite.timeout.millis";
+
+  /**
+   * The Constant DEFAULT_QUERY_REWRITE_TIMEOUT_MILLIS.
+   */
+  public static final long DEFAULT_QUERY_REWRITE_TIMEOUT_MILLIS = 60000L;
+
+  // Query Rewrite Cache Configuration
+
+  /**
+   * The Constant QUERY_REWRITE_CACHE_SIZE.
+   */
+  public static final String QUERY_REWRITE_CACHE_SIZE = SERVER_PFX + "query.rewrite.cache.size";
+
+  /**
+   * The Constant DEFAULT_QUERY_REWRITE_CACHE_SIZE.
+   */
+  public static final int DEFAULT_QUERY_REWRITE_CACHE_SIZE = 1000;
+
+  /**
+   * The Constant QUERY_REWRITE_CACHE_EXPIRY_MILLIS.
+   */
+  public static final String QUERY_REWRITE_CACHE_EXPIRY_MILLIS = SERVER_PFX + "query.rewrite.cache.expiry.millis";
+
+  /**
+   * The Constant DEFAULT_QUERY_REWRITE_CACHE_EXPIRY_MILLIS.
+   */
+  public static final long DEFAULT_QUERY_REWRITE_CACHE_EXPIRY_MILLIS = 600000L;
+
+  /**
+   * The Constant QUERY_REWRITE_CACHE_CONF_PREFIXES.
+   */
+  public static final String QUERY_REWRITE_CACHE_CONF_PREFIXES = SERVER_PFX + "query.rewrite.cache.conf.prefixes";
+
+  /**
+   * The Constant DEFAULT_QUERY_REWRITE_CACHE_CONF_PREFIXES.
+   */
+  public static final String DEFAULT_QUERY_REWRITE_CACHE_CONF_PREFIXES = "lens.cube.query.";
+
   // Query Purge Configuration
 
   /**
@@ -718,6 +933,16 @@ public final class LensConfConstants {
    */
   public static final int DEFAULT_FINISHED_QUERIES = 100;
 
+  /**
+   * The Constant QUERY_PURGER_BATCH_SIZE.
+   */
+  public static final String QUERY_PURGER_BATCH_SIZE = SERVER_PFX + "querypurger.batch.size";
+
+  /**
+   * The Constant DEFAULT_QUERY_PURGER_BATCH_SIZE.
+   */
+  public static final int DEFAULT_QUERY_PURGER_BATCH_SIZE = 100;
+
   // Server DB configuration
   /**
    * The Constant SERVER_DB_DRIVER_NAME.
@@ -602,6 +602,6 @@ public abstract class DriverQueryPlan {
     return new QueryPlan(numJoins, numGbys, numSels, numSelDi, numHaving, numObys, numAggrExprs, numFilters,
       tablesQueried, hasSubQuery, execMode != null ? execMode.name() : null, scanMode != null ? scanMode.name()
       : null, tableWeights, joinWeight, gbyWeight, filterWeight, havingWeight, obyWeight, selectWeight, null,
-      URLEncoder.encode(getPlan(), "UTF-8"), getCost(), false, null);
+      URLEncoder.encode(getPlan(), "UTF-8"), getCost(), false, null, null, null);
   }
 }
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.driver;
+
+import lombok.Getter;
+
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.server.api.driver.DriverQueryStatus.DriverQueryState;
+
+import java.util.UUID;
+
+/**
+ * Event fired by a driver when it comes to know that state of a query launched on it has changed.
+ */
+public class DriverQueryStatusChanged extends DriverEvent {
+
+  /**
+   * The event id.
+   */
+  @Getter
+  private final String eventId = UUID.randomUUID().toString();
+
+  /**
+   * The query handle.
+   */
+  @Getter
+  private final QueryHandle queryHandle;
+
+  /**
+   * The new state of the query on the driver.
+   */
+  @Getter
+  private final DriverQueryState state;
+
+  /**
+   * Instantiates a new driver query status changed event.
+   *
+   * @param eventTime   the event time
+   * @param driver      the driver
+   * @param queryHandle the query handle
+   * @param state       the new state
+   */
+  public DriverQueryStatusChanged(long eventTime, LensDriver driver, QueryHandle queryHandle, DriverQueryState state) {
+    super(eventTime, driver);
+    this.queryHandle = queryHandle;
+    this.state = state;
+  }
+}
@@ -54,15 +54,86 @@ public abstract class InMemoryResultSet extends LensResultSet {
    */
   public abstract void setFetchSize(int size) throws LensException;
 
+  /**
+   * The number of rows read from the driver through {@link #toQueryResult(long, int)}.
+   */
+  private long fetchedRows;
+
+  /**
+   * Whether all the rows have been read from the driver.
+   */
+  private boolean exhausted;
+
+  /**
+   * The buffer of rows read from the driver, null if rows once read cannot be fetched again.
+   */
+  private ResultRowBuffer resultBuffer;
+
+  /**
+   * Set the buffer keeping rows read from the driver, which allows fetching rows before the current position of the
+   * driver cursor.
+   *
+   * @param resultBuffer the result buffer
+   */
+  public synchronized void setResultBuffer(ResultRowBuffer resultBuffer) {
+    this.resultBuffer = resultBuffer;
+  }
+
+  /**
+   * Release the rows held in the result buffer.
+   */
+  public synchronized void closeResultBuffer() {
+    if (resultBuffer != null) {
+      resultBuffer.close();
+      resultBuffer = null;
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
    * @see org.apache.lens.server.api.driver.LensResultSet#toQueryResult()
    */
-  public QueryResult toQueryResult() throws LensException {
+  public synchronized QueryResult toQueryResult() throws LensException {
+    return toQueryResult(resultBuffer == null ? fetchedRows : 0, 0);
+  }
+
+  /**
+   * Get a page of the result. Rows are read from the driver in windows of fetch size, only as far as the requested
+   * page. Rows before the current position of the driver cursor are served from the result buffer. Without a result
+   * buffer the result can be read only in forward direction, and the page starts at the current position of the
+   * driver cursor if rows from the start index were already read.
+   *
+   * @param startIndex the index of first row of the page
+   * @param fetchSize  the max number of rows in the page, non positive value to get all the rows from start index
+   * @return {@link QueryResult}
+   * @throws LensException the lens exception
+   */
+  public synchronized QueryResult toQueryResult(long startIndex, int fetchSize) throws LensException {
+    startIndex = Math.max(resultBuffer == null ? fetchedRows : 0, startIndex);
+    long endIndex = fetchSize > 0 ? startIndex + fetchSize : Long.MAX_VALUE;
     List<ResultRow> rows = new ArrayList<ResultRow>();
-    while (hasNext()) {
-      rows.add(next());
+    if (startIndex < fetchedRows) {
+      rows.addAll(resultBuffer.get(startIndex, (int) (Math.min(endIndex, fetchedRows) - startIndex)));
+    }
+    if (fetchedRows < endIndex && !exhausted) {
+      if (fetchSize > 0) {
+        setFetchSize(fetchSize);
+      }
+      while (fetchedRows < endIndex) {
+        if (!hasNext()) {
+          exhausted = true;
+          break;
+        }
+        ResultRow row = next();
+        fetchedRows++;
+        if (resultBuffer != null) {
+          resultBuffer.add(row);
+        }
+        if (fetchedRows > startIndex) {
+          rows.add(row);
+        }
+      }
     }
     return new InMemoryQueryResult(rows);
   }
@@ -27,6 +27,8 @@ import org.apache.lens.server.api.query.PreparedQueryContext;
 import org.apache.lens.server.api.query.QueryContext;
 
 import java.io.Externalizable;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * The Interface LensDriver.
@@ -119,6 +121,17 @@ public interface LensDriver extends Externalizable {
    */
   void updateStatus(QueryContext context) throws LensException;
 
+  /**
+   * Update driver query status of all the given queries in their context objects, so that the status of all queries
+   * launched on the driver can be refreshed once per poll cycle. Failing to update status of a query does not stop the
+   * status update of the others. Status of each query is applied holding the lock on its context, as the query can be
+   * cancelled or closed concurrently; calls to the underlying execution engine should be made outside that lock.
+   *
+   * @param contexts the query contexts
+   * @return the errors of the queries whose status could not be updated, keyed by query handle
+   */
+  Map<QueryHandle, LensException> updateStatuses(Collection<QueryContext> contexts);
+
   /**
    * Fetch the results of the query, specified by the handle.
    *
@@ -166,4 +179,12 @@ public interface LensDriver extends Externalizable {
    * @param driverEventListener the driver event listener
    */
   void registerDriverEventListener(LensEventListener<DriverEvent> driverEventListener);
+
+  /**
+   * Add a listener to be notified when the driver comes to know that status of a query launched on it has changed.
+   * Drivers which cannot detect status changes on their own need not notify, status of their queries is polled.
+   *
+   * @param statusListener the status listener
+   */
+  void registerQueryStatusListener(LensEventListener<DriverQueryStatusChanged> statusListener);
 }
@@ -22,6 +22,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.lens.server.api.query.AbstractQueryContext;
 import org.apache.log4j.Logger;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 
@@ -29,7 +30,8 @@ public class MinQueryCostSelector implements DriverSelector {
   public static final Logger LOG = Logger.getLogger(MinQueryCostSelector.class);
 
   /**
-   * Returns the driver that has the minimum query cost.
+   * Returns the driver that has the minimum query cost. Drivers without a plan, because explain failed or timed out,
+   * are skipped unless no driver has a plan.
    *
    * @param ctx  the context
    * @param conf the conf
@@ -38,7 +40,11 @@ public class MinQueryCostSelector implements DriverSelector {
   @Override
   public LensDriver select(final AbstractQueryContext ctx,
     final Configuration conf) {
-    return Collections.min(ctx.getDriverContext().getDrivers(), new Comparator<LensDriver>() {
+    Collection<LensDriver> drivers = ctx.getDriverContext().getDriversWithValidPlans();
+    if (drivers.isEmpty()) {
+      drivers = ctx.getDriverContext().getDrivers();
+    }
+    return Collections.min(drivers, new Comparator<LensDriver>() {
       @Override
       public int compare(LensDriver d1, LensDriver d2) {
         return comparePlans(ctx.getDriverContext().getDriverQueryPlan(d1), ctx
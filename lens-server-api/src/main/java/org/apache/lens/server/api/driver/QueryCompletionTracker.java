@@ -0,0 +1,344 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.driver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lens.api.LensException;
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.server.api.driver.DriverQueryStatus.DriverQueryState;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Tracks completion of the queries of a driver for which completion notification is registered. All tracked queries
+ * are polled together on a single scheduled thread, instead of a thread per query. Drivers which know when a query
+ * finishes can report it right away. Listeners are notified once, and waiters are woken up through the future returned
+ * on tracking the query. A query can be tracked more than once, each time with its own listener and timeout.
+ */
+public class QueryCompletionTracker {
+
+  /**
+   * The Constant LOG.
+   */
+  public static final Log LOG = LogFactory.getLog(QueryCompletionTracker.class);
+
+  /**
+   * The Constant DEFAULT_POLL_INTERVAL_MILLIS.
+   */
+  public static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000L;
+
+  /**
+   * Checks status of the tracked queries on the driver.
+   */
+  public interface StatusChecker {
+
+    /**
+     * Gets the state of the queries which have finished. Queries which have not finished yet are left out.
+     *
+     * @param handles the handles of the tracked queries
+     * @param errors  to be filled with the errors of the queries whose status could not be checked
+     * @return the finished states
+     */
+    Map<QueryHandle, DriverQueryState> getFinishedStates(Collection<QueryHandle> handles,
+      Map<QueryHandle, String> errors);
+  }
+
+  /**
+   * A tracked query.
+   */
+  private static class TrackedQuery {
+
+    /**
+     * The handle.
+     */
+    private final QueryHandle handle;
+
+    /**
+     * The time after which the query times out, non positive if it never does.
+     */
+    private final long deadline;
+
+    /**
+     * The listener, can be null.
+     */
+    private final QueryCompletionListener listener;
+
+    /**
+     * The future of the finished state.
+     */
+    private final SettableFuture<DriverQueryState> future = SettableFuture.create();
+
+    /**
+     * Instantiates a new tracked query.
+     *
+     * @param handle        the handle
+     * @param timeoutMillis the timeout millis
+     * @param listener      the listener
+     */
+    TrackedQuery(QueryHandle handle, long timeoutMillis, QueryCompletionListener listener) {
+      this.handle = handle;
+      this.deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+      this.listener = listener;
+    }
+  }
+
+  /**
+   * The status checker.
+   */
+  private final StatusChecker checker;
+
+  /**
+   * The registrations of the tracked queries, guarded by the tracker.
+   */
+  private final Map<QueryHandle, List<TrackedQuery>> trackedQueries = new HashMap<QueryHandle, List<TrackedQuery>>();
+
+  /**
+   * The scheduler polling the tracked queries.
+   */
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * Instantiates a new query completion tracker, polling the tracked queries at the given interval.
+   *
+   * @param name               the name of the polling thread
+   * @param checker            the status checker
+   * @param pollIntervalMillis the poll interval in millis
+   */
+  public QueryCompletionTracker(final String name, StatusChecker checker, long pollIntervalMillis) {
+    this.checker = checker;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread th = new Thread(runnable, name);
+        th.setDaemon(true);
+        return th;
+      }
+    });
+    pollIntervalMillis = Math.max(1, pollIntervalMillis);
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        poll();
+      }
+    }, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Track completion of the query. The listener is notified of an error if the query does not finish within the
+   * timeout.
+   *
+   * @param handle        the handle
+   * @param timeoutMillis the timeout in millis, non positive to wait till the query finishes
+   * @param listener      the listener, can be null
+   * @return the future of the finished state of the query, which fails if the query could not be polled or timed out
+   * @throws LensException if the tracker is closed
+   */
+  public Future<DriverQueryState> track(QueryHandle handle, long timeoutMillis, QueryCompletionListener listener)
+    throws LensException {
+    if (scheduler.isShutdown()) {
+      throw new LensException("Completion tracker is closed, could not track " + handle);
+    }
+    TrackedQuery query = new TrackedQuery(handle, timeoutMillis, listener);
+    synchronized (trackedQueries) {
+      List<TrackedQuery> registrations = trackedQueries.get(handle);
+      if (registrations == null) {
+        registrations = new ArrayList<TrackedQuery>();
+        trackedQueries.put(handle, registrations);
+      }
+      registrations.add(query);
+    }
+    return query.future;
+  }
+
+  /**
+   * Report that the query has finished, so that its listener is notified without waiting for the next poll.
+   *
+   * @param handle the handle
+   * @param state  the finished state
+   */
+  public void finished(QueryHandle handle, DriverQueryState state) {
+    for (TrackedQuery query : untrack(handle)) {
+      notifyCompletion(query, state);
+    }
+  }
+
+  /**
+   * Report that the query has failed, so that its listener is notified without waiting for the next poll.
+   *
+   * @param handle the handle
+   * @param error  the error
+   */
+  public void failed(QueryHandle handle, String error) {
+    for (TrackedQuery query : untrack(handle)) {
+      notifyError(query, error);
+    }
+  }
+
+  /**
+   * Gets the number of tracked queries.
+   *
+   * @return the number of tracked queries
+   */
+  public int getTrackedCount() {
+    synchronized (trackedQueries) {
+      return trackedQueries.size();
+    }
+  }
+
+  /**
+   * Stop tracking the query.
+   *
+   * @param handle the handle
+   * @return the registrations of the query, empty if it was not tracked
+   */
+  private List<TrackedQuery> untrack(QueryHandle handle) {
+    List<TrackedQuery> registrations;
+    synchronized (trackedQueries) {
+      registrations = trackedQueries.remove(handle);
+    }
+    return registrations == null ? Collections.<TrackedQuery>emptyList() : registrations;
+  }
+
+  /**
+   * Stop tracking the registrations of the query which have timed out.
+   *
+   * @param handle the handle
+   * @param now    the current time
+   * @return the timed out registrations
+   */
+  private List<TrackedQuery> untrackTimedOut(QueryHandle handle, long now) {
+    List<TrackedQuery> timedOut = new ArrayList<TrackedQuery>();
+    synchronized (trackedQueries) {
+      List<TrackedQuery> registrations = trackedQueries.get(handle);
+      if (registrations == null) {
+        return timedOut;
+      }
+      for (Iterator<TrackedQuery> itr = registrations.iterator(); itr.hasNext();) {
+        TrackedQuery query = itr.next();
+        if (query.deadline > 0 && now > query.deadline) {
+          itr.remove();
+          timedOut.add(query);
+        }
+      }
+      if (registrations.isEmpty()) {
+        trackedQueries.remove(handle);
+      }
+    }
+    return timedOut;
+  }
+
+  /**
+   * Stop polling. Listeners of the queries still being tracked are notified of an error.
+   */
+  public void close() {
+    scheduler.shutdownNow();
+    List<QueryHandle> handles;
+    synchronized (trackedQueries) {
+      handles = new ArrayList<QueryHandle>(trackedQueries.keySet());
+    }
+    for (QueryHandle handle : handles) {
+      failed(handle, "driver closed");
+    }
+  }
+
+  /**
+   * Poll status of all tracked queries.
+   */
+  private void poll() {
+    List<QueryHandle> handles;
+    synchronized (trackedQueries) {
+      if (trackedQueries.isEmpty()) {
+        return;
+      }
+      handles = new ArrayList<QueryHandle>(trackedQueries.keySet());
+    }
+    Map<QueryHandle, String> errors = new HashMap<QueryHandle, String>();
+    Map<QueryHandle, DriverQueryState> finishedStates;
+    try {
+      finishedStates = checker.getFinishedStates(handles, errors);
+    } catch (Exception e) {
+      LOG.warn("Error while polling for status", e);
+      finishedStates = new HashMap<QueryHandle, DriverQueryState>();
+      for (QueryHandle handle : handles) {
+        errors.put(handle, "error polling");
+      }
+    }
+    long now = System.currentTimeMillis();
+    for (QueryHandle handle : handles) {
+      DriverQueryState state = finishedStates.get(handle);
+      if (state != null) {
+        finished(handle, state);
+      } else if (errors.containsKey(handle)) {
+        failed(handle, errors.get(handle));
+      } else {
+        for (TrackedQuery query : untrackTimedOut(handle, now)) {
+          notifyError(query, "timedout");
+        }
+      }
+    }
+  }
+
+  /**
+   * Notify completion of the query.
+   *
+   * @param query the query
+   * @param state the finished state
+   */
+  private void notifyCompletion(TrackedQuery query, DriverQueryState state) {
+    query.future.set(state);
+    if (query.listener != null) {
+      try {
+        query.listener.onCompletion(query.handle);
+      } catch (Exception e) {
+        LOG.error("Error notifying completion of " + query.handle, e);
+      }
+    }
+  }
+
+  /**
+   * Notify error of the query.
+   *
+   * @param query the query
+   * @param error the error
+   */
+  private void notifyError(TrackedQuery query, String error) {
+    query.future.setException(new LensException(error));
+    if (query.listener != null) {
+      try {
+        query.listener.onError(query.handle, error);
+      } catch (Exception e) {
+        LOG.error("Error notifying error of " + query.handle, e);
+      }
+    }
+  }
+}
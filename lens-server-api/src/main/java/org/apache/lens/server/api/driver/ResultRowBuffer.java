@@ -0,0 +1,432 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.driver;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lens.api.LensException;
+import org.apache.lens.api.query.ResultRow;
+
+/**
+ * Buffer of the rows read from an in-memory result set, so that rows already read from the driver can be fetched
+ * again. Rows are kept in memory until their estimated size reaches maxBytesInMemory, rest of the rows are spilled to a
+ * file on local disk. The spill file is deleted when the buffer is closed.
+ */
+public class ResultRowBuffer {
+
+  /** The Constant LOG. */
+  public static final Log LOG = LogFactory.getLog(ResultRowBuffer.class);
+
+  /** The offset of every INDEX_INTERVAL'th spilled row is indexed. */
+  static final int INDEX_INTERVAL = 1000;
+
+  /** The prefix of spill file names. */
+  static final String SPILL_FILE_PREFIX = "resultrows";
+
+  /** The suffix of spill file names. */
+  static final String SPILL_FILE_SUFFIX = ".spill";
+
+  /** Type tags of the spilled values. */
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte FLOAT = 5;
+  private static final byte BOOLEAN = 6;
+  private static final byte SHORT = 7;
+  private static final byte BYTE = 8;
+  private static final byte BYTES = 9;
+  private static final byte OBJECT = 10;
+
+  /** The estimated bytes taken by a value of fixed width type and its reference. */
+  private static final int FIXED_VALUE_BYTES = 24;
+
+  /** The estimated bytes taken by a row object and its list of values. */
+  private static final int ROW_BYTES = 64;
+
+  /** The spill directory. */
+  private final File spillDir;
+
+  /** The max estimated bytes of rows in memory. */
+  private final long maxBytesInMemory;
+
+  /** The estimated bytes of rows in memory. */
+  private long memoryBytes;
+
+  /** The rows in memory. */
+  private final List<ResultRow> memoryRows = new ArrayList<ResultRow>();
+
+  /** The offsets of indexed rows in the spill file. */
+  private final List<Long> spillIndex = new ArrayList<Long>();
+
+  /** The spill file. */
+  private File spillFile;
+
+  /** The spill file output. */
+  private DataOutputStream spillOut;
+
+  /** The buffer a spilled row is encoded into. */
+  private final ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+
+  /** The bytes written to the spill file. */
+  private long spillLength;
+
+  /** The number of spilled rows. */
+  private long spilledRows;
+
+  /**
+   * Instantiates a new result row buffer.
+   *
+   * @param spillDir
+   *          the directory to spill rows to
+   * @param maxBytesInMemory
+   *          the max estimated bytes of rows kept in memory
+   */
+  public ResultRowBuffer(File spillDir, long maxBytesInMemory) {
+    this.spillDir = spillDir;
+    this.maxBytesInMemory = Math.max(0, maxBytesInMemory);
+  }
+
+  /**
+   * Delete the spill files left in the spill directory, by a server which did not close its buffers.
+   *
+   * @param spillDir
+   *          the spill directory
+   */
+  public static void deleteSpillFiles(File spillDir) {
+    File[] files = spillDir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String name = file.getName();
+      if (name.startsWith(SPILL_FILE_PREFIX) && name.endsWith(SPILL_FILE_SUFFIX) && !file.delete()) {
+        LOG.warn("Could not delete spill file " + file);
+      }
+    }
+  }
+
+  /**
+   * Get the number of rows in the buffer.
+   *
+   * @return the size
+   */
+  public synchronized long size() {
+    return memoryRows.size() + spilledRows;
+  }
+
+  /**
+   * Add a row at the end of the buffer.
+   *
+   * @param row
+   *          the row
+   * @throws LensException
+   *           the lens exception
+   */
+  public synchronized void add(ResultRow row) throws LensException {
+    if (spillOut == null) {
+      long rowSize = estimateSize(row);
+      if (memoryBytes + rowSize <= maxBytesInMemory) {
+        memoryRows.add(row);
+        memoryBytes += rowSize;
+        return;
+      }
+    }
+    try {
+      if (spillOut == null) {
+        spillDir.mkdirs();
+        spillFile = File.createTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX, spillDir);
+        spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+        LOG.info("Spilling result rows to " + spillFile);
+      }
+      if (spilledRows % INDEX_INTERVAL == 0) {
+        spillIndex.add(spillLength);
+      }
+      rowBytes.reset();
+      write(row, new DataOutputStream(rowBytes));
+      spillOut.writeInt(rowBytes.size());
+      rowBytes.writeTo(spillOut);
+      spillLength += 4 + rowBytes.size();
+      spilledRows++;
+    } catch (IOException e) {
+      throw new LensException("Error spilling result row to " + spillFile, e);
+    }
+  }
+
+  /**
+   * Get the rows in the buffer starting from the given index.
+   *
+   * @param startIndex
+   *          the start index
+   * @param count
+   *          the max number of rows to return
+   * @return the rows
+   * @throws LensException
+   *           the lens exception
+   */
+  public synchronized List<ResultRow> get(long startIndex, int count) throws LensException {
+    long end = Math.min(size(), startIndex + count);
+    List<ResultRow> rows = new ArrayList<ResultRow>();
+    long index = startIndex;
+    for (; index < end && index < memoryRows.size(); index++) {
+      rows.add(memoryRows.get((int) index));
+    }
+    if (index >= end) {
+      return rows;
+    }
+    long spillStart = index - memoryRows.size();
+    long spillEnd = end - memoryRows.size();
+    RandomAccessFile in = null;
+    try {
+      spillOut.flush();
+      in = new RandomAccessFile(spillFile, "r");
+      long row = (spillStart / INDEX_INTERVAL) * INDEX_INTERVAL;
+      in.seek(spillIndex.get((int) (spillStart / INDEX_INTERVAL)));
+      for (; row < spillEnd; row++) {
+        byte[] bytes = new byte[in.readInt()];
+        if (row < spillStart) {
+          in.skipBytes(bytes.length);
+        } else {
+          in.readFully(bytes);
+          rows.add(read(new DataInputStream(new ByteArrayInputStream(bytes))));
+        }
+      }
+    } catch (IOException e) {
+      throw new LensException("Error reading spilled result rows from " + spillFile, e);
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          LOG.warn("Error closing spill file " + spillFile, e);
+        }
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Release the buffered rows and delete the spill file.
+   */
+  public synchronized void close() {
+    memoryRows.clear();
+    memoryBytes = 0;
+    spillIndex.clear();
+    spilledRows = 0;
+    spillLength = 0;
+    if (spillOut != null) {
+      try {
+        spillOut.close();
+      } catch (IOException e) {
+        LOG.warn("Error closing spill file " + spillFile, e);
+      }
+      spillOut = null;
+    }
+    if (spillFile != null) {
+      if (!spillFile.delete()) {
+        LOG.warn("Could not delete spill file " + spillFile);
+      }
+      spillFile = null;
+    }
+  }
+
+  /**
+   * Estimate the bytes taken in memory by the row.
+   *
+   * @param row
+   *          the row
+   * @return the estimated size
+   */
+  static long estimateSize(ResultRow row) {
+    long size = ROW_BYTES;
+    for (Object value : row.getValues()) {
+      if (value instanceof String) {
+        size += 40 + 2L * ((String) value).length();
+      } else if (value instanceof byte[]) {
+        size += 24 + ((byte[]) value).length;
+      } else {
+        size += FIXED_VALUE_BYTES;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Write the row values, each value as a type tag followed by its value. Values of types other than the primitive
+   * wrappers, strings and byte arrays are written with java serialization.
+   *
+   * @param row
+   *          the row
+   * @param out
+   *          the output
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static void write(ResultRow row, DataOutputStream out) throws IOException {
+    List<Object> values = row.getValues();
+    out.writeInt(values.size());
+    for (Object value : values) {
+      if (value == null) {
+        out.writeByte(NULL);
+      } else if (value instanceof String) {
+        out.writeByte(STRING);
+        writeBytes(((String) value).getBytes("UTF-8"), out);
+      } else if (value instanceof Integer) {
+        out.writeByte(INT);
+        out.writeInt((Integer) value);
+      } else if (value instanceof Long) {
+        out.writeByte(LONG);
+        out.writeLong((Long) value);
+      } else if (value instanceof Double) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (value instanceof Float) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (value instanceof Boolean) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      } else if (value instanceof Short) {
+        out.writeByte(SHORT);
+        out.writeShort((Short) value);
+      } else if (value instanceof Byte) {
+        out.writeByte(BYTE);
+        out.writeByte((Byte) value);
+      } else if (value instanceof byte[]) {
+        out.writeByte(BYTES);
+        writeBytes((byte[]) value, out);
+      } else {
+        out.writeByte(OBJECT);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+        objectOut.writeObject(value);
+        objectOut.close();
+        writeBytes(bytes.toByteArray(), out);
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Read the row values written by {@link #write(ResultRow, DataOutputStream)}.
+   *
+   * @param in
+   *          the input
+   * @return the result row
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static ResultRow read(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    List<Object> values = new ArrayList<Object>(size);
+    for (int i = 0; i < size; i++) {
+      byte type = in.readByte();
+      switch (type) {
+      case NULL:
+        values.add(null);
+        break;
+      case STRING:
+        values.add(new String(readBytes(in), "UTF-8"));
+        break;
+      case INT:
+        values.add(in.readInt());
+        break;
+      case LONG:
+        values.add(in.readLong());
+        break;
+      case DOUBLE:
+        values.add(in.readDouble());
+        break;
+      case FLOAT:
+        values.add(in.readFloat());
+        break;
+      case BOOLEAN:
+        values.add(in.readBoolean());
+        break;
+      case SHORT:
+        values.add(in.readShort());
+        break;
+      case BYTE:
+        values.add(in.readByte());
+        break;
+      case BYTES:
+        values.add(readBytes(in));
+        break;
+      case OBJECT:
+        ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+        try {
+          values.add(objectIn.readObject());
+        } catch (ClassNotFoundException e) {
+          throw new IOException("Could not read result row", e);
+        } finally {
+          objectIn.close();
+        }
+        break;
+      default:
+        throw new IOException("Unknown value type " + type + " in spilled result row");
+      }
+    }
+    return new ResultRow(values);
+  }
+
+  /**
+   * Write the length prefixed bytes.
+   *
+   * @param bytes
+   *          the bytes
+   * @param out
+   *          the output
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static void writeBytes(byte[] bytes, DataOutputStream out) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read the length prefixed bytes.
+   *
+   * @param in
+   *          the input
+   * @return the bytes
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.metrics;
+
+import java.util.Collection;
+
+/**
+ * A set of gauges with long values, like the utilization of a connection pool, which are read whenever metrics are
+ * reported. Drivers implementing this have their gauges registered with the metrics service when they are loaded.
+ */
+public interface LongGaugeSet {
+
+  /**
+   * Gets the names of the gauges.
+   *
+   * @return the gauge names
+   */
+  Collection<String> getGaugeNames();
+
+  /**
+   * Gets the current value of a gauge.
+   *
+   * @param name the gauge name
+   * @return the gauge value
+   */
+  long getGaugeValue(String name);
+}
@@ -18,6 +18,10 @@
  */
 package org.apache.lens.server.api.metrics;
 
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lens.server.api.query.QueryPhaseStats;
+
 /**
  * The Interface MetricsService.
  */
@@ -91,6 +95,85 @@ public interface MetricsService {
    */
   long getCounter(Class<?> cls, String counter);
 
+  /**
+   * Record a duration in the timer with the name constructed using given class and timer name. Actual name of the
+   * timer will be
+   * <p/>
+   * <pre>MetricRegistry.name(cls, timer)
+   * <p/>
+   * <pre>
+   *
+   * @param cls      Class of the timer for namespacing of timers
+   * @param timer    the timer
+   * @param duration the duration
+   * @param unit     the time unit of duration
+   */
+  void updateTimer(Class<?> cls, String timer, long duration, TimeUnit unit);
+
+  /**
+   * Get number of durations recorded in the timer.
+   *
+   * @param cls   the cls
+   * @param timer the timer
+   * @return the timer count
+   */
+  long getTimerCount(Class<?> cls, String timer);
+
+  /**
+   * Record a value in the histogram with the name constructed using given class and histogram name. Actual name of
+   * the histogram will be
+   * <p/>
+   * <pre>MetricRegistry.name(cls, histogram)
+   * <p/>
+   * <pre>
+   *
+   * @param cls       Class of the histogram for namespacing of histograms
+   * @param histogram the histogram
+   * @param value     the value
+   */
+  void updateHistogram(Class<?> cls, String histogram, long value);
+
+  /**
+   * Get number of values recorded in the histogram.
+   *
+   * @param cls       the cls
+   * @param histogram the histogram
+   * @return the histogram count
+   */
+  long getHistogramCount(Class<?> cls, String histogram);
+
+  /**
+   * Record the duration and metastore calls of each phase in the histograms <pre>phase-&lt;phase&gt;-micros</pre> and
+   * <pre>phase-&lt;phase&gt;-metastore-calls</pre>, namespaced by the given class.
+   *
+   * @param cls   Class of the histograms for namespacing of histograms
+   * @param stats the phase stats of a query
+   */
+  void updatePhaseHistograms(Class<?> cls, QueryPhaseStats stats);
+
+  /**
+   * Register a gauge for each gauge of the set, with the name constructed using given class and gauge name. Actual
+   * name of each gauge will be
+   * <p/>
+   * <pre>MetricRegistry.name(cls, gauge)
+   * <p/>
+   * <pre>
+   * Gauges registered earlier with the same names are replaced.
+   *
+   * @param cls    Class of the gauges for namespacing of gauges
+   * @param gauges the gauge set
+   */
+  void registerGauges(Class<?> cls, LongGaugeSet gauges);
+
+  /**
+   * Get current value of the gauge.
+   *
+   * @param cls   the cls
+   * @param gauge the gauge
+   * @return the gauge value, null if no such gauge is registered
+   */
+  Object getGaugeValue(Class<?> cls, String gauge);
+
   /**
    * Query engine counter names.
    */
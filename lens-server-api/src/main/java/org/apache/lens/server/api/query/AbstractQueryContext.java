@@ -69,6 +69,11 @@ public abstract class AbstractQueryContext implements Serializable {
   @Getter
   protected String driverQuery;
 
+  /**
+   * The durations and metastore calls of the phases run before launch, persisted along with the query.
+   */
+  private final QueryPhaseStats phaseStats = new QueryPhaseStats();
+
   protected AbstractQueryContext(final String query, final LensConf qconf, final Configuration conf, final
   Collection<LensDriver> drivers) {
     driverContext = new DriverSelectorQueryContext(query, conf, drivers);
@@ -78,6 +83,16 @@ public abstract class AbstractQueryContext implements Serializable {
     this.driverQuery = query;
   }
 
+  /**
+   * Gets the durations and metastore calls of the phases run so far, like the rewrites, driver explain and driver
+   * selection.
+   *
+   * @return the phase stats
+   */
+  public QueryPhaseStats getPhaseStats() {
+    return phaseStats;
+  }
+
   /**
    * Wrapper method for convenience on driver context
    *
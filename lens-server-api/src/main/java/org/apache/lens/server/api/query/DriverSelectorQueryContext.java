@@ -182,6 +182,22 @@ public class DriverSelectorQueryContext {
     return driverQueryContextMap.keySet();
   }
 
+  /**
+   * Gets the drivers for which a query plan was generated, skipping drivers which failed or timed out.
+   *
+   * @return the drivers with plans
+   */
+  public Collection<LensDriver> getDriversWithValidPlans() {
+    List<LensDriver> drivers = new ArrayList<LensDriver>();
+    for (Map.Entry<LensDriver, DriverQueryContext> entry : driverQueryContextMap.entrySet()) {
+      if (entry.getValue().getDriverQueryPlan() != null
+        && entry.getValue().getDriverQueryPlanGenerationError() == null) {
+        drivers.add(entry.getKey());
+      }
+    }
+    return drivers;
+  }
+
   public Collection<String> getDriverQueries() {
     List<String> queries = new ArrayList<String>();
     final Collection<DriverQueryContext> values = driverQueryContextMap.values();
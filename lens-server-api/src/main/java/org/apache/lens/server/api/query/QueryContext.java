@@ -38,6 +38,9 @@ import java.util.Date;
 import java.util.Map;
 import java.util.UUID;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
 /**
  * The Class QueryContext.
  */
@@ -168,6 +171,16 @@ public class QueryContext extends AbstractQueryContext implements Comparable<Que
   @Setter
   private String queryName;
 
+  /**
+   * Completed with the status of the query, once the query is launched on its driver or finishes before launch.
+   */
+  private transient SettableFuture<QueryStatus> launchFuture;
+
+  /**
+   * Completed with the status of the query, once the query finishes.
+   */
+  private transient SettableFuture<QueryStatus> completionFuture;
+
   /**
    * Instantiates a new query context.
    *
@@ -355,8 +368,9 @@ public class QueryContext extends AbstractQueryContext implements Comparable<Que
   /*
    * Introduced for Recovering finished query.
    */
-  public void setStatusSkippingTransitionTest(QueryStatus newStatus) throws LensException {
+  public synchronized void setStatusSkippingTransitionTest(QueryStatus newStatus) throws LensException {
     this.status = newStatus;
+    completeFutures();
   }
 
   public synchronized void setStatus(QueryStatus newStatus) throws LensException {
@@ -365,6 +379,48 @@ public class QueryContext extends AbstractQueryContext implements Comparable<Que
         + "]");
     }
     this.status = newStatus;
+    completeFutures();
+  }
+
+  /**
+   * Gets the future which completes with the status of the query, once the query is launched on its driver or
+   * finishes before launch (failed or cancelled while queued).
+   *
+   * @return the launch future
+   */
+  public synchronized ListenableFuture<QueryStatus> getLaunchFuture() {
+    if (launchFuture == null) {
+      launchFuture = SettableFuture.create();
+      completeFutures();
+    }
+    return launchFuture;
+  }
+
+  /**
+   * Gets the future which completes with the final status of the query, once the query succeeds, fails or gets
+   * cancelled.
+   *
+   * @return the completion future
+   */
+  public synchronized ListenableFuture<QueryStatus> getCompletionFuture() {
+    if (completionFuture == null) {
+      completionFuture = SettableFuture.create();
+      completeFutures();
+    }
+    return completionFuture;
+  }
+
+  /**
+   * Complete the futures the current status has reached. Futures are created lazily, as they are not serialized.
+   */
+  private void completeFutures() {
+    Status current = status.getStatus();
+    if (launchFuture != null && current != Status.NEW && current != Status.QUEUED) {
+      launchFuture.set(status);
+    }
+    if (completionFuture != null && status.isFinished()) {
+      completionFuture.set(status);
+    }
   }
 
   public String getResultHeader() {
@@ -25,6 +25,9 @@ import org.apache.lens.api.query.*;
 
 import javax.ws.rs.core.Response;
 import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * The Interface QueryExecutionService.
@@ -100,6 +103,21 @@ public interface QueryExecutionService {
   QueryHandleWithResultSet executePrepare(LensSessionHandle sessionHandle, QueryPrepareHandle prepareHandle,
     long timeoutmillis, LensConf conf, String queryName) throws LensException;
 
+  /**
+   * Execute already prepared query with timeout, without blocking the calling thread till the query finishes.
+   *
+   * @param sessionHandle the session handle
+   * @param prepareHandle The {@link QueryPrepareHandle}
+   * @param timeoutmillis The timeout after which the future completes with just the handle, if query did not finish
+   *                      before.
+   * @param conf          The configuration for the query to execute
+   * @param queryName     the query name
+   * @return the future of query handle with result set
+   * @throws LensException the lens exception
+   */
+  ListenableFuture<QueryHandleWithResultSet> executePrepareWithTimeout(LensSessionHandle sessionHandle,
+    QueryPrepareHandle prepareHandle, long timeoutmillis, LensConf conf, String queryName) throws LensException;
+
   /**
    * Asynchronously execute the query.
    *
@@ -139,6 +157,29 @@ public interface QueryExecutionService {
   QueryHandleWithResultSet execute(LensSessionHandle sessionHandle, String query, long timeoutmillis,
     LensConf conf, String queryName) throws LensException;
 
+  /**
+   * Execute the query with a timeout, without blocking the calling thread till the query finishes.
+   *
+   * @param sessionHandle the session handle
+   * @param query         The query should be in HiveQL(SQL like)
+   * @param timeoutmillis The timeout after which the future completes with just the handle, if query did not finish
+   *                      before.
+   * @param conf          The query configuration
+   * @param queryName     the query name
+   * @return the future of query handle, which also has the result if query finished within the timeout specified.
+   * @throws LensException the lens exception
+   */
+  ListenableFuture<QueryHandleWithResultSet> executeWithTimeout(LensSessionHandle sessionHandle, String query,
+    long timeoutmillis, LensConf conf, String queryName) throws LensException;
+
+  /**
+   * Gets the executor on which results of execute with timeout are fetched. Responses carrying those results should be
+   * sent on it as well, so that they do not hold up status polling of queries.
+   *
+   * @return the result fetch executor
+   */
+  Executor getResultFetchExecutor();
+
   /**
    * Get the query, specified by the handle.
    *
@@ -183,6 +224,32 @@ public interface QueryExecutionService {
    */
   Response getHttpResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle) throws LensException;
 
+  /**
+   * Get the http end point for the result set. In-memory results are streamed in the given format.
+   *
+   * @param sessionHandle The lens session handle
+   * @param queryHandle   The query handle
+   * @param format        The format of streamed in-memory results, csv or json. Defaults to csv
+   * @return returns javax.ws.rs.core.Response object
+   * @throws LensException the lens exception
+   */
+  Response getHttpResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle, String format)
+    throws LensException;
+
+  /**
+   * Get the http end point for the result set. Persisted results can be fetched by byte range and gzip encoded.
+   *
+   * @param sessionHandle  The lens session handle
+   * @param queryHandle    The query handle
+   * @param format         The format of streamed in-memory results, csv or json. Defaults to csv
+   * @param range          The http Range header of the request, null for the whole result
+   * @param acceptEncoding The http Accept-Encoding header of the request, null if none
+   * @return returns javax.ws.rs.core.Response object
+   * @throws LensException the lens exception
+   */
+  Response getHttpResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle, String format, String range,
+    String acceptEncoding) throws LensException;
+
   /**
    * Closes result set by releasing any resources used in serving the resultset.
    *
@@ -218,6 +285,25 @@ public interface QueryExecutionService {
   List<QueryHandle> getAllQueries(LensSessionHandle sessionHandle, String state, String user, String queryName,
     long fromDate, long toDate) throws LensException;
 
+  /**
+   * Returns a page of the queries in the specified state, for the given user and matching query name. Queries are
+   * ordered by submission time and query handle, and the page starts right after the given query.
+   *
+   * @param sessionHandle the session handle
+   * @param state         return queries in this state. if null, all queries will be returned
+   * @param user          Get queries submitted by a specific user.
+   *                      If this set to "all", queries of all users are returned
+   * @param queryName     return queries containing the query name. If null, all queries will be returned
+   * @param fromDate      start date of time range interval
+   * @param toDate        end date of the time range interval
+   * @param after         the last query of the previous page. If null, the first page is returned
+   * @param pageSize      max number of queries to be returned. If not positive, all the queries are returned
+   * @return List of query handles
+   * @throws LensException the lens exception
+   */
+  List<QueryHandle> getAllQueries(LensSessionHandle sessionHandle, String state, String user, String queryName,
+    long fromDate, long toDate, QueryHandle after, int pageSize) throws LensException;
+
   /**
    * Returns all the prepared queries for the specified user. If no user is passed, queries of all users will be
    * returned.
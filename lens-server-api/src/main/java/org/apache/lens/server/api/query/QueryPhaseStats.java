@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.api.query;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Durations and metastore call counts of the phases a query goes through before it is launched, such as each cube
+ * rewriter pass, the driver rewrites, driver explain and driver selection. Phases are kept in the order they were first
+ * recorded; recording the same phase again adds to its earlier values.
+ */
+public class QueryPhaseStats implements Serializable {
+
+  /**
+   * The Constant serialVersionUID.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The phase durations, in microseconds.
+   */
+  private final Map<String, Long> durations = new LinkedHashMap<String, Long>();
+
+  /**
+   * The metastore calls made in each phase.
+   */
+  private final Map<String, Long> metastoreCalls = new LinkedHashMap<String, Long>();
+
+  /**
+   * Record a phase which made no metastore calls.
+   *
+   * @param phase          the phase name
+   * @param durationMicros the duration in microseconds
+   */
+  public void record(String phase, long durationMicros) {
+    record(phase, durationMicros, 0);
+  }
+
+  /**
+   * Record a phase.
+   *
+   * @param phase          the phase name
+   * @param durationMicros the duration in microseconds
+   * @param calls          the number of metastore calls made in the phase
+   */
+  public synchronized void record(String phase, long durationMicros, long calls) {
+    add(durations, phase, durationMicros);
+    add(metastoreCalls, phase, calls);
+  }
+
+  /**
+   * Record all phases of another stats object, prefixing their names.
+   *
+   * @param prefix the prefix, joined to the phase names with a '.'
+   * @param other  the stats to add
+   */
+  public void addAll(String prefix, QueryPhaseStats other) {
+    Map<String, Long> otherDurations = other.getDurations();
+    Map<String, Long> otherCalls = other.getMetastoreCalls();
+    for (Map.Entry<String, Long> entry : otherDurations.entrySet()) {
+      Long calls = otherCalls.get(entry.getKey());
+      record(prefix + "." + entry.getKey(), entry.getValue(), calls == null ? 0 : calls);
+    }
+  }
+
+  /**
+   * Gets a copy of the phase durations, in microseconds.
+   *
+   * @return the durations
+   */
+  public synchronized Map<String, Long> getDurations() {
+    return new LinkedHashMap<String, Long>(durations);
+  }
+
+  /**
+   * Gets a copy of the metastore calls made in each phase.
+   *
+   * @return the metastore calls
+   */
+  public synchronized Map<String, Long> getMetastoreCalls() {
+    return new LinkedHashMap<String, Long>(metastoreCalls);
+  }
+
+  /**
+   * Checks if no phase has been recorded.
+   *
+   * @return true, if empty
+   */
+  public synchronized boolean isEmpty() {
+    return durations.isEmpty();
+  }
+
+  private static void add(Map<String, Long> map, String phase, long value) {
+    Long previous = map.get(phase);
+    map.put(phase, previous == null ? value : previous + value);
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public synchronized String toString() {
+    return "durations(us):" + durations + " metastoreCalls:" + metastoreCalls;
+  }
+}
@@ -35,6 +35,8 @@ import org.apache.lens.server.api.query.QueryContext;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -137,9 +139,29 @@ public class MockDriver implements LensDriver {
    */
   @Override
   public void updateStatus(QueryContext context) throws LensException {
-    context.getDriverStatus().setProgress(1.0);
-    context.getDriverStatus().setStatusMessage("Done");
-    context.getDriverStatus().setState(DriverQueryState.SUCCESSFUL);
+    synchronized (context) {
+      context.getDriverStatus().setProgress(1.0);
+      context.getDriverStatus().setStatusMessage("Done");
+      context.getDriverStatus().setState(DriverQueryState.SUCCESSFUL);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lens.server.api.driver.LensDriver#updateStatuses(java.util.Collection)
+   */
+  @Override
+  public Map<QueryHandle, LensException> updateStatuses(Collection<QueryContext> contexts) {
+    Map<QueryHandle, LensException> errors = new HashMap<QueryHandle, LensException>();
+    for (QueryContext context : contexts) {
+      try {
+        updateStatus(context);
+      } catch (LensException e) {
+        errors.put(context.getQueryHandle(), e);
+      }
+    }
+    return errors;
   }
 
   /*
@@ -180,6 +202,17 @@ public class MockDriver implements LensDriver {
 
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see org.apache.lens.server.api.driver.LensDriver#registerQueryStatusListener(
+   * org.apache.lens.server.api.events.LensEventListener)
+   */
+  @Override
+  public void registerQueryStatusListener(LensEventListener<DriverQueryStatusChanged> statusListener) {
+
+  }
+
   /*
    * (non-Javadoc)
    *
@@ -66,6 +66,9 @@ public abstract class LensService extends CompositeService implements Externaliz
   /** The stopped. */
   protected boolean stopped = false;
 
+  /** The journal of state changes, null if server restart is not enabled. */
+  private ServiceStateJournal stateJournal;
+
   // Static session map which is used by query submission thread to get the
   // lens session before submitting a query to hive server
   /** The session map. */
@@ -394,6 +397,63 @@ public abstract class LensService extends CompositeService implements Externaliz
     return qconf;
   }
 
+  /**
+   * Gets the state journal.
+   *
+   * @return the state journal, null if server restart is not enabled
+   */
+  public ServiceStateJournal getStateJournal() {
+    return stateJournal;
+  }
+
+  /**
+   * Sets the state journal. State changes recorded in the journal since the last snapshot are replayed while reading
+   * the snapshot in {@link #readExternal(ObjectInput)}.
+   *
+   * @param stateJournal
+   *          the state journal
+   */
+  public void setStateJournal(ServiceStateJournal stateJournal) {
+    this.stateJournal = stateJournal;
+  }
+
+  /**
+   * Record the latest state of an entry in the state journal. The record is written asynchronously; a failure to
+   * write it is only logged, since the state is still persisted with the next snapshot.
+   *
+   * @param key
+   *          the key
+   * @param value
+   *          the serialized state
+   */
+  protected void journalPut(String key, byte[] value) {
+    stateJournal.put(key, value);
+  }
+
+  /**
+   * Record an update to the state of an entry in the state journal. The record is written asynchronously; a failure
+   * to write it is only logged, since the state is still persisted with the next snapshot.
+   *
+   * @param key
+   *          the key
+   * @param value
+   *          the serialized update
+   */
+  protected void journalUpdate(String key, byte[] value) {
+    stateJournal.update(key, value);
+  }
+
+  /**
+   * Record the removal of an entry in the state journal. The record is written asynchronously; a failure to write it
+   * is only logged, since the state is still persisted with the next snapshot.
+   *
+   * @param key
+   *          the key
+   */
+  protected void journalRemove(String key) {
+    stateJournal.remove(key);
+  }
+
   /**
    * Prepare stopping.
    */
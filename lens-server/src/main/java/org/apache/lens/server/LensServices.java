@@ -190,6 +190,7 @@ public class LensServices extends CompositeService implements ServiceProvider {
           LensConfConstants.DEFAULT_SERVER_STATE_PERSIST_LOCATION);
       persistDir = new Path(persistPathStr);
       try {
+        setupStateJournals();
         setupPersistedState();
       } catch (Exception e) {
         LOG.error("Could not recover from persisted state", e);
@@ -212,6 +213,12 @@ public class LensServices extends CompositeService implements ServiceProvider {
     if (getServiceState() != STATE.STARTED) {
       super.start();
     }
+    try {
+      // compact the recovered state, so that journal segments of the previous run can be deleted
+      persistLensServiceState();
+    } catch (IOException e) {
+      LOG.warn("Unable to persist lens server state", e);
+    }
     timer.schedule(new TimerTask() {
       @Override
       public void run() {
@@ -225,6 +232,21 @@ public class LensServices extends CompositeService implements ServiceProvider {
     }, snapShotInterval, snapShotInterval);
   }
 
+  /**
+   * Setup state journals of all lens services, if server restart is enabled.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private void setupStateJournals() throws IOException {
+    if (conf.getBoolean(LensConfConstants.SERVER_RESTART_ENABLED, LensConfConstants.DEFAULT_SERVER_RESTART_ENABLED)) {
+      FileSystem fs = persistDir.getFileSystem(conf);
+      for (LensService service : lensServices) {
+        service.setStateJournal(new ServiceStateJournal(fs, persistDir, service.getName()));
+      }
+    }
+  }
+
   /**
    * Setup persisted state.
    *
@@ -272,6 +294,9 @@ public class LensServices extends CompositeService implements ServiceProvider {
 
         for (LensService service : lensServices) {
           LOG.info("Persisting state of service:" + service.getName());
+          // changes from now on go to a new journal segment, the older ones are covered by this snapshot
+          ServiceStateJournal journal = service.getStateJournal();
+          long journalSegment = journal != null ? journal.roll() : 0;
           Path serviceWritePath = new Path(persistDir, service.getName() + ".out");
           ObjectOutputStream out = null;
           try {
@@ -284,6 +309,9 @@ public class LensServices extends CompositeService implements ServiceProvider {
           }
           Path servicePath = getServicePersistPath(service);
           fs.rename(serviceWritePath, servicePath);
+          if (journal != null) {
+            journal.deleteSegmentsBefore(journalSegment);
+          }
           LOG.info("Persisted service " + service.getName() + " to " + servicePath);
         }
       }
@@ -327,11 +355,27 @@ public class LensServices extends CompositeService implements ServiceProvider {
         LOG.error("Could not persist server state", e);
         throw new IllegalStateException(e);
       } finally {
+        closeStateJournals();
         super.stop();
       }
     }
   }
 
+  /**
+   * Close state journals of all lens services.
+   */
+  private void closeStateJournals() {
+    for (LensService service : lensServices) {
+      if (service.getStateJournal() != null) {
+        try {
+          service.getStateJournal().close();
+        } catch (IOException e) {
+          LOG.warn("Could not close state journal of service:" + service.getName(), e);
+        }
+      }
+    }
+  }
+
   public STATE getServiceState() {
     return super.getServiceState();
   }
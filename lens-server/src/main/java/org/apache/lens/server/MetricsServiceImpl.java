@@ -24,6 +24,7 @@ import info.ganglia.gmetric4j.gmetric.GMetric.UDPAddressingMode;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import lombok.Getter;
@@ -34,8 +35,10 @@ import org.apache.lens.api.query.QueryStatus.Status;
 import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.events.AsyncEventListener;
 import org.apache.lens.server.api.events.LensEventService;
+import org.apache.lens.server.api.metrics.LongGaugeSet;
 import org.apache.lens.server.api.metrics.MetricsService;
 import org.apache.lens.server.api.query.QueryExecutionService;
+import org.apache.lens.server.api.query.QueryPhaseStats;
 import org.apache.lens.server.api.query.StatusChange;
 import org.apache.log4j.Logger;
 
@@ -357,6 +360,94 @@ public class MetricsServiceImpl extends AbstractService implements MetricsServic
     return metricRegistry.counter(MetricRegistry.name(cls, counter)).getCount();
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.MetricsService#updateTimer(java.lang.Class, java.lang.String, long,
+   * java.util.concurrent.TimeUnit)
+   */
+  @Override
+  public void updateTimer(Class<?> cls, String timer, long duration, TimeUnit unit) {
+    metricRegistry.timer(MetricRegistry.name(cls, timer)).update(duration, unit);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.MetricsService#getTimerCount(java.lang.Class, java.lang.String)
+   */
+  @Override
+  public long getTimerCount(Class<?> cls, String timer) {
+    return metricRegistry.timer(MetricRegistry.name(cls, timer)).getCount();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.MetricsService#updateHistogram(java.lang.Class, java.lang.String, long)
+   */
+  @Override
+  public void updateHistogram(Class<?> cls, String histogram, long value) {
+    metricRegistry.histogram(MetricRegistry.name(cls, histogram)).update(value);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.MetricsService#getHistogramCount(java.lang.Class, java.lang.String)
+   */
+  @Override
+  public long getHistogramCount(Class<?> cls, String histogram) {
+    return metricRegistry.histogram(MetricRegistry.name(cls, histogram)).getCount();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.MetricsService#updatePhaseHistograms(java.lang.Class,
+   * org.apache.lens.server.api.query.QueryPhaseStats)
+   */
+  @Override
+  public void updatePhaseHistograms(Class<?> cls, QueryPhaseStats stats) {
+    Map<String, Long> metastoreCalls = stats.getMetastoreCalls();
+    for (Map.Entry<String, Long> entry : stats.getDurations().entrySet()) {
+      updateHistogram(cls, "phase-" + entry.getKey() + "-micros", entry.getValue());
+      Long calls = metastoreCalls.get(entry.getKey());
+      updateHistogram(cls, "phase-" + entry.getKey() + "-metastore-calls", calls == null ? 0 : calls);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.MetricsService#registerGauges(java.lang.Class,
+   * org.apache.lens.server.api.metrics.LongGaugeSet)
+   */
+  @Override
+  public void registerGauges(Class<?> cls, final LongGaugeSet gauges) {
+    for (final String gauge : gauges.getGaugeNames()) {
+      String name = MetricRegistry.name(cls, gauge);
+      metricRegistry.remove(name);
+      metricRegistry.register(name, new Gauge<Long>() {
+        @Override
+        public Long getValue() {
+          return gauges.getGaugeValue(gauge);
+        }
+      });
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.metrics.MetricsService#getGaugeValue(java.lang.Class, java.lang.String)
+   */
+  @Override
+  public Object getGaugeValue(Class<?> cls, String gauge) {
+    Gauge<?> registered = metricRegistry.getGauges().get(MetricRegistry.name(cls, gauge));
+    return registered == null ? null : registered.getValue();
+  }
+
   @Override
   public long getQueuedQueries() {
     return queuedQueries.getValue();
@@ -0,0 +1,441 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.ChecksumException;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Append only journal of state changes of a {@link LensService}.
+ *
+ * Each record carries either the full state of an entry, like a query or a session, against its key, an update to be
+ * applied over the state of the entry, or the removal of the entry. Records are appended without waiting for the
+ * write, and a single writer thread writes all the records appended meanwhile and flushes them together, so that
+ * callers never wait on the file system and a restart loses at most the records not yet flushed. The journal is
+ * written in segments. When the service state is persisted, a new segment is started and the older
+ * segments are deleted once the snapshot is in place. On restart, the remaining segments are replayed in order over
+ * the snapshot, so recovery time depends on the changes since last snapshot and not on the full history.
+ */
+public class ServiceStateJournal {
+
+  /** The Constant LOG. */
+  public static final Log LOG = LogFactory.getLog(ServiceStateJournal.class);
+
+  /** The record type for an entry put. */
+  private static final byte PUT = 1;
+
+  /** The record type for an entry removal. */
+  private static final byte REMOVE = 2;
+
+  /** The record type for an update over the entry state. */
+  private static final byte UPDATE = 3;
+
+  /** The file system. */
+  private final FileSystem fs;
+
+  /** The journal dir. */
+  private final Path dir;
+
+  /** The prefix of segment file names. */
+  private final String segmentPrefix;
+
+  /** The segment being written. */
+  private long segment;
+
+  /** The output stream of the segment being written, opened on first record. */
+  private FSDataOutputStream fsOut;
+
+  /** The buffered stream over fsOut. */
+  private DataOutputStream out;
+
+  /** The records appended and not yet written, guarded by itself. */
+  private final List<Record> pending = new ArrayList<Record>();
+
+  /** Whether the journal is closed, guarded by pending. */
+  private boolean closed = false;
+
+  /** The thread writing the appended records. */
+  private final Thread writer;
+
+  /**
+   * A journal record.
+   */
+  private static class Record {
+
+    /** The type. */
+    private final byte type;
+
+    /** The key. */
+    private final String key;
+
+    /** The value, null for removal. */
+    private final byte[] value;
+
+    /**
+     * Instantiates a new record.
+     *
+     * @param type
+     *          the type
+     * @param key
+     *          the key
+     * @param value
+     *          the value
+     */
+    Record(byte type, String key, byte[] value) {
+      this.type = type;
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * The state of an entry replayed from the journal.
+   */
+  public static class Entry {
+
+    /** The last recorded full state, null if only updates were recorded since the snapshot. */
+    private byte[] state;
+
+    /** The updates recorded after the state, in order. */
+    private final List<byte[]> updates = new ArrayList<byte[]>();
+
+    /**
+     * Gets the last recorded full state.
+     *
+     * @return the state, null if only updates were recorded since the snapshot
+     */
+    public byte[] getState() {
+      return state;
+    }
+
+    /**
+     * Gets the updates to be applied, in order, over the state or over the snapshot of the entry if state is null.
+     *
+     * @return the updates
+     */
+    public List<byte[]> getUpdates() {
+      return updates;
+    }
+  }
+
+  /**
+   * Instantiates a new journal. Segments left by the previous run are kept for replay, and records are written to a
+   * new segment.
+   *
+   * @param fs
+   *          the file system
+   * @param dir
+   *          the dir holding the segments
+   * @param serviceName
+   *          the service name
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public ServiceStateJournal(FileSystem fs, Path dir, String serviceName) throws IOException {
+    this.fs = fs;
+    this.dir = dir;
+    this.segmentPrefix = serviceName + ".journal.";
+    TreeMap<Long, Path> segments = getSegments();
+    this.segment = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    this.writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeAppended();
+      }
+    }, serviceName + "-JournalWriter");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Record the latest state of an entry.
+   *
+   * @param key
+   *          the key
+   * @param value
+   *          the serialized state
+   */
+  public void put(String key, byte[] value) {
+    append(new Record(PUT, key, value));
+  }
+
+  /**
+   * Record an update to the state of an entry, to be applied over the last recorded state of the entry on replay.
+   *
+   * @param key
+   *          the key
+   * @param value
+   *          the serialized update
+   */
+  public void update(String key, byte[] value) {
+    append(new Record(UPDATE, key, value));
+  }
+
+  /**
+   * Record the removal of an entry.
+   *
+   * @param key
+   *          the key
+   */
+  public void remove(String key) {
+    append(new Record(REMOVE, key, null));
+  }
+
+  /**
+   * Start a new segment. Changes recorded after this call go to the new segment, so the older segments can be deleted
+   * once a snapshot of the state taken after this call is persisted.
+   *
+   * @return the new segment
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public synchronized long roll() throws IOException {
+    // records appended before the roll belong to the older segments
+    writePending();
+    closeSegment();
+    return ++segment;
+  }
+
+  /**
+   * Delete the segments older than the given segment.
+   *
+   * @param segmentId
+   *          the segment returned by {@link #roll()}
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public void deleteSegmentsBefore(long segmentId) throws IOException {
+    for (Map.Entry<Long, Path> entry : getSegments().entrySet()) {
+      if (entry.getKey() < segmentId) {
+        fs.delete(entry.getValue(), false);
+      }
+    }
+  }
+
+  /**
+   * Replay the segments written before this journal was opened.
+   *
+   * @return map of key to the recorded entry in order of first change, null entry for removed entries
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public Map<String, Entry> replay() throws IOException {
+    Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    int numRecords = 0;
+    for (Map.Entry<Long, Path> entry : getSegments().entrySet()) {
+      if (entry.getKey() >= segment) {
+        break;
+      }
+      DataInputStream in = fs.open(entry.getValue());
+      try {
+        while (true) {
+          byte type;
+          String key;
+          byte[] value = null;
+          try {
+            type = in.readByte();
+          } catch (EOFException e) {
+            break;
+          }
+          try {
+            key = in.readUTF();
+            if (type != REMOVE) {
+              value = new byte[in.readInt()];
+              in.readFully(value);
+            }
+          } catch (EOFException e) {
+            // the server went down while writing this record
+            LOG.warn("Ignoring incomplete record at the end of " + entry.getValue());
+            break;
+          } catch (ChecksumException e) {
+            // checksum of the last chunk may not have been written
+            LOG.warn("Ignoring corrupt record at the end of " + entry.getValue(), e);
+            break;
+          }
+          if (type == REMOVE) {
+            entries.put(key, null);
+          } else if (type == PUT) {
+            Entry replayed = new Entry();
+            replayed.state = value;
+            entries.put(key, replayed);
+          } else if (entries.containsKey(key) && entries.get(key) == null) {
+            LOG.warn("Ignoring update of removed entry " + key + " in " + entry.getValue());
+          } else {
+            if (!entries.containsKey(key)) {
+              entries.put(key, new Entry());
+            }
+            entries.get(key).updates.add(value);
+          }
+          numRecords++;
+        }
+      } finally {
+        in.close();
+      }
+    }
+    LOG.info("Replayed " + numRecords + " records for " + entries.size() + " entries from " + dir + "/"
+        + segmentPrefix + "*");
+    return entries;
+  }
+
+  /**
+   * Close the journal, after writing the records appended so far.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  public void close() throws IOException {
+    synchronized (pending) {
+      closed = true;
+      pending.notifyAll();
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      writePending();
+      closeSegment();
+    }
+  }
+
+  private void append(Record record) {
+    synchronized (pending) {
+      if (closed) {
+        LOG.warn("Journal " + dir + "/" + segmentPrefix + "* is closed, not recording change of " + record.key);
+        return;
+      }
+      pending.add(record);
+      pending.notifyAll();
+    }
+  }
+
+  /**
+   * Write appended records till the journal is closed. Records appended while a batch is written are written and
+   * flushed together in the next batch.
+   */
+  private void writeAppended() {
+    while (true) {
+      synchronized (pending) {
+        while (pending.isEmpty() && !closed) {
+          try {
+            pending.wait();
+          } catch (InterruptedException e) {
+            LOG.warn("Journal writer interrupted", e);
+            return;
+          }
+        }
+        if (pending.isEmpty()) {
+          return;
+        }
+      }
+      try {
+        writePending();
+      } catch (IOException e) {
+        // the state is still persisted with the next snapshot
+        LOG.warn("Could not write journal records to " + dir + "/" + segmentPrefix + segment, e);
+      }
+    }
+  }
+
+  /**
+   * Write the pending records and flush them. Records are taken holding the journal lock, so that a record is never
+   * written to a segment started after it was appended.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  private synchronized void writePending() throws IOException {
+    List<Record> batch;
+    synchronized (pending) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      batch = new ArrayList<Record>(pending);
+      pending.clear();
+    }
+    DataOutputStream dout = getOutput();
+    for (Record record : batch) {
+      dout.writeByte(record.type);
+      dout.writeUTF(record.key);
+      if (record.type != REMOVE) {
+        dout.writeInt(record.value.length);
+        dout.write(record.value);
+      }
+    }
+    flush();
+  }
+
+  private DataOutputStream getOutput() throws IOException {
+    if (out == null) {
+      fsOut = fs.create(new Path(dir, segmentPrefix + segment), false);
+      out = new DataOutputStream(fsOut);
+    }
+    return out;
+  }
+
+  private void flush() throws IOException {
+    out.flush();
+    fsOut.hflush();
+  }
+
+  private void closeSegment() throws IOException {
+    if (out != null) {
+      try {
+        out.close();
+      } finally {
+        out = null;
+        fsOut = null;
+      }
+    }
+  }
+
+  private TreeMap<Long, Path> getSegments() throws IOException {
+    TreeMap<Long, Path> segments = new TreeMap<Long, Path>();
+    if (!fs.exists(dir)) {
+      return segments;
+    }
+    for (FileStatus status : fs.listStatus(dir)) {
+      String name = status.getPath().getName();
+      if (name.startsWith(segmentPrefix)) {
+        try {
+          segments.put(Long.parseLong(name.substring(segmentPrefix.length())), status.getPath());
+        } catch (NumberFormatException e) {
+          LOG.warn("Ignoring unknown file in journal dir " + status.getPath());
+        }
+      }
+    }
+    return segments;
+  }
+}
@@ -1334,17 +1334,14 @@ public class CubeMetastoreServiceImpl extends LensService implements CubeMetasto
         if (storages != null && !storages.isEmpty()) {
           for (String storage : storages) {
             String storageTableName = MetastoreUtil.getFactStorageTableName(factTable.getName(), storage);
-            List<Partition> parts =
-              getClient(sessionid).getPartitionsByFilter(storageTableName, StorageConstants.getLatestPartFilter(partitionColumn));
+            // served from the partition timeline of the storage table
+            Partition latestPart = getClient(sessionid).getLatestPart(storageTableName, partitionColumn);
 
-            if (parts.size() == 1) {
-              Date tmpDate = getClient(sessionid).getLatestTimeStamp(parts.get(0), partitionColumn);
+            if (latestPart != null) {
+              Date tmpDate = getClient(sessionid).getLatestTimeStamp(latestPart, partitionColumn);
               if (latestDate == null || latestDate.before(tmpDate)) {
                 latestDate = tmpDate;
               }
-            } else if (parts.size() > 1) {
-              throw new LensException("CubeMetastoreClient return more than 1 partitions for filter "
-                + partitionColumn + "='latest'");
             }
           }
         }
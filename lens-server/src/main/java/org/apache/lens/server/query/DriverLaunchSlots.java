@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.query.QueryContext;
+
+/**
+ * Caps the number of queries running on each driver. A query takes a slot of its selected driver before it is
+ * launched, and gives it back once it finishes on the driver. Queries which find their driver full wait in a queue of
+ * that driver, so that they do not hold up launches on other drivers; they are handed back for launch once a slot of
+ * the driver is freed. Slots are never waited on, so callers can try for a slot while holding other locks.
+ */
+class DriverLaunchSlots {
+
+  /**
+   * The max queries running on a driver, non positive if not limited.
+   */
+  private final int maxPerDriver;
+
+  /**
+   * The number of slots taken on each driver.
+   */
+  private final Map<LensDriver, Integer> taken = new HashMap<LensDriver, Integer>();
+
+  /**
+   * The driver on which each query holds a slot.
+   */
+  private final Map<QueryHandle, LensDriver> holders = new HashMap<QueryHandle, LensDriver>();
+
+  /**
+   * The queries waiting for a slot of each driver.
+   */
+  private final Map<LensDriver, List<QueryContext>> waiting = new HashMap<LensDriver, List<QueryContext>>();
+
+  /**
+   * Instantiates a new driver launch slots.
+   *
+   * @param maxPerDriver the max queries running on a driver, non positive for no limit
+   */
+  DriverLaunchSlots(int maxPerDriver) {
+    this.maxPerDriver = maxPerDriver;
+  }
+
+  /**
+   * Take a slot of the selected driver of the query. If the driver is full, the query is queued for the driver and is
+   * returned by {@link #release(QueryContext)} once a slot of the driver is freed.
+   *
+   * @param ctx the ctx
+   * @return true, if the query holds a slot of its driver
+   */
+  synchronized boolean tryAcquire(QueryContext ctx) {
+    if (maxPerDriver <= 0 || holders.containsKey(ctx.getQueryHandle())) {
+      return true;
+    }
+    LensDriver driver = ctx.getSelectedDriver();
+    Integer count = taken.get(driver);
+    if (count != null && count >= maxPerDriver) {
+      List<QueryContext> queries = waiting.get(driver);
+      if (queries == null) {
+        queries = new ArrayList<QueryContext>();
+        waiting.put(driver, queries);
+      }
+      queries.add(ctx);
+      return false;
+    }
+    taken.put(driver, count == null ? 1 : count + 1);
+    holders.put(ctx.getQueryHandle(), driver);
+    return true;
+  }
+
+  /**
+   * Take a slot of the selected driver of a query which is already running on the driver, as found on restart. The
+   * slot is taken even if the driver is full, as the query is running anyway.
+   *
+   * @param ctx the ctx
+   */
+  synchronized void acquire(QueryContext ctx) {
+    if (maxPerDriver <= 0 || holders.containsKey(ctx.getQueryHandle())) {
+      return;
+    }
+    LensDriver driver = ctx.getSelectedDriver();
+    Integer count = taken.get(driver);
+    taken.put(driver, count == null ? 1 : count + 1);
+    holders.put(ctx.getQueryHandle(), driver);
+  }
+
+  /**
+   * Give back the slot held by the query, if any.
+   *
+   * @param ctx the ctx
+   * @return the queries which were waiting for a slot of the driver, to be tried again for launch
+   */
+  synchronized List<QueryContext> release(QueryContext ctx) {
+    LensDriver driver = holders.remove(ctx.getQueryHandle());
+    if (driver == null) {
+      return Collections.emptyList();
+    }
+    Integer count = taken.get(driver);
+    if (count == null || count <= 1) {
+      taken.remove(driver);
+    } else {
+      taken.put(driver, count - 1);
+    }
+    List<QueryContext> queries = waiting.remove(driver);
+    return queries == null ? Collections.<QueryContext>emptyList() : queries;
+  }
+
+  /**
+   * Gets the number of queries waiting for a driver slot.
+   *
+   * @return the waiting count
+   */
+  synchronized int getWaitingCount() {
+    int count = 0;
+    for (List<QueryContext> queries : waiting.values()) {
+      count += queries.size();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hive.service.cli.ColumnDescriptor;
+import org.apache.lens.api.LensException;
+import org.apache.lens.api.query.InMemoryQueryResult;
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.api.query.ResultRow;
+import org.apache.lens.server.api.driver.InMemoryResultSet;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.util.MinimalPrettyPrinter;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Streams rows of an in-memory result set to the http response as CSV or as newline delimited JSON arrays. Rows are
+ * read through the paged result API a window at a time, and each window is written out before the next is read, so
+ * that a slow client slows down reading from the driver. Rows read are kept in the result buffer of the result set
+ * like any other page, spilling to disk beyond its memory budget, so that pages fetched after a download still start
+ * at the right row.
+ */
+public class InMemoryResultStreamer implements StreamingOutput {
+
+  /** The Constant LOG. */
+  public static final Log LOG = LogFactory.getLog(InMemoryResultStreamer.class);
+
+  /** The number of rows read from the result set at a time, output is flushed after each window of rows. */
+  static final int FETCH_WINDOW = 1000;
+
+  /**
+   * The Enum Format.
+   */
+  public enum Format {
+
+    /** Comma separated values. */
+    CSV("csv"),
+
+    /** Newline delimited JSON. */
+    JSON("json");
+
+    /** The file extension. */
+    private final String extension;
+
+    /**
+     * Instantiates a new format.
+     *
+     * @param extension the file extension
+     */
+    Format(String extension) {
+      this.extension = extension;
+    }
+
+    /**
+     * Gets the file extension.
+     *
+     * @return the extension
+     */
+    public String getExtension() {
+      return extension;
+    }
+
+    /**
+     * Get format from its name, CSV if name is blank.
+     *
+     * @param name the name
+     * @return the format
+     */
+    public static Format fromName(String name) {
+      if (name == null || name.trim().isEmpty()) {
+        return CSV;
+      }
+      return valueOf(name.trim().toUpperCase());
+    }
+  }
+
+  /** The mapper. */
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  static {
+    // the response stream is closed by the container
+    MAPPER.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+  }
+
+  /**
+   * Writes compact JSON, with each root level value on its own line.
+   */
+  private static class NewlineDelimitedPrinter extends MinimalPrettyPrinter {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.codehaus.jackson.util.MinimalPrettyPrinter#writeRootValueSeparator(org.codehaus.jackson.JsonGenerator)
+     */
+    @Override
+    public void writeRootValueSeparator(JsonGenerator jg) throws IOException {
+      jg.writeRaw('\n');
+    }
+  }
+
+  /** The query handle. */
+  private final QueryHandle queryHandle;
+
+  /** The result set. */
+  private final InMemoryResultSet resultSet;
+
+  /** The format. */
+  private final Format format;
+
+  /** The charset. */
+  private final String charset;
+
+  /** Whether to write column names as the first row. */
+  private final boolean writeHeader;
+
+  /**
+   * Instantiates a new in memory result streamer.
+   *
+   * @param queryHandle the query handle
+   * @param resultSet   the result set
+   * @param format      the format
+   * @param charset     the charset
+   * @param writeHeader whether to write column names as the first row
+   */
+  public InMemoryResultStreamer(QueryHandle queryHandle, InMemoryResultSet resultSet, Format format, String charset,
+    boolean writeHeader) {
+    this.queryHandle = queryHandle;
+    this.resultSet = resultSet;
+    this.format = format;
+    this.charset = charset;
+    this.writeHeader = writeHeader;
+  }
+
+  /**
+   * Gets the file name of the streamed result.
+   *
+   * @return the file name
+   */
+  public String getFileName() {
+    return queryHandle + "." + format.getExtension();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see javax.ws.rs.core.StreamingOutput#write(java.io.OutputStream)
+   */
+  @Override
+  public void write(OutputStream os) throws IOException, WebApplicationException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(os, charset));
+    CSVWriter csvWriter = null;
+    JsonGenerator jsonGenerator = null;
+    if (format == Format.CSV) {
+      csvWriter = new CSVWriter(writer);
+    } else {
+      // all rows go through a single generator, which is flushed only after each window
+      jsonGenerator = MAPPER.getJsonFactory().createJsonGenerator(writer);
+      jsonGenerator.setPrettyPrinter(new NewlineDelimitedPrinter());
+    }
+    long rows = 0;
+    boolean written = false;
+    try {
+      if (writeHeader) {
+        List<Object> header = new ArrayList<Object>();
+        for (ColumnDescriptor column : resultSet.getMetadata().getColumns()) {
+          header.add(column.getName());
+        }
+        writeRow(csvWriter, jsonGenerator, header);
+        written = true;
+      }
+      while (true) {
+        // a window is read holding the lock on the result set, so concurrent fetches see consistent row indexes
+        List<ResultRow> window = ((InMemoryQueryResult) resultSet.toQueryResult(rows, FETCH_WINDOW)).getRows();
+        for (ResultRow row : window) {
+          writeRow(csvWriter, jsonGenerator, row.getValues());
+          written = true;
+        }
+        rows += window.size();
+        if (window.size() < FETCH_WINDOW) {
+          break;
+        }
+        // hand over the window to the client before reading the next one
+        flush(writer, jsonGenerator);
+      }
+    } catch (LensException e) {
+      LOG.error("Error streaming result of " + queryHandle + " after " + rows + " rows", e);
+      throw new IOException("Error streaming result of " + queryHandle, e);
+    }
+    if (jsonGenerator != null && written) {
+      jsonGenerator.writeRaw('\n');
+    }
+    flush(writer, jsonGenerator);
+    LOG.info("Streamed " + rows + " rows of " + queryHandle + " as " + format);
+  }
+
+  /**
+   * Write a row.
+   *
+   * @param csvWriter     the csv writer, null if format is not CSV
+   * @param jsonGenerator the json generator, null if format is not JSON
+   * @param values        the values
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeRow(CSVWriter csvWriter, JsonGenerator jsonGenerator, List<Object> values) throws IOException {
+    if (csvWriter != null) {
+      String[] fields = new String[values.size()];
+      for (int i = 0; i < fields.length; i++) {
+        Object value = values.get(i);
+        fields[i] = value == null ? null : value.toString();
+      }
+      csvWriter.writeNext(fields);
+    } else {
+      jsonGenerator.writeObject(values);
+    }
+  }
+
+  /**
+   * Flush the rows written so far to the client.
+   *
+   * @param writer        the writer
+   * @param jsonGenerator the json generator, null if format is not JSON
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void flush(Writer writer, JsonGenerator jsonGenerator) throws IOException {
+    if (jsonGenerator != null) {
+      jsonGenerator.flush();
+    }
+    writer.flush();
+  }
+}
@@ -18,9 +18,11 @@
  */
 package org.apache.lens.server.query;
 
+import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.dbutils.ResultSetHandler;
 import org.apache.commons.dbutils.handlers.BeanHandler;
+import org.apache.commons.dbutils.handlers.ScalarHandler;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.lens.api.LensException;
@@ -32,6 +34,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -45,6 +48,12 @@ public class LensServerDAO {
   /** The Constant LOG. */
   private static final Logger LOG = LoggerFactory.getLogger(LensServerDAO.class);
 
+  /** The sql to insert a finished query. */
+  private static final String INSERT_FINISHED_QUERY_SQL = "insert into finished_queries (handle, userquery,submitter,"
+      + "starttime,endtime,result,status,metadata,rows,"
+      + "errormessage,driverstarttime,driverendtime, metadataclass, queryname, submissiontime)"
+      + " values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
   /** The ds. */
   private DataSource ds;
 
@@ -107,6 +116,28 @@ public class LensServerDAO {
     } catch (SQLException e) {
       LOG.warn("Unable to create finished queries table", e);
     }
+    createIndex("finished_queries_submitter_idx", "submitter, submissiontime, handle");
+    createIndex("finished_queries_status_idx", "status, submissiontime, handle");
+    createIndex("finished_queries_submissiontime_idx", "submissiontime, handle");
+  }
+
+  /**
+   * Creates an index on finished queries table. The handle is kept as the last column, so that listing query handles
+   * in submission order is served from the index alone.
+   *
+   * @param name
+   *          the index name
+   * @param columns
+   *          the indexed columns
+   */
+  private void createIndex(String name, String columns) {
+    try {
+      createTable("CREATE INDEX " + name + " ON finished_queries (" + columns + ")");
+      LOG.info("Created index " + name + " on finished queries table");
+    } catch (SQLException e) {
+      // Index already exists when the table was created upfront or by a previous run
+      LOG.info("Unable to create index " + name + " on finished queries table: " + e.getMessage());
+    }
   }
 
   /**
@@ -118,21 +149,69 @@ public class LensServerDAO {
    *           the exception
    */
   public void insertFinishedQuery(FinishedLensQuery query) throws Exception {
-    String sql = "insert into finished_queries (handle, userquery,submitter,"
-        + "starttime,endtime,result,status,metadata,rows,"
-        + "errormessage,driverstarttime,driverendtime, metadataclass, queryname, submissiontime)"
-        + " values (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
     QueryRunner runner = new QueryRunner(ds);
     try {
-      runner.update(sql, query.getHandle(), query.getUserQuery(), query.getSubmitter(), query.getStartTime(),
-          query.getEndTime(), query.getResult(), query.getStatus(), query.getMetadata(), query.getRows(),
-          query.getErrorMessage(), query.getDriverStartTime(), query.getDriverEndTime(), query.getMetadataClass(),
-          query.getQueryName(), query.getSubmissionTime());
+      runner.update(INSERT_FINISHED_QUERY_SQL, getInsertParams(query));
+    } catch (SQLException e) {
+      throw new Exception(e);
+    }
+  }
+
+  /**
+   * DAO method to insert finished queries in a single batch, committed together. Either all the queries are inserted
+   * or none of them.
+   *
+   * @param queries
+   *          to be inserted
+   * @throws Exception
+   *           the exception
+   */
+  public void insertFinishedQueries(List<FinishedLensQuery> queries) throws Exception {
+    if (queries.isEmpty()) {
+      return;
+    }
+    Object[][] params = new Object[queries.size()][];
+    for (int i = 0; i < queries.size(); i++) {
+      params[i] = getInsertParams(queries.get(i));
+    }
+    Connection conn = ds.getConnection();
+    Boolean autoCommit = null;
+    try {
+      autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      new QueryRunner().batch(conn, INSERT_FINISHED_QUERY_SQL, params);
+      conn.commit();
     } catch (SQLException e) {
+      DbUtils.rollbackAndCloseQuietly(conn);
+      conn = null;
       throw new Exception(e);
+    } finally {
+      if (conn != null) {
+        try {
+          if (autoCommit != null) {
+            conn.setAutoCommit(autoCommit);
+          }
+        } finally {
+          DbUtils.closeQuietly(conn);
+        }
+      }
     }
   }
 
+  /**
+   * Gets the params of insert sql for the query.
+   *
+   * @param query
+   *          the query
+   * @return the insert params
+   */
+  private Object[] getInsertParams(FinishedLensQuery query) {
+    return new Object[] { query.getHandle(), query.getUserQuery(), query.getSubmitter(), query.getStartTime(),
+        query.getEndTime(), query.getResult(), query.getStatus(), query.getMetadata(), query.getRows(),
+        query.getErrorMessage(), query.getDriverStartTime(), query.getDriverEndTime(), query.getMetadataClass(),
+        query.getQueryName(), query.getSubmissionTime() };
+  }
+
   /**
    * Fetch Finished query from Database.
    *
@@ -152,6 +231,25 @@ public class LensServerDAO {
     return null;
   }
 
+  /**
+   * Gets the submission time of a finished query.
+   *
+   * @param handle
+   *          the handle
+   * @return the submission time, null if the query is not found
+   * @throws LensException
+   *           the lens exception
+   */
+  public Long getSubmissionTime(String handle) throws LensException {
+    QueryRunner runner = new QueryRunner(ds);
+    try {
+      return runner.query("select submissiontime from finished_queries where handle=?",
+          new ScalarHandler<Long>(), handle);
+    } catch (SQLException e) {
+      throw new LensException(e);
+    }
+  }
+
   /**
    * Find finished queries.
    *
@@ -171,62 +269,112 @@ public class LensServerDAO {
    */
   public List<QueryHandle> findFinishedQueries(String state, String user, String queryName, long fromDate, long toDate)
       throws LensException {
-    boolean addFilter = StringUtils.isNotBlank(state) || StringUtils.isNotBlank(user)
-        || StringUtils.isNotBlank(queryName);
-    StringBuilder builder = new StringBuilder("SELECT handle FROM finished_queries");
-    List<Object> params = null;
-    if (addFilter) {
-      builder.append(" WHERE ");
-      List<String> filters = new ArrayList<String>(3);
-      params = new ArrayList<Object>(3);
-
-      if (StringUtils.isNotBlank(state)) {
-        filters.add("status=?");
-        params.add(state);
-      }
+    List<FinishedLensQuery> queries = findFinishedQueries(state, user, queryName, fromDate, toDate, 0, null, -1);
+    List<QueryHandle> queryHandleList = new ArrayList<QueryHandle>(queries.size());
+    for (FinishedLensQuery query : queries) {
+      queryHandleList.add(QueryHandle.fromString(query.getHandle()));
+    }
+    return queryHandleList;
+  }
 
-      if (StringUtils.isNotBlank(user)) {
-        filters.add("submitter=?");
-        params.add(user);
-      }
+  /**
+   * Find a page of finished queries, ordered by submission time and handle. Pages are fetched by keyset, i.e. the page
+   * starts right after the given submission time and handle, so that no rows before the page are read. Only the
+   * handle and submission time of the returned queries are populated.
+   *
+   * @param state
+   *          the state
+   * @param user
+   *          the user
+   * @param queryName
+   *          the query name
+   * @param fromDate
+   *          the from date
+   * @param toDate
+   *          the to date
+   * @param afterSubmissionTime
+   *          the submission time of the last query of previous page
+   * @param afterHandle
+   *          the handle of the last query of previous page, null to get the first page
+   * @param pageSize
+   *          the max number of queries returned, non-positive to return all the queries
+   * @return the list
+   * @throws LensException
+   *           the lens exception
+   */
+  public List<FinishedLensQuery> findFinishedQueries(String state, String user, String queryName, long fromDate,
+      long toDate, long afterSubmissionTime, String afterHandle, final int pageSize) throws LensException {
+    StringBuilder builder = new StringBuilder("SELECT handle, submissiontime FROM finished_queries WHERE ");
+    List<String> filters = new ArrayList<String>(5);
+    List<Object> params = new ArrayList<Object>(8);
 
-      if (StringUtils.isNotBlank(queryName)) {
-        filters.add("queryname like ?");
-        params.add("%" + queryName + "%");
-      }
+    if (StringUtils.isNotBlank(state)) {
+      filters.add("status=?");
+      params.add(state);
+    }
+
+    if (StringUtils.isNotBlank(user)) {
+      filters.add("submitter=?");
+      params.add(user);
+    }
+
+    if (StringUtils.isNotBlank(queryName)) {
+      filters.add("queryname like ?");
+      params.add("%" + queryName + "%");
+    }
+
+    filters.add("submissiontime BETWEEN ? AND ?");
+    params.add(fromDate);
+    params.add(toDate);
 
-      filters.add("submissiontime BETWEEN ? AND ?");
-      params.add(fromDate);
-      params.add(toDate);
-      builder.append(StringUtils.join(filters, " AND "));
+    if (afterHandle != null) {
+      filters.add("(submissiontime > ? OR (submissiontime = ? AND handle > ?))");
+      params.add(afterSubmissionTime);
+      params.add(afterSubmissionTime);
+      params.add(afterHandle);
     }
+    builder.append(StringUtils.join(filters, " AND "));
+    builder.append(" ORDER BY submissiontime, handle");
 
-    ResultSetHandler<List<QueryHandle>> resultSetHandler = new ResultSetHandler<List<QueryHandle>>() {
+    ResultSetHandler<List<FinishedLensQuery>> resultSetHandler = new ResultSetHandler<List<FinishedLensQuery>>() {
       @Override
-      public List<QueryHandle> handle(ResultSet resultSet) throws SQLException {
-        List<QueryHandle> queryHandleList = new ArrayList<QueryHandle>();
-        while (resultSet.next()) {
+      public List<FinishedLensQuery> handle(ResultSet resultSet) throws SQLException {
+        List<FinishedLensQuery> queries = new ArrayList<FinishedLensQuery>();
+        while ((pageSize <= 0 || queries.size() < pageSize) && resultSet.next()) {
           String handle = resultSet.getString(1);
           try {
-            queryHandleList.add(QueryHandle.fromString(handle));
+            QueryHandle.fromString(handle);
           } catch (IllegalArgumentException exc) {
             LOG.warn("Warning invalid query handle found in DB " + handle);
+            continue;
           }
+          FinishedLensQuery query = new FinishedLensQuery();
+          query.setHandle(handle);
+          query.setSubmissionTime(resultSet.getLong(2));
+          queries.add(query);
         }
-        return queryHandleList;
+        return queries;
       }
     };
 
     QueryRunner runner = new QueryRunner(ds);
-    String query = builder.toString();
+    Connection conn = null;
+    PreparedStatement stmt = null;
+    ResultSet rs = null;
     try {
-      if (addFilter) {
-        return runner.query(query, resultSetHandler, params.toArray());
-      } else {
-        return runner.query(query, resultSetHandler);
+      conn = ds.getConnection();
+      stmt = conn.prepareStatement(builder.toString());
+      if (pageSize > 0) {
+        // Not a row limit: invalid handles are skipped, so rows are read until the page is full
+        stmt.setFetchSize(pageSize);
       }
+      runner.fillStatement(stmt, params.toArray());
+      rs = stmt.executeQuery();
+      return resultSetHandler.handle(rs);
     } catch (SQLException e) {
       throw new LensException(e);
+    } finally {
+      DbUtils.closeQuietly(conn, stmt, rs);
     }
   }
 
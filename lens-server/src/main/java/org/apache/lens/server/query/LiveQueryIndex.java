@@ -0,0 +1,323 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.api.query.QueryStatus.Status;
+import org.apache.lens.server.api.query.QueryContext;
+
+/**
+ * Secondary index over the live queries of the query service, keyed on submitter, status and submission time bucket.
+ * <p/>
+ * Lookups return the candidates from the most selective index among the given filters, so that a filtered listing
+ * costs in the order of the matching queries instead of all the live queries. Candidates are only a superset of the
+ * matches; callers are expected to check the filters against the query contexts. The index is maintained by the
+ * paths which add, remove or change the status of live queries. Updates of a query are done holding the lock on its
+ * context, which is the lock held while changing its status. A query is added under its new keys before it is removed
+ * from its stale ones, so that lookups never miss it, and the sets of a key are only locked while they are created or
+ * dropped.
+ */
+public class LiveQueryIndex {
+
+  /**
+   * The width of submission time buckets.
+   */
+  static final long TIME_BUCKET_MILLIS = 60 * 1000L;
+
+  /**
+   * The indexed keys of each query.
+   */
+  private final ConcurrentMap<QueryHandle, IndexKey> keys = new ConcurrentHashMap<QueryHandle, IndexKey>();
+
+  /**
+   * Queries by lower cased submitter.
+   */
+  private final ConcurrentMap<String, HandleSet> bySubmitter = new ConcurrentHashMap<String, HandleSet>();
+
+  /**
+   * Queries by status.
+   */
+  private final Map<Status, Set<QueryHandle>> byStatus;
+
+  /**
+   * Queries by submission time bucket.
+   */
+  private final ConcurrentSkipListMap<Long, HandleSet> byTimeBucket = new ConcurrentSkipListMap<Long, HandleSet>();
+
+  /**
+   * Instantiates a new live query index.
+   */
+  public LiveQueryIndex() {
+    Map<Status, Set<QueryHandle>> statusMap = new EnumMap<Status, Set<QueryHandle>>(Status.class);
+    for (Status status : Status.values()) {
+      statusMap.put(status, newHandleSet());
+    }
+    byStatus = Collections.unmodifiableMap(statusMap);
+  }
+
+  /**
+   * The keys under which a query is indexed.
+   */
+  private static final class IndexKey {
+
+    /** The lower cased submitter. */
+    private final String submitter;
+
+    /** The status. */
+    private final Status status;
+
+    /** The submission time bucket. */
+    private final long timeBucket;
+
+    /**
+     * Instantiates a new index key.
+     *
+     * @param ctx the query context
+     */
+    IndexKey(QueryContext ctx) {
+      this.submitter = ctx.getSubmittedUser() == null ? "" : ctx.getSubmittedUser().toLowerCase();
+      this.status = ctx.getStatus().getStatus();
+      this.timeBucket = bucket(ctx.getSubmissionTime());
+    }
+  }
+
+  /**
+   * The queries of a key of an index. The set is dropped from the index once it is empty; handles are added and the set
+   * is dropped holding its lock, so that a handle is never added to a dropped set.
+   */
+  private static final class HandleSet {
+
+    /** The handles. */
+    private final Set<QueryHandle> handles = newHandleSet();
+
+    /** Whether the set was dropped from the index. */
+    private boolean dropped;
+  }
+
+  /**
+   * Adds the query to the index, or reindexes it if it is already present.
+   *
+   * @param ctx the query context
+   */
+  public void add(QueryContext ctx) {
+    synchronized (ctx) {
+      index(ctx);
+    }
+  }
+
+  /**
+   * Reindexes the query after its status changed. Queries which are not in the index are ignored.
+   *
+   * @param ctx the query context
+   */
+  public void update(QueryContext ctx) {
+    synchronized (ctx) {
+      if (keys.containsKey(ctx.getQueryHandle())) {
+        index(ctx);
+      }
+    }
+  }
+
+  /**
+   * Removes the query from the index.
+   *
+   * @param ctx the query context
+   */
+  public void remove(QueryContext ctx) {
+    synchronized (ctx) {
+      IndexKey key = keys.remove(ctx.getQueryHandle());
+      if (key != null) {
+        unindex(ctx.getQueryHandle(), key);
+      }
+    }
+  }
+
+  /**
+   * Removes all the queries from the index.
+   */
+  public void clear() {
+    keys.clear();
+    bySubmitter.clear();
+    for (Set<QueryHandle> handles : byStatus.values()) {
+      handles.clear();
+    }
+    byTimeBucket.clear();
+  }
+
+  /**
+   * Gets the candidate queries matching the filters.
+   *
+   * @param status    the status, null to not filter by status
+   * @param submitter the submitter, null to not filter by submitter
+   * @param fromDate  the start of submission time range
+   * @param toDate    the end of submission time range
+   * @return the candidate queries, a superset of the queries matching the filters
+   */
+  public Collection<QueryHandle> getCandidates(Status status, String submitter, long fromDate, long toDate) {
+    Collection<QueryHandle> best = keys.keySet();
+    if (status != null) {
+      best = byStatus.get(status);
+    }
+    if (submitter != null) {
+      HandleSet handles = bySubmitter.get(submitter.toLowerCase());
+      if (handles == null) {
+        return Collections.emptyList();
+      }
+      if (handles.handles.size() < best.size()) {
+        best = handles.handles;
+      }
+    }
+    long fromBucket = bucket(fromDate);
+    long toBucket = bucket(toDate);
+    if (!byTimeBucket.isEmpty() && (fromBucket > byTimeBucket.firstKey() || toBucket < byTimeBucket.lastKey())) {
+      NavigableMap<Long, HandleSet> buckets = byTimeBucket.subMap(fromBucket, true, toBucket, true);
+      int size = 0;
+      for (HandleSet handles : buckets.values()) {
+        size += handles.handles.size();
+      }
+      if (size < best.size()) {
+        Collection<QueryHandle> inRange = new ArrayList<QueryHandle>(size);
+        for (HandleSet handles : buckets.values()) {
+          inRange.addAll(handles.handles);
+        }
+        best = inRange;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Indexes the query under its current keys, removing it from the stale ones. Keys which did not change are left
+   * alone.
+   *
+   * @param ctx the query context
+   */
+  private void index(QueryContext ctx) {
+    QueryHandle handle = ctx.getQueryHandle();
+    IndexKey key = new IndexKey(ctx);
+    IndexKey old = keys.put(handle, key);
+    if (old == null || !old.submitter.equals(key.submitter)) {
+      addHandle(bySubmitter, key.submitter, handle);
+      if (old != null) {
+        removeHandle(bySubmitter, old.submitter, handle);
+      }
+    }
+    if (old == null || old.status != key.status) {
+      byStatus.get(key.status).add(handle);
+      if (old != null) {
+        byStatus.get(old.status).remove(handle);
+      }
+    }
+    if (old == null || old.timeBucket != key.timeBucket) {
+      addHandle(byTimeBucket, key.timeBucket, handle);
+      if (old != null) {
+        removeHandle(byTimeBucket, old.timeBucket, handle);
+      }
+    }
+  }
+
+  /**
+   * Removes the query from the given keys.
+   *
+   * @param handle the query handle
+   * @param key    the index key
+   */
+  private void unindex(QueryHandle handle, IndexKey key) {
+    removeHandle(bySubmitter, key.submitter, handle);
+    byStatus.get(key.status).remove(handle);
+    removeHandle(byTimeBucket, key.timeBucket, handle);
+  }
+
+  /**
+   * Adds the handle to the set of the key, creating the set if required. Retries if the set got dropped in between.
+   * Readers do not take the lock of the set.
+   *
+   * @param map    the map
+   * @param key    the key
+   * @param handle the handle
+   */
+  private static <K> void addHandle(ConcurrentMap<K, HandleSet> map, K key, QueryHandle handle) {
+    while (true) {
+      HandleSet handles = map.get(key);
+      if (handles == null) {
+        HandleSet created = new HandleSet();
+        handles = map.putIfAbsent(key, created);
+        if (handles == null) {
+          handles = created;
+        }
+      }
+      synchronized (handles) {
+        if (!handles.dropped) {
+          handles.handles.add(handle);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the handle from the set of the key, dropping the set once it is empty.
+   *
+   * @param map    the map
+   * @param key    the key
+   * @param handle the handle
+   */
+  private static <K> void removeHandle(ConcurrentMap<K, HandleSet> map, K key, QueryHandle handle) {
+    HandleSet handles = map.get(key);
+    if (handles != null) {
+      synchronized (handles) {
+        handles.handles.remove(handle);
+        if (handles.handles.isEmpty() && !handles.dropped) {
+          handles.dropped = true;
+          map.remove(key, handles);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a new concurrent set of handles.
+   *
+   * @return the set
+   */
+  private static Set<QueryHandle> newHandleSet() {
+    return Collections.newSetFromMap(new ConcurrentHashMap<QueryHandle, Boolean>());
+  }
+
+  /**
+   * Gets the time bucket of the given time.
+   *
+   * @param time the time
+   * @return the bucket
+   */
+  static long bucket(long time) {
+    return time >= 0 ? time / TIME_BUCKET_MILLIS : -1;
+  }
+}
@@ -0,0 +1,262 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.lens.server.api.metrics.MetricsService;
+import org.apache.lens.server.api.query.QueryExecutionService;
+
+/**
+ * Streams a byte range of a persisted result file to the http response, optionally gzip encoded. Results on the local
+ * file system are transferred through {@link FileChannel#transferTo(long, long, WritableByteChannel)}, others are
+ * copied through a large buffer without flushing after every chunk. The throughput of each download is recorded in
+ * the {@link QueryExecutionServiceImpl#HTTP_RESULT_DOWNLOAD_THROUGHPUT} histogram, in bytes per second.
+ */
+public class PersistedResultStreamer implements StreamingOutput {
+
+  /** The Constant LOG. */
+  public static final Log LOG = LogFactory.getLog(PersistedResultStreamer.class);
+
+  /** The result path. */
+  private final Path resultPath;
+
+  /** The conf. */
+  private final Configuration conf;
+
+  /** The offset of the first byte to be streamed. */
+  private final long offset;
+
+  /** The number of bytes to be streamed. */
+  private final long length;
+
+  /** Whether to gzip the streamed bytes. */
+  private final boolean gzip;
+
+  /** The buffer size. */
+  private final int bufferSize;
+
+  /** The metrics service. */
+  private final MetricsService metrics;
+
+  /**
+   * Instantiates a new persisted result streamer.
+   *
+   * @param resultPath the result path
+   * @param conf       the conf
+   * @param offset     the offset of the first byte to be streamed
+   * @param length     the number of bytes to be streamed
+   * @param gzip       whether to gzip the streamed bytes
+   * @param bufferSize the buffer size
+   * @param metrics    the metrics service, null if throughput is not to be recorded
+   */
+  public PersistedResultStreamer(Path resultPath, Configuration conf, long offset, long length, boolean gzip,
+    int bufferSize, MetricsService metrics) {
+    this.resultPath = resultPath;
+    this.conf = conf;
+    this.offset = offset;
+    this.length = length;
+    this.gzip = gzip;
+    this.bufferSize = bufferSize;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Parses the value of a http Range header, with a single byte range.
+   *
+   * @param range the range header, can be null
+   * @param size  the size of the result
+   * @return the first and last byte positions of the range, both inclusive. Null if no range or an unsupported range,
+   *         like a multi part range, is asked for, in which case the whole result is to be returned.
+   * @throws IllegalArgumentException if the range can not be satisfied
+   */
+  static long[] parseRange(String range, long size) {
+    if (range == null || !range.trim().startsWith("bytes=") || range.indexOf(',') != -1) {
+      return null;
+    }
+    String spec = range.trim().substring("bytes=".length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+    long first;
+    long last;
+    try {
+      if (dash == 0) {
+        // suffix range, last n bytes
+        long suffix = Long.parseLong(spec.substring(1).trim());
+        if (suffix <= 0 || size == 0) {
+          throw new IllegalArgumentException("Unsatisfiable range " + range + " for size " + size);
+        }
+        first = Math.max(0, size - suffix);
+        last = size - 1;
+      } else {
+        first = Long.parseLong(spec.substring(0, dash).trim());
+        String lastStr = spec.substring(dash + 1).trim();
+        last = lastStr.isEmpty() ? size - 1 : Long.parseLong(lastStr);
+        if (last < first) {
+          // syntactically invalid, to be ignored
+          return null;
+        }
+        last = Math.min(size - 1, last);
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if (first >= size) {
+      throw new IllegalArgumentException("Unsatisfiable range " + range + " for size " + size);
+    }
+    return new long[]{first, last};
+  }
+
+  /**
+   * Checks whether the value of a http Accept-Encoding header accepts the gzip coding. A coding with a zero quality
+   * value is not acceptable, and an explicit gzip or x-gzip entry takes precedence over the wildcard.
+   *
+   * @param acceptEncoding the Accept-Encoding header, can be null
+   * @return true if gzip is acceptable
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Boolean wildcard = null;
+    for (String entry : acceptEncoding.split(",")) {
+      String[] parts = entry.split(";");
+      String coding = parts[0].trim().toLowerCase();
+      boolean acceptable = true;
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim().toLowerCase();
+        if (param.startsWith("q=")) {
+          try {
+            acceptable = Double.parseDouble(param.substring(2).trim()) > 0;
+          } catch (NumberFormatException e) {
+            acceptable = false;
+          }
+        }
+      }
+      if (coding.equals("gzip") || coding.equals("x-gzip")) {
+        return acceptable;
+      } else if (coding.equals("*")) {
+        wildcard = acceptable;
+      }
+    }
+    return wildcard != null && wildcard;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see javax.ws.rs.core.StreamingOutput#write(java.io.OutputStream)
+   */
+  @Override
+  public void write(OutputStream os) throws IOException, WebApplicationException {
+    long startTime = System.currentTimeMillis();
+    OutputStream out = gzip ? new GZIPOutputStream(os, bufferSize) : os;
+    FileSystem fs = resultPath.getFileSystem(conf);
+    if (fs instanceof LocalFileSystem) {
+      transfer(((LocalFileSystem) fs).pathToFile(resultPath), out);
+    } else {
+      copy(fs, out);
+    }
+    if (gzip) {
+      ((GZIPOutputStream) out).finish();
+    }
+    out.flush();
+
+    long millis = Math.max(1, System.currentTimeMillis() - startTime);
+    if (metrics != null) {
+      metrics.updateHistogram(QueryExecutionService.class, QueryExecutionServiceImpl.HTTP_RESULT_DOWNLOAD_THROUGHPUT,
+        length * 1000 / millis);
+    }
+    LOG.info("Streamed " + length + " bytes of " + resultPath + " from offset " + offset + " in " + millis + " millis"
+      + (gzip ? " with gzip" : ""));
+  }
+
+  /**
+   * Transfers the range of a local file through its channel.
+   *
+   * @param file the file
+   * @param out  the out
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void transfer(File file, OutputStream out) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      WritableByteChannel target = Channels.newChannel(out);
+      long position = offset;
+      long end = offset + length;
+      while (position < end) {
+        long transferred = channel.transferTo(position, end - position, target);
+        if (transferred <= 0) {
+          throw new IOException("Could not transfer " + file + " beyond " + position);
+        }
+        position += transferred;
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Copies the range of the result through a buffer.
+   *
+   * @param fs  the fs
+   * @param out the out
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void copy(FileSystem fs, OutputStream out) throws IOException {
+    FSDataInputStream in = fs.open(resultPath, bufferSize);
+    try {
+      if (offset > 0) {
+        in.seek(offset);
+      }
+      byte[] buffer = new byte[bufferSize];
+      long remaining = length;
+      while (remaining > 0) {
+        int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (n < 0) {
+          throw new IOException("Unexpected end of " + resultPath + " with " + remaining + " bytes remaining");
+        }
+        out.write(buffer, 0, n);
+        remaining -= n;
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
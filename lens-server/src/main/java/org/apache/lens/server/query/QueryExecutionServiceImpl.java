@@ -18,36 +18,53 @@
  */
 package org.apache.lens.server.query;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.ObjectInput;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
-import java.io.OutputStream;
+import java.io.ObjectOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
 import org.apache.hive.service.cli.CLIService;
 
 import org.apache.hive.service.cli.ColumnDescriptor;
@@ -70,12 +87,15 @@ import org.apache.lens.driver.cube.RewriteUtil;
 import org.apache.lens.driver.hive.HiveDriver;
 import org.apache.lens.server.LensService;
 import org.apache.lens.server.LensServices;
+import org.apache.lens.server.ServiceStateJournal;
 import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.driver.*;
 import org.apache.lens.server.api.events.LensEventListener;
 import org.apache.lens.server.api.events.LensEventService;
+import org.apache.lens.server.api.metrics.LongGaugeSet;
 import org.apache.lens.server.api.metrics.MetricsService;
 import org.apache.lens.server.api.query.*;
+import org.apache.lens.server.api.query.DriverSelectorQueryContext.DriverQueryContext;
 import org.apache.lens.server.session.LensSessionImpl;
 import org.apache.lens.server.stats.StatisticsService;
 import org.apache.lens.server.util.UtilityMethods;
@@ -83,6 +103,11 @@ import org.codehaus.jackson.*;
 import org.codehaus.jackson.map.*;
 import org.codehaus.jackson.map.module.SimpleModule;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
 /**
  * The Class QueryExecutionServiceImpl.
  */
@@ -108,6 +133,16 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
    */
   public static final String STATUS_UPDATE_COUNTER = "status-update-errors";
 
+  /**
+   * The Constant STATUS_UPDATE_TIMER.
+   */
+  public static final String STATUS_UPDATE_TIMER = "status-updates";
+
+  /**
+   * The Constant STATUS_UPDATE_BATCH_SIZE_HISTOGRAM.
+   */
+  public static final String STATUS_UPDATE_BATCH_SIZE_HISTOGRAM = "status-update-batch-size";
+
   /**
    * The Constant QUERY_PURGER_COUNTER.
    */
@@ -118,6 +153,51 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
    */
   public static final String PREPARED_QUERY_PURGER_COUNTER = "prepared-query-purger-errors";
 
+  /**
+   * The Constant QUERY_LAUNCH_TIMER.
+   */
+  public static final String QUERY_LAUNCH_TIMER = "query-launches";
+
+  /**
+   * The Constant QUERY_QUEUE_WAIT_TIMER.
+   */
+  public static final String QUERY_QUEUE_WAIT_TIMER = "query-queue-wait";
+
+  /**
+   * The Constant HTTP_RESULT_DOWNLOAD_THROUGHPUT.
+   */
+  public static final String HTTP_RESULT_DOWNLOAD_THROUGHPUT = "http-result-download-throughput";
+
+  /**
+   * The Constant FINISHED_QUERY_COMMIT_TIMER.
+   */
+  public static final String FINISHED_QUERY_COMMIT_TIMER = "finished-query-commits";
+
+  /**
+   * The Constant FINISHED_QUERY_BATCH_SIZE_HISTOGRAM.
+   */
+  public static final String FINISHED_QUERY_BATCH_SIZE_HISTOGRAM = "finished-query-batch-size";
+
+  /**
+   * The Constant REWRITE_CACHE_HITS_COUNTER.
+   */
+  public static final String REWRITE_CACHE_HITS_COUNTER = "rewrite-cache-hits";
+
+  /**
+   * The Constant REWRITE_CACHE_MISSES_COUNTER.
+   */
+  public static final String REWRITE_CACHE_MISSES_COUNTER = "rewrite-cache-misses";
+
+  /**
+   * The Constant DRIVER_SELECTION_PHASE.
+   */
+  public static final String DRIVER_SELECTION_PHASE = "driver-selection";
+
+  /**
+   * The Constant REWRITE_TIMEOUT_COUNTER.
+   */
+  public static final String REWRITE_TIMEOUT_COUNTER = "rewrite-timeouts";
+
   /**
    * The millis in week.
    */
@@ -141,7 +221,8 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
   /**
    * The launched queries.
    */
-  private List<QueryContext> launchedQueries = new ArrayList<QueryContext>();
+  private Set<QueryContext> launchedQueries = Collections
+    .newSetFromMap(new ConcurrentHashMap<QueryContext, Boolean>());
 
   /**
    * The finished queries.
@@ -163,6 +244,11 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
    */
   private ConcurrentMap<QueryHandle, QueryContext> allQueries = new ConcurrentHashMap<QueryHandle, QueryContext>();
 
+  /**
+   * The index of all queries by submitter, status and submission time.
+   */
+  private final LiveQueryIndex liveQueryIndex = new LiveQueryIndex();
+
   /**
    * The conf.
    */
@@ -179,9 +265,66 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
   protected final Thread querySubmitter = new Thread(querySubmitterRunnable, "QuerySubmitter");
 
   /**
-   * The status poller.
+   * The query launcher pool.
+   */
+  private ExecutorService queryLauncherPool;
+
+  /**
+   * The free launcher slots. Query submitter takes a query from the accepted queries only when a launcher is free, so
+   * that queries are launched in priority order.
+   */
+  private Semaphore launcherSlots;
+
+  /**
+   * The max concurrent launches per user.
+   */
+  private int maxLaunchesPerUser;
+
+  /**
+   * The number of queries getting launched for each user.
+   */
+  private final Map<String, Integer> userLaunches = new HashMap<String, Integer>();
+
+  /**
+   * The queries deferred because their user reached max concurrent launches.
+   */
+  private final Map<String, List<QueryContext>> deferredLaunches = new HashMap<String, List<QueryContext>>();
+
+  /**
+   * The slots of each driver, capping the queries running on the driver.
+   */
+  private DriverLaunchSlots driverLaunchSlots = new DriverLaunchSlots(0);
+
+  /**
+   * The pool polling status of launched queries.
+   */
+  private ScheduledExecutorService statusUpdatePool;
+
+  /**
+   * The pool on which results of execute with timeout are fetched and sent, off the status pollers.
+   */
+  private ExecutorService resultFetchPool;
+
+  /**
+   * The status update tasks of launched queries.
+   */
+  private final ConcurrentMap<QueryHandle, StatusUpdateTask> statusUpdateTasks =
+    new ConcurrentHashMap<QueryHandle, StatusUpdateTask>();
+
+  /**
+   * The min status poll interval.
    */
-  private final Thread statusPoller = new Thread(new StatusPoller(), "StatusPoller");
+  private long minStatusPollInterval;
+
+  /**
+   * The max status poll interval.
+   */
+  private long maxStatusPollInterval;
+
+  /**
+   * The max number of queries of a driver polled in a single status update.
+   */
+  private int statusUpdateBatchSize;
 
   /**
    * The query purger.
@@ -233,6 +376,36 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
    */
   private int maxFinishedQueries;
 
+  /**
+   * The max number of finished queries persisted in a single batch.
+   */
+  private int purgeBatchSize;
+
+  /**
+   * The max rows of an in-memory result set kept in memory, negative if rows are not kept.
+   */
+  private long maxResultBytesInMemory;
+
+  /**
+   * The directory where rows of in-memory result sets are spilled.
+   */
+  private File resultSpillDir;
+
+  /**
+   * The cache of rewritten queries and driver plans.
+   */
+  private QueryRewriteCache rewriteCache;
+
+  /**
+   * The pool on which queries are rewritten and explained for all drivers concurrently.
+   */
+  private ExecutorService rewritePool;
+
+  /**
+   * The time within which a driver has to rewrite and explain a query.
+   */
+  long rewriteTimeoutMillis;
+
   /**
    * The lens server dao.
    */
@@ -252,6 +425,19 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
     }
   };
 
+  /**
+   * The query status listener, which polls status of a query as soon as its driver notifies a change.
+   */
+  final LensEventListener<DriverQueryStatusChanged> queryStatusListener =
+    new LensEventListener<DriverQueryStatusChanged>() {
+      @Override
+      public void onEvent(DriverQueryStatusChanged event) {
+        LOG.debug("Driver " + event.getDriver() + " notified state " + event.getState() + " for "
+          + event.getQueryHandle());
+        triggerStatusUpdate(event.getDriver(), event.getQueryHandle());
+      }
+    };
+
   /**
    * Instantiates a new query execution service impl.
    *
@@ -296,6 +482,10 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
           if (driver instanceof HiveDriver) {
             driver.registerDriverEventListener(driverEventListener);
           }
+          driver.registerQueryStatusListener(queryStatusListener);
+          if (driver instanceof LongGaugeSet) {
+            getMetrics().registerGauges(driver.getClass(), (LongGaugeSet) driver);
+          }
 
           drivers.put(driverClass, driver);
           LOG.info("Driver for " + driverClass + " is loaded");
@@ -446,7 +636,8 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
   }
 
   /**
-   * The Class QuerySubmitter.
+   * The Class QuerySubmitter. Takes queries from accepted queries in priority order and hands them over to the query
+   * launcher pool.
    */
   private class QuerySubmitter implements Runnable {
 
@@ -465,30 +656,26 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
       LOG.info("Starting QuerySubmitter thread");
       while (!pausedForTest && !stopped && !querySubmitter.isInterrupted()) {
         try {
-          QueryContext ctx = acceptedQueries.take();
-          synchronized (ctx) {
-            if (ctx.getStatus().getStatus().equals(Status.QUEUED)) {
-              LOG.info("Launching query:" + ctx.getSelectedDriverQuery());
-              try {
-                // acquire session before any query operation.
-                acquire(ctx.getLensSessionIdentifier());
-                if (ctx.getSelectedDriver() == null) {
-                  rewriteAndSelect(ctx);
-                } else {
-                  LOG.info("Submitting to already selected driver");
-                }
-                ctx.getSelectedDriver().executeAsync(ctx);
-              } catch (Exception e) {
-                LOG.error("Error launching query " + ctx.getQueryHandle(), e);
-                String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
-                setFailedStatus(ctx, "Launching query failed", reason);
-                continue;
-              } finally {
-                release(ctx.getLensSessionIdentifier());
-              }
-              setLaunchedStatus(ctx);
-              LOG.info("Launched query " + ctx.getQueryHandle());
-            }
+          launcherSlots.acquire();
+          QueryContext ctx;
+          try {
+            ctx = acceptedQueries.take();
+          } catch (InterruptedException e) {
+            launcherSlots.release();
+            throw e;
+          }
+          if (!reserveUserLaunch(ctx)) {
+            LOG.info("Deferring launch of " + ctx.getQueryHandle() + " as user " + ctx.getSubmittedUser()
+              + " has reached max concurrent launches");
+            launcherSlots.release();
+            continue;
+          }
+          try {
+            queryLauncherPool.execute(new QueryLauncher(ctx));
+          } catch (RejectedExecutionException e) {
+            releaseUserLaunch(ctx);
+            launcherSlots.release();
+            throw e;
           }
         } catch (InterruptedException e) {
           LOG.info("Query Submitter has been interrupted, exiting");
@@ -503,24 +690,24 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
 
   }
 
-  // used in tests
-
   /**
-   * Pause query submitter.
+   * The Class QueryLauncher. Rewrites the query, selects the driver and launches the query on the selected driver.
    */
-  public void pauseQuerySubmitter() {
-    querySubmitterRunnable.pausedForTest = true;
-  }
+  private class QueryLauncher implements Runnable {
 
-  /**
-   * The Class StatusPoller.
-   */
-  private class StatusPoller implements Runnable {
+    /**
+     * The ctx.
+     */
+    private final QueryContext ctx;
 
     /**
-     * The poll interval.
+     * Instantiates a new query launcher.
+     *
+     * @param ctx the ctx
      */
-    long pollInterval = 1000;
+    QueryLauncher(QueryContext ctx) {
+      this.ctx = ctx;
+    }
 
     /*
      * (non-Javadoc)
@@ -529,173 +716,607 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
      */
     @Override
     public void run() {
-      LOG.info("Starting Status poller thread");
-      while (!stopped && !statusPoller.isInterrupted()) {
-        try {
-          List<QueryContext> launched = new ArrayList<QueryContext>();
-          launched.addAll(launchedQueries);
-          for (QueryContext ctx : launched) {
-            if (stopped || statusPoller.isInterrupted()) {
-              return;
-            }
-            LOG.info("Polling status for " + ctx.getQueryHandle());
-            try {
-              // session is not required to update status of the query
-              // acquire(ctx.getLensSessionIdentifier());
-              updateStatus(ctx.getQueryHandle());
-            } catch (LensException e) {
-              LOG.error("Error updating status ", e);
-            } finally {
-              // release(ctx.getLensSessionIdentifier());
-            }
-          }
-          Thread.sleep(pollInterval);
-        } catch (InterruptedException e) {
-          LOG.info("Status poller has been interrupted, exiting");
-          return;
-        } catch (Exception e) {
-          incrCounter(STATUS_UPDATE_COUNTER);
-          LOG.error("Error in status poller", e);
-        }
+      try {
+        launchQuery(ctx);
+      } catch (Exception e) {
+        incrCounter(QUERY_SUBMITTER_COUNTER);
+        LOG.error("Error in query launcher", e);
+      } finally {
+        releaseUserLaunch(ctx);
+        launcherSlots.release();
       }
-      LOG.info("StatusPoller exited");
     }
   }
 
   /**
-   * Sets the failed status.
+   * Launch query on the selected driver, selecting the driver first if not already selected. If the selected driver
+   * is running max allowed queries, the query waits for a slot of the driver without holding the launcher thread.
    *
-   * @param ctx       the ctx
-   * @param statusMsg the status msg
-   * @param reason    the reason
+   * @param ctx the ctx
    * @throws LensException the lens exception
    */
-  void setFailedStatus(QueryContext ctx, String statusMsg, String reason) throws LensException {
-    QueryStatus before = ctx.getStatus();
-    ctx.setStatus(new QueryStatus(0.0f, QueryStatus.Status.FAILED, statusMsg, false, null, reason));
-    updateFinishedQuery(ctx, before);
-    fireStatusChangeEvent(ctx, ctx.getStatus(), before);
-  }
-
-  private void setLaunchedStatus(QueryContext ctx) throws LensException {
-    QueryStatus before = ctx.getStatus();
-    ctx.setStatus(new QueryStatus(ctx.getStatus().getProgress(), QueryStatus.Status.LAUNCHED, "launched on the driver",
-                                  false, null, null));
-    launchedQueries.add(ctx);
-    ctx.setLaunchTime(System.currentTimeMillis());
-    fireStatusChangeEvent(ctx, ctx.getStatus(), before);
+  private void launchQuery(QueryContext ctx) throws LensException {
+    synchronized (ctx) {
+      if (!ctx.getStatus().getStatus().equals(Status.QUEUED)) {
+        return;
+      }
+      if (ctx.getSelectedDriver() == null) {
+        try {
+          // acquire session before any query operation.
+          acquire(ctx.getLensSessionIdentifier());
+          rewriteAndSelect(ctx);
+        } catch (Exception e) {
+          LOG.error("Error launching query " + ctx.getQueryHandle(), e);
+          String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+          setFailedStatus(ctx, "Launching query failed", reason);
+          return;
+        } finally {
+          release(ctx.getLensSessionIdentifier());
+        }
+      }
+    }
+    // try for the driver slot outside the lock on ctx, so that cancel and status calls on ctx are not held up
+    if (!driverLaunchSlots.tryAcquire(ctx)) {
+      LOG.info("Deferring launch of " + ctx.getQueryHandle() + " as driver "
+        + ctx.getSelectedDriver().getClass().getName() + " has reached max concurrent queries");
+      return;
+    }
+    synchronized (ctx) {
+      if (!ctx.getStatus().getStatus().equals(Status.QUEUED)) {
+        releaseDriverLaunchSlot(ctx);
+        return;
+      }
+      long launchStart = System.currentTimeMillis();
+      getMetrics().updateTimer(QueryExecutionService.class, QUERY_QUEUE_WAIT_TIMER,
+        launchStart - ctx.getSubmissionTime(), TimeUnit.MILLISECONDS);
+      LOG.info("Launching query:" + ctx.getSelectedDriverQuery());
+      try {
+        // acquire session before any query operation.
+        acquire(ctx.getLensSessionIdentifier());
+        ctx.getSelectedDriver().executeAsync(ctx);
+      } catch (Exception e) {
+        LOG.error("Error launching query " + ctx.getQueryHandle(), e);
+        String reason = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+        // releases the driver slot as well
+        setFailedStatus(ctx, "Launching query failed", reason);
+        return;
+      } finally {
+        release(ctx.getLensSessionIdentifier());
+      }
+      setLaunchedStatus(ctx);
+      getMetrics().updateTimer(QueryExecutionService.class, QUERY_LAUNCH_TIMER,
+        System.currentTimeMillis() - launchStart, TimeUnit.MILLISECONDS);
+      LOG.info("Launched query " + ctx.getQueryHandle());
+    }
   }
 
   /**
-   * Sets the cancelled status.
+   * Reserve a launch for the user of the query. If the user has reached max concurrent launches, the query is deferred
+   * till one of the user's launches finishes.
    *
-   * @param ctx       the ctx
-   * @param statusMsg the status msg
-   * @throws LensException the lens exception
+   * @param ctx the ctx
+   * @return true, if launch is reserved
    */
-  private void setCancelledStatus(QueryContext ctx, String statusMsg) throws LensException {
-    QueryStatus before = ctx.getStatus();
-    ctx.setStatus(new QueryStatus(0.0f, QueryStatus.Status.CANCELED, statusMsg, false, null, null));
-    updateFinishedQuery(ctx, before);
-    fireStatusChangeEvent(ctx, ctx.getStatus(), before);
+  private boolean reserveUserLaunch(QueryContext ctx) {
+    if (maxLaunchesPerUser <= 0) {
+      return true;
+    }
+    synchronized (userLaunches) {
+      String user = ctx.getSubmittedUser();
+      Integer launches = userLaunches.get(user);
+      if (launches != null && launches >= maxLaunchesPerUser) {
+        List<QueryContext> deferred = deferredLaunches.get(user);
+        if (deferred == null) {
+          deferred = new ArrayList<QueryContext>();
+          deferredLaunches.put(user, deferred);
+        }
+        deferred.add(ctx);
+        return false;
+      }
+      userLaunches.put(user, launches == null ? 1 : launches + 1);
+      return true;
+    }
   }
 
   /**
-   * Update finished query.
+   * Release the launch reserved for the user of the query, and put back deferred queries of the user in accepted
+   * queries.
    *
-   * @param ctx    the ctx
-   * @param before the before
+   * @param ctx the ctx
    */
-  private void updateFinishedQuery(QueryContext ctx, QueryStatus before) {
-    // before would be null in case of server restart
-    if (before != null) {
-      if (before.getStatus().equals(Status.QUEUED)) {
-        acceptedQueries.remove(ctx);
+  private void releaseUserLaunch(QueryContext ctx) {
+    if (maxLaunchesPerUser <= 0) {
+      return;
+    }
+    synchronized (userLaunches) {
+      String user = ctx.getSubmittedUser();
+      Integer launches = userLaunches.get(user);
+      if (launches == null || launches <= 1) {
+        userLaunches.remove(user);
       } else {
-        launchedQueries.remove(ctx);
+        userLaunches.put(user, launches - 1);
+      }
+      List<QueryContext> deferred = deferredLaunches.remove(user);
+      if (deferred != null) {
+        acceptedQueries.addAll(deferred);
       }
     }
-    finishedQueries.add(new FinishedQuery(ctx));
   }
 
-  void setSuccessState(QueryContext ctx) throws LensException {
-    QueryStatus before = ctx.getStatus();
-    ctx.setStatus(new QueryStatus(1.0f, QueryStatus.Status.SUCCESSFUL, "Query is successful!", ctx
-      .isResultAvailableInDriver(), null, null));
-    updateFinishedQuery(ctx, before);
-    fireStatusChangeEvent(ctx, ctx.getStatus(), before);
+  /**
+   * Release the driver slot held by the query, and put back the queries waiting for a slot of the driver in accepted
+   * queries.
+   *
+   * @param ctx the ctx
+   */
+  private void releaseDriverLaunchSlot(QueryContext ctx) {
+    List<QueryContext> waiting = driverLaunchSlots.release(ctx);
+    if (!waiting.isEmpty()) {
+      acceptedQueries.addAll(waiting);
+    }
   }
 
   /**
-   * Update status.
+   * Gets the number of queries deferred for launch, as their user or driver reached max concurrent queries.
    *
-   * @param handle the handle
-   * @throws LensException the lens exception
+   * @return the deferred queries count
    */
-  private void updateStatus(final QueryHandle handle) throws LensException {
-    QueryContext ctx = allQueries.get(handle);
-    if (ctx != null) {
-      synchronized (ctx) {
-        QueryStatus before = ctx.getStatus();
-        if (!ctx.getStatus().getStatus().equals(QueryStatus.Status.QUEUED) && !ctx.getDriverStatus().isFinished()
-          && !ctx.getStatus().isFinished()) {
-          LOG.info("Updating status for " + ctx.getQueryHandle());
-          try {
-            ctx.getSelectedDriver().updateStatus(ctx);
-            ctx.setStatus(ctx.getDriverStatus().toQueryStatus());
-          } catch (LensException exc) {
-            // Driver gave exception while updating status
-            setFailedStatus(ctx, "Status update failed", exc.getMessage());
-            LOG.error("Status update failed for " + handle, exc);
-          }
-          // query is successfully executed by driver and
-          // if query result need not persisted, move the query to succeeded state
-          if (ctx.getStatus().getStatus().equals(QueryStatus.Status.EXECUTED) && !ctx.isPersistent()) {
-            setSuccessState(ctx);
-          } else {
-            if (ctx.getStatus().isFinished()) {
-              updateFinishedQuery(ctx, before);
-            }
-            fireStatusChangeEvent(ctx, ctx.getStatus(), before);
-          }
-        }
+  private int getDeferredLaunchesCount() {
+    synchronized (userLaunches) {
+      int count = 0;
+      for (List<QueryContext> deferred : deferredLaunches.values()) {
+        count += deferred.size();
       }
+      return count + driverLaunchSlots.getWaitingCount();
     }
   }
 
+  // used in tests
+
   /**
-   * New status change event.
-   *
-   * @param ctx       the ctx
-   * @param prevState the prev state
-   * @param currState the curr state
-   * @return the status change
+   * Pause query submitter.
    */
-  private static StatusChange newStatusChangeEvent(QueryContext ctx, QueryStatus.Status prevState, QueryStatus.Status currState) {
-    QueryHandle query = ctx.getQueryHandle();
-    switch (currState) {
-    case CANCELED:
-      // TODO: correct username. put who cancelled it, not the submitter. Similar for others
-      return new QueryCancelled(ctx.getEndTime(), prevState, currState, query, ctx.getSubmittedUser(), null);
-    case CLOSED:
-      return new QueryClosed(ctx.getClosedTime(), prevState, currState, query, ctx.getSubmittedUser(), null);
-    case FAILED:
-      return new QueryFailed(ctx.getEndTime(), prevState, currState, query, ctx.getSubmittedUser(), null);
-    case LAUNCHED:
-      return new QueryLaunched(ctx.getLaunchTime(), prevState, currState, query);
-    case QUEUED:
-      return new QueryQueued(ctx.getSubmissionTime(), prevState, currState, query, ctx.getSubmittedUser());
-    case RUNNING:
-      return new QueryRunning(System.currentTimeMillis() - ctx.getDriverStatus().getDriverStartTime(), prevState,
-                              currState, query);
-    case EXECUTED:
-      return new QueryExecuted(ctx.getDriverStatus().getDriverFinishTime(), prevState, currState, query);
-    case SUCCESSFUL:
-      return new QuerySuccess(ctx.getEndTime(), prevState, currState, query);
-    default:
-      LOG.warn("Query " + query + " transitioned to " + currState + " state from " + prevState + " state");
-      return null;
-    }
+  public void pauseQuerySubmitter() {
+    querySubmitterRunnable.pausedForTest = true;
+  }
+
+  /**
+   * The poll state of a launched query, which is polled till its driver finishes the query. The poll interval is reset
+   * to the min interval whenever status or progress of the query changes, and doubled upto the max interval otherwise.
+   * The query is polled right away when its driver notifies a status change.
+   */
+  private class StatusUpdateTask {
+
+    /**
+     * The query handle.
+     */
+    private final QueryHandle handle;
+
+    /**
+     * The current poll interval.
+     */
+    private long pollInterval;
+
+    /**
+     * The time at which the query is due for the next poll.
+     */
+    private long nextPollTime;
+
+    /**
+     * Whether the query is being polled.
+     */
+    private boolean polling;
+
+    /**
+     * Whether a poll was triggered while the query was being polled.
+     */
+    private boolean triggered;
+
+    /**
+     * Instantiates a new status update task.
+     *
+     * @param handle the handle
+     */
+    StatusUpdateTask(QueryHandle handle) {
+      this.handle = handle;
+      this.pollInterval = minStatusPollInterval;
+      this.nextPollTime = System.currentTimeMillis() + minStatusPollInterval;
+    }
+
+    /**
+     * Claim the query for polling, if it is due for a poll and is not being polled already.
+     *
+     * @param now the current time
+     * @return true, if claimed
+     */
+    synchronized boolean claim(long now) {
+      if (polling || nextPollTime > now) {
+        return false;
+      }
+      polling = true;
+      return true;
+    }
+
+    /**
+     * Make the query due for a poll right away. If the query is being polled, it is polled once more as soon as the
+     * current poll finishes, so that a poll never runs concurrently with another poll of the same query.
+     *
+     * @return true, if the query got claimed for polling
+     */
+    synchronized boolean trigger() {
+      pollInterval = minStatusPollInterval;
+      nextPollTime = 0;
+      if (polling) {
+        triggered = true;
+        return false;
+      }
+      polling = true;
+      return true;
+    }
+
+    /**
+     * Release the query after a poll, and set the time of its next poll. If a poll was triggered while the query was
+     * being polled, the query stays claimed so that the caller polls it again.
+     *
+     * @param before the status before the poll
+     * @param after  the status after the poll
+     * @return true, if the query has to be polled again right away
+     */
+    synchronized boolean polled(QueryStatus before, QueryStatus after) {
+      if (triggered) {
+        triggered = false;
+        return true;
+      }
+      polling = false;
+      if (before != null && after != null && after.getStatus() == before.getStatus()
+        && after.getProgress() == before.getProgress()) {
+        pollInterval = Math.min(pollInterval * 2, maxStatusPollInterval);
+      } else {
+        pollInterval = minStatusPollInterval;
+      }
+      nextPollTime = System.currentTimeMillis() + pollInterval;
+      return false;
+    }
+  }
+
+  /**
+   * Runs once every min poll interval and refreshes status of all launched queries due for a poll, in batches of
+   * queries of the same driver.
+   */
+  private class StatusPollCycle implements Runnable {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      try {
+        long now = System.currentTimeMillis();
+        Map<LensDriver, List<StatusUpdateTask>> dueTasks = new HashMap<LensDriver, List<StatusUpdateTask>>();
+        for (StatusUpdateTask task : statusUpdateTasks.values()) {
+          QueryContext ctx = allQueries.get(task.handle);
+          if (stopped || ctx == null || !launchedQueries.contains(ctx)) {
+            statusUpdateTasks.remove(task.handle);
+          } else if (task.claim(now)) {
+            List<StatusUpdateTask> driverTasks = dueTasks.get(ctx.getSelectedDriver());
+            if (driverTasks == null) {
+              driverTasks = new ArrayList<StatusUpdateTask>();
+              dueTasks.put(ctx.getSelectedDriver(), driverTasks);
+            }
+            driverTasks.add(task);
+          }
+        }
+        for (Map.Entry<LensDriver, List<StatusUpdateTask>> entry : dueTasks.entrySet()) {
+          List<StatusUpdateTask> driverTasks = entry.getValue();
+          for (int i = 0; i < driverTasks.size(); i += statusUpdateBatchSize) {
+            submitStatusUpdate(entry.getKey(),
+              driverTasks.subList(i, Math.min(i + statusUpdateBatchSize, driverTasks.size())));
+          }
+        }
+      } catch (Exception e) {
+        incrCounter(STATUS_UPDATE_COUNTER);
+        LOG.error("Error in status poll cycle", e);
+      }
+    }
+  }
+
+  /**
+   * Refreshes status of a batch of launched queries with a single call to their driver.
+   */
+  private class StatusUpdateBatch implements Runnable {
+
+    /**
+     * The driver.
+     */
+    private final LensDriver driver;
+
+    /**
+     * The tasks of the queries in the batch.
+     */
+    private final List<StatusUpdateTask> tasks;
+
+    /**
+     * Instantiates a new status update batch.
+     *
+     * @param driver the driver
+     * @param tasks  the tasks claimed for polling
+     */
+    StatusUpdateBatch(LensDriver driver, List<StatusUpdateTask> tasks) {
+      this.driver = driver;
+      this.tasks = tasks;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      Map<StatusUpdateTask, QueryContext> polled = new LinkedHashMap<StatusUpdateTask, QueryContext>();
+      Map<QueryHandle, QueryStatus> before = new HashMap<QueryHandle, QueryStatus>();
+      List<QueryContext> contexts = new ArrayList<QueryContext>();
+      for (StatusUpdateTask task : tasks) {
+        QueryContext ctx = allQueries.get(task.handle);
+        if (ctx != null && isStatusUpdatable(ctx)) {
+          polled.put(task, ctx);
+          before.put(task.handle, ctx.getStatus());
+          contexts.add(ctx);
+        } else {
+          statusUpdateTasks.remove(task.handle);
+        }
+      }
+      if (contexts.isEmpty()) {
+        return;
+      }
+      LOG.debug("Polling status of " + contexts.size() + " queries on " + driver);
+      Map<QueryHandle, LensException> errors = null;
+      long start = System.currentTimeMillis();
+      try {
+        // session is not required to update status of the queries
+        errors = driver.updateStatuses(contexts);
+      } catch (Exception e) {
+        incrCounter(STATUS_UPDATE_COUNTER);
+        LOG.error("Error updating status of queries on " + driver, e);
+      }
+      getMetrics().updateTimer(driver.getClass(), STATUS_UPDATE_TIMER, System.currentTimeMillis() - start,
+        TimeUnit.MILLISECONDS);
+      getMetrics().updateHistogram(QueryExecutionService.class, STATUS_UPDATE_BATCH_SIZE_HISTOGRAM, contexts.size());
+      List<StatusUpdateTask> triggered = new ArrayList<StatusUpdateTask>();
+      for (Map.Entry<StatusUpdateTask, QueryContext> entry : polled.entrySet()) {
+        QueryContext ctx = entry.getValue();
+        QueryHandle handle = ctx.getQueryHandle();
+        if (errors != null) {
+          try {
+            synchronized (ctx) {
+              if (!ctx.getStatus().isFinished()) {
+                applyDriverStatus(ctx, before.get(handle), errors.get(handle));
+              }
+            }
+          } catch (Exception e) {
+            incrCounter(STATUS_UPDATE_COUNTER);
+            LOG.error("Error updating status of " + handle, e);
+          }
+        }
+        if (ctx.getDriverStatus().isFinished() || ctx.getStatus().isFinished()) {
+          statusUpdateTasks.remove(handle);
+        } else if (entry.getKey().polled(before.get(handle), ctx.getStatus())) {
+          triggered.add(entry.getKey());
+        }
+      }
+      if (!triggered.isEmpty()) {
+        // polls triggered while these queries were being polled
+        submitStatusUpdate(driver, triggered);
+      }
+    }
+  }
+
+  /**
+   * Submit a status update of the queries to the status update pool.
+   *
+   * @param driver the driver of the queries
+   * @param tasks  the tasks of the queries, claimed for polling
+   */
+  private void submitStatusUpdate(LensDriver driver, List<StatusUpdateTask> tasks) {
+    try {
+      statusUpdatePool.execute(new StatusUpdateBatch(driver, new ArrayList<StatusUpdateTask>(tasks)));
+    } catch (RejectedExecutionException e) {
+      if (!stopped) {
+        LOG.error("Could not submit status update of " + tasks.size() + " queries on " + driver, e);
+      }
+      for (StatusUpdateTask task : tasks) {
+        statusUpdateTasks.remove(task.handle);
+      }
+    }
+  }
+
+  /**
+   * Poll status of the launched query right away, unless it is being polled already.
+   *
+   * @param driver the driver of the query
+   * @param handle the query handle
+   */
+  private void triggerStatusUpdate(LensDriver driver, QueryHandle handle) {
+    StatusUpdateTask task = statusUpdateTasks.get(handle);
+    if (task != null && task.trigger()) {
+      submitStatusUpdate(driver, Collections.singletonList(task));
+    }
+  }
+
+  /**
+   * Start polling status of the launched query.
+   *
+   * @param ctx the ctx
+   */
+  private void trackStatus(QueryContext ctx) {
+    statusUpdateTasks.putIfAbsent(ctx.getQueryHandle(), new StatusUpdateTask(ctx.getQueryHandle()));
+  }
+
+  /**
+   * Sets the failed status.
+   *
+   * @param ctx       the ctx
+   * @param statusMsg the status msg
+   * @param reason    the reason
+   * @throws LensException the lens exception
+   */
+  void setFailedStatus(QueryContext ctx, String statusMsg, String reason) throws LensException {
+    QueryStatus before = ctx.getStatus();
+    ctx.setStatus(new QueryStatus(0.0f, QueryStatus.Status.FAILED, statusMsg, false, null, reason));
+    updateFinishedQuery(ctx, before);
+    fireStatusChangeEvent(ctx, ctx.getStatus(), before);
+  }
+
+  private void setLaunchedStatus(QueryContext ctx) throws LensException {
+    QueryStatus before = ctx.getStatus();
+    ctx.setStatus(new QueryStatus(ctx.getStatus().getProgress(), QueryStatus.Status.LAUNCHED, "launched on the driver",
+                                  false, null, null));
+    launchedQueries.add(ctx);
+    ctx.setLaunchTime(System.currentTimeMillis());
+    trackStatus(ctx);
+    fireStatusChangeEvent(ctx, ctx.getStatus(), before);
+  }
+
+  /**
+   * Sets the cancelled status.
+   *
+   * @param ctx       the ctx
+   * @param statusMsg the status msg
+   * @throws LensException the lens exception
+   */
+  private void setCancelledStatus(QueryContext ctx, String statusMsg) throws LensException {
+    QueryStatus before = ctx.getStatus();
+    ctx.setStatus(new QueryStatus(0.0f, QueryStatus.Status.CANCELED, statusMsg, false, null, null));
+    updateFinishedQuery(ctx, before);
+    fireStatusChangeEvent(ctx, ctx.getStatus(), before);
+  }
+
+  /**
+   * Update finished query.
+   *
+   * @param ctx    the ctx
+   * @param before the before
+   */
+  private void updateFinishedQuery(QueryContext ctx, QueryStatus before) {
+    // before would be null in case of server restart
+    if (before != null) {
+      if (before.getStatus().equals(Status.QUEUED)) {
+        acceptedQueries.remove(ctx);
+      } else {
+        launchedQueries.remove(ctx);
+      }
+    }
+    releaseDriverLaunchSlot(ctx);
+    finishedQueries.add(new FinishedQuery(ctx));
+  }
+
+  void setSuccessState(QueryContext ctx) throws LensException {
+    QueryStatus before = ctx.getStatus();
+    ctx.setStatus(new QueryStatus(1.0f, QueryStatus.Status.SUCCESSFUL, "Query is successful!", ctx
+      .isResultAvailableInDriver(), null, null));
+    updateFinishedQuery(ctx, before);
+    fireStatusChangeEvent(ctx, ctx.getStatus(), before);
+  }
+
+  /**
+   * Update status.
+   *
+   * @param handle the handle
+   * @throws LensException the lens exception
+   */
+  private void updateStatus(final QueryHandle handle) throws LensException {
+    QueryContext ctx = allQueries.get(handle);
+    if (ctx != null) {
+      synchronized (ctx) {
+        if (isStatusUpdatable(ctx)) {
+          QueryStatus before = ctx.getStatus();
+          LOG.info("Updating status for " + ctx.getQueryHandle());
+          LensException error = null;
+          try {
+            ctx.getSelectedDriver().updateStatus(ctx);
+          } catch (LensException exc) {
+            error = exc;
+          }
+          applyDriverStatus(ctx, before, error);
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks if the query is launched and not finished yet, so that its status has to be updated from its driver.
+   *
+   * @param ctx the ctx
+   * @return true, if status has to be updated
+   */
+  private boolean isStatusUpdatable(QueryContext ctx) {
+    return !ctx.getStatus().getStatus().equals(QueryStatus.Status.QUEUED) && !ctx.getDriverStatus().isFinished()
+      && !ctx.getStatus().isFinished();
+  }
+
+  /**
+   * Moves the query to the status updated by its driver, or fails it if the driver could not update the status.
+   *
+   * @param ctx    the ctx
+   * @param before the status before the update
+   * @param error  the error updating status, null if the driver updated the status
+   * @throws LensException the lens exception
+   */
+  private void applyDriverStatus(QueryContext ctx, QueryStatus before, LensException error) throws LensException {
+    if (error == null) {
+      ctx.setStatus(ctx.getDriverStatus().toQueryStatus());
+    } else {
+      // Driver gave exception while updating status
+      setFailedStatus(ctx, "Status update failed", error.getMessage());
+      LOG.error("Status update failed for " + ctx.getQueryHandle(), error);
+    }
+    // query is successfully executed by driver and
+    // if query result need not persisted, move the query to succeeded state
+    if (ctx.getStatus().getStatus().equals(QueryStatus.Status.EXECUTED) && !ctx.isPersistent()) {
+      setSuccessState(ctx);
+    } else {
+      if (ctx.getStatus().isFinished()) {
+        updateFinishedQuery(ctx, before);
+      }
+      fireStatusChangeEvent(ctx, ctx.getStatus(), before);
+    }
+  }
+
+  /**
+   * New status change event.
+   *
+   * @param ctx       the ctx
+   * @param prevState the prev state
+   * @param currState the curr state
+   * @return the status change
+   */
+  private static StatusChange newStatusChangeEvent(QueryContext ctx, QueryStatus.Status prevState, QueryStatus.Status currState) {
+    QueryHandle query = ctx.getQueryHandle();
+    switch (currState) {
+    case CANCELED:
+      // TODO: correct username. put who cancelled it, not the submitter. Similar for others
+      return new QueryCancelled(ctx.getEndTime(), prevState, currState, query, ctx.getSubmittedUser(), null);
+    case CLOSED:
+      return new QueryClosed(ctx.getClosedTime(), prevState, currState, query, ctx.getSubmittedUser(), null);
+    case FAILED:
+      return new QueryFailed(ctx.getEndTime(), prevState, currState, query, ctx.getSubmittedUser(), null);
+    case LAUNCHED:
+      return new QueryLaunched(ctx.getLaunchTime(), prevState, currState, query);
+    case QUEUED:
+      return new QueryQueued(ctx.getSubmissionTime(), prevState, currState, query, ctx.getSubmittedUser());
+    case RUNNING:
+      return new QueryRunning(System.currentTimeMillis() - ctx.getDriverStatus().getDriverStartTime(), prevState,
+                              currState, query);
+    case EXECUTED:
+      return new QueryExecuted(ctx.getDriverStatus().getDriverFinishTime(), prevState, currState, query);
+    case SUCCESSFUL:
+      return new QuerySuccess(ctx.getEndTime(), prevState, currState, query);
+    default:
+      LOG.warn("Query " + query + " transitioned to " + currState + " state from " + prevState + " state");
+      return null;
+    }
   }
 
   /**
@@ -716,6 +1337,8 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
       // No need to fire event since the state hasn't changed
       return;
     }
+    journalQuery(ctx, currentStatus);
+    liveQueryIndex.update(ctx);
 
     StatusChange event = newStatusChangeEvent(ctx, prevState, currentStatus);
     if (event != null) {
@@ -740,63 +1363,136 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
     @Override
     public void run() {
       LOG.info("Starting Query purger thread");
+      List<FinishedQuery> batch = new ArrayList<FinishedQuery>(purgeBatchSize);
       while (!stopped && !queryPurger.isInterrupted()) {
-        FinishedQuery finished = null;
+        batch.clear();
         try {
-          finished = finishedQueries.take();
+          batch.add(finishedQueries.take());
         } catch (InterruptedException e) {
           LOG.info("QueryPurger has been interrupted, exiting");
           return;
         }
-        try {
-          FinishedLensQuery finishedQuery = new FinishedLensQuery(finished.getCtx());
-          if (finished.ctx.getStatus().getStatus() == Status.SUCCESSFUL) {
-            if (finished.ctx.getStatus().isResultSetAvailable()) {
-              LensResultSet set = getResultset(finished.getCtx().getQueryHandle());
-              if (set != null && PersistentResultSet.class.isAssignableFrom(set.getClass())) {
-                LensResultSetMetadata metadata = set.getMetadata();
-                String outputPath = ((PersistentResultSet) set).getOutputPath();
-                int rows = set.size();
-                finishedQuery.setMetadataClass(metadata.getClass().getName());
-                finishedQuery.setResult(outputPath);
-                finishedQuery.setMetadata(mapper.writeValueAsString(metadata));
-                finishedQuery.setRows(rows);
-              }
-            }
+        // Group commit whatever else is already past the threshold
+        finishedQueries.drainTo(batch, purgeBatchSize - 1);
+
+        List<FinishedQuery> toPersist = new ArrayList<FinishedQuery>(batch.size());
+        List<FinishedLensQuery> finishedLensQueries = new ArrayList<FinishedLensQuery>(batch.size());
+        for (FinishedQuery finished : batch) {
+          try {
+            finishedLensQueries.add(toFinishedLensQuery(finished));
+            toPersist.add(finished);
+          } catch (Exception e) {
+            incrCounter(QUERY_PURGER_COUNTER);
+            LOG.error("Error in query purger", e);
           }
+        }
+        if (toPersist.isEmpty()) {
+          continue;
+        }
+
+        List<FinishedQuery> persisted = persist(toPersist, finishedLensQueries);
+        for (FinishedQuery finished : persisted) {
           try {
-            lensServerDao.insertFinishedQuery(finishedQuery);
-            LOG.info("Saved query " + finishedQuery.getHandle() + " to DB");
+            purge(finished);
+          } catch (LensException e) {
+            incrCounter(QUERY_PURGER_COUNTER);
+            LOG.error("Error closing  query ", e);
           } catch (Exception e) {
-            LOG.warn("Exception while purging query ", e);
-            finishedQueries.add(finished);
-            continue;
+            incrCounter(QUERY_PURGER_COUNTER);
+            LOG.error("Error in query purger", e);
           }
+        }
+      }
+      LOG.info("QueryPurger exited");
+    }
 
-          synchronized (finished.ctx) {
-            finished.ctx.setFinishedQueryPersisted(true);
-            try {
-              if (finished.getCtx().getSelectedDriver() != null) {
-                finished.getCtx().getSelectedDriver().closeQuery(finished.getCtx().getQueryHandle());
-              }
-            } catch (Exception e) {
-              LOG.warn("Exception while closing query with selected driver.", e);
-            }
-            allQueries.remove(finished.getCtx().getQueryHandle());
-            resultSets.remove(finished.getCtx().getQueryHandle());
+    /**
+     * Builds the finished query to be persisted, along with its result metadata.
+     *
+     * @param finished the finished query
+     * @return the finished lens query
+     * @throws Exception the exception
+     */
+    private FinishedLensQuery toFinishedLensQuery(FinishedQuery finished) throws Exception {
+      FinishedLensQuery finishedQuery = new FinishedLensQuery(finished.getCtx());
+      if (finished.ctx.getStatus().getStatus() == Status.SUCCESSFUL) {
+        if (finished.ctx.getStatus().isResultSetAvailable()) {
+          LensResultSet set = getResultset(finished.getCtx().getQueryHandle());
+          if (set != null && PersistentResultSet.class.isAssignableFrom(set.getClass())) {
+            LensResultSetMetadata metadata = set.getMetadata();
+            String outputPath = ((PersistentResultSet) set).getOutputPath();
+            int rows = set.size();
+            finishedQuery.setMetadataClass(metadata.getClass().getName());
+            finishedQuery.setResult(outputPath);
+            finishedQuery.setMetadata(mapper.writeValueAsString(metadata));
+            finishedQuery.setRows(rows);
           }
-          fireStatusChangeEvent(finished.getCtx(),
-                                new QueryStatus(1f, Status.CLOSED, "Query purged", false, null, null), finished.getCtx().getStatus());
-          LOG.info("Query purged: " + finished.getCtx().getQueryHandle());
-        } catch (LensException e) {
-          incrCounter(QUERY_PURGER_COUNTER);
-          LOG.error("Error closing  query ", e);
+        }
+      }
+      return finishedQuery;
+    }
+
+    /**
+     * Persists the finished queries in a single batch. If the batch fails, queries are inserted one by one, and the
+     * ones which still fail are put back into the finished queue to be retried.
+     *
+     * @param queries             the finished queries
+     * @param finishedLensQueries the finished lens queries to be inserted, in the same order
+     * @return the queries which got persisted
+     */
+    private List<FinishedQuery> persist(List<FinishedQuery> queries, List<FinishedLensQuery> finishedLensQueries) {
+      getMetrics().updateHistogram(QueryExecutionService.class, FINISHED_QUERY_BATCH_SIZE_HISTOGRAM,
+        finishedLensQueries.size());
+      long startTime = System.currentTimeMillis();
+      try {
+        lensServerDao.insertFinishedQueries(finishedLensQueries);
+        getMetrics().updateTimer(QueryExecutionService.class, FINISHED_QUERY_COMMIT_TIMER,
+          System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
+        LOG.info("Saved " + finishedLensQueries.size() + " finished queries to DB");
+        return queries;
+      } catch (Exception e) {
+        LOG.warn("Exception while saving batch of " + finishedLensQueries.size()
+          + " finished queries, saving them one by one", e);
+      }
+
+      List<FinishedQuery> persisted = new ArrayList<FinishedQuery>(queries.size());
+      for (int i = 0; i < queries.size(); i++) {
+        FinishedLensQuery finishedQuery = finishedLensQueries.get(i);
+        try {
+          lensServerDao.insertFinishedQuery(finishedQuery);
+          LOG.info("Saved query " + finishedQuery.getHandle() + " to DB");
+          persisted.add(queries.get(i));
         } catch (Exception e) {
-          incrCounter(QUERY_PURGER_COUNTER);
-          LOG.error("Error in query purger", e);
+          LOG.warn("Exception while purging query ", e);
+          finishedQueries.add(queries.get(i));
         }
       }
-      LOG.info("QueryPurger exited");
+      return persisted;
+    }
+
+    /**
+     * Releases the resources of a query which got persisted and removes it from memory.
+     *
+     * @param finished the finished query
+     * @throws LensException the lens exception
+     */
+    private void purge(FinishedQuery finished) throws LensException {
+      synchronized (finished.ctx) {
+        finished.ctx.setFinishedQueryPersisted(true);
+        try {
+          if (finished.getCtx().getSelectedDriver() != null) {
+            finished.getCtx().getSelectedDriver().closeQuery(finished.getCtx().getQueryHandle());
+          }
+        } catch (Exception e) {
+          LOG.warn("Exception while closing query with selected driver.", e);
+        }
+        allQueries.remove(finished.getCtx().getQueryHandle());
+        liveQueryIndex.remove(finished.getCtx());
+        removeResultSet(finished.getCtx().getQueryHandle());
+      }
+      fireStatusChangeEvent(finished.getCtx(),
+                            new QueryStatus(1f, Status.CLOSED, "Query purged", false, null, null), finished.getCtx().getStatus());
+      LOG.info("Query purged: " + finished.getCtx().getQueryHandle());
     }
   }
 
@@ -849,10 +1545,121 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
     }
     maxFinishedQueries = conf.getInt(LensConfConstants.MAX_NUMBER_OF_FINISHED_QUERY,
                                      LensConfConstants.DEFAULT_FINISHED_QUERIES);
+    purgeBatchSize = Math.max(1, conf.getInt(LensConfConstants.QUERY_PURGER_BATCH_SIZE,
+      LensConfConstants.DEFAULT_QUERY_PURGER_BATCH_SIZE));
+    maxResultBytesInMemory = conf.getLong(LensConfConstants.INMEMORY_RESULT_SET_MAX_BYTES_IN_MEMORY,
+      LensConfConstants.DEFAULT_INMEMORY_RESULT_SET_MAX_BYTES_IN_MEMORY);
+    resultSpillDir = new File(conf.get(LensConfConstants.INMEMORY_RESULT_SET_SPILL_DIR,
+      LensConfConstants.DEFAULT_INMEMORY_RESULT_SET_SPILL_DIR));
+    ResultRowBuffer.deleteSpillFiles(resultSpillDir);
+    rewriteCache = new QueryRewriteCache(conf.getInt(LensConfConstants.QUERY_REWRITE_CACHE_SIZE,
+      LensConfConstants.DEFAULT_QUERY_REWRITE_CACHE_SIZE), conf.getLong(
+      LensConfConstants.QUERY_REWRITE_CACHE_EXPIRY_MILLIS, LensConfConstants.DEFAULT_QUERY_REWRITE_CACHE_EXPIRY_MILLIS),
+      conf.getTrimmedStrings(LensConfConstants.QUERY_REWRITE_CACHE_CONF_PREFIXES,
+        LensConfConstants.DEFAULT_QUERY_REWRITE_CACHE_CONF_PREFIXES));
+    initializeQueryLauncher(conf);
+    initializeStatusUpdatePool(conf);
+    initializeResultFetchPool(conf);
+    initializeRewritePool(conf);
     initalizeFinishedQueryStore(conf);
     LOG.info("Query execution service initialized");
   }
 
+  /**
+   * Initialize query launcher pool.
+   *
+   * @param conf the conf
+   */
+  private void initializeQueryLauncher(Configuration conf) {
+    int poolSize = Math.max(1, conf.getInt(LensConfConstants.QUERY_LAUNCHER_POOL_SIZE,
+      LensConfConstants.DEFAULT_QUERY_LAUNCHER_POOL_SIZE));
+    maxLaunchesPerUser = conf.getInt(LensConfConstants.MAX_CONCURRENT_LAUNCHES_PER_USER,
+      LensConfConstants.DEFAULT_MAX_CONCURRENT_LAUNCHES_PER_USER);
+    driverLaunchSlots = new DriverLaunchSlots(conf.getInt(LensConfConstants.MAX_RUNNING_QUERIES_PER_DRIVER,
+      LensConfConstants.DEFAULT_MAX_RUNNING_QUERIES_PER_DRIVER));
+    launcherSlots = new Semaphore(poolSize);
+    final AtomicInteger thid = new AtomicInteger();
+    queryLauncherPool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread th = new Thread(runnable);
+        th.setName("QueryLauncher-" + thid.incrementAndGet());
+        return th;
+      }
+    });
+    LOG.info("Initialized query launcher pool of size " + poolSize);
+  }
+
+  /**
+   * Initialize status update pool.
+   *
+   * @param conf the conf
+   */
+  private void initializeStatusUpdatePool(Configuration conf) {
+    int poolSize = Math.max(1, conf.getInt(LensConfConstants.STATUS_UPDATE_POOL_SIZE,
+      LensConfConstants.DEFAULT_STATUS_UPDATE_POOL_SIZE));
+    minStatusPollInterval = Math.max(1, conf.getLong(LensConfConstants.STATUS_POLL_MIN_INTERVAL_MILLIS,
+      LensConfConstants.DEFAULT_STATUS_POLL_MIN_INTERVAL_MILLIS));
+    maxStatusPollInterval = Math.max(minStatusPollInterval, conf.getLong(
+      LensConfConstants.STATUS_POLL_MAX_INTERVAL_MILLIS, LensConfConstants.DEFAULT_STATUS_POLL_MAX_INTERVAL_MILLIS));
+    statusUpdateBatchSize = Math.max(1, conf.getInt(LensConfConstants.STATUS_UPDATE_BATCH_SIZE,
+      LensConfConstants.DEFAULT_STATUS_UPDATE_BATCH_SIZE));
+    final AtomicInteger thid = new AtomicInteger();
+    statusUpdatePool = Executors.newScheduledThreadPool(poolSize, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread th = new Thread(runnable);
+        th.setName("StatusPoller-" + thid.incrementAndGet());
+        return th;
+      }
+    });
+    statusUpdatePool.scheduleWithFixedDelay(new StatusPollCycle(), minStatusPollInterval, minStatusPollInterval,
+      TimeUnit.MILLISECONDS);
+    LOG.info("Initialized status update pool of size " + poolSize);
+  }
+
+  /**
+   * Initialize result fetch pool.
+   *
+   * @param conf the conf
+   */
+  private void initializeResultFetchPool(Configuration conf) {
+    int poolSize = Math.max(1, conf.getInt(LensConfConstants.RESULT_FETCH_POOL_SIZE,
+      LensConfConstants.DEFAULT_RESULT_FETCH_POOL_SIZE));
+    final AtomicInteger thid = new AtomicInteger();
+    resultFetchPool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread th = new Thread(runnable);
+        th.setName("ResultFetcher-" + thid.incrementAndGet());
+        return th;
+      }
+    });
+    LOG.info("Initialized result fetch pool of size " + poolSize);
+  }
+
+  /**
+   * Initialize rewrite pool.
+   *
+   * @param conf the conf
+   */
+  private void initializeRewritePool(Configuration conf) {
+    int poolSize = Math.max(1, conf.getInt(LensConfConstants.QUERY_REWRITE_POOL_SIZE,
+      LensConfConstants.DEFAULT_QUERY_REWRITE_POOL_SIZE));
+    rewriteTimeoutMillis = conf.getLong(LensConfConstants.QUERY_REWRITE_TIMEOUT_MILLIS,
+      LensConfConstants.DEFAULT_QUERY_REWRITE_TIMEOUT_MILLIS);
+    final AtomicInteger thid = new AtomicInteger();
+    rewritePool = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread th = new Thread(runnable);
+        th.setName("QueryRewriter-" + thid.incrementAndGet());
+        return th;
+      }
+    });
+    LOG.info("Initialized rewrite pool of size " + poolSize);
+  }
+
   /**
    * Initalize finished query store.
    *
@@ -901,7 +1708,18 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
   public void prepareStopping() {
     super.prepareStopping();
     querySubmitter.interrupt();
-    statusPoller.interrupt();
+    if (queryLauncherPool != null) {
+      queryLauncherPool.shutdownNow();
+    }
+    if (statusUpdatePool != null) {
+      statusUpdatePool.shutdownNow();
+    }
+    if (resultFetchPool != null) {
+      resultFetchPool.shutdownNow();
+    }
+    if (rewritePool != null) {
+      rewritePool.shutdownNow();
+    }
     queryPurger.interrupt();
     prepareQueryPurger.interrupt();
   }
@@ -913,7 +1731,7 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
    */
   public synchronized void stop() {
     super.stop();
-    for (Thread th : new Thread[]{querySubmitter, statusPoller, queryPurger, prepareQueryPurger}) {
+    for (Thread th : new Thread[]{querySubmitter, queryPurger, prepareQueryPurger}) {
       try {
         LOG.debug("Waiting for" + th.getName());
         th.join();
@@ -921,40 +1739,288 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
         LOG.error("Error waiting for thread: " + th.getName(), e);
       }
     }
+    if (queryLauncherPool != null) {
+      try {
+        queryLauncherPool.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        LOG.error("Error waiting for query launchers", e);
+      }
+    }
+    if (statusUpdatePool != null) {
+      try {
+        statusUpdatePool.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        LOG.error("Error waiting for status pollers", e);
+      }
+    }
+    if (resultFetchPool != null) {
+      try {
+        resultFetchPool.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        LOG.error("Error waiting for result fetchers", e);
+      }
+    }
+    if (rewritePool != null) {
+      try {
+        rewritePool.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        LOG.error("Error waiting for query rewriters", e);
+      }
+    }
     LOG.info("Query execution service stopped");
   }
 
-  /*
-   * (non-Javadoc)
-   * 
-   * @see org.apache.hive.service.CompositeService#start()
-   */
-  public synchronized void start() {
-    // recover query configurations from session
-    synchronized (allQueries) {
-      for (QueryContext ctx : allQueries.values()) {
-        try {
-          if (sessionMap.containsKey(ctx.getLensSessionIdentifier())) {
-            // try setting configuration if the query session is still not closed
-            ctx.setConf(getLensConf(getSessionHandle(ctx.getLensSessionIdentifier()), ctx.getLensConf()));
-          } else {
-            ctx.setConf(getLensConf(ctx.getLensConf()));
-          }
-          for(LensDriver driver : drivers.values()) {
-            if(ctx.getDriverContext() != null) {
-              ctx.getDriverContext().setDriverConf(driver, ctx.getConf());
-            }
-          }
-        } catch (LensException e) {
-          LOG.error("Could not set query conf " , e);
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.hive.service.CompositeService#start()
+   */
+  public synchronized void start() {
+    // recover query configurations from session
+    synchronized (allQueries) {
+      for (QueryContext ctx : allQueries.values()) {
+        try {
+          if (sessionMap.containsKey(ctx.getLensSessionIdentifier())) {
+            // try setting configuration if the query session is still not closed
+            ctx.setConf(getLensConf(getSessionHandle(ctx.getLensSessionIdentifier()), ctx.getLensConf()));
+          } else {
+            ctx.setConf(getLensConf(ctx.getLensConf()));
+          }
+          for(LensDriver driver : drivers.values()) {
+            if(ctx.getDriverContext() != null) {
+              ctx.getDriverContext().setDriverConf(driver, ctx.getConf());
+            }
+          }
+        } catch (LensException e) {
+          LOG.error("Could not set query conf " , e);
+        }
+      }
+    }
+    super.start();
+    // resume polling status of the recovered launched queries
+    for (QueryContext ctx : launchedQueries) {
+      trackStatus(ctx);
+    }
+    querySubmitter.start();
+    queryPurger.start();
+    prepareQueryPurger.start();
+  }
+
+  /**
+   * Rewrites the query for all drivers and generates the driver plans. Driver queries are served from the rewrite
+   * cache when the same query was rewritten against the same metadata earlier, and are explained again. Only queries
+   * containing cube queries are cached.
+   *
+   * @param ctx the ctx
+   * @throws LensException the lens exception
+   */
+  private void rewriteAndPlan(AbstractQueryContext ctx) throws LensException {
+    String cacheKey = rewriteCache.getKey(ctx);
+    Map<LensDriver, String> cachedQueries = cacheKey == null ? null : rewriteCache.get(cacheKey,
+      ctx.getDriverContext().getDrivers());
+    if (cachedQueries != null) {
+      incrCounter(REWRITE_CACHE_HITS_COUNTER);
+      rewriteAndExplain(ctx, cachedQueries);
+      return;
+    }
+    Map<LensDriver, String> driverQueries = rewriteAndExplain(ctx, null);
+    if (cacheKey != null) {
+      incrCounter(REWRITE_CACHE_MISSES_COUNTER);
+      String replacedQuery = RewriteUtil.getReplacedQuery(ctx.getUserQuery());
+      for (String driverQuery : driverQueries.values()) {
+        if (!replacedQuery.equals(driverQuery)) {
+          rewriteCache.put(cacheKey, ctx.getDriverContext());
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * The driver query and plan generated by a {@link DriverRewriteTask}.
+   */
+  private static class DriverRewrite {
+
+    /**
+     * The driver query.
+     */
+    private String query;
+
+    /**
+     * The driver query plan.
+     */
+    private DriverQueryPlan plan;
+
+    /**
+     * The error in generating the plan.
+     */
+    private Exception planError;
+  }
+
+  /**
+   * Rewrites the query for a driver, unless the driver query is already known, and explains the driver query with the
+   * driver. The task runs with its own copy of the submitter's session state, which is detached from the pooled thread
+   * once the task is done.
+   */
+  private static class DriverRewriteTask implements Callable<DriverRewrite> {
+
+    /**
+     * The ctx.
+     */
+    private final AbstractQueryContext ctx;
+
+    /**
+     * The driver.
+     */
+    private final LensDriver driver;
+
+    /**
+     * The driver query, null if the query has to be rewritten.
+     */
+    private final String driverQuery;
+
+    /**
+     * The parsed user query, used when the query has to be rewritten.
+     */
+    private final RewriteUtil.ParsedQuery parsedQuery;
+
+    /**
+     * The copy of the session state of the submitting thread, shared by the rewrite tasks of the query.
+     */
+    private final SessionState sessionState;
+
+    /**
+     * Instantiates a new driver rewrite task.
+     *
+     * @param ctx          the ctx
+     * @param driver       the driver
+     * @param driverQuery  the driver query, null if the query has to be rewritten
+     * @param parsedQuery  the parsed user query
+     * @param sessionState the copy of the session state, made for the query
+     */
+    DriverRewriteTask(AbstractQueryContext ctx, LensDriver driver, String driverQuery,
+      RewriteUtil.ParsedQuery parsedQuery, SessionState sessionState) {
+      this.ctx = ctx;
+      this.driver = driver;
+      this.driverQuery = driverQuery;
+      this.parsedQuery = parsedQuery;
+      this.sessionState = sessionState;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.util.concurrent.Callable#call()
+     */
+    @Override
+    public DriverRewrite call() throws LensException {
+      ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+      if (sessionState != null) {
+        SessionState.setCurrentSessionState(sessionState);
+      }
+      try {
+        DriverRewrite rewrite = new DriverRewrite();
+        rewrite.query = driverQuery != null ? driverQuery : RewriteUtil.rewriteQuery(ctx, parsedQuery, driver);
+        long explainStart = System.nanoTime();
+        try {
+          rewrite.plan = driver.explain(rewrite.query, ctx.getDriverContext().getDriverConf(driver));
+        } catch (Exception e) {
+          LOG.error("Setting driver plan failed for driver " + driver, e);
+          rewrite.planError = e;
+        }
+        ctx.getPhaseStats().record(driver.getClass().getSimpleName() + ".explain",
+          (System.nanoTime() - explainStart) / 1000);
+        return rewrite;
+      } finally {
+        if (sessionState != null) {
+          SessionState.detachSession();
+          Thread.currentThread().setContextClassLoader(classLoader);
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies the session state, with its own copy of the session conf, for the rewrite tasks of a query. Session state
+   * is not thread safe, and the session of the submitting thread can be changed by other requests of the session
+   * while the query is being rewritten, so the tasks do not share it. A single copy per query is enough, as rewrite
+   * and explain only read the current database and the conf of the session; driver specific settings go to the
+   * driver conf of the query, not to the session.
+   *
+   * @param state the session state
+   * @return the copy
+   */
+  private static SessionState copySessionState(SessionState state) {
+    SessionState copy = new SessionState(new HiveConf(state.getConf()), state.getUserName());
+    copy.setCurrentDatabase(state.getCurrentDatabase());
+    return copy;
+  }
+
+  /**
+   * Rewrites and explains the query for all drivers concurrently on the rewrite pool, and sets the driver queries and
+   * plans on the driver context. Drivers which do not finish within the rewrite timeout are left without a plan, so
+   * that driver selection skips them.
+   *
+   * @param ctx           the ctx
+   * @param driverQueries the driver queries already rewritten, null if the query has to be rewritten
+   * @return the driver queries of drivers which accepted the query
+   * @throws LensException the lens exception
+   */
+  // Used in test code
+  Map<LensDriver, String> rewriteAndExplain(AbstractQueryContext ctx, Map<LensDriver, String> driverQueries)
+    throws LensException {
+    // one copy of the session state for all drivers, as copying the conf is not cheap
+    SessionState sessionState = SessionState.get() == null ? null : copySessionState(SessionState.get());
+    RewriteUtil.ParsedQuery parsedQuery = driverQueries == null ? RewriteUtil.parseQuery(ctx.getUserQuery()) : null;
+    Map<LensDriver, Future<DriverRewrite>> rewrites = new HashMap<LensDriver, Future<DriverRewrite>>();
+    try {
+      for (LensDriver driver : ctx.getDriverContext().getDrivers()) {
+        rewrites.put(driver, rewritePool.submit(new DriverRewriteTask(ctx, driver, driverQueries == null ? null
+          : driverQueries.get(driver), parsedQuery, sessionState)));
+      }
+    } catch (RejectedExecutionException e) {
+      for (Future<DriverRewrite> rewrite : rewrites.values()) {
+        rewrite.cancel(true);
+      }
+      throw new LensException("Could not submit query for rewriting", e);
+    }
+
+    long deadline = System.currentTimeMillis() + rewriteTimeoutMillis;
+    Map<LensDriver, String> acceptedQueries = new HashMap<LensDriver, String>();
+    StringBuilder rewriteFailure = new StringBuilder();
+    for (Map.Entry<LensDriver, Future<DriverRewrite>> entry : rewrites.entrySet()) {
+      LensDriver driver = entry.getKey();
+      DriverQueryContext driverQueryContext = ctx.getDriverContext().getDriverQueryContextMap().get(driver);
+      try {
+        DriverRewrite rewrite = entry.getValue().get(Math.max(0, deadline - System.currentTimeMillis()),
+          TimeUnit.MILLISECONDS);
+        acceptedQueries.put(driver, rewrite.query);
+        driverQueryContext.setQuery(rewrite.query);
+        driverQueryContext.setDriverQueryPlan(rewrite.plan);
+        driverQueryContext.setDriverQueryPlanGenerationError(rewrite.planError);
+      } catch (TimeoutException e) {
+        entry.getValue().cancel(true);
+        LOG.warn("Driver : " + driver.getClass().getName() + " Skipped as rewrite and explain did not finish in "
+          + rewriteTimeoutMillis + " millis");
+        incrCounter(REWRITE_TIMEOUT_COUNTER);
+        driverQueryContext.setDriverQueryPlanGenerationError(new LensException("Rewrite and explain timed out after "
+          + rewriteTimeoutMillis + " millis"));
+        rewriteFailure.append(" Driver :").append(driver.getClass().getName()).append(" Cause :timed out");
+      } catch (ExecutionException e) {
+        LOG.warn("Driver : " + driver.getClass().getName() + " Skipped for the query rewriting due to ", e.getCause());
+        rewriteFailure.append(" Driver :").append(driver.getClass().getName());
+        rewriteFailure.append(" Cause :").append(e.getCause().getLocalizedMessage());
+      } catch (InterruptedException e) {
+        for (Future<DriverRewrite> rewrite : rewrites.values()) {
+          rewrite.cancel(true);
         }
+        throw new LensException("Interrupted while rewriting query", e);
       }
     }
-    super.start();
-    querySubmitter.start();
-    statusPoller.start();
-    queryPurger.start();
-    prepareQueryPurger.start();
+    if (acceptedQueries.isEmpty()) {
+      throw new LensException("No driver accepted the query, because" + rewriteFailure);
+    }
+    return acceptedQueries;
   }
 
   /**
@@ -964,12 +2030,41 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
    * @throws LensException the lens exception
    */
   private void rewriteAndSelect(AbstractQueryContext ctx) throws LensException {
-    ctx.getDriverContext().setDriverQueriesAndPlans(RewriteUtil.rewriteQuery(ctx));
+    rewriteAndPlan(ctx);
 
     // 2. select driver to run the query
-    LensDriver driver = driverSelector.select(ctx, conf);
+    selectDriver(ctx, conf);
+  }
+
+  /**
+   * Selects the driver to run the query, and records the time taken by the phases before launch in the phase
+   * histograms.
+   *
+   * @param ctx  the ctx
+   * @param conf the conf
+   * @throws LensException the lens exception
+   */
+  private void selectDriver(AbstractQueryContext ctx, Configuration conf) throws LensException {
+    long start = System.nanoTime();
+    try {
+      ctx.setSelectedDriver(driverSelector.select(ctx, conf));
+    } finally {
+      ctx.getPhaseStats().record(DRIVER_SELECTION_PHASE, (System.nanoTime() - start) / 1000);
+      getMetrics().updatePhaseHistograms(QueryExecutionService.class, ctx.getPhaseStats());
+    }
+  }
 
-    ctx.setSelectedDriver(driver);
+  /**
+   * Sets the phase durations and metastore calls recorded on the query context on the plan.
+   *
+   * @param plan the plan
+   * @param ctx  the ctx
+   * @return the plan
+   */
+  private static QueryPlan setPhaseStats(QueryPlan plan, AbstractQueryContext ctx) {
+    plan.setPhaseDurations(ctx.getPhaseStats().getDurations());
+    plan.setPhaseMetastoreCalls(ctx.getPhaseStats().getMetastoreCalls());
+    return plan;
   }
 
   /**
@@ -1044,6 +2139,10 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
           } else if (allQueries.get(queryHandle).isResultAvailableInDriver()) {
             resultSet = allQueries.get(queryHandle).getSelectedDriver().fetchResultSet(allQueries
                                                                                          .get(queryHandle));
+            if (resultSet instanceof InMemoryResultSet && maxResultBytesInMemory >= 0) {
+              ((InMemoryResultSet) resultSet).setResultBuffer(new ResultRowBuffer(resultSpillDir,
+                maxResultBytesInMemory));
+            }
             resultSets.put(queryHandle, resultSet);
           } else {
             throw new NotFoundException("Result set not available for query:" + queryHandle);
@@ -1124,7 +2223,7 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
       acquire(sessionHandle);
       PreparedQueryContext prepared = prepareQuery(sessionHandle, query, lensConf, SubmitOp.EXPLAIN_AND_PREPARE);
       prepared.setQueryName(queryName);
-      QueryPlan plan = prepared.getSelectedDriver().explainAndPrepare(prepared).toQueryPlan();
+      QueryPlan plan = setPhaseStats(prepared.getSelectedDriver().explainAndPrepare(prepared).toQueryPlan(), prepared);
       plan.setPrepareHandle(prepared.getPrepareHandle());
       return plan;
     } catch (LensException e) {
@@ -1181,6 +2280,19 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
   @Override
   public QueryHandleWithResultSet executePrepare(LensSessionHandle sessionHandle, QueryPrepareHandle prepareHandle,
                                                  long timeoutMillis, LensConf conf, String queryName) throws LensException {
+    return waitForResult(executePrepareWithTimeout(sessionHandle, prepareHandle, timeoutMillis, conf, queryName));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.apache.lens.server.api.query.QueryExecutionService#executePrepareWithTimeout(org.apache.lens.api.LensSessionHandle,
+   * org.apache.lens.api.query.QueryPrepareHandle, long, org.apache.lens.api.LensConf, java.lang.String)
+   */
+  @Override
+  public ListenableFuture<QueryHandleWithResultSet> executePrepareWithTimeout(LensSessionHandle sessionHandle,
+    QueryPrepareHandle prepareHandle, long timeoutMillis, LensConf conf, String queryName) throws LensException {
     try {
       LOG.info("ExecutePrepare: " + sessionHandle.toString() + " query:" + prepareHandle.getPrepareHandleId()
                  + " timeout:" + timeoutMillis);
@@ -1194,7 +2306,7 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
       } else {
         ctx.setQueryName(pctx.getQueryName());
       }
-      return executeTimeoutInternal(sessionHandle, ctx, timeoutMillis, qconf);
+      return executeTimeoutInternal(sessionHandle, ctx, timeoutMillis);
     } finally {
       release(sessionHandle);
     }
@@ -1268,6 +2380,7 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
     ctx.setStatus(new QueryStatus(0.0, QueryStatus.Status.QUEUED, "Query is queued", false, null, null));
     acceptedQueries.add(ctx);
     allQueries.put(ctx.getQueryHandle(), ctx);
+    liveQueryIndex.add(ctx);
     fireStatusChangeEvent(ctx, ctx.getStatus(), before);
     LOG.info("Returning handle " + ctx.getQueryHandle().getHandleId());
     return ctx.getQueryHandle();
@@ -1418,6 +2531,18 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
   @Override
   public QueryHandleWithResultSet execute(LensSessionHandle sessionHandle, String query, long timeoutMillis,
                                           LensConf conf, String queryName) throws LensException {
+    return waitForResult(executeWithTimeout(sessionHandle, query, timeoutMillis, conf, queryName));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.QueryExecutionService#executeWithTimeout(org.apache.lens.api.LensSessionHandle,
+   * java.lang.String, long, org.apache.lens.api.LensConf, java.lang.String)
+   */
+  @Override
+  public ListenableFuture<QueryHandleWithResultSet> executeWithTimeout(LensSessionHandle sessionHandle, String query,
+    long timeoutMillis, LensConf conf, String queryName) throws LensException {
     try {
       LOG.info("Blocking execute " + sessionHandle.toString() + " query: " + query + " timeout: " + timeoutMillis);
       acquire(sessionHandle);
@@ -1425,74 +2550,155 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
       accept(query, qconf, SubmitOp.EXECUTE);
       QueryContext ctx = createContext(query, getSession(sessionHandle).getLoggedInUser(), conf, qconf);
       ctx.setQueryName(queryName);
-      return executeTimeoutInternal(sessionHandle, ctx, timeoutMillis, qconf);
+      return executeTimeoutInternal(sessionHandle, ctx, timeoutMillis);
     } finally {
       release(sessionHandle);
     }
   }
 
   /**
-   * Execute timeout internal.
+   * Wait for the result of an execute with timeout.
+   *
+   * @param future the future of the execute with timeout
+   * @return the query handle with result set
+   * @throws LensException the lens exception
+   */
+  private static QueryHandleWithResultSet waitForResult(Future<QueryHandleWithResultSet> future)
+    throws LensException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new LensException("Interrupted while waiting for the query to finish", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof LensException) {
+        throw (LensException) e.getCause();
+      }
+      throw new LensException(e.getCause());
+    }
+  }
+
+  /**
+   * Execute timeout internal. Nothing waits on the query here: the returned future is completed by the status
+   * transitions of the query, or by the timeout, whichever happens first.
    *
    * @param sessionHandle the session handle
    * @param ctx           the ctx
-   * @param timeoutMillis the timeout millis
-   * @param conf          the conf
-   * @return the query handle with result set
+   * @param timeoutMillis the timeout millis, no timeout if not positive
+   * @return the future of query handle with result set
    * @throws LensException the lens exception
    */
-  private QueryHandleWithResultSet executeTimeoutInternal(LensSessionHandle sessionHandle, QueryContext ctx,
-                                                          long timeoutMillis, Configuration conf) throws LensException {
-    QueryHandle handle = executeAsyncInternal(sessionHandle, ctx);
-    QueryHandleWithResultSet result = new QueryHandleWithResultSet(handle);
-    // getQueryContext calls updateStatus, which fires query events if there's a change in status
-    while (getQueryContext(sessionHandle, handle).getStatus().getStatus().equals(QueryStatus.Status.QUEUED)) {
+  private ListenableFuture<QueryHandleWithResultSet> executeTimeoutInternal(LensSessionHandle sessionHandle,
+    QueryContext ctx, final long timeoutMillis) throws LensException {
+    final QueryHandle handle = executeAsyncInternal(sessionHandle, ctx);
+    final SettableFuture<QueryHandleWithResultSet> result = SettableFuture.create();
+    final long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+    final ScheduledFuture<?> timeout;
+    if (timeoutMillis > 0) {
       try {
-        Thread.sleep(10);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
+        timeout = statusUpdatePool.schedule(new Runnable() {
+          @Override
+          public void run() {
+            if (result.set(new QueryHandleWithResultSet(handle))) {
+              LOG.info("Query " + handle + " did not finish within " + timeoutMillis + " millis");
+            }
+          }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        throw new LensException("Could not schedule timeout for " + handle, e);
       }
+    } else {
+      timeout = null;
     }
-    QueryCompletionListener listener = new QueryCompletionListenerImpl(handle);
-    getQueryContext(sessionHandle, handle).getSelectedDriver().registerForCompletionNotification
-      (handle,
-       timeoutMillis,
-       listener);
-    try {
-      synchronized (listener) {
-        listener.wait(timeoutMillis);
+
+    // get notified by the driver as soon as the query completes, instead of waiting for the next status poll.
+    // registered off the launching thread, so that launch is not held up by the driver
+    Futures.addCallback(ctx.getLaunchFuture(), new FutureCallback<QueryStatus>() {
+      @Override
+      public void onSuccess(QueryStatus status) {
+        if (status.isFinished() || result.isDone()) {
+          return;
+        }
+        QueryContext launched = allQueries.get(handle);
+        if (launched == null) {
+          return;
+        }
+        long remaining = deadline > 0 ? Math.max(deadline - System.currentTimeMillis(), 1) : 0;
+        try {
+          launched.getSelectedDriver().registerForCompletionNotification(handle, remaining,
+            new QueryCompletionListenerImpl(launched.getSelectedDriver(), handle));
+        } catch (LensException e) {
+          // status poller would still complete the query
+          LOG.warn("Could not register for completion notification of " + handle, e);
+        }
       }
-    } catch (InterruptedException e) {
-      LOG.info("Waiting thread interrupted");
-    }
-    if (getQueryContext(sessionHandle, handle).getStatus().isFinished()) {
-      result.setResult(getResultset(handle).toQueryResult());
-    }
+
+      @Override
+      public void onFailure(Throwable t) {
+        LOG.error("Launch of " + handle + " could not be tracked", t);
+      }
+    }, statusUpdatePool);
+
+    // result set is fetched off the thread moving the query to its final state, and off the status pollers
+    Futures.addCallback(ctx.getCompletionFuture(), new FutureCallback<QueryStatus>() {
+      @Override
+      public void onSuccess(QueryStatus status) {
+        if (timeout != null) {
+          timeout.cancel(false);
+        }
+        if (result.isDone()) {
+          return;
+        }
+        QueryHandleWithResultSet finished = new QueryHandleWithResultSet(handle);
+        try {
+          finished.setResult(getResultset(handle).toQueryResult());
+          result.set(finished);
+        } catch (Throwable e) {
+          result.setException(e);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        result.setException(t);
+      }
+    }, resultFetchPool);
     return result;
+  }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.QueryExecutionService#getResultFetchExecutor()
+   */
+  @Override
+  public Executor getResultFetchExecutor() {
+    return resultFetchPool;
   }
 
   /**
-   * The Class QueryCompletionListenerImpl.
+   * Polls status of the query as soon as its driver notifies completion.
    */
   class QueryCompletionListenerImpl implements QueryCompletionListener {
 
     /**
-     * The succeeded.
+     * The driver.
      */
-    boolean succeeded = false;
+    final LensDriver driver;
 
     /**
      * The handle.
      */
-    QueryHandle handle;
+    final QueryHandle handle;
 
     /**
      * Instantiates a new query completion listener impl.
      *
+     * @param driver the driver
      * @param handle the handle
      */
-    QueryCompletionListenerImpl(QueryHandle handle) {
+    QueryCompletionListenerImpl(LensDriver driver, QueryHandle handle) {
+      this.driver = driver;
       this.handle = handle;
     }
 
@@ -1504,11 +2710,8 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
      */
     @Override
     public void onCompletion(QueryHandle handle) {
-      synchronized (this) {
-        succeeded = true;
-        LOG.info("Query " + handle + " with time out succeeded");
-        this.notify();
-      }
+      LOG.info("Query " + handle + " with time out succeeded");
+      triggerStatusUpdate(driver, handle);
     }
 
     /*
@@ -1519,11 +2722,8 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
      */
     @Override
     public void onError(QueryHandle handle, String error) {
-      synchronized (this) {
-        succeeded = false;
-        LOG.info("Query " + handle + " with time out failed");
-        this.notify();
-      }
+      LOG.info("Query " + handle + " with time out failed: " + error);
+      triggerStatusUpdate(driver, handle);
     }
   }
 
@@ -1564,12 +2764,28 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
     try {
       LOG.info("FetchResultSet:" + sessionHandle.toString() + " query:" + queryHandle);
       acquire(sessionHandle);
-      return getResultset(queryHandle).toQueryResult();
+      LensResultSet resultSet = getResultset(queryHandle);
+      if (resultSet instanceof InMemoryResultSet) {
+        return ((InMemoryResultSet) resultSet).toQueryResult(startIndex, fetchSize);
+      }
+      return resultSet.toQueryResult();
     } finally {
       release(sessionHandle);
     }
   }
 
+  /**
+   * Remove the result set of the query, releasing rows buffered for it.
+   *
+   * @param queryHandle the query handle
+   */
+  private void removeResultSet(QueryHandle queryHandle) {
+    LensResultSet resultSet = resultSets.remove(queryHandle);
+    if (resultSet instanceof InMemoryResultSet) {
+      ((InMemoryResultSet) resultSet).closeResultBuffer();
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -1581,7 +2797,7 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
     try {
       LOG.info("CloseResultSet:" + sessionHandle.toString() + " query: " + queryHandle);
       acquire(sessionHandle);
-      resultSets.remove(queryHandle);
+      removeResultSet(queryHandle);
       // Ask driver to close result set
       getQueryContext(queryHandle).getSelectedDriver().closeResultSet(queryHandle);
     } finally {
@@ -1630,6 +2846,19 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
   @Override
   public List<QueryHandle> getAllQueries(LensSessionHandle sessionHandle, String state, String userName,
                                          String queryName, long fromDate, long toDate) throws LensException {
+    return getAllQueries(sessionHandle, state, userName, queryName, fromDate, toDate, null, -1);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.QueryExecutionService#getAllQueries(org.apache.lens.api.LensSessionHandle,
+   * java.lang.String, java.lang.String, java.lang.String, long, long, org.apache.lens.api.query.QueryHandle, int)
+   */
+  @Override
+  public List<QueryHandle> getAllQueries(LensSessionHandle sessionHandle, String state, String userName,
+                                         String queryName, long fromDate, long toDate, QueryHandle after,
+                                         int pageSize) throws LensException {
     validateTimeRange(fromDate, toDate);
     userName = UtilityMethods.removeDomain(userName);
     try {
@@ -1648,39 +2877,125 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
         userName = getSession(sessionHandle).getLoggedInUser();
       }
 
-      List<QueryHandle> all = new ArrayList<QueryHandle>(allQueries.keySet());
-      Iterator<QueryHandle> itr = all.iterator();
-      while (itr.hasNext()) {
-        QueryHandle q = itr.next();
-        QueryContext context = allQueries.get(q);
+      long afterSubmissionTime = 0;
+      String afterHandle = null;
+      if (after != null) {
+        afterHandle = after.getHandleId().toString();
+        QueryContext afterContext = allQueries.get(after);
+        Long submissionTime = afterContext != null ? Long.valueOf(afterContext.getSubmissionTime())
+          : lensServerDao.getSubmissionTime(afterHandle);
+        if (submissionTime == null) {
+          throw new BadRequestException("Query not found " + after);
+        }
+        afterSubmissionTime = submissionTime;
+      }
+
+      List<FinishedLensQuery> live = new ArrayList<FinishedLensQuery>();
+      String submitter = "all".equalsIgnoreCase(userName) ? null : userName;
+      for (QueryHandle handle : liveQueryIndex.getCandidates(status, submitter, fromDate, toDate)) {
+        QueryContext context = allQueries.get(handle);
+        if (context == null) {
+          continue;
+        }
         long querySubmitTime = context.getSubmissionTime();
         if ((filterByStatus && status != context.getStatus().getStatus())
           || (filterByQueryName && !context.getQueryName().toLowerCase().contains(queryName))
           || (!"all".equalsIgnoreCase(userName) && !userName.equalsIgnoreCase(context.getSubmittedUser()))
           || (!(fromDate <= querySubmitTime && querySubmitTime <= toDate))) {
-          itr.remove();
+          continue;
+        }
+        FinishedLensQuery key = new FinishedLensQuery();
+        key.setHandle(context.getQueryHandle().getHandleId().toString());
+        key.setSubmissionTime(querySubmitTime);
+        if (afterHandle == null || QUERY_ORDER.compare(key, afterSubmissionTime, afterHandle) > 0) {
+          live.add(key);
         }
       }
+      Collections.sort(live, QUERY_ORDER);
 
       // Unless user wants to get queries in 'non finished' state, get finished queries from DB as well
+      List<FinishedLensQuery> persisted = Collections.emptyList();
       if (status == null || status == Status.CANCELED || status == Status.SUCCESSFUL || status == Status.FAILED) {
         if ("all".equalsIgnoreCase(userName)) {
           userName = null;
         }
-        List<QueryHandle> persistedQueries = lensServerDao.findFinishedQueries(state, userName, queryName, fromDate,
-                                                                               toDate);
-        if (persistedQueries != null && !persistedQueries.isEmpty()) {
-          LOG.info("Adding persisted queries " + persistedQueries.size());
-          all.addAll(persistedQueries);
+        persisted = lensServerDao.findFinishedQueries(state, userName, queryName, fromDate, toDate,
+          afterSubmissionTime, afterHandle, pageSize);
+        if (!persisted.isEmpty()) {
+          LOG.info("Adding persisted queries " + persisted.size());
         }
       }
 
-      return all;
+      return mergeQueries(live, persisted, pageSize);
     } finally {
       release(sessionHandle);
     }
   }
 
+  /**
+   * The order of queries listed by getAllQueries, by submission time and then by handle.
+   */
+  private static final QueryOrder QUERY_ORDER = new QueryOrder();
+
+  /**
+   * Orders finished lens queries by submission time and handle.
+   */
+  private static class QueryOrder implements Comparator<FinishedLensQuery> {
+
+    @Override
+    public int compare(FinishedLensQuery o1, FinishedLensQuery o2) {
+      return compare(o1, o2.getSubmissionTime(), o2.getHandle());
+    }
+
+    /**
+     * Compares the query with the given submission time and handle.
+     *
+     * @param query          the query
+     * @param submissionTime the submission time
+     * @param handle         the handle
+     * @return the comparison result
+     */
+    int compare(FinishedLensQuery query, long submissionTime, String handle) {
+      if (query.getSubmissionTime() != submissionTime) {
+        return query.getSubmissionTime() < submissionTime ? -1 : 1;
+      }
+      return query.getHandle().compareTo(handle);
+    }
+  }
+
+  /**
+   * Merges the sorted live and persisted queries, skipping queries which are present in both.
+   *
+   * @param live      the live queries
+   * @param persisted the persisted queries
+   * @param pageSize  the max number of handles returned, non-positive for all
+   * @return the query handles
+   */
+  private static List<QueryHandle> mergeQueries(List<FinishedLensQuery> live, List<FinishedLensQuery> persisted,
+    int pageSize) {
+    int limit = pageSize > 0 ? pageSize : Integer.MAX_VALUE;
+    List<QueryHandle> merged = new ArrayList<QueryHandle>(Math.min(limit, live.size() + persisted.size()));
+    int i = 0;
+    int j = 0;
+    while (merged.size() < limit && (i < live.size() || j < persisted.size())) {
+      FinishedLensQuery next;
+      if (j >= persisted.size()) {
+        next = live.get(i++);
+      } else if (i >= live.size()) {
+        next = persisted.get(j++);
+      } else {
+        int cmp = QUERY_ORDER.compare(live.get(i), persisted.get(j));
+        if (cmp == 0) {
+          // query got persisted but not yet purged from memory
+          j++;
+        }
+        next = cmp <= 0 ? live.get(i++) : persisted.get(j++);
+      }
+      merged.add(QueryHandle.fromString(next.getHandle()));
+    }
+    return merged;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -1785,10 +3100,10 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
       ExplainQueryContext explainQueryContext = new ExplainQueryContext(query, lensConf, qconf, drivers.values());
 
       accept(query, qconf, SubmitOp.EXPLAIN);
-      explainQueryContext.getDriverContext().setDriverQueriesAndPlans(RewriteUtil.rewriteQuery(explainQueryContext));
+      rewriteAndPlan(explainQueryContext);
       // select driver to run the query
-      explainQueryContext.setSelectedDriver(driverSelector.select(explainQueryContext, qconf));
-      return explainQueryContext.getSelectedDriverQueryPlan().toQueryPlan();
+      selectDriver(explainQueryContext, qconf);
+      return setPhaseStats(explainQueryContext.getSelectedDriverQueryPlan().toQueryPlan(), explainQueryContext);
     } catch (LensException e) {
       LOG.error("Error during explain :" , e);
       QueryPlan plan;
@@ -1869,6 +3184,77 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
     }
   }
 
+  /**
+   * Record the state transition of a query in the state journal. The full query is journaled once, when it is queued,
+   * and later transitions are journaled as a {@link QueryTransitionRecord}. Queries closed or purged are removed from
+   * journal. Records are only handed over to the journal here, which writes them off the calling thread.
+   *
+   * @param ctx           the ctx
+   * @param currentStatus the status the query moved to
+   */
+  private void journalQuery(QueryContext ctx, QueryStatus.Status currentStatus) {
+    if (getStateJournal() == null) {
+      return;
+    }
+    String key = ctx.getQueryHandle().toString();
+    try {
+      if (currentStatus == Status.CLOSED) {
+        journalRemove(key);
+      } else if (currentStatus == Status.QUEUED) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        writeQuery(ctx, out);
+        out.close();
+        journalPut(key, bytes.toByteArray());
+      } else {
+        journalUpdate(key, QueryTransitionRecord.write(ctx));
+      }
+    } catch (IOException e) {
+      LOG.warn("Could not serialize query " + key + " for journal", e);
+    }
+  }
+
+  /**
+   * Write a query along with its selected driver.
+   *
+   * @param ctx the ctx
+   * @param out the out
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void writeQuery(QueryContext ctx, ObjectOutput out) throws IOException {
+    synchronized (ctx) {
+      out.writeObject(ctx);
+      boolean isDriverAvailable = (ctx.getSelectedDriver() != null);
+      out.writeBoolean(isDriverAvailable);
+      if (isDriverAvailable) {
+        out.writeUTF(ctx.getSelectedDriver().getClass().getName());
+      }
+    }
+  }
+
+  /**
+   * Read a query written by {@link #writeQuery(QueryContext, ObjectOutput)}.
+   *
+   * @param in the in
+   * @return the query context
+   * @throws IOException            Signals that an I/O exception has occurred.
+   * @throws ClassNotFoundException the class not found exception
+   */
+  private QueryContext readQuery(ObjectInput in) throws IOException, ClassNotFoundException {
+    QueryContext ctx = (QueryContext) in.readObject();
+
+    //Create Driver Selector Context with driver conf for now and reset it in start()
+    DriverSelectorQueryContext driverCtx = new DriverSelectorQueryContext(ctx.getDriverQuery(), new Configuration(),
+                                                                          drivers.values());
+    ctx.setDriverContext(driverCtx);
+    boolean driverAvailable = in.readBoolean();
+    if (driverAvailable) {
+      String clsName = in.readUTF();
+      ctx.getDriverContext().setSelectedDriver(drivers.get(clsName));
+    }
+    return ctx;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -1905,20 +3291,38 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
       int numQueries = in.readInt();
 
       for (int i = 0; i < numQueries; i++) {
-        QueryContext ctx = (QueryContext) in.readObject();
-
-        //Create Driver Selector Context with driver conf for now and reset it in start()
-        DriverSelectorQueryContext driverCtx = new DriverSelectorQueryContext(ctx.getDriverQuery(), new Configuration(),
-                                                                              drivers.values());
-        ctx.setDriverContext(driverCtx);
-        boolean driverAvailable = in.readBoolean();
-        if (driverAvailable) {
-          String clsName = in.readUTF();
-          ctx.getDriverContext().setSelectedDriver(drivers.get(clsName));
-        }
+        QueryContext ctx = readQuery(in);
         allQueries.put(ctx.getQueryHandle(), ctx);
       }
 
+      // replay query state transitions since the snapshot
+      if (getStateJournal() != null) {
+        for (Map.Entry<String, ServiceStateJournal.Entry> entry : getStateJournal().replay().entrySet()) {
+          QueryHandle handle = QueryHandle.fromString(entry.getKey());
+          if (entry.getValue() == null) {
+            allQueries.remove(handle);
+            continue;
+          }
+          if (entry.getValue().getState() != null) {
+            ObjectInputStream entryIn = new ObjectInputStream(new ByteArrayInputStream(entry.getValue().getState()));
+            try {
+              QueryContext ctx = readQuery(entryIn);
+              allQueries.put(ctx.getQueryHandle(), ctx);
+            } finally {
+              entryIn.close();
+            }
+          }
+          QueryContext ctx = allQueries.get(handle);
+          if (ctx == null) {
+            LOG.warn("Ignoring journaled transitions of unknown query " + handle);
+            continue;
+          }
+          for (byte[] transition : entry.getValue().getUpdates()) {
+            QueryTransitionRecord.apply(transition, ctx, drivers);
+          }
+        }
+      }
+
       // populate the query queues
       for (QueryContext ctx : allQueries.values()) {
         switch (ctx.getStatus().getStatus()) {
@@ -1929,6 +3333,10 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
         case LAUNCHED:
         case RUNNING:
           launchedQueries.add(ctx);
+          // the query is running on its driver, so it holds a slot of the driver like a query launched now
+          if (ctx.getSelectedDriver() != null) {
+            driverLaunchSlots.acquire(ctx);
+          }
           break;
         case SUCCESSFUL:
         case FAILED:
@@ -1939,6 +3347,10 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
           allQueries.remove(ctx.getQueryHandle());
         }
       }
+      liveQueryIndex.clear();
+      for (QueryContext ctx : allQueries.values()) {
+        liveQueryIndex.add(ctx);
+      }
       LOG.info("Recovered " + allQueries.size() + " queries");
     }
   }
@@ -1959,54 +3371,60 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
         driver.writeExternal(out);
       }
     }
-    // persist allQueries
-    synchronized (allQueries) {
-      out.writeInt(allQueries.size());
-      for (QueryContext ctx : allQueries.values()) {
-        out.writeObject(ctx);
-        boolean isDriverAvailable = (ctx.getSelectedDriver() != null);
-        out.writeBoolean(isDriverAvailable);
-        if (isDriverAvailable) {
-          out.writeUTF(ctx.getSelectedDriver().getClass().getName());
-        }
-      }
+    // persist allQueries. Changes while writing are in the state journal, so queries are not locked all together
+    List<QueryContext> queries = new ArrayList<QueryContext>(allQueries.values());
+    out.writeInt(queries.size());
+    for (QueryContext ctx : queries) {
+      writeQuery(ctx, out);
     }
-    LOG.info("Persisted " + allQueries.size() + " queries");
+    LOG.info("Persisted " + queries.size() + " queries");
   }
 
-  /**
-   * Pipe.
-   *
-   * @param is the is
-   * @param os the os
-   * @throws IOException Signals that an I/O exception has occurred.
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.QueryExecutionService#getHttpResultSet(org.apache.lens.api.LensSessionHandle,
+   * org.apache.lens.api.query.QueryHandle)
    */
-  private void pipe(InputStream is, OutputStream os) throws IOException {
-    int n;
-    byte[] buffer = new byte[4096];
-    while ((n = is.read(buffer)) > -1) {
-      os.write(buffer, 0, n);
-      os.flush();
-    }
+  @Override
+  public Response getHttpResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle) throws LensException {
+    return getHttpResultSet(sessionHandle, queryHandle, null);
   }
 
   /*
    * (non-Javadoc)
    * 
    * @see org.apache.lens.server.api.query.QueryExecutionService#getHttpResultSet(org.apache.lens.api.LensSessionHandle,
-   * org.apache.lens.api.query.QueryHandle)
+   * org.apache.lens.api.query.QueryHandle, java.lang.String)
    */
   @Override
-  public Response getHttpResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle) throws LensException {
+  public Response getHttpResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle, String format)
+    throws LensException {
+    return getHttpResultSet(sessionHandle, queryHandle, format, null, null);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.apache.lens.server.api.query.QueryExecutionService#getHttpResultSet(org.apache.lens.api.LensSessionHandle,
+   * org.apache.lens.api.query.QueryHandle, java.lang.String, java.lang.String, java.lang.String)
+   */
+  @Override
+  public Response getHttpResultSet(LensSessionHandle sessionHandle, QueryHandle queryHandle, String format,
+    String range, String acceptEncoding) throws LensException {
     final QueryContext ctx = getQueryContext(sessionHandle, queryHandle);
     LensResultSet result = getResultset(queryHandle);
     if (result instanceof LensPersistentResult) {
       final Path resultPath = new Path(((PersistentResultSet) result).getOutputPath());
+      FileSystem fs;
+      long size;
       try {
-        FileSystem fs = resultPath.getFileSystem(conf);
-        if (fs.isDirectory(resultPath)) {
+        fs = resultPath.getFileSystem(conf);
+        FileStatus status = fs.getFileStatus(resultPath);
+        if (status.isDirectory()) {
           throw new NotFoundException("Http result not available for query:" + queryHandle.toString());
         }
+        size = status.getLen();
       } catch (IOException e) {
         LOG.warn("Unable to get status for Result Directory", e);
         throw new NotFoundException("Http result not available for query:" + queryHandle.toString());
@@ -2023,30 +3441,75 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
           throw new LensException(e);
         }
       } else {
-        StreamingOutput stream = new StreamingOutput() {
-          @Override
-          public void write(OutputStream os) throws IOException {
-            FSDataInputStream fin = null;
-            try {
-              FileSystem fs = resultPath.getFileSystem(ctx.getConf());
-              fin = fs.open(resultPath);
-              pipe(fin, os);
-            } finally {
-              if (fin != null) {
-                fin.close();
-              }
-
-            }
-          }
-        };
-        return Response.ok(stream).header("content-disposition", "attachment; filename = " + resultPath.getName())
-          .type(MediaType.APPLICATION_OCTET_STREAM).build();
+        return getPersistedResultResponse(ctx, resultPath, size, range, acceptEncoding);
       }
+    } else if (result instanceof InMemoryResultSet) {
+      InMemoryResultStreamer.Format streamFormat;
+      try {
+        streamFormat = InMemoryResultStreamer.Format.fromName(format);
+      } catch (IllegalArgumentException e) {
+        throw new BadRequestException("Invalid result format " + format + " for query:" + queryHandle);
+      }
+      InMemoryResultStreamer stream = new InMemoryResultStreamer(queryHandle, (InMemoryResultSet) result,
+        streamFormat, ctx.getConf().get(LensConfConstants.QUERY_OUTPUT_CHARSET_ENCODING,
+          LensConfConstants.DEFAULT_OUTPUT_CHARSET_ENCODING), ctx.getConf().getBoolean(
+          LensConfConstants.QUERY_OUTPUT_WRITE_HEADER, LensConfConstants.DEFAULT_OUTPUT_WRITE_HEADER));
+      return Response.ok(stream).header("content-disposition", "attachment; filename = " + stream.getFileName())
+        .type(MediaType.APPLICATION_OCTET_STREAM).build();
     } else {
       throw new NotFoundException("Http result not available for query:" + queryHandle.toString());
     }
   }
 
+  /**
+   * Builds the response streaming the persisted result, or the asked byte range of it.
+   *
+   * @param ctx            the query context
+   * @param resultPath     the result path
+   * @param size           the size of the result
+   * @param range          the http Range header, if any
+   * @param acceptEncoding the http Accept-Encoding header, if any
+   * @return the response
+   */
+  private Response getPersistedResultResponse(QueryContext ctx, Path resultPath, long size, String range,
+    String acceptEncoding) {
+    long[] byteRange;
+    try {
+      byteRange = PersistedResultStreamer.parseRange(range, size);
+    } catch (IllegalArgumentException e) {
+      return Response.status(416).header("Content-Range", "bytes */" + size).build();
+    }
+    // ranges are served on the result as it is, so that parts can be fetched in parallel and resumed
+    boolean gzip = byteRange == null && PersistedResultStreamer.acceptsGzip(acceptEncoding)
+      && conf.getBoolean(LensConfConstants.RESULT_DOWNLOAD_GZIP_ENABLED,
+        LensConfConstants.DEFAULT_RESULT_DOWNLOAD_GZIP_ENABLED)
+      && new CompressionCodecFactory(conf).getCodec(resultPath) == null
+      && !resultPath.getName().toLowerCase().endsWith(".zip")
+      && !resultPath.getName().toLowerCase().endsWith(".orc");
+    long offset = byteRange == null ? 0 : byteRange[0];
+    long length = byteRange == null ? size : byteRange[1] - byteRange[0] + 1;
+    PersistedResultStreamer stream = new PersistedResultStreamer(resultPath, ctx.getConf(), offset, length, gzip,
+      conf.getInt(LensConfConstants.RESULT_DOWNLOAD_BUFFER_SIZE, LensConfConstants.DEFAULT_RESULT_DOWNLOAD_BUFFER_SIZE),
+      getMetrics());
+
+    Response.ResponseBuilder builder;
+    if (byteRange == null) {
+      builder = Response.ok(stream);
+    } else {
+      builder = Response.status(206).entity(stream)
+        .header("Content-Range", "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + size);
+    }
+    if (gzip) {
+      builder.header("Content-Encoding", "gzip");
+    } else {
+      builder.header("Content-Length", length);
+    }
+    // the encoding depends on the Accept-Encoding header, so that caches do not serve gzip to clients not asking for it
+    return builder.header("Accept-Ranges", "bytes").header("Vary", "Accept-Encoding")
+      .header("content-disposition", "attachment; filename = " + resultPath.getName())
+      .type(MediaType.APPLICATION_OCTET_STREAM).build();
+  }
+
   /**
    * Allow drivers to release resources acquired for a session if any.
    *
@@ -2078,7 +3541,7 @@ public class QueryExecutionServiceImpl extends LensService implements QueryExecu
 
   @Override
   public long getQueuedQueriesCount() {
-    return acceptedQueries.size();
+    return acceptedQueries.size() + getDeferredLaunchesCount();
   }
 
   @Override
@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.lens.cube.metadata.CubeMetastoreClient;
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.query.AbstractQueryContext;
+import org.apache.lens.server.api.query.DriverSelectorQueryContext;
+import org.apache.lens.server.api.query.DriverSelectorQueryContext.DriverQueryContext;
+
+/**
+ * LRU cache of rewritten driver queries.
+ * <p/>
+ * Entries are keyed on the normalized user query, the conf entries which influence the rewrite, the current database
+ * and the metastore version published by {@link CubeMetastoreClient}. Any alteration done through the metastore client
+ * moves the version forward, so entries computed against older metadata are never served again and age out of the
+ * LRU. Queries with time ranges relative to 'now' are never cached, as their rewrite changes with the clock, and
+ * neither are rewrites for which a driver failed to generate a plan, as such failures may be transient. Changes made
+ * to the metastore bypassing lens are bounded by the expiry of the entries.
+ * <p/>
+ * Driver plans are not cached, as they are mutated by the query they belong to. The cached driver queries are
+ * explained again for every query, only the rewrite is skipped.
+ */
+public class QueryRewriteCache {
+
+  /**
+   * Pattern to detect time ranges relative to current time.
+   */
+  private static final Pattern RELATIVE_TIME_PATTERN = Pattern.compile("['\"]\\s*now", Pattern.CASE_INSENSITIVE);
+
+  /**
+   * The key separator.
+   */
+  private static final char SEPARATOR = '\u0001';
+
+  /**
+   * The max number of entries.
+   */
+  private final int maxSize;
+
+  /**
+   * The expiry of an entry in millis.
+   */
+  private final long expiryMillis;
+
+  /**
+   * The conf key prefixes which become part of the cache key.
+   */
+  private final String[] confPrefixes;
+
+  /**
+   * The entries, in access order.
+   */
+  private final LinkedHashMap<String, CachedRewrite> entries;
+
+  /**
+   * Cached queries of all drivers for one user query.
+   */
+  private static class CachedRewrite {
+
+    /**
+     * The creation time.
+     */
+    private final long createdAt = System.currentTimeMillis();
+
+    /**
+     * The driver queries.
+     */
+    private final Map<LensDriver, String> queries = new HashMap<LensDriver, String>();
+  }
+
+  /**
+   * Instantiates a new query rewrite cache.
+   *
+   * @param maxSize      the max number of entries
+   * @param expiryMillis the expiry of an entry in millis
+   * @param confPrefixes the conf key prefixes which become part of the cache key
+   */
+  public QueryRewriteCache(final int maxSize, long expiryMillis, String[] confPrefixes) {
+    this.maxSize = maxSize;
+    this.expiryMillis = expiryMillis;
+    this.confPrefixes = confPrefixes;
+    this.entries = new LinkedHashMap<String, CachedRewrite>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedRewrite> eldest) {
+        return size() > QueryRewriteCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * Gets the cache key of the query, or null if the query is not cacheable.
+   *
+   * @param ctx the query context
+   * @return the key
+   */
+  public String getKey(AbstractQueryContext ctx) {
+    if (maxSize <= 0 || ctx.getUserQuery() == null) {
+      return null;
+    }
+    String query = normalize(ctx.getUserQuery());
+    String lowerCaseQuery = query.toLowerCase();
+    if (lowerCaseQuery.startsWith("add") || lowerCaseQuery.startsWith("set")
+      || RELATIVE_TIME_PATTERN.matcher(query).find()) {
+      return null;
+    }
+    StringBuilder key = new StringBuilder();
+    key.append(CubeMetastoreClient.getMetastoreVersion()).append(SEPARATOR);
+    SessionState state = SessionState.get();
+    key.append(state == null ? "" : state.getCurrentDatabase()).append(SEPARATOR);
+    Map<String, String> relevantConf = new TreeMap<String, String>();
+    if (ctx.getConf() != null) {
+      for (Map.Entry<String, String> entry : ctx.getConf()) {
+        for (String prefix : confPrefixes) {
+          if (entry.getKey().startsWith(prefix)) {
+            relevantConf.put(entry.getKey(), entry.getValue());
+            break;
+          }
+        }
+      }
+    }
+    if (ctx.getLensConf() != null) {
+      relevantConf.putAll(ctx.getLensConf().getProperties());
+    }
+    for (Map.Entry<String, String> entry : relevantConf.entrySet()) {
+      key.append(entry.getKey()).append('=').append(entry.getValue()).append(SEPARATOR);
+    }
+    key.append(query);
+    return key.toString();
+  }
+
+  /**
+   * Gets the cached driver queries.
+   *
+   * @param key     the cache key
+   * @param drivers the drivers for which queries are needed
+   * @return the driver queries, null if the entry was not found for all the drivers
+   */
+  public Map<LensDriver, String> get(String key, Collection<LensDriver> drivers) {
+    CachedRewrite cached;
+    synchronized (entries) {
+      cached = entries.get(key);
+      if (cached != null && System.currentTimeMillis() - cached.createdAt > expiryMillis) {
+        entries.remove(key);
+        cached = null;
+      }
+    }
+    if (cached == null || !cached.queries.keySet().containsAll(drivers)) {
+      return null;
+    }
+    Map<LensDriver, String> queries = new HashMap<LensDriver, String>();
+    for (LensDriver driver : drivers) {
+      queries.put(driver, cached.queries.get(driver));
+    }
+    return queries;
+  }
+
+  /**
+   * Caches the driver queries of the driver context, if all drivers have a plan.
+   *
+   * @param key           the cache key
+   * @param driverContext the driver context
+   */
+  public void put(String key, DriverSelectorQueryContext driverContext) {
+    CachedRewrite cached = new CachedRewrite();
+    for (Map.Entry<LensDriver, DriverQueryContext> entry : driverContext.getDriverQueryContextMap().entrySet()) {
+      DriverQueryContext driverQueryContext = entry.getValue();
+      if (driverQueryContext.getDriverQueryPlan() == null
+        || driverQueryContext.getDriverQueryPlanGenerationError() != null) {
+        return;
+      }
+      cached.queries.put(entry.getKey(), driverQueryContext.getQuery());
+    }
+    synchronized (entries) {
+      entries.put(key, cached);
+    }
+  }
+
+  /**
+   * Removes all the entries.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  /**
+   * Gets the number of entries.
+   *
+   * @return the size
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * Collapses white space outside quoted literals and trims the query.
+   *
+   * @param query the query
+   * @return the normalized query
+   */
+  static String normalize(String query) {
+    StringBuilder builder = new StringBuilder(query.length());
+    char quote = 0;
+    boolean pendingSpace = false;
+    for (int i = 0; i < query.length(); i++) {
+      char c = query.charAt(i);
+      if (quote == 0 && Character.isWhitespace(c)) {
+        pendingSpace = builder.length() > 0;
+        continue;
+      }
+      if (pendingSpace) {
+        builder.append(' ');
+        pendingSpace = false;
+      }
+      if (quote == 0 && (c == '\'' || c == '"' || c == '`')) {
+        quote = c;
+      } else if (c == quote && query.charAt(i - 1) != '\\') {
+        quote = 0;
+      }
+      builder.append(c);
+    }
+    return builder.toString();
+  }
+}
@@ -19,12 +19,14 @@
 package org.apache.lens.server.query;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.PathParam;
@@ -32,6 +34,8 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.Path;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -58,6 +62,10 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.glassfish.jersey.media.multipart.FormDataParam;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * queryapi resource
  *
@@ -142,6 +150,11 @@ public class QueryServiceResource {
    *          from date to search queries in a time range
    * @param toDate
    *          to date to search queries in a time range
+   * @param after
+   *          the last query handle of the previous page. Queries are ordered by submission time and handle, so the
+   *          returned queries start right after this query. By default, queries are returned from the beginning
+   * @param pageSize
+   *          max number of queries to be returned. By default, all the queries are returned
    * @return List of {@link QueryHandle} objects
    */
   @GET
@@ -150,13 +163,14 @@ public class QueryServiceResource {
   public List<QueryHandle> getAllQueries(@QueryParam("sessionid") LensSessionHandle sessionid,
       @DefaultValue("") @QueryParam("state") String state, @DefaultValue("") @QueryParam("queryName") String queryName,
       @DefaultValue("") @QueryParam("user") String user, @DefaultValue("-1") @QueryParam("fromDate") long fromDate,
-      @DefaultValue("-1") @QueryParam("toDate") long toDate) {
+      @DefaultValue("-1") @QueryParam("toDate") long toDate, @QueryParam("after") QueryHandle after,
+      @DefaultValue("-1") @QueryParam("pageSize") int pageSize) {
     checkSessionId(sessionid);
     try {
       if (toDate == -1L) {
         toDate = Long.MAX_VALUE;
       }
-      return queryServer.getAllQueries(sessionid, state, user, queryName, fromDate, toDate);
+      return queryServer.getAllQueries(sessionid, state, user, queryName, fromDate, toDate, after, pageSize);
     } catch (LensException e) {
       throw new WebApplicationException(e);
     }
@@ -174,8 +188,12 @@ public class QueryServiceResource {
       + SubmitOp.EXECUTE_WITH_TIMEOUT;
 
   /**
-   * Submit the query for explain or execute or execute with a timeout.
+   * Submit the query for explain or execute or execute with a timeout. In case of
+   * {@value SubmitOp#EXECUTE_WITH_TIMEOUT} operation, no request thread is held while the query runs; the response is
+   * resumed once the query finishes or the timeout expires.
    *
+   * @param asyncResponse
+   *          the suspended response, resumed with the submit result
    * @param sessionid
    *          The session in which user is submitting the query. Any configuration set in the session will be picked up.
    * @param query
@@ -191,15 +209,15 @@ public class QueryServiceResource {
    *          the user
    * @param queryName
    *          human readable query name set by user (optional parameter)
-   * @return {@link QueryHandle} in case of {@value SubmitOp#EXECUTE} operation. {@link QueryPlan} in case of
-   *         {@value SubmitOp#EXPLAIN} operation. {@link QueryHandleWithResultSet} in case
-   *         {@value SubmitOp#EXECUTE_WITH_TIMEOUT} operation.
+   *          The response is resumed with {@link QueryHandle} in case of {@value SubmitOp#EXECUTE} operation.
+   *          {@link QueryPlan} in case of {@value SubmitOp#EXPLAIN} operation. {@link QueryHandleWithResultSet} in case
+   *          {@value SubmitOp#EXECUTE_WITH_TIMEOUT} operation.
    */
   @POST
   @Path("queries")
   @Consumes({ MediaType.MULTIPART_FORM_DATA })
   @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN })
-  public QuerySubmitResult query(@FormDataParam("sessionid") LensSessionHandle sessionid,
+  public void query(@Suspended AsyncResponse asyncResponse, @FormDataParam("sessionid") LensSessionHandle sessionid,
       @FormDataParam("query") String query, @FormDataParam("operation") String operation,
       @FormDataParam("conf") LensConf conf, @DefaultValue("30000") @FormDataParam("timeoutmillis") Long timeoutmillis,
       @DefaultValue("") @FormDataParam("user") String user,
@@ -218,11 +236,15 @@ public class QueryServiceResource {
       }
       switch (sop) {
       case EXECUTE:
-        return queryServer.executeAsync(sessionid, query, conf, queryName);
+        asyncResponse.resume(queryServer.executeAsync(sessionid, query, conf, queryName));
+        break;
       case EXPLAIN:
-        return queryServer.explain(sessionid, query, conf);
+        asyncResponse.resume(queryServer.explain(sessionid, query, conf));
+        break;
       case EXECUTE_WITH_TIMEOUT:
-        return queryServer.execute(sessionid, query, timeoutmillis, conf, queryName);
+        resumeOnCompletion(asyncResponse, queryServer.executeWithTimeout(sessionid, query, timeoutmillis, conf,
+          queryName), queryServer.getResultFetchExecutor());
+        break;
       default:
         throw new BadRequestException("Invalid operation type: " + operation + submitClue);
       }
@@ -231,6 +253,29 @@ public class QueryServiceResource {
     }
   }
 
+  /**
+   * Resume the suspended response with the result of execute with timeout, once the query finishes or the timeout
+   * expires.
+   *
+   * @param asyncResponse the suspended response
+   * @param future        the future of execute with timeout
+   * @param executor      the executor on which the response is resumed
+   */
+  private static void resumeOnCompletion(final AsyncResponse asyncResponse,
+    ListenableFuture<QueryHandleWithResultSet> future, Executor executor) {
+    Futures.addCallback(future, new FutureCallback<QueryHandleWithResultSet>() {
+      @Override
+      public void onSuccess(QueryHandleWithResultSet result) {
+        asyncResponse.resume(result);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        asyncResponse.resume(t instanceof LensException ? new WebApplicationException(t) : t);
+      }
+    }, executor);
+  }
+
   /**
    * Cancel all the queries in query server; can be filtered with state and user.
    *
@@ -266,7 +311,8 @@ public class QueryServiceResource {
     List<QueryHandle> handles = null;
     boolean failed = false;
     try {
-      handles = getAllQueries(sessionid, state, queryName, user, fromDate, toDate == -1L ? Long.MAX_VALUE : toDate);
+      handles = getAllQueries(sessionid, state, queryName, user, fromDate, toDate == -1L ? Long.MAX_VALUE : toDate,
+          null, -1);
       for (QueryHandle handle : handles) {
         if (cancelQuery(sessionid, handle)) {
           numCancelled++;
@@ -645,8 +691,11 @@ public class QueryServiceResource {
   }
 
   /**
-   * Submit prepared query for execution.
+   * Submit prepared query for execution. In case of {@value SubmitOp#EXECUTE_WITH_TIMEOUT} operation, no request thread
+   * is held while the query runs; the response is resumed once the query finishes or the timeout expires.
    *
+   * @param asyncResponse
+   *          the suspended response, resumed with the submit result
    * @param sessionid
    *          The session in which user is submitting the query. Any configuration set in the session will be picked up.
    * @param prepareHandle
@@ -660,14 +709,15 @@ public class QueryServiceResource {
    *          The timeout for the query, honored only in case of {@value SubmitOp#EXECUTE_WITH_TIMEOUT} operation
    * @param queryName
    *          human readable query name set by user (optional parameter)
-   * @return {@link QueryHandle} in case of {@value SubmitOp#EXECUTE} operation. {@link QueryHandleWithResultSet} in
-   *         case {@value SubmitOp#EXECUTE_WITH_TIMEOUT} operation.
+   *          The response is resumed with {@link QueryHandle} in case of {@value SubmitOp#EXECUTE} operation.
+   *          {@link QueryHandleWithResultSet} in case {@value SubmitOp#EXECUTE_WITH_TIMEOUT} operation.
    */
   @POST
   @Path("preparedqueries/{prepareHandle}")
   @Consumes({ MediaType.MULTIPART_FORM_DATA })
   @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN })
-  public QuerySubmitResult executePrepared(@FormDataParam("sessionid") LensSessionHandle sessionid,
+  public void executePrepared(@Suspended AsyncResponse asyncResponse,
+      @FormDataParam("sessionid") LensSessionHandle sessionid,
       @PathParam("prepareHandle") String prepareHandle,
       @DefaultValue("EXECUTE") @FormDataParam("operation") String operation, @FormDataParam("conf") LensConf conf,
       @DefaultValue("30000") @FormDataParam("timeoutmillis") Long timeoutmillis,
@@ -684,9 +734,13 @@ public class QueryServiceResource {
       }
       switch (sop) {
       case EXECUTE:
-        return queryServer.executePrepareAsync(sessionid, getPrepareHandle(prepareHandle), conf, queryName);
+        asyncResponse.resume(queryServer.executePrepareAsync(sessionid, getPrepareHandle(prepareHandle), conf,
+          queryName));
+        break;
       case EXECUTE_WITH_TIMEOUT:
-        return queryServer.executePrepare(sessionid, getPrepareHandle(prepareHandle), timeoutmillis, conf, queryName);
+        resumeOnCompletion(asyncResponse, queryServer.executePrepareWithTimeout(sessionid,
+          getPrepareHandle(prepareHandle), timeoutmillis, conf, queryName), queryServer.getResultFetchExecutor());
+        break;
       default:
         throw new BadRequestException("Invalid operation type: " + operation + submitPreparedClue);
       }
@@ -751,15 +805,24 @@ public class QueryServiceResource {
    *          The user session handle
    * @param queryHandle
    *          The query handle
+   * @param format
+   *          The format in which in-memory results are streamed, csv or json. Newline delimited JSON arrays are
+   *          streamed for json. Persisted results are returned as they are. Defaults to csv
+   * @param range
+   *          The Range header. A single byte range of a persisted result can be asked for, to resume or parallelize
+   *          the download
+   * @param acceptEncoding
+   *          The Accept-Encoding header. Persisted results are gzip encoded when gzip is accepted
    * @return Response with result as octet stream
    */
   @GET
   @Path("queries/{queryHandle}/httpresultset")
   @Produces({ MediaType.APPLICATION_OCTET_STREAM })
   public Response getHttpResultSet(@QueryParam("sessionid") LensSessionHandle sessionid,
-      @PathParam("queryHandle") String queryHandle) {
+      @PathParam("queryHandle") String queryHandle, @QueryParam("format") String format,
+      @HeaderParam("Range") String range, @HeaderParam("Accept-Encoding") String acceptEncoding) {
     try {
-      return queryServer.getHttpResultSet(sessionid, getQueryHandle(queryHandle));
+      return queryServer.getHttpResultSet(sessionid, getQueryHandle(queryHandle), format, range, acceptEncoding);
     } catch (LensException e) {
       throw new WebApplicationException(e);
     }
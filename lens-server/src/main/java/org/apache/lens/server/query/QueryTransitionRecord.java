@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lens.api.LensException;
+import org.apache.lens.api.query.QueryStatus;
+import org.apache.lens.server.api.driver.DriverQueryStatus;
+import org.apache.lens.server.api.driver.DriverQueryStatus.DriverQueryState;
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.query.QueryContext;
+
+/**
+ * Compact record of a status transition of a query, journaled in place of the full query context. It carries only
+ * the fields which change once a query is accepted: the status, the selected driver and its handle of the query,
+ * result locations and timestamps. The full context is journaled once, when the query is queued, and the records of
+ * its later transitions are applied over it on recovery.
+ */
+final class QueryTransitionRecord {
+
+  private QueryTransitionRecord() {
+  }
+
+  /**
+   * Write the record of the current state of the query. Called holding the lock on the query, so that records of a
+   * query are journaled in the order of its transitions.
+   *
+   * @param ctx the ctx
+   * @return the serialized record
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static byte[] write(QueryContext ctx) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    DataOutputStream out = new DataOutputStream(bytes);
+    QueryStatus status = ctx.getStatus();
+    out.writeDouble(status.getProgress());
+    out.writeUTF(status.getStatus().name());
+    writeString(out, status.getStatusMessage());
+    out.writeBoolean(status.isResultSetAvailable());
+    writeString(out, status.getProgressMessage());
+    writeString(out, status.getErrorMessage());
+
+    writeString(out, ctx.getSelectedDriver() == null ? null : ctx.getSelectedDriver().getClass().getName());
+    writeString(out, ctx.getSelectedDriverQuery());
+    writeString(out, ctx.getDriverOpHandle());
+    writeString(out, ctx.getResultSetPath());
+    writeString(out, ctx.getHdfsoutPath());
+    out.writeLong(ctx.getLaunchTime());
+    out.writeLong(ctx.getEndTime());
+    out.writeLong(ctx.getClosedTime());
+
+    DriverQueryStatus driverStatus = ctx.getDriverStatus();
+    out.writeUTF(driverStatus.getState().name());
+    out.writeDouble(driverStatus.getProgress());
+    out.writeBoolean(driverStatus.isResultSetAvailable());
+    out.writeLong(driverStatus.getDriverStartTime() == null ? 0 : driverStatus.getDriverStartTime());
+    out.writeLong(driverStatus.getDriverFinishTime() == null ? 0 : driverStatus.getDriverFinishTime());
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Apply a record written by {@link #write(QueryContext)} to the recovered query.
+   *
+   * @param record  the record
+   * @param ctx     the recovered ctx
+   * @param drivers the drivers by class name
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  static void apply(byte[] record, QueryContext ctx, Map<String, LensDriver> drivers) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    double progress = in.readDouble();
+    QueryStatus.Status state = QueryStatus.Status.valueOf(in.readUTF());
+    String statusMessage = readString(in);
+    boolean resultSetAvailable = in.readBoolean();
+    String progressMessage = readString(in);
+    String errorMessage = readString(in);
+    try {
+      ctx.setStatusSkippingTransitionTest(new QueryStatus(progress, state, statusMessage, resultSetAvailable,
+        progressMessage, errorMessage));
+    } catch (LensException e) {
+      throw new IOException("Could not recover status of " + ctx.getQueryHandle(), e);
+    }
+
+    String driverClass = readString(in);
+    String driverQuery = readString(in);
+    if (driverClass != null && drivers.get(driverClass) != null) {
+      ctx.setSelectedDriver(drivers.get(driverClass));
+      if (driverQuery != null) {
+        ctx.setSelectedDriverQuery(driverQuery);
+      }
+    }
+    ctx.setDriverOpHandle(readString(in));
+    ctx.setResultSetPath(readString(in));
+    ctx.setHdfsoutPath(readString(in));
+    ctx.setLaunchTime(in.readLong());
+    ctx.setEndTime(in.readLong());
+    ctx.setClosedTime(in.readLong());
+
+    DriverQueryStatus driverStatus = ctx.getDriverStatus();
+    driverStatus.setState(DriverQueryState.valueOf(in.readUTF()));
+    driverStatus.setProgress(in.readDouble());
+    driverStatus.setResultSetAvailable(in.readBoolean());
+    driverStatus.setDriverStartTime(in.readLong());
+    driverStatus.setDriverFinishTime(in.readLong());
+  }
+
+  private static void writeString(DataOutput out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      // not writeUTF, as driver queries can be longer than 64K
+      byte[] bytes = value.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+}
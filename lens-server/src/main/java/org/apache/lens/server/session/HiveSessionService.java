@@ -29,15 +29,20 @@ import org.apache.lens.api.LensException;
 import org.apache.lens.api.LensSessionHandle;
 import org.apache.lens.server.LensService;
 import org.apache.lens.server.LensServices;
+import org.apache.lens.server.ServiceStateJournal;
 import org.apache.lens.server.api.LensConfConstants;
 import org.apache.lens.server.api.session.SessionService;
 import org.apache.lens.server.query.QueryExecutionServiceImpl;
 
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.WebApplicationException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInput;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
 import java.util.*;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -89,6 +94,7 @@ public class HiveSessionService extends LensService implements SessionService {
     }
     if (!error) {
       getSession(sessionid).addResource(type, path);
+      journalSession(sessionid);
     }
     return numAdded;
   }
@@ -119,6 +125,7 @@ public class HiveSessionService extends LensService implements SessionService {
       acquire(sessionid);
       getCliService().executeStatement(getHiveSessionHandle(sessionid), command, null);
       getSession(sessionid).removeResource(type, path);
+      journalSession(sessionid);
     } catch (HiveSQLException e) {
       throw new WebApplicationException(e);
     } finally {
@@ -176,6 +183,7 @@ public class HiveSessionService extends LensService implements SessionService {
         addResourceToAllServices(sessionid, "jar", jar);
       }
     }
+    journalSession(sessionid);
     return sessionid;
   }
 
@@ -249,6 +257,7 @@ public class HiveSessionService extends LensService implements SessionService {
       // add to persist
       if (addToSession) {
         getSession(sessionid).setConfig(key, value);
+        journalSession(sessionid);
       }
       LOG.info("Set param key:" + key + " value:" + value);
     } catch (HiveSQLException e) {
@@ -349,23 +358,71 @@ public class HiveSessionService extends LensService implements SessionService {
   @Override
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
     int numSessions = in.readInt();
-    restorableSessions = new ArrayList<LensSessionImpl.LensSessionPersistInfo>();
+    Map<String, LensSessionImpl.LensSessionPersistInfo> sessions =
+        new LinkedHashMap<String, LensSessionImpl.LensSessionPersistInfo>();
 
     for (int i = 0; i < numSessions; i++) {
       LensSessionImpl.LensSessionPersistInfo persistInfo = new LensSessionImpl.LensSessionPersistInfo();
       persistInfo.readExternal(in);
-      restorableSessions.add(persistInfo);
+      sessions.put(persistInfo.getSessionHandle().getPublicId().toString(), persistInfo);
+    }
+
+    // replay session changes since the snapshot
+    if (getStateJournal() != null) {
+      for (Map.Entry<String, ServiceStateJournal.Entry> entry : getStateJournal().replay().entrySet()) {
+        if (entry.getValue() == null) {
+          sessions.remove(entry.getKey());
+        } else if (entry.getValue().getState() != null) {
+          // sessions are always journaled with their full state
+          LensSessionImpl.LensSessionPersistInfo persistInfo = new LensSessionImpl.LensSessionPersistInfo();
+          ObjectInputStream entryIn = new ObjectInputStream(new ByteArrayInputStream(entry.getValue().getState()));
+          try {
+            persistInfo.readExternal(entryIn);
+          } finally {
+            entryIn.close();
+          }
+          sessions.put(entry.getKey(), persistInfo);
+        }
+      }
+    }
+
+    restorableSessions = new ArrayList<LensSessionImpl.LensSessionPersistInfo>(sessions.values());
+    for (LensSessionImpl.LensSessionPersistInfo persistInfo : restorableSessions) {
       sessionMap.put(persistInfo.getSessionHandle().getPublicId().toString(), persistInfo.getSessionHandle());
     }
     LOG.info("Session service recovered " + sessionMap.size() + " sessions");
   }
 
+  /**
+   * Record the current state of the session in the state journal.
+   *
+   * @param sessionHandle
+   *          the session handle
+   */
+  private void journalSession(LensSessionHandle sessionHandle) {
+    if (getStateJournal() == null) {
+      return;
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      getSession(sessionHandle).getLensSessionPersistInfo().writeExternal(out);
+      out.close();
+      journalPut(sessionHandle.getPublicId().toString(), bytes.toByteArray());
+    } catch (IOException e) {
+      LOG.warn("Could not serialize session " + sessionHandle.getPublicId() + " for journal", e);
+    }
+  }
+
   /**
    * @inheritDoc
    */
   @Override
   public void closeSession(LensSessionHandle sessionHandle) throws LensException {
     super.closeSession(sessionHandle);
+    if (getStateJournal() != null) {
+      journalRemove(sessionHandle.getPublicId().toString());
+    }
     // Inform query service
     LensService svc = LensServices.get().getService(QueryExecutionServiceImpl.NAME);
     if (svc instanceof QueryExecutionServiceImpl) {
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * The Class TestServiceStateJournal.
+ */
+@Test(groups = "unit-test")
+public class TestServiceStateJournal {
+
+  /** The journal dir. */
+  private final Path dir = new Path("target/test-journal");
+
+  /** The fs. */
+  private FileSystem fs;
+
+  /**
+   * Clean the journal dir.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  @BeforeMethod
+  public void setup() throws IOException {
+    // raw file system, since a record is appended outside the file system in testIncompleteRecord
+    fs = FileSystem.getLocal(new Configuration()).getRawFileSystem();
+    fs.delete(dir, true);
+    fs.mkdirs(dir);
+  }
+
+  /**
+   * Test replay of journal written before restart.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testReplay() throws IOException {
+    ServiceStateJournal journal = new ServiceStateJournal(fs, dir, "testsvc");
+    journal.put("q1", new byte[] { 1 });
+    journal.put("q2", new byte[] { 2 });
+    journal.put("q1", new byte[] { 3 });
+    journal.roll();
+    journal.remove("q2");
+    journal.put("q3", new byte[0]);
+    journal.close();
+
+    // A new journal writes to a new segment and replays the older ones
+    journal = new ServiceStateJournal(fs, dir, "testsvc");
+    Map<String, ServiceStateJournal.Entry> entries = journal.replay();
+    Assert.assertEquals(entries.size(), 3);
+    Assert.assertEquals(entries.get("q1").getState(), new byte[] { 3 });
+    Assert.assertTrue(entries.containsKey("q2"));
+    Assert.assertNull(entries.get("q2"));
+    Assert.assertEquals(entries.get("q3").getState(), new byte[0]);
+
+    // records of this run are not replayed until next restart
+    journal.put("q4", new byte[] { 4 });
+    Assert.assertFalse(journal.replay().containsKey("q4"));
+    journal.close();
+  }
+
+  /**
+   * Test replay of updates recorded over the state of entries.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testReplayUpdates() throws IOException {
+    ServiceStateJournal journal = new ServiceStateJournal(fs, dir, "testsvc");
+    journal.put("q1", new byte[] { 1 });
+    journal.update("q1", new byte[] { 2 });
+    journal.update("q1", new byte[] { 3 });
+    // update of an entry in the snapshot
+    journal.update("q2", new byte[] { 4 });
+    journal.put("q3", new byte[] { 5 });
+    journal.update("q3", new byte[] { 6 });
+    journal.put("q3", new byte[] { 7 });
+    journal.remove("q1");
+    journal.update("q1", new byte[] { 8 });
+    journal.close();
+
+    Map<String, ServiceStateJournal.Entry> entries = new ServiceStateJournal(fs, dir, "testsvc").replay();
+    Assert.assertEquals(entries.size(), 3);
+    Assert.assertNull(entries.get("q1"));
+    Assert.assertNull(entries.get("q2").getState());
+    Assert.assertEquals(entries.get("q2").getUpdates().size(), 1);
+    Assert.assertEquals(entries.get("q2").getUpdates().get(0), new byte[] { 4 });
+    // a put replaces the updates recorded before it
+    Assert.assertEquals(entries.get("q3").getState(), new byte[] { 7 });
+    Assert.assertTrue(entries.get("q3").getUpdates().isEmpty());
+  }
+
+  /**
+   * Test segments are deleted once covered by a snapshot.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testDeleteSegments() throws IOException {
+    ServiceStateJournal journal = new ServiceStateJournal(fs, dir, "testsvc");
+    journal.put("q1", new byte[] { 1 });
+    long segment = journal.roll();
+    journal.put("q2", new byte[] { 2 });
+    journal.deleteSegmentsBefore(segment);
+    journal.close();
+
+    Map<String, ServiceStateJournal.Entry> entries = new ServiceStateJournal(fs, dir, "testsvc").replay();
+    Assert.assertEquals(entries.size(), 1);
+    Assert.assertEquals(entries.get("q2").getState(), new byte[] { 2 });
+  }
+
+  /**
+   * Test incomplete record at the end of a segment is ignored.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  @Test
+  public void testIncompleteRecord() throws IOException {
+    ServiceStateJournal journal = new ServiceStateJournal(fs, dir, "testsvc");
+    journal.put("q1", new byte[] { 1 });
+    journal.close();
+
+    // append a put record without its value
+    FileOutputStream out = new FileOutputStream("target/test-journal/testsvc.journal.0", true);
+    out.write(new byte[] { 1, 0, 2, 'q', '2', 0, 0, 0, 5, 1 });
+    out.close();
+
+    Map<String, ServiceStateJournal.Entry> entries = new ServiceStateJournal(fs, dir, "testsvc").replay();
+    Assert.assertEquals(entries.size(), 1);
+    Assert.assertEquals(entries.get("q1").getState(), new byte[] { 1 });
+  }
+}
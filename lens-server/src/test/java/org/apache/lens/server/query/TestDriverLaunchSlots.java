@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.lens.api.LensConf;
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.driver.MockDriver;
+import org.apache.lens.server.api.query.QueryContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link DriverLaunchSlots}.
+ */
+@Test(groups = "unit-test")
+public class TestDriverLaunchSlots {
+
+  /**
+   * Creates a query context with the given selected driver.
+   *
+   * @param driver  the driver
+   * @param drivers the drivers
+   * @return the query context
+   * @throws Exception the exception
+   */
+  private QueryContext createContext(LensDriver driver, List<LensDriver> drivers) throws Exception {
+    QueryContext ctx = new QueryContext("select name from table", "testuser", new LensConf(), new Configuration(),
+      drivers, null, System.currentTimeMillis());
+    ctx.setSelectedDriver(driver);
+    return ctx;
+  }
+
+  /**
+   * Test that queries for a driver at max concurrent queries wait, while queries for other drivers go ahead.
+   *
+   * @throws Exception the exception
+   */
+  public void testSaturatedDriverDoesNotBlockOtherDriver() throws Exception {
+    MockDriver saturated = new MockDriver();
+    saturated.configure(new Configuration());
+    MockDriver other = new MockDriver();
+    other.configure(new Configuration());
+    List<LensDriver> drivers = new ArrayList<LensDriver>();
+    drivers.add(saturated);
+    drivers.add(other);
+    DriverLaunchSlots slots = new DriverLaunchSlots(1);
+
+    QueryContext running = createContext(saturated, drivers);
+    QueryContext waiting = createContext(saturated, drivers);
+    QueryContext onOther = createContext(other, drivers);
+    Assert.assertTrue(slots.tryAcquire(running));
+    Assert.assertFalse(slots.tryAcquire(waiting));
+    Assert.assertEquals(slots.getWaitingCount(), 1);
+    Assert.assertTrue(slots.tryAcquire(onOther));
+
+    // releasing a slot of the other driver does not hand back queries waiting for the saturated driver
+    Assert.assertTrue(slots.release(onOther).isEmpty());
+    Assert.assertEquals(slots.getWaitingCount(), 1);
+
+    Assert.assertEquals(slots.release(running), Collections.singletonList(waiting));
+    Assert.assertEquals(slots.getWaitingCount(), 0);
+    Assert.assertTrue(slots.tryAcquire(waiting));
+    // a query without a slot has nothing to release
+    Assert.assertTrue(slots.release(running).isEmpty());
+  }
+
+  /**
+   * Test that queries found running on restart hold slots of their driver.
+   *
+   * @throws Exception the exception
+   */
+  public void testRecoveredRunningQueries() throws Exception {
+    MockDriver driver = new MockDriver();
+    driver.configure(new Configuration());
+    List<LensDriver> drivers = new ArrayList<LensDriver>();
+    drivers.add(driver);
+    DriverLaunchSlots slots = new DriverLaunchSlots(1);
+
+    QueryContext recovered1 = createContext(driver, drivers);
+    QueryContext recovered2 = createContext(driver, drivers);
+    slots.acquire(recovered1);
+    // taken even beyond max, as the query is running anyway
+    slots.acquire(recovered2);
+    QueryContext queued = createContext(driver, drivers);
+    Assert.assertFalse(slots.tryAcquire(queued));
+
+    Assert.assertEquals(slots.release(recovered1), Collections.singletonList(queued));
+    // the driver is still full with the other recovered query
+    Assert.assertFalse(slots.tryAcquire(queued));
+    Assert.assertEquals(slots.release(recovered2), Collections.singletonList(queued));
+    Assert.assertTrue(slots.tryAcquire(queued));
+  }
+
+  /**
+   * Test that slots are not limited for non positive max.
+   *
+   * @throws Exception the exception
+   */
+  public void testUnlimited() throws Exception {
+    MockDriver driver = new MockDriver();
+    driver.configure(new Configuration());
+    List<LensDriver> drivers = new ArrayList<LensDriver>();
+    drivers.add(driver);
+    DriverLaunchSlots slots = new DriverLaunchSlots(0);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertTrue(slots.tryAcquire(createContext(driver, drivers)));
+    }
+    Assert.assertEquals(slots.getWaitingCount(), 0);
+  }
+}
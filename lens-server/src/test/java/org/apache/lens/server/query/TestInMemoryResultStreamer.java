@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.hive.service.cli.ColumnDescriptor;
+import org.apache.lens.api.LensException;
+import org.apache.lens.api.query.InMemoryQueryResult;
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.api.query.ResultRow;
+import org.apache.lens.server.api.driver.InMemoryResultSet;
+import org.apache.lens.server.api.driver.LensResultSetMetadata;
+import org.apache.lens.server.api.driver.ResultRowBuffer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link InMemoryResultStreamer}.
+ */
+@Test(groups = "unit-test")
+public class TestInMemoryResultStreamer {
+
+  /**
+   * In-memory result set of generated rows.
+   */
+  private static class GeneratedResultSet extends InMemoryResultSet {
+
+    /** The number of rows. */
+    private final int numRows;
+
+    /** The number of rows read. */
+    private int rowsRead;
+
+    /**
+     * Instantiates a new generated result set.
+     *
+     * @param numRows the number of rows
+     */
+    GeneratedResultSet(int numRows) {
+      this.numRows = numRows;
+    }
+
+    @Override
+    public boolean hasNext() throws LensException {
+      return rowsRead < numRows;
+    }
+
+    @Override
+    public ResultRow next() throws LensException {
+      List<Object> values = new ArrayList<Object>();
+      values.add("row" + rowsRead);
+      values.add(rowsRead++);
+      return new ResultRow(values);
+    }
+
+    @Override
+    public void setFetchSize(int size) throws LensException {
+    }
+
+    @Override
+    public int size() throws LensException {
+      return numRows;
+    }
+
+    @Override
+    public LensResultSetMetadata getMetadata() throws LensException {
+      return new LensResultSetMetadata() {
+        @Override
+        public List<ColumnDescriptor> getColumns() {
+          return new ArrayList<ColumnDescriptor>();
+        }
+      };
+    }
+  }
+
+  /**
+   * Test that rows are streamed in order, and are kept in the result buffer so that later pages start at the right
+   * row.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testStreamThenFetchPage() throws Exception {
+    File spillDir = new File("target/streamerspill");
+    spillDir.mkdirs();
+    ResultRowBuffer.deleteSpillFiles(spillDir);
+    int numRows = InMemoryResultStreamer.FETCH_WINDOW * 3 + 7;
+    GeneratedResultSet resultSet = new GeneratedResultSet(numRows);
+    ResultRowBuffer buffer = new ResultRowBuffer(spillDir, 10 * 1024 * 1024L);
+    resultSet.setResultBuffer(buffer);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new InMemoryResultStreamer(new QueryHandle(UUID.randomUUID()), resultSet,
+      InMemoryResultStreamer.Format.CSV, "UTF-8", false).write(out);
+
+    List<String> lines = Arrays.asList(new String(out.toByteArray(), "UTF-8").split("\n"));
+    Assert.assertEquals(lines.size(), numRows);
+    Assert.assertEquals(lines.get(0), "\"row0\",\"0\"");
+    Assert.assertEquals(lines.get(numRows - 1), "\"row" + (numRows - 1) + "\",\"" + (numRows - 1) + "\"");
+    Assert.assertEquals(buffer.size(), numRows);
+    Assert.assertEquals(spillDir.list().length, 0);
+
+    List<ResultRow> page = ((InMemoryQueryResult) resultSet.toQueryResult(5, 10)).getRows();
+    Assert.assertEquals(page.size(), 10);
+    Assert.assertEquals(page.get(0).getValues().get(0), "row5");
+    resultSet.closeResultBuffer();
+  }
+
+  /**
+   * Test that rows are streamed as newline delimited JSON arrays.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testStreamJson() throws Exception {
+    int numRows = InMemoryResultStreamer.FETCH_WINDOW + 1;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new InMemoryResultStreamer(new QueryHandle(UUID.randomUUID()), new GeneratedResultSet(numRows),
+      InMemoryResultStreamer.Format.JSON, "UTF-8", false).write(out);
+
+    String json = new String(out.toByteArray(), "UTF-8");
+    Assert.assertTrue(json.endsWith("\n"));
+    List<String> lines = Arrays.asList(json.split("\n"));
+    Assert.assertEquals(lines.size(), numRows);
+    Assert.assertEquals(lines.get(0), "[\"row0\",0]");
+    Assert.assertEquals(lines.get(numRows - 1), "[\"row" + (numRows - 1) + "\"," + (numRows - 1) + "]");
+  }
+}
@@ -34,6 +34,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import javax.ws.rs.core.Application;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -87,6 +88,130 @@ public class TestLensDAO extends LensJerseyTest {
     Assert.assertEquals(daoTestQueryHandles.get(0).getHandleId().toString(), finishedHandle);
   }
 
+  /**
+   * Test inserting finished queries in a batch.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testInsertFinishedQueries() throws Exception {
+    QueryExecutionServiceImpl service = (QueryExecutionServiceImpl) LensServices.get().getService("query");
+
+    List<FinishedLensQuery> batch = new ArrayList<FinishedLensQuery>();
+    for (int i = 0; i < 3; i++) {
+      QueryContext queryContext = service.createContext("SELECT ID FROM testTable", "foo@localhost", new LensConf(),
+          new Configuration());
+      queryContext.setQueryName("daoBatchQuery" + i);
+      FinishedLensQuery finishedLensQuery = new FinishedLensQuery(queryContext);
+      finishedLensQuery.setStatus(QueryStatus.Status.SUCCESSFUL.name());
+      batch.add(finishedLensQuery);
+    }
+    service.lensServerDao.insertFinishedQueries(batch);
+    for (FinishedLensQuery query : batch) {
+      Assert.assertEquals(service.lensServerDao.getQuery(query.getHandle()).getHandle(), query.getHandle());
+    }
+
+    // A batch with a duplicate handle should be rolled back entirely
+    QueryContext queryContext = service.createContext("SELECT ID FROM testTable", "foo@localhost", new LensConf(),
+        new Configuration());
+    FinishedLensQuery newQuery = new FinishedLensQuery(queryContext);
+    newQuery.setStatus(QueryStatus.Status.SUCCESSFUL.name());
+    List<FinishedLensQuery> failingBatch = new ArrayList<FinishedLensQuery>();
+    failingBatch.add(newQuery);
+    failingBatch.add(batch.get(0));
+    try {
+      service.lensServerDao.insertFinishedQueries(failingBatch);
+      Assert.fail("Batch with a duplicate handle should fail");
+    } catch (Exception e) {
+      // expected
+    }
+    Assert.assertNull(service.lensServerDao.getQuery(newQuery.getHandle()));
+  }
+
+  /**
+   * Test paginating finished queries.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testFindFinishedQueriesPages() throws Exception {
+    QueryExecutionServiceImpl service = (QueryExecutionServiceImpl) LensServices.get().getService("query");
+
+    List<FinishedLensQuery> inserted = new ArrayList<FinishedLensQuery>();
+    long submissionTime = System.currentTimeMillis();
+    for (int i = 0; i < 5; i++) {
+      QueryContext queryContext = service.createContext("SELECT ID FROM testTable", "foo@localhost", new LensConf(),
+          new Configuration());
+      queryContext.setQueryName("daoPageQuery");
+      FinishedLensQuery finishedLensQuery = new FinishedLensQuery(queryContext);
+      finishedLensQuery.setStatus(QueryStatus.Status.SUCCESSFUL.name());
+      // two queries per submission time, to check ordering by handle
+      finishedLensQuery.setSubmissionTime(submissionTime + i / 2);
+      inserted.add(finishedLensQuery);
+    }
+    service.lensServerDao.insertFinishedQueries(inserted);
+    Assert.assertEquals(service.lensServerDao.getSubmissionTime(inserted.get(4).getHandle()),
+        Long.valueOf(submissionTime + 2));
+
+    List<FinishedLensQuery> all = service.lensServerDao.findFinishedQueries(null, null, "daopagequery",
+        submissionTime, submissionTime + 2, 0, null, -1);
+    Assert.assertEquals(all.size(), 5);
+
+    List<FinishedLensQuery> paged = new ArrayList<FinishedLensQuery>();
+    FinishedLensQuery last = null;
+    List<FinishedLensQuery> page;
+    do {
+      page = service.lensServerDao.findFinishedQueries(null, null, "daopagequery", submissionTime,
+          submissionTime + 2, last == null ? 0 : last.getSubmissionTime(), last == null ? null : last.getHandle(), 2);
+      Assert.assertTrue(page.size() <= 2);
+      paged.addAll(page);
+      if (!page.isEmpty()) {
+        last = page.get(page.size() - 1);
+      }
+    } while (!page.isEmpty());
+    Assert.assertEquals(paged, all);
+    for (int i = 1; i < paged.size(); i++) {
+      FinishedLensQuery prev = paged.get(i - 1);
+      FinishedLensQuery cur = paged.get(i);
+      Assert.assertTrue(prev.getSubmissionTime() < cur.getSubmissionTime()
+          || (prev.getSubmissionTime() == cur.getSubmissionTime() && prev.getHandle().compareTo(cur.getHandle()) < 0));
+    }
+  }
+
+  /**
+   * Test that pages of finished queries are full even when invalid handles are skipped.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testFindFinishedQueriesSkipsInvalidHandles() throws Exception {
+    QueryExecutionServiceImpl service = (QueryExecutionServiceImpl) LensServices.get().getService("query");
+
+    List<FinishedLensQuery> inserted = new ArrayList<FinishedLensQuery>();
+    long submissionTime = System.currentTimeMillis();
+    for (int i = 0; i < 3; i++) {
+      QueryContext queryContext = service.createContext("SELECT ID FROM testTable", "foo@localhost", new LensConf(),
+          new Configuration());
+      queryContext.setQueryName("daoSkipQuery");
+      FinishedLensQuery finishedLensQuery = new FinishedLensQuery(queryContext);
+      finishedLensQuery.setStatus(QueryStatus.Status.SUCCESSFUL.name());
+      finishedLensQuery.setSubmissionTime(submissionTime + i);
+      inserted.add(finishedLensQuery);
+    }
+    // the first row in order has an invalid handle
+    inserted.get(0).setHandle("invalid-handle-" + submissionTime);
+    service.lensServerDao.insertFinishedQueries(inserted);
+
+    List<FinishedLensQuery> page = service.lensServerDao.findFinishedQueries(null, null, "daoskipquery",
+        submissionTime, submissionTime + 2, 0, null, 2);
+    Assert.assertEquals(page.size(), 2);
+    Assert.assertEquals(page.get(0).getHandle(), inserted.get(1).getHandle());
+    Assert.assertEquals(page.get(1).getHandle(), inserted.get(2).getHandle());
+  }
+
   @Override
   protected int getTestPort() {
     return 101010;
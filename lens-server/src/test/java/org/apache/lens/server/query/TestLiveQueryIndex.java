@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.lens.api.LensConf;
+import org.apache.lens.api.query.QueryHandle;
+import org.apache.lens.api.query.QueryStatus;
+import org.apache.lens.api.query.QueryStatus.Status;
+import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.driver.MockDriver;
+import org.apache.lens.server.api.query.QueryContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link LiveQueryIndex}.
+ */
+@Test(groups = "unit-test")
+public class TestLiveQueryIndex {
+
+  /**
+   * Creates a query context.
+   *
+   * @param user           the user
+   * @param submissionTime the submission time
+   * @return the query context
+   * @throws Exception the exception
+   */
+  private QueryContext createContext(String user, long submissionTime) throws Exception {
+    List<LensDriver> drivers = new ArrayList<LensDriver>();
+    MockDriver driver = new MockDriver();
+    Configuration conf = new Configuration();
+    driver.configure(conf);
+    drivers.add(driver);
+    return new QueryContext("select name from table", user, new LensConf(), conf, drivers, null, submissionTime);
+  }
+
+  /**
+   * Gets the candidates as a set.
+   *
+   * @param index  the index
+   * @param status the status
+   * @param user   the user
+   * @param from   the from date
+   * @param to     the to date
+   * @return the candidates
+   */
+  private Set<QueryHandle> candidates(LiveQueryIndex index, Status status, String user, long from, long to) {
+    return new HashSet<QueryHandle>(index.getCandidates(status, user, from, to));
+  }
+
+  /**
+   * Test index lookups and maintenance on status change and removal.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testIndex() throws Exception {
+    LiveQueryIndex index = new LiveQueryIndex();
+    long now = System.currentTimeMillis();
+    long old = now - 10 * LiveQueryIndex.TIME_BUCKET_MILLIS;
+    QueryContext foo1 = createContext("foo", old);
+    QueryContext foo2 = createContext("foo", now);
+    QueryContext bar = createContext("Bar", now);
+    for (QueryContext ctx : new QueryContext[]{foo1, foo2, bar}) {
+      ctx.setStatus(new QueryStatus(0.0, Status.QUEUED, "queued", false, null, null));
+      index.add(ctx);
+    }
+
+    Assert.assertEquals(candidates(index, null, null, -1, Long.MAX_VALUE).size(), 3);
+    Set<QueryHandle> fooQueries = candidates(index, null, "FOO", -1, Long.MAX_VALUE);
+    Assert.assertEquals(fooQueries.size(), 2);
+    Assert.assertTrue(fooQueries.contains(foo1.getQueryHandle()));
+    Assert.assertTrue(fooQueries.contains(foo2.getQueryHandle()));
+    Assert.assertTrue(candidates(index, null, "nobody", -1, Long.MAX_VALUE).isEmpty());
+
+    // time range narrower than the live queries picks the time buckets
+    Set<QueryHandle> recent = candidates(index, null, null, now, Long.MAX_VALUE);
+    Assert.assertEquals(recent.size(), 2);
+    Assert.assertFalse(recent.contains(foo1.getQueryHandle()));
+
+    // status change moves the query to the new status
+    bar.setStatus(new QueryStatus(0.0, Status.LAUNCHED, "launched", false, null, null));
+    index.update(bar);
+    Assert.assertEquals(candidates(index, Status.QUEUED, null, -1, Long.MAX_VALUE).size(), 2);
+    Set<QueryHandle> launched = candidates(index, Status.LAUNCHED, null, -1, Long.MAX_VALUE);
+    Assert.assertEquals(launched.size(), 1);
+    Assert.assertTrue(launched.contains(bar.getQueryHandle()));
+
+    // removed queries are not reindexed by later status changes
+    index.remove(bar);
+    bar.setStatus(new QueryStatus(0.0, Status.RUNNING, "running", false, null, null));
+    index.update(bar);
+    Assert.assertTrue(candidates(index, Status.RUNNING, null, -1, Long.MAX_VALUE).isEmpty());
+    Assert.assertTrue(candidates(index, null, "bar", -1, Long.MAX_VALUE).isEmpty());
+    Assert.assertEquals(candidates(index, null, null, -1, Long.MAX_VALUE).size(), 2);
+
+    index.clear();
+    Assert.assertTrue(candidates(index, null, null, -1, Long.MAX_VALUE).isEmpty());
+  }
+}
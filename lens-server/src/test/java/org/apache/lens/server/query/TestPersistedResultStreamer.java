@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.lens.server.query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link PersistedResultStreamer}.
+ */
+@Test(groups = "unit-test")
+public class TestPersistedResultStreamer {
+
+  /**
+   * Test parsing of http Range headers.
+   */
+  @Test
+  public void testParseRange() {
+    Assert.assertNull(PersistedResultStreamer.parseRange(null, 100));
+    Assert.assertNull(PersistedResultStreamer.parseRange("items=0-10", 100));
+    Assert.assertNull(PersistedResultStreamer.parseRange("bytes=0-10,20-30", 100));
+    Assert.assertNull(PersistedResultStreamer.parseRange("bytes=20-10", 100));
+    Assert.assertNull(PersistedResultStreamer.parseRange("bytes=a-10", 100));
+    assertRange(PersistedResultStreamer.parseRange("bytes=0-9", 100), 0, 9);
+    assertRange(PersistedResultStreamer.parseRange("bytes=90-", 100), 90, 99);
+    assertRange(PersistedResultStreamer.parseRange("bytes=90-200", 100), 90, 99);
+    assertRange(PersistedResultStreamer.parseRange("bytes=-10", 100), 90, 99);
+    assertRange(PersistedResultStreamer.parseRange("bytes=-200", 100), 0, 99);
+    try {
+      PersistedResultStreamer.parseRange("bytes=100-", 100);
+      Assert.fail("Range beyond the size should not be satisfiable");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test parsing Accept-Encoding headers.
+   */
+  @Test
+  public void testAcceptsGzip() {
+    Assert.assertFalse(PersistedResultStreamer.acceptsGzip(null));
+    Assert.assertFalse(PersistedResultStreamer.acceptsGzip("identity"));
+    Assert.assertTrue(PersistedResultStreamer.acceptsGzip("gzip"));
+    Assert.assertTrue(PersistedResultStreamer.acceptsGzip("deflate, GZIP;q=0.5"));
+    Assert.assertTrue(PersistedResultStreamer.acceptsGzip("x-gzip"));
+    Assert.assertFalse(PersistedResultStreamer.acceptsGzip("gzip;q=0"));
+    Assert.assertFalse(PersistedResultStreamer.acceptsGzip("gzip; q=0.000, deflate"));
+    Assert.assertTrue(PersistedResultStreamer.acceptsGzip("*"));
+    Assert.assertFalse(PersistedResultStreamer.acceptsGzip("*;q=0"));
+    Assert.assertFalse(PersistedResultStreamer.acceptsGzip("gzip;q=0, *"));
+  }
+
+  /**
+   * Test streaming a byte range, and the whole result gzip encoded, from the local file system.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void testWrite() throws Exception {
+    File file = File.createTempFile("result", ".csv");
+    file.deleteOnExit();
+    byte[] data = new byte[100000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) ('a' + i % 26);
+    }
+    FileOutputStream fos = new FileOutputStream(file);
+    try {
+      fos.write(data);
+    } finally {
+      fos.close();
+    }
+    Path path = new Path(file.toURI());
+    Configuration conf = new Configuration();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new PersistedResultStreamer(path, conf, 1000, 5000, false, 1024, null).write(out);
+    byte[] expected = new byte[5000];
+    System.arraycopy(data, 1000, expected, 0, 5000);
+    Assert.assertEquals(out.toByteArray(), expected);
+
+    out = new ByteArrayOutputStream();
+    new PersistedResultStreamer(path, conf, 0, data.length, true, 1024, null).write(out);
+    Assert.assertEquals(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))), data);
+  }
+
+  /**
+   * Assert range.
+   *
+   * @param range the range
+   * @param first the expected first byte
+   * @param last  the expected last byte
+   */
+  private void assertRange(long[] range, long first, long last) {
+    Assert.assertNotNull(range);
+    Assert.assertEquals(range[0], first);
+    Assert.assertEquals(range[1], last);
+  }
+}
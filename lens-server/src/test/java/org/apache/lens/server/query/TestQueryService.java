@@ -26,8 +26,11 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.NotFoundException;
@@ -44,7 +47,10 @@ import org.apache.hadoop.hive.ql.HiveDriverRunHook;
 import org.apache.hadoop.hive.ql.HiveDriverRunHookContext;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.lens.driver.hive.TestHiveDriver;
+import org.apache.lens.server.api.query.DriverSelectorQueryContext.DriverQueryContext;
+import org.apache.lens.server.api.query.ExplainQueryContext;
 import org.apache.lens.server.api.query.QueryContext;
+import org.apache.lens.server.api.query.QueryExecutionService;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
@@ -67,12 +73,16 @@ import org.apache.lens.api.query.QueryPrepareHandle;
 import org.apache.lens.api.query.QueryResultSetMetadata;
 import org.apache.lens.api.query.QueryStatus;
 import org.apache.lens.api.query.QueryStatus.Status;
+import org.apache.lens.cube.metadata.CubeMetastoreClient;
+import org.apache.lens.cube.metadata.HDFSStorage;
 import org.apache.lens.driver.hive.HiveDriver;
 import org.apache.lens.server.LensJerseyTest;
 import org.apache.lens.server.LensServices;
 import org.apache.lens.server.LensTestUtil;
 import org.apache.lens.server.api.LensConfConstants;
+import org.apache.lens.server.api.driver.DriverQueryPlan;
 import org.apache.lens.server.api.driver.LensDriver;
+import org.apache.lens.server.api.driver.MockDriver;
 import org.apache.lens.server.api.metrics.MetricsService;
 import org.subethamail.wiser.Wiser;
 import org.subethamail.wiser.WiserMessage;
@@ -420,6 +430,8 @@ public class TestQueryService extends LensJerseyTest {
     Assert.assertEquals(plan.getTablesQueried().size(), 1);
     Assert.assertTrue(plan.getTablesQueried().get(0).endsWith(testTable.toLowerCase()));
     Assert.assertNull(plan.getPrepareHandle());
+    Assert.assertTrue(plan.getPhaseDurations().containsKey(QueryExecutionServiceImpl.DRIVER_SELECTION_PHASE));
+    Assert.assertTrue(plan.getPhaseDurations().containsKey("HiveDriver.explain"));
 
     // Test explain and prepare
     final WebTarget ptarget = target().path("queryapi/preparedqueries");
@@ -700,6 +712,8 @@ public class TestQueryService extends LensJerseyTest {
 
     long queuedQueries = metricsSvc.getQueuedQueries();
     long runningQueries = metricsSvc.getRunningQueries();
+    long launches = metricsSvc.getTimerCount(QueryExecutionService.class,
+        QueryExecutionServiceImpl.QUERY_LAUNCH_TIMER);
 
     final FormDataMultiPart mp = new FormDataMultiPart();
     mp.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("sessionid").build(), lensSessionId,
@@ -744,6 +758,8 @@ public class TestQueryService extends LensJerseyTest {
     assertTrue(ctx.getDriverFinishTime() > 0);
     assertTrue(ctx.getFinishTime() > 0);
     Assert.assertEquals(ctx.getStatus().getStatus(), QueryStatus.Status.SUCCESSFUL);
+    assertTrue(metricsSvc.getTimerCount(QueryExecutionService.class, QueryExecutionServiceImpl.QUERY_LAUNCH_TIMER)
+        > launches);
 
     validatePersistedResult(handle, target(), lensSessionId, new String[][]{{"ID", "INT"}, {"IDSTR", "STRING"}}, true);
 
@@ -1107,7 +1123,44 @@ public class TestQueryService extends LensJerseyTest {
         .queryParam("sessionid", lensSessionId).request().get(InMemoryQueryResult.class);
     validateInmemoryResult(resultset);
 
-    validNotFoundForHttpResult(target(), lensSessionId, handle);
+    // in-memory result streamed over http
+    Assert.assertEquals(readHttpResult(target(), lensSessionId, handle, null),
+      "\"1\",\"one\"\n,\"two\"\n\"3\",\n,\n\"5\",\"\"\n");
+    Assert.assertEquals(readHttpResult(target(), lensSessionId, handle, "json"),
+      "[1,\"one\"]\n[null,\"two\"]\n[3,null]\n[null,null]\n[5,\"\"]\n");
+  }
+
+  /**
+   * Read the result streamed over http.
+   *
+   * @param parent
+   *          the parent
+   * @param lensSessionId
+   *          the lens session id
+   * @param handle
+   *          the handle
+   * @param format
+   *          the format
+   * @return the result
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   */
+  static String readHttpResult(WebTarget parent, LensSessionHandle lensSessionId, QueryHandle handle, String format)
+    throws IOException {
+    WebTarget target = parent.path("queryapi/queries/" + handle.toString() + "/httpresultset")
+        .queryParam("sessionid", lensSessionId);
+    if (format != null) {
+      target = target.queryParam("format", format);
+    }
+    Response response = target.request().get();
+    Assert.assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+    Assert.assertTrue(response.getHeaderString("content-disposition").contains(handle.toString()));
+    InputStream in = (InputStream) response.getEntity();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    IOUtils.copyBytes(in, bos, new Configuration());
+    bos.close();
+    in.close();
+    return new String(bos.toByteArray(), "UTF-8");
   }
 
   /**
@@ -1335,6 +1388,80 @@ public class TestQueryService extends LensJerseyTest {
     validateInmemoryResult((InMemoryQueryResult) result.getResult());
   }
 
+  /**
+   * Test execute with timeout of a prepared query.
+   *
+   * @throws IOException
+   *           Signals that an I/O exception has occurred.
+   * @throws InterruptedException
+   *           the interrupted exception
+   */
+  @Test
+  public void testExecutePreparedWithTimeoutQuery() throws IOException, InterruptedException {
+    final WebTarget target = target().path("queryapi/preparedqueries");
+
+    final FormDataMultiPart mp = new FormDataMultiPart();
+    mp.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("sessionid").build(), lensSessionId,
+        MediaType.APPLICATION_XML_TYPE));
+    mp.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("query").build(), "select ID, IDSTR from "
+        + testTable));
+    mp.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("operation").build(), "prepare"));
+    mp.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("conf").fileName("conf").build(), new LensConf(),
+        MediaType.APPLICATION_XML_TYPE));
+
+    final QueryPrepareHandle pHandle = target.request().post(Entity.entity(mp, MediaType.MULTIPART_FORM_DATA_TYPE),
+        QueryPrepareHandle.class);
+
+    final FormDataMultiPart mp2 = new FormDataMultiPart();
+    LensConf conf = new LensConf();
+    conf.addProperty(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER, "false");
+    mp2.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("sessionid").build(), lensSessionId,
+        MediaType.APPLICATION_XML_TYPE));
+    mp2.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("operation").build(), "execute_with_timeout"));
+    // set a timeout value enough for tests
+    mp2.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("timeoutmillis").build(), "300000"));
+    mp2.bodyPart(new FormDataBodyPart(FormDataContentDisposition.name("conf").fileName("conf").build(), conf,
+        MediaType.APPLICATION_XML_TYPE));
+
+    QueryHandleWithResultSet result = target.path(pHandle.toString()).request()
+        .post(Entity.entity(mp2, MediaType.MULTIPART_FORM_DATA_TYPE), QueryHandleWithResultSet.class);
+    Assert.assertNotNull(result.getQueryHandle());
+    Assert.assertNotNull(result.getResult());
+    validateInmemoryResult((InMemoryQueryResult) result.getResult());
+
+    // destroy prepared
+    APIResult destroyed = target.path(pHandle.toString()).queryParam("sessionid", lensSessionId).request()
+        .delete(APIResult.class);
+    Assert.assertEquals(destroyed.getStatus(), APIResult.Status.SUCCEEDED);
+  }
+
+  /**
+   * Test that execute with timeout completes its future with just the handle on timeout, while the query carries on
+   * and completes its own futures.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testExecuteWithTimeoutFuture() throws Exception {
+    LensConf conf = new LensConf();
+    conf.addProperty(LensConfConstants.QUERY_PERSISTENT_RESULT_INDRIVER, "false");
+    QueryHandleWithResultSet result = queryService.executeWithTimeout(lensSessionId,
+      "select ID, IDSTR from " + testTable, 300000, conf, "").get(5, TimeUnit.MINUTES);
+    Assert.assertNotNull(result.getResult());
+    QueryContext ctx = queryService.getQueryContext(result.getQueryHandle());
+    Assert.assertTrue(ctx.getLaunchFuture().isDone());
+    Assert.assertEquals(ctx.getCompletionFuture().get(0, TimeUnit.MILLISECONDS).getStatus(), Status.SUCCESSFUL);
+
+    // timeout well before the query could finish
+    result = queryService.executeWithTimeout(lensSessionId, "select ID, IDSTR from " + testTable, 1, conf, "")
+      .get(5, TimeUnit.MINUTES);
+    Assert.assertNull(result.getResult());
+    ctx = queryService.getQueryContext(result.getQueryHandle());
+    Assert.assertEquals(ctx.getCompletionFuture().get(5, TimeUnit.MINUTES).getStatus(), Status.SUCCESSFUL);
+    Assert.assertTrue(ctx.getLaunchFuture().isDone());
+  }
+
   /**
    * Test default config.
    *
@@ -1379,6 +1506,115 @@ public class TestQueryService extends LensJerseyTest {
 
   }
 
+  /**
+   * Test rewrite cache keys.
+   *
+   * @throws LensException
+   *           the lens exception
+   */
+  @Test
+  public void testRewriteCacheKey() throws LensException {
+    QueryRewriteCache cache = new QueryRewriteCache(10, 60000L, new String[] {"lens.cube.query."});
+    Assert.assertEquals(QueryRewriteCache.normalize("  cube select  a,\n\tb from c where d = 'x  y'  "),
+      "cube select a, b from c where d = 'x  y'");
+
+    Configuration conf = queryService.getLensConf(lensSessionId, new LensConf());
+    String key = cache.getKey(new ExplainQueryContext("cube select a from c where time_range_in(dt, '2014-01-01',"
+      + " '2014-01-02')", new LensConf(), conf, queryService.getDrivers()));
+    Assert.assertNotNull(key);
+    Assert.assertEquals(cache.getKey(new ExplainQueryContext("cube select a  from c\nwhere time_range_in(dt,"
+      + " '2014-01-01', '2014-01-02')", new LensConf(), conf, queryService.getDrivers())), key);
+
+    // query conf affecting the rewrite is part of the key
+    LensConf queryConf = new LensConf();
+    queryConf.addProperty("lens.cube.query.fail.if.data.partial", "true");
+    Assert.assertFalse(key.equals(cache.getKey(new ExplainQueryContext("cube select a from c where time_range_in(dt,"
+      + " '2014-01-01', '2014-01-02')", queryConf, queryService.getLensConf(lensSessionId, queryConf),
+      queryService.getDrivers()))));
+
+    // time ranges relative to now are not cached
+    Assert.assertNull(cache.getKey(new ExplainQueryContext("cube select a from c where time_range_in(dt, 'now-1day',"
+      + " 'now')", new LensConf(), conf, queryService.getDrivers())));
+  }
+
+  /**
+   * Test rewrite cache hit, miss and invalidation after a metastore change.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testRewriteCache() throws Exception {
+    QueryRewriteCache cache = new QueryRewriteCache(10, 60000L, new String[] {"lens.cube.query."});
+    Configuration conf = queryService.getLensConf(lensSessionId, new LensConf());
+    final String query = "cube select a from c where time_range_in(dt, '2014-01-01', '2014-01-02')";
+    ExplainQueryContext ctx = new ExplainQueryContext(query, new LensConf(), conf, queryService.getDrivers());
+    String key = cache.getKey(ctx);
+
+    // miss
+    Assert.assertNull(cache.get(key, queryService.getDrivers()));
+
+    Map<LensDriver, String> driverQueries = new HashMap<LensDriver, String>();
+    for (LensDriver driver : queryService.getDrivers()) {
+      driverQueries.put(driver, "select a from c_fact");
+    }
+    ctx.getDriverContext().setDriverQueriesAndPlans(driverQueries);
+    cache.put(key, ctx.getDriverContext());
+
+    // hit gives the driver queries, plans are generated again for every query
+    Assert.assertEquals(cache.get(key, queryService.getDrivers()), driverQueries);
+    Assert.assertEquals(cache.size(), 1);
+
+    // metastore change moves the key
+    CubeMetastoreClient client = CubeMetastoreClient.getInstance(queryService.getHiveConf());
+    client.createStorage(new HDFSStorage("rewritecachestorage"));
+    client.dropStorage("rewritecachestorage");
+    String newKey = cache.getKey(new ExplainQueryContext(query, new LensConf(), conf, queryService.getDrivers()));
+    Assert.assertFalse(key.equals(newKey));
+    Assert.assertNull(cache.get(newKey, queryService.getDrivers()));
+  }
+
+  /**
+   * Test that a driver which does not rewrite and explain within the rewrite timeout is skipped, while other drivers
+   * are used.
+   *
+   * @throws Exception
+   *           the exception
+   */
+  @Test
+  public void testRewriteTimeout() throws Exception {
+    final CountDownLatch explainRelease = new CountDownLatch(1);
+    LensDriver slowDriver = new MockDriver() {
+      @Override
+      public DriverQueryPlan explain(String query, Configuration conf) throws LensException {
+        try {
+          explainRelease.await();
+        } catch (InterruptedException e) {
+          throw new LensException("Interrupted while explaining", e);
+        }
+        return super.explain(query, conf);
+      }
+    };
+    slowDriver.configure(new Configuration());
+    List<LensDriver> drivers = new ArrayList<LensDriver>(queryService.getDrivers());
+    drivers.add(slowDriver);
+    Configuration conf = queryService.getLensConf(lensSessionId, new LensConf());
+    ExplainQueryContext ctx = new ExplainQueryContext("select ID from " + testTable, new LensConf(), conf, drivers);
+
+    long rewriteTimeout = queryService.rewriteTimeoutMillis;
+    queryService.rewriteTimeoutMillis = 500;
+    try {
+      Map<LensDriver, String> driverQueries = queryService.rewriteAndExplain(ctx, null);
+      Assert.assertEquals(driverQueries.keySet(), new HashSet<LensDriver>(queryService.getDrivers()));
+      DriverQueryContext slowDriverContext = ctx.getDriverContext().getDriverQueryContextMap().get(slowDriver);
+      Assert.assertNull(slowDriverContext.getDriverQueryPlan());
+      Assert.assertNotNull(slowDriverContext.getDriverQueryPlanGenerationError());
+    } finally {
+      queryService.rewriteTimeoutMillis = rewriteTimeout;
+      explainRelease.countDown();
+    }
+  }
+
   @Override
   protected int getTestPort() {
     return 8083;